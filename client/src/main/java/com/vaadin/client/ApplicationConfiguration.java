@@ -246,6 +246,7 @@ public class ApplicationConfiguration implements EntryPoint {
     private ErrorMessage authorizationError;
     private ErrorMessage sessionExpiredError;
     private int heartbeatInterval;
+    private boolean compactUidl;
 
     private HashMap<Integer, String> unknownComponents;
 
@@ -370,6 +371,18 @@ public class ApplicationConfiguration implements EntryPoint {
         return heartbeatInterval;
     }
 
+    /**
+     * Checks whether the server allows compact UIDL messages, where shared
+     * state property names are replaced with dictionary indices.
+     *
+     * @since
+     * @return <code>true</code> if compact UIDL messages should be requested
+     *         from the server; <code>false</code> otherwise
+     */
+    public boolean isCompactUidl() {
+        return compactUidl;
+    }
+
     public JavaScriptObject getVersionInfoJSObject() {
         return getJsoConfiguration(id).getVersionInfoJSObject();
     }
@@ -424,6 +437,10 @@ public class ApplicationConfiguration implements EntryPoint {
         heartbeatInterval = jsoConfiguration
                 .getConfigInteger("heartbeatInterval");
 
+        // null -> false
+        compactUidl = jsoConfiguration
+                .getConfigBoolean("compactUidl") == Boolean.TRUE;
+
         communicationError = jsoConfiguration.getConfigError("comErrMsg");
         authorizationError = jsoConfiguration.getConfigError("authErrMsg");
         sessionExpiredError = jsoConfiguration.getConfigError("sessExpMsg");
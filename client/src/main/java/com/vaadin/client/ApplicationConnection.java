@@ -62,6 +62,7 @@ import com.vaadin.client.ui.VContextMenu;
 import com.vaadin.client.ui.VNotification;
 import com.vaadin.client.ui.VOverlay;
 import com.vaadin.client.ui.ui.UIConnector;
+import com.vaadin.shared.ApplicationConstants;
 import com.vaadin.shared.VaadinUriResolver;
 import com.vaadin.shared.Version;
 import com.vaadin.shared.communication.LegacyChangeVariablesInvocation;
@@ -116,7 +117,7 @@ public class ApplicationConnection implements HasHandlers {
      * }
      * </pre>
      */
-    public static final String UIDL_REFRESH_TOKEN = "Vaadin-Refresh";
+    public static final String UIDL_REFRESH_TOKEN = ApplicationConstants.UIDL_REFRESH_TOKEN;
 
     private final HashMap<String, String> resourcesMap = new HashMap<String, String>();
 
@@ -29,6 +29,7 @@ import com.google.gwt.core.client.Duration;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.JsArrayInteger;
 import com.google.gwt.core.client.JsArrayString;
 import com.google.gwt.core.client.Scheduler;
 import com.google.gwt.core.client.Scheduler.ScheduledCommand;
@@ -133,6 +134,11 @@ public class MessageHandler {
     // will hold the CSRF token once received
     private String csrfToken = ApplicationConstants.CSRF_TOKEN_DEFAULT_VALUE;
 
+    /**
+     * Dictionary used to expand the shared states of compact messages.
+     */
+    private final StateKeyDictionary stateKeyDictionary = new StateKeyDictionary();
+
     /** Timer for automatic redirect to SessionExpiredURL */
     private Timer redirectTimer;
 
@@ -349,6 +355,15 @@ public class MessageHandler {
             csrfToken = json
                     .getString(ApplicationConstants.UIDL_SECURITY_TOKEN_ID);
         }
+
+        // Must be done in message order, before handling states
+        final boolean compactStates = json
+                .containsKey(ApplicationConstants.STATE_KEYS);
+        if (compactStates) {
+            stateKeyDictionary.addKeys(Util.<JsonArray> jso2json(
+                    json.getJavaScriptObject(ApplicationConstants.STATE_KEYS)));
+        }
+
         getLogger().info(" * Handling resources from server");
 
         if (json.containsKey("resources")) {
@@ -1036,6 +1051,11 @@ public class MessageHandler {
                             JavaScriptObject jso = states
                                     .getJavaScriptObject(connectorId);
                             JsonObject stateJson = Util.jso2json(jso);
+                            if (compactStates) {
+                                stateJson = stateKeyDictionary
+                                        .expand(stateJson);
+                                jso = Util.json2jso(stateJson);
+                            }
 
                             if (connector instanceof HasJavaScriptConnectorHelper) {
                                 ((HasJavaScriptConnectorHelper) connector)
@@ -1153,6 +1173,22 @@ public class MessageHandler {
                     }
                 }
 
+                // Process changes relative to the current children
+                if (json.containsKey(ApplicationConstants.HIERARCHY_DELTA)) {
+                    ValueMap deltas = json
+                            .getValueMap(ApplicationConstants.HIERARCHY_DELTA);
+                    JsArrayString deltaKeys = deltas.getKeyArray();
+                    for (int i = 0; i < deltaKeys.length(); i++) {
+                        String connectorId = deltaKeys.get(i);
+                        JsArrayString childConnectorIds = applyHierarchyDelta(
+                                connectorId, deltas.getValueMap(connectorId));
+                        hasHierarchy.add(connectorId);
+
+                        updateConnectorHierarchy(connectorId, childConnectorIds,
+                                maybeDetached, result);
+                    }
+                }
+
                 // Assume empty hierarchy for connectors with state updates but
                 // no hierarchy data
                 if (json.containsKey("state")) {
@@ -1199,6 +1235,64 @@ public class MessageHandler {
 
             }
 
+            /**
+             * Creates the list of child connector ids of a connector by
+             * applying the removals and insertions of a hierarchy delta to
+             * the current children of the connector.
+             *
+             * @param connectorId
+             *            the id of the parent connector
+             * @param delta
+             *            the hierarchy delta for the connector
+             * @return the updated child connector ids
+             */
+            private JsArrayString applyHierarchyDelta(String connectorId,
+                    ValueMap delta) {
+                ServerConnector parentConnector = getConnectorMap()
+                        .getConnector(connectorId);
+
+                FastStringSet removed = FastStringSet.create();
+                if (delta.containsKey(
+                        ApplicationConstants.HIERARCHY_DELTA_REMOVED)) {
+                    removed.addAll(delta.getJSStringArray(
+                            ApplicationConstants.HIERARCHY_DELTA_REMOVED));
+                }
+
+                JsArrayString childConnectorIds = JavaScriptObject
+                        .createArray().cast();
+                for (ServerConnector child : parentConnector.getChildren()) {
+                    String childId = child.getConnectorId();
+                    if (!removed.contains(childId)) {
+                        childConnectorIds.push(childId);
+                    }
+                }
+
+                if (delta.containsKey(
+                        ApplicationConstants.HIERARCHY_DELTA_INSERTED)) {
+                    JsArrayString inserted = delta.getJSStringArray(
+                            ApplicationConstants.HIERARCHY_DELTA_INSERTED);
+                    JsArrayInteger indices = delta
+                            .getJavaScriptObject(
+                                    ApplicationConstants.HIERARCHY_DELTA_INDICES)
+                            .cast();
+                    // Indices are ascending, so each insertion happens after
+                    // all children preceding it have been placed
+                    for (int i = 0; i < inserted.length(); i++) {
+                        insert(childConnectorIds,
+                                Math.min(indices.get(i),
+                                        childConnectorIds.length()),
+                                inserted.get(i));
+                    }
+                }
+                return childConnectorIds;
+            }
+
+            private native void insert(JsArrayString array, int index,
+                    String value)
+            /*-{
+                array.splice(index, 0, value);
+            }-*/;
+
             /**
              * Updates the hierarchy for a connector
              *
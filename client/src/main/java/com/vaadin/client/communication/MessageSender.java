@@ -123,6 +123,11 @@ public class MessageSender {
         if (!connection.getConfiguration().isWidgetsetVersionSent()) {
             extraJson.put(ApplicationConstants.WIDGETSET_VERSION_ID,
                     Version.getFullVersion());
+            if (connection.getConfiguration().isCompactUidl()) {
+                // Request compact messages together with the version, which
+                // tells that this client understands them
+                extraJson.put(ApplicationConstants.COMPACT_UIDL_ID, true);
+            }
             connection.getConfiguration().setWidgetsetVersionSent();
         }
         if (showLoadingIndicator) {
@@ -152,7 +157,6 @@ public class MessageSender {
         if (!csrfToken.equals(ApplicationConstants.CSRF_TOKEN_DEFAULT_VALUE)) {
             payload.put(ApplicationConstants.CSRF_TOKEN, csrfToken);
         }
-        payload.put(ApplicationConstants.RPC_INVOCATIONS, reqInvocations);
         payload.put(ApplicationConstants.SERVER_SYNC_ID,
                 getMessageHandler().getLastSeenServerSyncId());
         payload.put(ApplicationConstants.CLIENT_TO_SERVER_ID,
@@ -165,6 +169,10 @@ public class MessageSender {
             }
         }
 
+        // Invocations last so that the server can validate the message before
+        // reading them
+        payload.put(ApplicationConstants.RPC_INVOCATIONS, reqInvocations);
+
         send(payload);
 
     }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.client.communication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.shared.ApplicationConstants;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+
+/**
+ * Dictionary of shared state property names used to expand the states in
+ * compact UIDL messages from the server.
+ *
+ * @see ApplicationConstants#STATE_KEYS
+ * @since
+ * @author Vaadin Ltd
+ */
+public class StateKeyDictionary {
+
+    private final List<String> keys = new ArrayList<String>();
+
+    /**
+     * Adds property names received from the server to the dictionary. The
+     * first item of the array is the index of the first name. Any names
+     * previously stored from that index onwards are discarded, which is the
+     * case when the server has reset its dictionary.
+     *
+     * @param newKeys
+     *            the index of the first name followed by the names
+     */
+    public void addKeys(JsonArray newKeys) {
+        int firstIndex = (int) newKeys.getNumber(0);
+        if (firstIndex > keys.size()) {
+            throw new IllegalStateException("Expected state keys from index "
+                    + keys.size() + " but got keys from index " + firstIndex);
+        }
+        while (keys.size() > firstIndex) {
+            keys.remove(keys.size() - 1);
+        }
+        for (int i = 1; i < newKeys.length(); i++) {
+            keys.add(newKeys.getString(i));
+        }
+    }
+
+    /**
+     * Creates a copy of a compact state where the dictionary indices used as
+     * keys have been replaced with the property names.
+     *
+     * @param compactState
+     *            the state from a compact message
+     * @return the state with property names as keys
+     */
+    public JsonObject expand(JsonObject compactState) {
+        JsonObject state = Json.createObject();
+        for (String index : compactState.keys()) {
+            state.put(keys.get(Integer.parseInt(index)),
+                    compactState.<JsonValue> get(index));
+        }
+        return state;
+    }
+}
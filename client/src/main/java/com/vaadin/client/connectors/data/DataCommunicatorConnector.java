@@ -29,10 +29,13 @@ import com.vaadin.shared.data.DataCommunicatorClientRpc;
 import com.vaadin.shared.data.DataCommunicatorConstants;
 import com.vaadin.shared.data.DataRequestRpc;
 import com.vaadin.shared.ui.Connect;
+import com.vaadin.shared.ui.grid.Range;
 
 import elemental.json.Json;
 import elemental.json.JsonArray;
 import elemental.json.JsonObject;
+import elemental.json.JsonType;
+import elemental.json.JsonValue;
 
 /**
  * A connector for DataCommunicator class.
@@ -59,6 +62,16 @@ public class DataCommunicatorConnector extends AbstractExtensionConnector {
                             resetDataAndSize(size);
                         }
 
+                        @Override
+                        public void updateSize(int size) {
+                            int oldSize = size();
+                            if (size > oldSize) {
+                                insertRowData(oldSize, size - oldSize);
+                            } else if (size < oldSize) {
+                                removeRowData(size, oldSize - size);
+                            }
+                        }
+
                         @Override
                         public void setData(int firstIndex, JsonArray data) {
                             ArrayList<JsonObject> rows = new ArrayList<JsonObject>(
@@ -77,14 +90,22 @@ public class DataCommunicatorConnector extends AbstractExtensionConnector {
                                 updateRowData(data.getObject(i));
                             }
                         }
+
+                        @Override
+                        public void patchData(JsonArray patches) {
+                            for (int i = 0; i < patches.length(); ++i) {
+                                patchRowData(patches.getObject(i));
+                            }
+                        }
                     });
         }
 
         @Override
         protected void requestRows(int firstRowIndex, int numberOfRows,
                 RequestRowsCallback<JsonObject> callback) {
+            Range cached = getCachedRange();
             getRpcProxy(DataRequestRpc.class).requestRows(firstRowIndex,
-                    numberOfRows, 0, 0);
+                    numberOfRows, cached.getStart(), cached.length());
 
             JsonArray dropped = Json.createArray();
             int i = 0;
@@ -120,6 +141,42 @@ public class DataCommunicatorConnector extends AbstractExtensionConnector {
                 setRowData(index, Collections.singletonList(row));
             }
         }
+
+        /**
+         * Updates row data based on row key by merging a patch of changed
+         * fields into the existing row.
+         *
+         * @param patch
+         *            patch containing the row key and the changed fields
+         */
+        protected void patchRowData(JsonObject patch) {
+            int index = indexOfKey(getRowKey(patch));
+            if (index >= 0) {
+                JsonObject row = getRow(index);
+                merge(row, patch);
+                setRowData(index, Collections.singletonList(row));
+            }
+        }
+
+        private void merge(JsonObject target, JsonObject patch) {
+            for (String key : patch.keys()) {
+                if (DataCommunicatorConstants.REMOVED.equals(key)) {
+                    JsonArray removed = patch.getArray(key);
+                    for (int i = 0; i < removed.length(); ++i) {
+                        target.remove(removed.getString(i));
+                    }
+                    continue;
+                }
+
+                JsonValue value = patch.get(key);
+                if (value.getType() == JsonType.OBJECT && target.hasKey(key)
+                        && target.get(key).getType() == JsonType.OBJECT) {
+                    merge(target.getObject(key), (JsonObject) value);
+                } else {
+                    target.put(key, value);
+                }
+            }
+        }
     }
 
     private DataSource<JsonObject> ds = new VaadinDataSource();
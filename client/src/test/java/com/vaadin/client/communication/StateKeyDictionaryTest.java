@@ -0,0 +1,50 @@
+package com.vaadin.client.communication;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+
+public class StateKeyDictionaryTest {
+
+    private StateKeyDictionary dictionary = new StateKeyDictionary();
+
+    @Test
+    public void expandUsesReceivedKeys() {
+        dictionary.addKeys(keys(0, "caption", "width"));
+        dictionary.addKeys(keys(2, "styles"));
+
+        JsonObject state = dictionary.expand(
+                Json.parse("{\"0\":\"Save\",\"2\":[\"primary\"]}"));
+        Assert.assertEquals("Save", state.getString("caption"));
+        Assert.assertEquals("primary",
+                state.getArray("styles").getString(0));
+        Assert.assertFalse(state.hasKey("width"));
+    }
+
+    @Test
+    public void keysFromStartResetDictionary() {
+        dictionary.addKeys(keys(0, "caption", "width"));
+        dictionary.addKeys(keys(0, "width"));
+
+        JsonObject state = dictionary.expand(Json.parse("{\"0\":\"100%\"}"));
+        Assert.assertEquals("100%", state.getString("width"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingKeysAreDetected() {
+        dictionary.addKeys(keys(0, "caption"));
+        dictionary.addKeys(keys(2, "styles"));
+    }
+
+    private static JsonArray keys(int firstIndex, String... keys) {
+        JsonArray array = Json.createArray();
+        array.set(0, firstIndex);
+        for (String key : keys) {
+            array.set(array.length(), key);
+        }
+        return array;
+    }
+}
@@ -350,6 +350,11 @@ public abstract class BootstrapHandler extends SynchronizedRequestHandler {
         }
     }
 
+    /**
+     * Writes the bootstrap page. The page is never compressed since it may
+     * contain the CSRF token of the session next to application content,
+     * which would expose the token to BREACH style attacks.
+     */
     private void writeBootstrapPage(VaadinResponse response, String html)
             throws IOException {
         response.setContentType("text/html");
@@ -720,6 +725,11 @@ public abstract class BootstrapHandler extends SynchronizedRequestHandler {
             appConfig.put("sendUrlsAsParameters", false);
         }
 
+        if (vaadinService.getDeploymentConfiguration()
+                .isCompactUidlEnabled()) {
+            appConfig.put("compactUidl", true);
+        }
+
         return appConfig;
     }
 
@@ -50,6 +50,30 @@ public interface Constants {
             + "in web.xml. The default of 5min will be used.\n"
             + "===========================================================";
 
+    static final String WARNING_SESSION_LOCK_THRESHOLD_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: sessionLockWarningThreshold has been set to a non "
+            + "integer value in web.xml. The default of 1s will be used.\n"
+            + "===========================================================";
+
+    static final String WARNING_PUSH_COALESCING_INTERVAL_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: pushCoalescingInterval has been set to a non integer "
+            + "value in web.xml. Pushes will not be coalesced.\n"
+            + "===========================================================";
+
+    static final String WARNING_STATIC_RESOURCE_CACHE_SIZE_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: staticResourceCacheSize has been set to a non integer "
+            + "value in web.xml. Static resources will not be cached.\n"
+            + "===========================================================";
+
+    static final String WARNING_COMPRESSION_THRESHOLD_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: compressionThreshold has been set to a non integer "
+            + "value in web.xml. The default of 1024 bytes will be used.\n"
+            + "===========================================================";
+
     static final String WARNING_PUSH_MODE_NOT_RECOGNIZED = "\n"
             + "===========================================================\n"
             + "WARNING: pushMode has been set to an unrecognized value\n"
@@ -115,6 +139,17 @@ public interface Constants {
     static final String SERVLET_PARAMETER_UI_PROVIDER = "UIProvider";
     static final String SERVLET_PARAMETER_SYNC_ID_CHECK = "syncIdCheck";
     static final String SERVLET_PARAMETER_SENDURLSASPARAMETERS = "sendUrlsAsParameters";
+    static final String SERVLET_PARAMETER_UIDL_COMPRESSION = "uidlCompression";
+    static final String SERVLET_PARAMETER_COMPACT_UIDL = "compactUidl";
+    static final String SERVLET_PARAMETER_REQUEST_METRICS = "requestMetrics";
+    static final String SERVLET_PARAMETER_REQUEST_METRICS_ALLOCATIONS = "requestMetricsAllocations";
+    static final String SERVLET_PARAMETER_SESSION_LOCK_WARNING_THRESHOLD = "sessionLockWarningThreshold";
+    static final String SERVLET_PARAMETER_PUSH_COALESCING_INTERVAL = "pushCoalescingInterval";
+    static final String SERVLET_PARAMETER_STATIC_RESOURCE_CACHE_SIZE = "staticResourceCacheSize";
+    static final String SERVLET_PARAMETER_STATIC_RESOURCE_COMPRESSION = "staticResourceCompression";
+    static final String SERVLET_PARAMETER_COMPRESSION_THRESHOLD = "compressionThreshold";
+    static final String SERVLET_PARAMETER_PRECOMPILE_THEMES = "precompileThemes";
+    static final String SERVLET_PARAMETER_WATCH_THEMES = "watchThemes";
     static final String SERVLET_PARAMETER_PUSH_SUSPEND_TIMEOUT_LONGPOLLING = "pushLongPollingSuspendTimeout";
     /**
      * Name of system or context property to write declarative syntax with the
@@ -54,6 +54,56 @@ public class DefaultDeploymentConfiguration
 
     public static final boolean DEFAULT_SEND_URLS_AS_PARAMETERS = true;
 
+    /**
+     * Default value for {@link #isUidlCompressionEnabled()} = {@value} .
+     *
+     * @since
+     */
+    public static final boolean DEFAULT_UIDL_COMPRESSION = false;
+
+    /**
+     * Default value for {@link #isCompactUidlEnabled()} = {@value} .
+     *
+     * @since
+     */
+    public static final boolean DEFAULT_COMPACT_UIDL = false;
+
+    /**
+     * Default value for {@link #isRequestMetricsEnabled()} = {@value} .
+     *
+     * @since
+     */
+    public static final boolean DEFAULT_REQUEST_METRICS = false;
+
+    /**
+     * Default value for {@link #getPushCoalescingInterval()} = {@value} .
+     *
+     * @since
+     */
+    public static final int DEFAULT_PUSH_COALESCING_INTERVAL = 0;
+
+    /**
+     * Default value for {@link #getStaticResourceCacheSize()} = {@value} .
+     *
+     * @since
+     */
+    public static final int DEFAULT_STATIC_RESOURCE_CACHE_SIZE = 0;
+
+    /**
+     * Default value for {@link #isStaticResourceCompressionEnabled()} =
+     * {@value} .
+     *
+     * @since
+     */
+    public static final boolean DEFAULT_STATIC_RESOURCE_COMPRESSION = false;
+
+    /**
+     * Default value for {@link #getCompressionThreshold()} = {@value} .
+     *
+     * @since
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
     private final Properties initParameters;
     private boolean productionMode;
     private boolean xsrfProtectionEnabled;
@@ -64,6 +114,13 @@ public class DefaultDeploymentConfiguration
     private final Class<?> systemPropertyBaseClass;
     private boolean syncIdCheck;
     private boolean sendUrlsAsParameters;
+    private boolean uidlCompression;
+    private boolean compactUidl;
+    private boolean requestMetrics;
+    private int pushCoalescingInterval;
+    private int staticResourceCacheSize;
+    private boolean staticResourceCompression;
+    private int compressionThreshold;
 
     /**
      * Create a new deployment configuration instance.
@@ -88,6 +145,13 @@ public class DefaultDeploymentConfiguration
         checkPushMode();
         checkSyncIdCheck();
         checkSendUrlsAsParameters();
+        checkUidlCompression();
+        checkCompactUidl();
+        checkRequestMetrics();
+        checkPushCoalescingInterval();
+        checkStaticResourceCacheSize();
+        checkStaticResourceCompression();
+        checkCompressionThreshold();
     }
 
     @Override
@@ -245,6 +309,26 @@ public class DefaultDeploymentConfiguration
         return sendUrlsAsParameters;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default value is <code>false</code>.
+     */
+    @Override
+    public boolean isUidlCompressionEnabled() {
+        return uidlCompression;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default value is <code>false</code>.
+     */
+    @Override
+    public boolean isCompactUidlEnabled() {
+        return compactUidl;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -342,6 +426,122 @@ public class DefaultDeploymentConfiguration
                         .equals("true");
     }
 
+    private void checkUidlCompression() {
+        uidlCompression = getApplicationOrSystemProperty(
+                Constants.SERVLET_PARAMETER_UIDL_COMPRESSION,
+                Boolean.toString(DEFAULT_UIDL_COMPRESSION)).equals("true");
+    }
+
+    private void checkCompactUidl() {
+        compactUidl = getApplicationOrSystemProperty(
+                Constants.SERVLET_PARAMETER_COMPACT_UIDL,
+                Boolean.toString(DEFAULT_COMPACT_UIDL)).equals("true");
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default value is <code>false</code>.
+     */
+    @Override
+    public boolean isRequestMetricsEnabled() {
+        return requestMetrics;
+    }
+
+    private void checkRequestMetrics() {
+        requestMetrics = getApplicationOrSystemProperty(
+                Constants.SERVLET_PARAMETER_REQUEST_METRICS,
+                Boolean.toString(DEFAULT_REQUEST_METRICS)).equals("true");
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default value is 0, i.e. pushes are not coalesced.
+     */
+    @Override
+    public int getPushCoalescingInterval() {
+        return pushCoalescingInterval;
+    }
+
+    private void checkPushCoalescingInterval() {
+        try {
+            pushCoalescingInterval = Integer
+                    .parseInt(getApplicationOrSystemProperty(
+                            Constants.SERVLET_PARAMETER_PUSH_COALESCING_INTERVAL,
+                            Integer.toString(
+                                    DEFAULT_PUSH_COALESCING_INTERVAL)));
+        } catch (NumberFormatException e) {
+            getLogger().warning(
+                    Constants.WARNING_PUSH_COALESCING_INTERVAL_NOT_NUMERIC);
+            pushCoalescingInterval = DEFAULT_PUSH_COALESCING_INTERVAL;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default size is 16 megabytes.
+     */
+    @Override
+    public int getStaticResourceCacheSize() {
+        return staticResourceCacheSize;
+    }
+
+    private void checkStaticResourceCacheSize() {
+        try {
+            staticResourceCacheSize = Integer
+                    .parseInt(getApplicationOrSystemProperty(
+                            Constants.SERVLET_PARAMETER_STATIC_RESOURCE_CACHE_SIZE,
+                            Integer.toString(
+                                    DEFAULT_STATIC_RESOURCE_CACHE_SIZE)));
+        } catch (NumberFormatException e) {
+            getLogger().warning(
+                    Constants.WARNING_STATIC_RESOURCE_CACHE_SIZE_NOT_NUMERIC);
+            staticResourceCacheSize = DEFAULT_STATIC_RESOURCE_CACHE_SIZE;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default value is false.
+     */
+    @Override
+    public boolean isStaticResourceCompressionEnabled() {
+        return staticResourceCompression;
+    }
+
+    private void checkStaticResourceCompression() {
+        staticResourceCompression = getApplicationOrSystemProperty(
+                Constants.SERVLET_PARAMETER_STATIC_RESOURCE_COMPRESSION,
+                Boolean.toString(DEFAULT_STATIC_RESOURCE_COMPRESSION))
+                        .equals("true");
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default threshold is 1024 bytes.
+     */
+    @Override
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    private void checkCompressionThreshold() {
+        try {
+            compressionThreshold = Integer
+                    .parseInt(getApplicationOrSystemProperty(
+                            Constants.SERVLET_PARAMETER_COMPRESSION_THRESHOLD,
+                            Integer.toString(DEFAULT_COMPRESSION_THRESHOLD)));
+        } catch (NumberFormatException e) {
+            getLogger().warning(
+                    Constants.WARNING_COMPRESSION_THRESHOLD_NOT_NUMERIC);
+            compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+        }
+    }
+
     private Logger getLogger() {
         return Logger.getLogger(getClass().getName());
     }
@@ -80,6 +80,106 @@ public interface DeploymentConfiguration extends Serializable {
      */
     public boolean isSendUrlsAsParameters();
 
+    /**
+     * Returns whether UIDL responses may be gzip compressed when the client
+     * accepts a gzip encoded response. Responses that are fully buffered are
+     * only compressed if they are at least {@link #getCompressionThreshold()}
+     * bytes long.
+     * <p>
+     * Initial UIDL responses and bootstrap pages are never compressed, since
+     * they contain the CSRF token of the session. Compressing a secret
+     * together with content that an attacker can influence allows recovering
+     * the secret from the response sizes (the BREACH attack). The same applies
+     * to any secrets the application itself includes in UIDL responses, so
+     * only enable compression if that is not a concern, e.g. when responses
+     * are not observable by third parties.
+     *
+     * @since
+     * @return <code>true</code> if UIDL compression is enabled;
+     *         <code>false</code> otherwise
+     */
+    public boolean isUidlCompressionEnabled();
+
+    /**
+     * Returns whether clients are allowed to use compact UIDL messages, where
+     * shared state property names are replaced with indices in a dictionary
+     * shared by the server and the client.
+     *
+     * @since
+     * @return <code>true</code> if compact UIDL messages are enabled;
+     *         <code>false</code> otherwise
+     */
+    public boolean isCompactUidlEnabled();
+
+    /**
+     * Returns whether the time spent in the different phases of request
+     * handling is measured and exported to JMX.
+     *
+     * @see VaadinService#getRequestMetrics()
+     *
+     * @since
+     * @return <code>true</code> if request metrics are enabled;
+     *         <code>false</code> otherwise
+     */
+    public boolean isRequestMetricsEnabled();
+
+    /**
+     * Returns the minimum number of milliseconds between two asynchronous
+     * pushes to the same UI, or a non-positive number if pushes are not
+     * coalesced. When coalescing is enabled, changes made during the interval
+     * are sent in a single push message and the pending access tasks of a
+     * session are run in batches at most once per interval.
+     *
+     * @since
+     * @return the push coalescing interval in milliseconds
+     */
+    public int getPushCoalescingInterval();
+
+    /**
+     * Returns the maximum number of bytes of static resources from the VAADIN
+     * directory kept in memory by the servlet in production mode, or a
+     * non-positive number if static resources are not cached. The cache is
+     * disabled by default.
+     * <p>
+     * Responses served from the cache are written by
+     * {@link VaadinServlet#writeStaticResourceResponse(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, StaticResourceCache.Entry)}
+     * instead of the method taking an URL, so customizations of the latter do
+     * not apply to them.
+     *
+     * @see StaticResourceCache
+     *
+     * @since
+     * @return the static resource cache size in bytes
+     */
+    public int getStaticResourceCacheSize();
+
+    /**
+     * Returns whether compressible static resources without a precompressed
+     * <code>.gz</code> variant are gzip compressed by the servlet. Compressed
+     * variants are kept in the static resource cache in production mode and
+     * with the compiled theme in development mode.
+     *
+     * @see #getCompressionThreshold()
+     *
+     * @since
+     * @return <code>true</code> if static resource compression is enabled;
+     *         <code>false</code> otherwise
+     */
+    public boolean isStaticResourceCompressionEnabled();
+
+    /**
+     * Returns the minimum size in bytes of a response that is compressed on
+     * the fly. Smaller responses are sent uncompressed since compression would
+     * save little or nothing.
+     *
+     * @see #isStaticResourceCompressionEnabled()
+     * @see #isUidlCompressionEnabled()
+     *
+     * @since
+     * @return the compression threshold in bytes
+     */
+    public int getCompressionThreshold();
+
     /**
      * Returns whether a session should be closed when all its open UIs have
      * been idle for longer than its configured maximum inactivity time.
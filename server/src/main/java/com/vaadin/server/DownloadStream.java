@@ -16,18 +16,23 @@
 
 package com.vaadin.server;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletResponse;
 
+import com.vaadin.server.HttpRangeSupport.ByteRange;
+
 /**
  * Downloadable stream.
  * <p>
@@ -238,6 +243,14 @@ public class DownloadStream implements Serializable {
      * response. If there's is a parameter named <code>Location</code>, a
      * redirect (302 Moved temporarily) is sent instead of the contents of this
      * stream.
+     * <p>
+     * If there is an <code>ETag</code> parameter, a matching
+     * <code>If-None-Match</code> request header results in a 304 Not Modified
+     * response. If the length of the content is known, either from a
+     * <code>Content-Length</code> parameter or because the stream is a
+     * {@link java.io.FileInputStream}, <code>Range</code> requests are served
+     * with partial content. Files are transferred using a
+     * {@link FileChannel} instead of copying through a buffer.
      *
      * @param request
      *            the request for which the response should be written
@@ -293,6 +306,48 @@ public class DownloadStream implements Serializable {
 
                 response.setHeader(CONTENT_DISPOSITION, contentDisposition);
 
+                String etag = getParameter("ETag");
+                if (etag != null
+                        && HttpRangeSupport.isNotModified(request, etag, 0)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+
+                FileChannel channel = null;
+                if (data instanceof FileInputStream) {
+                    channel = ((FileInputStream) data).getChannel();
+                }
+                long length = getContentLength(channel);
+                if (length >= 0) {
+                    response.setHeader("Accept-Ranges", "bytes");
+                    List<ByteRange> ranges = HttpRangeSupport
+                            .getRanges(request, length, etag, 0);
+                    if (ranges != null && ranges.isEmpty()) {
+                        HttpRangeSupport.writeNotSatisfiable(response, length);
+                        return;
+                    } else if (ranges != null) {
+                        HttpRangeSupport.writeRanges(response, ranges, length,
+                                getContentType(),
+                                channel != null
+                                        ? HttpRangeSupport.fromChannel(channel)
+                                        : HttpRangeSupport.fromStream(data));
+                        return;
+                    }
+                }
+
+                if (channel != null) {
+                    // Transfer directly from the file without copying through
+                    // a buffer, starting from the current position of the
+                    // stream
+                    long position = channel.position();
+                    response.setHeader("Content-Length",
+                            Long.toString(length - position));
+                    out = response.getOutputStream();
+                    HttpRangeSupport.transfer(channel, position,
+                            length - position, out);
+                    return;
+                }
+
                 int bufferSize = getBufferSize();
                 if (bufferSize <= 0 || bufferSize > Constants.MAX_BUFFER_SIZE) {
                     bufferSize = Constants.DEFAULT_BUFFER_SIZE;
@@ -319,6 +374,31 @@ public class DownloadStream implements Serializable {
         }
     }
 
+    /**
+     * Gets the length of the content of this stream, either from the file
+     * channel the stream reads or from the Content-Length parameter.
+     *
+     * @param channel
+     *            the file channel of the stream, or <code>null</code>
+     * @return the length in bytes, or -1 if not known
+     * @throws IOException
+     *             if reading the file size fails
+     */
+    private long getContentLength(FileChannel channel) throws IOException {
+        if (channel != null) {
+            return channel.size();
+        }
+        String contentLength = getParameter("Content-Length");
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                // Unknown length
+            }
+        }
+        return -1;
+    }
+
     /**
      * Returns the filename formatted for inclusion in a Content-Disposition
      * header. Includes both a plain version of the name and a UTF-8 version
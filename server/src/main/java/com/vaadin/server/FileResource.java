@@ -71,6 +71,8 @@ public class FileResource implements ConnectorResource {
                     getFilename());
             ds.setParameter("Content-Length",
                     String.valueOf(sourceFile.length()));
+            ds.setParameter("ETag", HttpRangeSupport.createETag(
+                    sourceFile.length(), sourceFile.lastModified()));
 
             ds.setCacheTime(cacheTime);
             return ds;
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server;
+
+import java.beans.IntrospectionException;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.vaadin.server.JsonCodec.BeanEncoder;
+import com.vaadin.server.JsonCodec.BeanEncoderFactory;
+import com.vaadin.server.JsonCodec.BeanProperty;
+import com.vaadin.ui.ConnectorTracker;
+
+import elemental.json.Json;
+import elemental.json.JsonNull;
+import elemental.json.JsonObject;
+import elemental.json.JsonType;
+import elemental.json.JsonValue;
+
+/**
+ * Factory for bean encoders that read bean properties through method handles
+ * instead of reflection. Properties of primitive numeric, boolean and string
+ * types are encoded and compared against the reference value directly,
+ * without boxing the values or creating intermediate {@link EncodeResult}s.
+ * Other properties are encoded with {@link JsonCodec#encode}.
+ * <p>
+ * The produced JSON is identical to that of reflection based encoding. If an
+ * encoder cannot be created for a type, e.g. because the type or some of its
+ * properties are not public, <code>null</code> is returned and the type is
+ * encoded using reflection.
+ *
+ * @since
+ */
+public class GeneratedBeanEncoderFactory implements BeanEncoderFactory {
+
+    /**
+     * Encoder for a single property of a bean.
+     */
+    private abstract static class PropertyEncoder implements Serializable {
+        protected final String name;
+
+        protected PropertyEncoder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Encodes the property of the bean into the encoded object and adds
+         * it to the diff if it differs from the reference value.
+         */
+        public abstract void encode(Object bean, JsonObject encoded,
+                JsonObject diff, JsonObject referenceValue,
+                ConnectorTracker connectorTracker) throws Throwable;
+
+        protected JsonValue getReference(JsonObject referenceValue) {
+            if (referenceValue == null) {
+                return null;
+            }
+            JsonValue reference = referenceValue.get(name);
+            return reference instanceof JsonNull ? null : reference;
+        }
+    }
+
+    /**
+     * Encoder for primitive numeric properties other than char. All are
+     * widened to double like in {@link JsonCodec#encode}.
+     */
+    private static class NumberPropertyEncoder extends PropertyEncoder {
+        private final MethodHandle getter;
+
+        public NumberPropertyEncoder(String name, MethodHandle getter) {
+            super(name);
+            this.getter = getter.asType(
+                    MethodType.methodType(double.class, Object.class));
+        }
+
+        @Override
+        public void encode(Object bean, JsonObject encoded, JsonObject diff,
+                JsonObject referenceValue, ConnectorTracker connectorTracker)
+                throws Throwable {
+            double value = (double) getter.invokeExact(bean);
+            JsonValue json = Json.create(value);
+            encoded.put(name, json);
+
+            JsonValue reference = getReference(referenceValue);
+            if (reference == null || reference.getType() != JsonType.NUMBER
+                    || reference.asNumber() != value) {
+                diff.put(name, json);
+            }
+        }
+    }
+
+    /**
+     * Encoder for primitive boolean properties.
+     */
+    private static class BooleanPropertyEncoder extends PropertyEncoder {
+        private final MethodHandle getter;
+
+        public BooleanPropertyEncoder(String name, MethodHandle getter) {
+            super(name);
+            this.getter = getter.asType(
+                    MethodType.methodType(boolean.class, Object.class));
+        }
+
+        @Override
+        public void encode(Object bean, JsonObject encoded, JsonObject diff,
+                JsonObject referenceValue, ConnectorTracker connectorTracker)
+                throws Throwable {
+            boolean value = (boolean) getter.invokeExact(bean);
+            JsonValue json = Json.create(value);
+            encoded.put(name, json);
+
+            JsonValue reference = getReference(referenceValue);
+            if (reference == null || reference.getType() != JsonType.BOOLEAN
+                    || reference.asBoolean() != value) {
+                diff.put(name, json);
+            }
+        }
+    }
+
+    /**
+     * Encoder for string properties.
+     */
+    private static class StringPropertyEncoder extends PropertyEncoder {
+        private final MethodHandle getter;
+
+        public StringPropertyEncoder(String name, MethodHandle getter) {
+            super(name);
+            this.getter = getter.asType(
+                    MethodType.methodType(String.class, Object.class));
+        }
+
+        @Override
+        public void encode(Object bean, JsonObject encoded, JsonObject diff,
+                JsonObject referenceValue, ConnectorTracker connectorTracker)
+                throws Throwable {
+            String value = (String) getter.invokeExact(bean);
+            JsonValue reference = getReference(referenceValue);
+
+            if (value == null) {
+                JsonValue json = Json.createNull();
+                encoded.put(name, json);
+                if (reference != null) {
+                    diff.put(name, json);
+                }
+                return;
+            }
+
+            JsonValue json = Json.create(value);
+            encoded.put(name, json);
+            if (reference == null || reference.getType() != JsonType.STRING
+                    || !reference.asString().equals(value)) {
+                diff.put(name, json);
+            }
+        }
+    }
+
+    /**
+     * Encoder for properties of any other type, delegating to
+     * {@link JsonCodec#encode}.
+     */
+    private static class ObjectPropertyEncoder extends PropertyEncoder {
+        private final MethodHandle getter;
+        private final Type type;
+
+        public ObjectPropertyEncoder(String name, MethodHandle getter,
+                Type type) {
+            super(name);
+            this.getter = getter.asType(
+                    MethodType.methodType(Object.class, Object.class));
+            this.type = type;
+        }
+
+        @Override
+        public void encode(Object bean, JsonObject encoded, JsonObject diff,
+                JsonObject referenceValue, ConnectorTracker connectorTracker)
+                throws Throwable {
+            Object value = getter.invokeExact(bean);
+            JsonValue reference = getReference(referenceValue);
+
+            EncodeResult encodeResult = JsonCodec.encode(value, reference,
+                    type, connectorTracker);
+            encoded.put(name, encodeResult.getEncodedValue());
+            if (JsonCodec.valueChanged(encodeResult.getEncodedValue(),
+                    reference)) {
+                diff.put(name, encodeResult.getDiffOrValue());
+            }
+        }
+    }
+
+    /**
+     * Encoder for a bean type, encoding the properties in the same order as
+     * reflection based encoding.
+     * <p>
+     * Method handles are not serializable, so only the bean type is
+     * serialized and the encoder is looked up again when deserialized.
+     */
+    private static class GeneratedBeanEncoder implements BeanEncoder {
+        private final Class<?> type;
+        private final transient PropertyEncoder[] properties;
+
+        public GeneratedBeanEncoder(Class<?> type,
+                PropertyEncoder[] properties) {
+            this.type = type;
+            this.properties = properties;
+        }
+
+        private Object readResolve() {
+            return JsonCodec.getBeanEncoder(type);
+        }
+
+        @Override
+        public EncodeResult encode(Object bean, JsonObject referenceValue,
+                ConnectorTracker connectorTracker) {
+            JsonObject encoded = Json.createObject();
+            JsonObject diff = Json.createObject();
+
+            try {
+                for (PropertyEncoder property : properties) {
+                    property.encode(bean, encoded, diff, referenceValue,
+                            connectorTracker);
+                }
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+            return new EncodeResult(encoded, diff);
+        }
+    }
+
+    @Override
+    public BeanEncoder createEncoder(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) {
+            return null;
+        }
+
+        try {
+            Set<String> names = new HashSet<>();
+            List<PropertyEncoder> encoders = new ArrayList<>();
+            for (BeanProperty property : JsonCodec.getProperties(type)) {
+                if (!names.add(property.getName())) {
+                    // Let reflection based encoding report the conflict
+                    return null;
+                }
+                Member member = JsonCodec.getReadMember(property);
+                if (member == null) {
+                    return null;
+                }
+                encoders.add(createPropertyEncoder(property.getName(),
+                        property.getType(), member));
+            }
+            return new GeneratedBeanEncoder(type,
+                    encoders.toArray(new PropertyEncoder[encoders.size()]));
+        } catch (IntrospectionException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static PropertyEncoder createPropertyEncoder(String name,
+            Type type, Member member) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle getter;
+        if (member instanceof Field) {
+            getter = lookup.unreflectGetter((Field) member);
+        } else {
+            getter = lookup.unreflect((Method) member);
+        }
+
+        Class<?> valueType = getter.type().returnType();
+        if (valueType == boolean.class) {
+            return new BooleanPropertyEncoder(name, getter);
+        } else if (valueType.isPrimitive() && valueType != char.class) {
+            return new NumberPropertyEncoder(name, getter);
+        } else if (valueType == String.class) {
+            return new StringPropertyEncoder(name, getter);
+        } else {
+            return new ObjectPropertyEncoder(name, getter, type);
+        }
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Support for conditional requests with <code>If-None-Match</code> and
+ * <code>If-Modified-Since</code>, and for partial responses to
+ * <code>Range</code> requests, including <code>multipart/byteranges</code>
+ * responses for multiple ranges. Used for serving static resources and
+ * {@link DownloadStream DownloadStreams}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+final class HttpRangeSupport implements Serializable {
+
+    /**
+     * Requests with more ranges than this are served in full, to avoid
+     * responses that are larger than the whole content.
+     */
+    static final int MAX_RANGES = 16;
+
+    private static final String BYTES_UNIT = "bytes";
+
+    /**
+     * A source of content that can be written in ranges.
+     */
+    interface RangeSource extends Serializable {
+        /**
+         * Writes part of the content. Ranges are written in ascending order.
+         *
+         * @param out
+         *            the stream to write to
+         * @param start
+         *            the position of the first byte to write
+         * @param count
+         *            the number of bytes to write
+         * @throws IOException
+         *             if reading or writing fails
+         */
+        void write(OutputStream out, long start, long count)
+                throws IOException;
+    }
+
+    /**
+     * An inclusive range of bytes.
+     */
+    static final class ByteRange implements Serializable {
+        private final long start;
+        private final long end;
+
+        ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long getStart() {
+            return start;
+        }
+
+        long getEnd() {
+            return end;
+        }
+
+        long getLength() {
+            return end - start + 1;
+        }
+
+        String toContentRange(long length) {
+            return BYTES_UNIT + " " + start + "-" + end + "/" + length;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ByteRange)) {
+                return false;
+            }
+            ByteRange other = (ByteRange) obj;
+            return start == other.start && end == other.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(start) * 31 + Long.hashCode(end);
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end;
+        }
+    }
+
+    private HttpRangeSupport() {
+        // Only static helpers
+    }
+
+    /**
+     * Creates a strong ETag from the length and modification time of a
+     * resource.
+     *
+     * @param length
+     *            the length of the resource
+     * @param lastModified
+     *            the modification time of the resource
+     * @return the quoted ETag
+     */
+    static String createETag(long length, long lastModified) {
+        return "\"" + Long.toHexString(length) + "-"
+                + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * Checks whether the client already has the current version of a
+     * resource. If the request has an <code>If-None-Match</code> header, it
+     * is compared with the ETag, otherwise the <code>If-Modified-Since</code>
+     * header is compared with the modification time.
+     *
+     * @param request
+     *            the request
+     * @param etag
+     *            the ETag of the resource, or <code>null</code> if not known
+     * @param lastModified
+     *            the modification time of the resource without milliseconds,
+     *            or 0 if not known
+     * @return <code>true</code> if a 304 response should be sent,
+     *         <code>false</code> otherwise
+     */
+    static boolean isNotModified(VaadinRequest request, String etag,
+            long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etag != null && matchesWeakly(ifNoneMatch, etag);
+        }
+        if (lastModified <= 0) {
+            return false;
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= lastModified;
+        } catch (IllegalArgumentException e) {
+            // Not a date
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether an <code>If-None-Match</code> header value matches an
+     * ETag using the weak comparison function.
+     *
+     * @param header
+     *            the header value, a list of ETags or <code>*</code>
+     * @param etag
+     *            the ETag of the resource
+     * @return <code>true</code> if the ETag matches
+     */
+    static boolean matchesWeakly(String header, String etag) {
+        if (header.trim().equals("*")) {
+            return true;
+        }
+        String opaque = stripWeakPrefix(etag);
+        for (String candidate : header.split(",")) {
+            if (stripWeakPrefix(candidate.trim()).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the <code>Range</code> header of a request. The ranges are
+     * sorted and overlapping or adjacent ranges are merged. An
+     * <code>If-Range</code> header is taken into account.
+     *
+     * @param request
+     *            the request
+     * @param length
+     *            the length of the content
+     * @param etag
+     *            the strong ETag of the content, or <code>null</code> if not
+     *            known
+     * @param lastModified
+     *            the modification time of the content, or 0 if not known
+     * @return the requested ranges, an empty list if none of the ranges can
+     *         be satisfied, or <code>null</code> if the full content should
+     *         be sent
+     */
+    static List<ByteRange> getRanges(VaadinRequest request, long length,
+            String etag, long lastModified) {
+        String header = request.getHeader("Range");
+        if (header == null || !isRangeCurrent(request, etag, lastModified)) {
+            return null;
+        }
+        return parseRanges(header, length);
+    }
+
+    /**
+     * Parses a <code>Range</code> header value.
+     *
+     * @param header
+     *            the header value
+     * @param length
+     *            the length of the content
+     * @return the satisfiable ranges in ascending order, an empty list if
+     *         none of the ranges can be satisfied, or <code>null</code> if
+     *         the header is invalid and should be ignored
+     */
+    static List<ByteRange> parseRanges(String header, long length) {
+        int equals = header.indexOf('=');
+        if (equals == -1
+                || !header.substring(0, equals).trim()
+                        .equalsIgnoreCase(BYTES_UNIT)) {
+            return null;
+        }
+        String[] specs = header.substring(equals + 1).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<ByteRange>();
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // Suffix range: the last n bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                    if (suffix == 0) {
+                        continue;
+                    }
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? length - 1
+                            : Math.min(Long.parseLong(last), length - 1);
+                    if (start < 0 || !last.isEmpty()
+                            && Long.parseLong(last) < start) {
+                        return null;
+                    }
+                }
+                if (start < length) {
+                    ranges.add(new ByteRange(start, end));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return merge(ranges);
+    }
+
+    /**
+     * Writes a 206 Partial Content response with the given ranges of the
+     * content. A single range is written as is, multiple ranges as a
+     * <code>multipart/byteranges</code> body.
+     *
+     * @param response
+     *            the response
+     * @param ranges
+     *            the ranges to write, not empty
+     * @param length
+     *            the length of the whole content
+     * @param contentType
+     *            the content type of the content, or <code>null</code>
+     * @param source
+     *            the content
+     * @throws IOException
+     *             if reading or writing fails
+     */
+    static void writeRanges(VaadinResponse response, List<ByteRange> ranges,
+            long length, String contentType, RangeSource source)
+            throws IOException {
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader("Accept-Ranges", BYTES_UNIT);
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            response.setHeader("Content-Range", range.toContentRange(length));
+            response.setHeader("Content-Length",
+                    Long.toString(range.getLength()));
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            source.write(response.getOutputStream(), range.getStart(),
+                    range.getLength());
+            return;
+        }
+
+        String boundary = UUID.randomUUID().toString();
+        List<byte[]> partHeaders = new ArrayList<byte[]>();
+        long bodyLength = 0;
+        for (ByteRange range : ranges) {
+            StringBuilder part = new StringBuilder();
+            part.append("\r\n--").append(boundary).append("\r\n");
+            if (contentType != null) {
+                part.append("Content-Type: ").append(contentType)
+                        .append("\r\n");
+            }
+            part.append("Content-Range: ").append(range.toContentRange(length))
+                    .append("\r\n\r\n");
+            byte[] bytes = part.toString().getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(bytes);
+            bodyLength += bytes.length + range.getLength();
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        bodyLength += end.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setHeader("Content-Length", Long.toString(bodyLength));
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange range = ranges.get(i);
+            out.write(partHeaders.get(i));
+            source.write(out, range.getStart(), range.getLength());
+        }
+        out.write(end);
+    }
+
+    /**
+     * Writes a 416 Range Not Satisfiable response.
+     *
+     * @param response
+     *            the response
+     * @param length
+     *            the length of the content
+     */
+    static void writeNotSatisfiable(VaadinResponse response, long length) {
+        response.setStatus(
+                HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        response.setHeader("Content-Range", BYTES_UNIT + " */" + length);
+        response.setHeader("Content-Length", "0");
+    }
+
+    /**
+     * Creates a range source for content in memory.
+     *
+     * @param content
+     *            the content
+     * @return a range source
+     */
+    static RangeSource fromBytes(final byte[] content) {
+        return (out, start, count) -> out.write(content, (int) start,
+                (int) count);
+    }
+
+    /**
+     * Creates a range source that transfers ranges directly from a file
+     * channel.
+     *
+     * @param channel
+     *            the file channel
+     * @return a range source
+     */
+    static RangeSource fromChannel(final FileChannel channel) {
+        return (out, start, count) -> transfer(channel, start, count, out);
+    }
+
+    /**
+     * Creates a range source that reads ranges from a stream by skipping
+     * the content between them.
+     *
+     * @param stream
+     *            the stream, positioned at the start of the content
+     * @return a range source
+     */
+    static RangeSource fromStream(final InputStream stream) {
+        return new RangeSource() {
+            private long position = 0;
+
+            @Override
+            public void write(OutputStream out, long start, long count)
+                    throws IOException {
+                while (position < start) {
+                    long skipped = stream.skip(start - position);
+                    if (skipped <= 0) {
+                        if (stream.read() == -1) {
+                            throw new EOFException();
+                        }
+                        skipped = 1;
+                    }
+                    position += skipped;
+                }
+                byte[] buffer = new byte[(int) Math.min(count,
+                        Constants.DEFAULT_BUFFER_SIZE)];
+                long remaining = count;
+                while (remaining > 0) {
+                    int read = stream.read(buffer, 0,
+                            (int) Math.min(remaining, buffer.length));
+                    if (read == -1) {
+                        throw new EOFException();
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                position += count;
+            }
+        };
+    }
+
+    /**
+     * Transfers bytes from a file channel to an output stream using
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     *
+     * @param channel
+     *            the file channel
+     * @param start
+     *            the position of the first byte to transfer
+     * @param count
+     *            the number of bytes to transfer
+     * @param out
+     *            the stream to write to
+     * @throws IOException
+     *             if reading or writing fails
+     */
+    static void transfer(FileChannel channel, long start, long count,
+            OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = start;
+        long end = start + count;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position,
+                    target);
+            if (transferred <= 0) {
+                throw new EOFException();
+            }
+            position += transferred;
+        }
+    }
+
+    private static boolean isRangeCurrent(VaadinRequest request, String etag,
+            long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Strong comparison
+            return etag != null && !etag.startsWith("W/")
+                    && ifRange.equals(etag);
+        }
+        try {
+            return lastModified > 0
+                    && request.getDateHeader("If-Range") == lastModified;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static List<ByteRange> merge(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        Collections.sort(ranges,
+                Comparator.comparingLong(ByteRange::getStart));
+        List<ByteRange> merged = new ArrayList<ByteRange>();
+        ByteRange current = ranges.get(0);
+        for (ByteRange range : ranges.subList(1, ranges.size())) {
+            if (range.getStart() <= current.getEnd() + 1) {
+                current = new ByteRange(current.getStart(),
+                        Math.max(current.getEnd(), range.getEnd()));
+            } else {
+                merged.add(current);
+                current = range;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+}
@@ -23,6 +23,7 @@ import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
@@ -107,6 +108,65 @@ public class JsonCodec implements Serializable {
         public Type getType();
     }
 
+    /**
+     * Encodes beans of a specific type, such as shared states, to JSON and
+     * creates a diff against a previously encoded value.
+     *
+     * @since
+     */
+    public static interface BeanEncoder extends Serializable {
+        /**
+         * Encodes the properties of a bean.
+         *
+         * @param bean
+         *            the bean to encode, not null
+         * @param referenceValue
+         *            the previously encoded value to create a diff against,
+         *            or <code>null</code> if there is no previous value
+         * @param connectorTracker
+         *            the connector tracker of the UI
+         * @return the encoded bean and the diff against the reference value
+         */
+        public EncodeResult encode(Object bean, JsonObject referenceValue,
+                ConnectorTracker connectorTracker);
+    }
+
+    /**
+     * Creates {@link BeanEncoder}s for bean types. Encoders are created once
+     * per type and shared between all threads.
+     *
+     * @since
+     */
+    public static interface BeanEncoderFactory extends Serializable {
+        /**
+         * Creates an encoder for the given bean type.
+         *
+         * @param type
+         *            the bean type
+         * @return an encoder for the type, or <code>null</code> to use
+         *         reflection based encoding
+         */
+        public BeanEncoder createEncoder(Class<?> type);
+    }
+
+    /**
+     * Encodes beans by reading their properties through reflection.
+     */
+    private static class ReflectiveBeanEncoder implements BeanEncoder {
+        private final Class<?> type;
+
+        public ReflectiveBeanEncoder(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public EncodeResult encode(Object bean, JsonObject referenceValue,
+                ConnectorTracker connectorTracker) {
+            return encodeObjectReflectively(bean, type, referenceValue,
+                    connectorTracker);
+        }
+    }
+
     private static class FieldProperty implements BeanProperty {
         private final Field field;
 
@@ -206,6 +266,14 @@ public class JsonCodec implements Serializable {
      */
     private static ConcurrentMap<Class<?>, Collection<BeanProperty>> typePropertyCache = new ConcurrentHashMap<Class<?>, Collection<BeanProperty>>();
 
+    /**
+     * Cache of bean encoders by type. Protected from concurrent access in the
+     * same way as {@link #typePropertyCache}.
+     */
+    private static ConcurrentMap<Class<?>, BeanEncoder> beanEncoderCache = new ConcurrentHashMap<Class<?>, BeanEncoder>();
+
+    private static volatile BeanEncoderFactory beanEncoderFactory = new GeneratedBeanEncoderFactory();
+
     private static Map<Class<?>, String> typeToTransportType = new HashMap<Class<?>, String>();
 
     /**
@@ -713,11 +781,90 @@ public class JsonCodec implements Serializable {
         return properties;
     }
 
-    /*
-     * Loops through the fields of value and encodes them.
+    /**
+     * Sets the factory used for creating the encoders of bean types, such as
+     * shared states. By default, encoders reading the bean properties through
+     * method handles are generated. Changing the factory discards all
+     * previously created encoders.
+     *
+     * @since
+     * @param factory
+     *            the bean encoder factory, or <code>null</code> to always
+     *            encode beans using reflection
+     */
+    public static void setBeanEncoderFactory(BeanEncoderFactory factory) {
+        beanEncoderFactory = factory;
+        beanEncoderCache.clear();
+    }
+
+    /**
+     * Gets the factory used for creating the encoders of bean types.
+     *
+     * @since
+     * @return the bean encoder factory, or <code>null</code> if beans are
+     *         always encoded using reflection
+     */
+    public static BeanEncoderFactory getBeanEncoderFactory() {
+        return beanEncoderFactory;
+    }
+
+    /**
+     * Gets the encoder for a bean type, creating it if needed.
+     *
+     * @since
+     * @param type
+     *            the bean type
+     * @return the encoder for the type
+     */
+    public static BeanEncoder getBeanEncoder(Class<?> type) {
+        BeanEncoder encoder = beanEncoderCache.get(type);
+        if (encoder != null) {
+            return encoder;
+        }
+
+        BeanEncoderFactory factory = beanEncoderFactory;
+        if (factory != null) {
+            encoder = factory.createEncoder(type);
+        }
+        if (encoder == null) {
+            encoder = new ReflectiveBeanEncoder(type);
+        }
+
+        // Like with properties, creating the same encoder twice is harmless
+        beanEncoderCache.put(type, encoder);
+        return encoder;
+    }
+
+    /**
+     * Gets the member used for reading the value of a bean property.
+     *
+     * @param property
+     *            the bean property
+     * @return the public field or the read method of the property, or
+     *         <code>null</code> if not known
      */
+    static Member getReadMember(BeanProperty property) {
+        if (property instanceof FieldProperty) {
+            return ((FieldProperty) property).field;
+        } else if (property instanceof MethodProperty) {
+            return ((MethodProperty) property).pd.getReadMethod();
+        } else {
+            return null;
+        }
+    }
+
     private static EncodeResult encodeObject(Object value, Class<?> valueType,
             JsonObject referenceValue, ConnectorTracker connectorTracker) {
+        return getBeanEncoder(valueType).encode(value, referenceValue,
+                connectorTracker);
+    }
+
+    /*
+     * Loops through the fields of value and encodes them.
+     */
+    private static EncodeResult encodeObjectReflectively(Object value,
+            Class<?> valueType, JsonObject referenceValue,
+            ConnectorTracker connectorTracker) {
         JsonObject encoded = Json.createObject();
         JsonObject diff = Json.createObject();
 
@@ -770,7 +917,7 @@ public class JsonCodec implements Serializable {
      * @param referenceValue
      * @return
      */
-    private static boolean valueChanged(JsonValue fieldValue,
+    static boolean valueChanged(JsonValue fieldValue,
             JsonValue referenceValue) {
         if (fieldValue instanceof JsonNull) {
             fieldValue = null;
@@ -954,7 +1101,10 @@ public class JsonCodec implements Serializable {
 
         for (Entry<?, ?> entry : map.entrySet()) {
             ClientConnector key = (ClientConnector) entry.getKey();
-            if (LegacyCommunicationManager.isConnectorVisibleToClient(key)) {
+            if (connectorTracker != null
+                    ? connectorTracker.isConnectorVisibleToClient(key)
+                    : LegacyCommunicationManager
+                            .isConnectorVisibleToClient(key)) {
                 EncodeResult encodedValue = encode(entry.getValue(), null,
                         valueType, connectorTracker);
                 jsonMap.put(key.getConnectorId(),
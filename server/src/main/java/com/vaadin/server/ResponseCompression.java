@@ -0,0 +1,171 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Helper methods for negotiated gzip compression of responses.
+ *
+ * @see DeploymentConfiguration#isUidlCompressionEnabled()
+ * @see DeploymentConfiguration#isStaticResourceCompressionEnabled()
+ * @see DeploymentConfiguration#getCompressionThreshold()
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class ResponseCompression implements Serializable {
+
+    private ResponseCompression() {
+        // Only static helpers
+    }
+
+    /**
+     * Checks whether an <code>Accept-Encoding</code> header allows a gzip
+     * encoded response. Encodings with a quality value of zero are not
+     * accepted.
+     *
+     * @param acceptEncoding
+     *            the header value, or <code>null</code> if the request has no
+     *            such header
+     * @return <code>true</code> if gzip is accepted; <code>false</code>
+     *         otherwise
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        // An explicit gzip quality takes precedence over the * wildcard
+        boolean gzipListed = false;
+        boolean wildcardAccepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                if (getQuality(parts) > 0) {
+                    return true;
+                }
+                gzipListed = true;
+            } else if (name.equals("*")) {
+                wildcardAccepted |= getQuality(parts) > 0;
+            }
+        }
+        return wildcardAccepted && !gzipListed;
+    }
+
+    /**
+     * Checks whether content of the given type is worth compressing. Text
+     * based types are compressible, while already compressed formats such as
+     * most images are not.
+     *
+     * @param contentType
+     *            the content type, possibly with parameters, or
+     *            <code>null</code>
+     * @return <code>true</code> if the content is compressible;
+     *         <code>false</code> otherwise
+     */
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.split(";")[0].trim()
+                .toLowerCase(Locale.ENGLISH);
+        return type.startsWith("text/") || type.endsWith("+xml")
+                || type.endsWith("+json") || type.endsWith("/javascript")
+                || type.endsWith("/x-javascript") || type.endsWith("/json")
+                || type.endsWith("/xml");
+    }
+
+    /**
+     * Compresses the given content with gzip.
+     *
+     * @param content
+     *            the content to compress
+     * @return the compressed content
+     */
+    public static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            // Cannot happen with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a dynamically generated response body, gzip compressing it if
+     * {@link DeploymentConfiguration#isUidlCompressionEnabled() UIDL
+     * compression} is enabled, the client accepts gzip and the body is at
+     * least {@link DeploymentConfiguration#getCompressionThreshold()} bytes
+     * long. The content type and other headers should be set before calling
+     * this method.
+     *
+     * @param request
+     *            the request that resulted in this response
+     * @param response
+     *            the response to write to
+     * @param content
+     *            the response body
+     * @throws IOException
+     *             if writing to the response fails
+     */
+    public static void writeResponse(VaadinRequest request,
+            VaadinResponse response, byte[] content) throws IOException {
+        VaadinService service = request.getService();
+        DeploymentConfiguration configuration = service == null ? null
+                : service.getDeploymentConfiguration();
+        if (configuration != null
+                && configuration.isUidlCompressionEnabled()) {
+            response.setHeader("Vary", "Accept-Encoding");
+            if (content.length >= configuration.getCompressionThreshold()
+                    && acceptsGzip(request.getHeader("Accept-Encoding"))) {
+                byte[] compressed = gzip(content);
+                if (compressed.length < content.length) {
+                    response.setHeader("Content-Encoding", "gzip");
+                    content = compressed;
+                }
+            }
+        }
+
+        response.setContentLength(content.length);
+        OutputStream outputStream = response.getOutputStream();
+        outputStream.write(content);
+        // NOTE GateIn requires the buffers to be flushed to work
+        outputStream.flush();
+    }
+
+    private static float getQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the source files of compiled themes for modifications using a
+ * {@link WatchService}. Modifications are reported on a background thread,
+ * so that {@link VaadinServlet} can recompile the affected themes without
+ * making requests wait for the compiler. Used in development mode only.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+class ScssSourceWatcher implements Serializable {
+
+    /**
+     * Time in milliseconds to wait for further modifications before reporting
+     * changes, so that saving several files results in one recompilation.
+     */
+    private static final long QUIET_PERIOD = 100;
+
+    private final transient Consumer<Set<String>> listener;
+    private final String name;
+
+    // Created when the first theme is watched
+    private transient WatchService watchService;
+
+    private final Map<Path, Set<String>> themesBySource = new ConcurrentHashMap<Path, Set<String>>();
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new watcher. The background thread is started when the first
+     * theme is watched.
+     *
+     * @param name
+     *            the name to use for the background thread
+     * @param listener
+     *            called on the background thread with the names of the scss
+     *            files whose sources have been modified
+     */
+    ScssSourceWatcher(String name, Consumer<Set<String>> listener) {
+        this.name = name;
+        this.listener = listener;
+    }
+
+    private synchronized WatchService getWatchService() throws IOException {
+        if (closed) {
+            throw new ClosedWatchServiceException();
+        }
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            WatchService service = watchService;
+            Thread thread = new Thread(() -> run(service),
+                    "Vaadin theme watcher " + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return watchService;
+    }
+
+    /**
+     * Starts watching the source files of a theme. Files already watched for
+     * the theme stay watched.
+     *
+     * @param scssFilename
+     *            the name of the compiled scss file
+     * @param sourceFiles
+     *            the files the compilation result was produced from
+     * @return <code>true</code> if all the source files are watched,
+     *         <code>false</code> otherwise
+     */
+    boolean watch(String scssFilename, Collection<File> sourceFiles) {
+        if (closed) {
+            return false;
+        }
+        try {
+            WatchService watchService = getWatchService();
+            for (File file : sourceFiles) {
+                Path path = file.getAbsoluteFile().toPath().normalize();
+                Path directory = path.getParent();
+                if (!directories.contains(directory)) {
+                    directory.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE);
+                    directories.add(directory);
+                }
+                themesBySource
+                        .computeIfAbsent(path,
+                                key -> ConcurrentHashMap.newKeySet())
+                        .add(scssFilename);
+            }
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            getLogger().log(Level.FINE,
+                    "Could not watch the sources of " + scssFilename, e);
+            return false;
+        }
+    }
+
+    /**
+     * Stops watching and terminates the background thread.
+     */
+    synchronized void close() {
+        closed = true;
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            getLogger().log(Level.FINE, "Could not close watch service", e);
+        }
+    }
+
+    private void run(WatchService watchService) {
+        try {
+            while (!closed) {
+                Set<String> modified = new HashSet<String>();
+                collect(watchService.take(), modified);
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_PERIOD,
+                        TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, modified);
+                }
+                if (!modified.isEmpty()) {
+                    try {
+                        listener.accept(modified);
+                    } catch (RuntimeException e) {
+                        getLogger().log(Level.WARNING,
+                                "Could not recompile modified themes", e);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> modified) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Some events were lost, assume that anything may have changed
+                for (Map.Entry<Path, Set<String>> entry : themesBySource
+                        .entrySet()) {
+                    if (directory.equals(entry.getKey().getParent())) {
+                        modified.addAll(entry.getValue());
+                    }
+                }
+            } else {
+                Set<String> themes = themesBySource
+                        .get(directory.resolve((Path) event.context()));
+                if (themes != null) {
+                    modified.addAll(themes);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ScssSourceWatcher.class.getName());
+    }
+}
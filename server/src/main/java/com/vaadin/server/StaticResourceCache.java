@@ -0,0 +1,455 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Byte-budgeted in-memory cache of the static resources served from the
+ * VAADIN directory by {@link VaadinServlet}. Each entry holds the resolved
+ * resource URL, its modification time, content type, a precomputed strong
+ * ETag and the contents of the resource and its precompressed
+ * <code>.gz</code> variant, so a cached resource can be served without
+ * resolving or opening any URL. A missing <code>.gz</code> variant is also
+ * remembered. If a compression threshold is given, a gzip compressed variant
+ * of compressible resources without a precompressed variant is created when
+ * the resource is loaded.
+ * <p>
+ * Entries are evicted in least recently used order when the total size of the
+ * cached contents would exceed the budget. Resources larger than
+ * {@link #getMaxEntrySize()} are not cached.
+ * <p>
+ * Cached resources are never revalidated, so the cache is only used in
+ * production mode.
+ *
+ * @see DeploymentConfiguration#getStaticResourceCacheSize()
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class StaticResourceCache implements Serializable {
+
+    /**
+     * The largest fraction of the budget a single resource can use.
+     */
+    private static final int MAX_ENTRY_DIVISOR = 8;
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * A cached static resource.
+     */
+    public static class Entry implements Serializable {
+        private final URL url;
+        private final long lastModified;
+        private final String contentType;
+        private final String etag;
+        private final byte[] content;
+        private final byte[] gzipContent;
+        private final boolean gzipPrecompressed;
+
+        /**
+         * Creates a new cache entry.
+         *
+         * @param url
+         *            the resolved URL of the resource, not <code>null</code>
+         * @param lastModified
+         *            the modification time of the resource in whole seconds
+         *            as milliseconds, or 0 if not known
+         * @param contentType
+         *            the content type of the resource, or <code>null</code>
+         *            if not known
+         * @param content
+         *            the contents of the resource, not <code>null</code>
+         * @param gzipContent
+         *            the contents of the precompressed <code>.gz</code>
+         *            variant of the resource, or <code>null</code> if there
+         *            is none
+         */
+        public Entry(URL url, long lastModified, String contentType,
+                byte[] content, byte[] gzipContent) {
+            this(url, lastModified, contentType, content, gzipContent, true);
+        }
+
+        /**
+         * Creates a new cache entry.
+         *
+         * @param url
+         *            the resolved URL of the resource, not <code>null</code>
+         * @param lastModified
+         *            the modification time of the resource in whole seconds
+         *            as milliseconds, or 0 if not known
+         * @param contentType
+         *            the content type of the resource, or <code>null</code>
+         *            if not known
+         * @param content
+         *            the contents of the resource, not <code>null</code>
+         * @param gzipContent
+         *            the contents of the gzip compressed variant of the
+         *            resource, or <code>null</code> if there is none
+         * @param gzipPrecompressed
+         *            <code>true</code> if the compressed variant was read from
+         *            a <code>.gz</code> file, <code>false</code> if it was
+         *            compressed by the cache
+         */
+        public Entry(URL url, long lastModified, String contentType,
+                byte[] content, byte[] gzipContent,
+                boolean gzipPrecompressed) {
+            this.url = url;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.content = content;
+            this.gzipContent = gzipContent;
+            this.gzipPrecompressed = gzipPrecompressed;
+            etag = createETag(content);
+        }
+
+        /**
+         * Gets the resolved URL of the resource.
+         *
+         * @return the resource URL
+         */
+        public URL getUrl() {
+            return url;
+        }
+
+        /**
+         * Gets the modification time of the resource, without milliseconds.
+         *
+         * @return the modification time, or 0 if not known
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Gets the content type of the resource.
+         *
+         * @return the content type, or <code>null</code> if not known
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Gets the strong ETag of the resource, computed from its contents.
+         *
+         * @return the quoted ETag
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        /**
+         * Gets the strong ETag of the gzip compressed variant of the
+         * resource.
+         *
+         * @return the quoted ETag, or <code>null</code> if the resource has no
+         *         compressed variant
+         */
+        public String getGzipETag() {
+            if (gzipContent == null) {
+                return null;
+            }
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+
+        /**
+         * Gets the contents of the resource. The returned array should not be
+         * modified.
+         *
+         * @return the resource contents
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * Gets the contents of the gzip compressed variant of the resource,
+         * either read from a precompressed <code>.gz</code> file or compressed
+         * by the cache. The returned array should not be modified.
+         *
+         * @return the gzip compressed contents, or <code>null</code> if the
+         *         resource has no compressed variant
+         */
+        public byte[] getGzipContent() {
+            return gzipContent;
+        }
+
+        /**
+         * Checks whether the gzip compressed variant of the resource was read
+         * from a precompressed <code>.gz</code> file.
+         *
+         * @return <code>true</code> if the compressed variant is
+         *         precompressed, <code>false</code> if it was compressed by
+         *         the cache or if there is no compressed variant
+         */
+        public boolean isGzipPrecompressed() {
+            return gzipContent != null && gzipPrecompressed;
+        }
+
+        private int getSize() {
+            return content.length
+                    + (gzipContent == null ? 0 : gzipContent.length);
+        }
+
+        private static String createETag(byte[] content) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            return "\"" + Integer.toHexString(content.length) + "-"
+                    + Long.toHexString(crc.getValue()) + "\"";
+        }
+    }
+
+    private final long maxSize;
+
+    private final int compressionThreshold;
+
+    private long size;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true);
+
+    /**
+     * Names of the resources that have been found to be too large to cache,
+     * so that they are not read again on every request.
+     */
+    private final Set<String> tooLarge = new HashSet<String>();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize
+     *            the maximum total size of the cached contents in bytes
+     */
+    public StaticResourceCache(long maxSize) {
+        this(maxSize, -1);
+    }
+
+    /**
+     * Creates a new cache that also compresses resources.
+     *
+     * @param maxSize
+     *            the maximum total size of the cached contents in bytes
+     * @param compressionThreshold
+     *            the minimum size of a compressible resource to gzip compress
+     *            if it has no precompressed variant, or a negative number to
+     *            not compress resources
+     */
+    public StaticResourceCache(long maxSize, int compressionThreshold) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Size cannot be negative");
+        }
+        this.maxSize = maxSize;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Gets a cached resource.
+     *
+     * @param filename
+     *            the name of the resource, starting with /VAADIN/
+     * @return the cached resource, or <code>null</code> if the resource is
+     *         not cached
+     */
+    public synchronized Entry get(String filename) {
+        return entries.get(filename);
+    }
+
+    /**
+     * Reads a resource and its precompressed variant and adds them to the
+     * cache, if the resource is small enough. If there is no precompressed
+     * variant, a compressed variant is created for compressible resources
+     * that are at least as large as the compression threshold.
+     *
+     * @param filename
+     *            the name of the resource, starting with /VAADIN/
+     * @param url
+     *            the resolved URL of the resource
+     * @param contentType
+     *            the content type of the resource, or <code>null</code> if
+     *            not known
+     * @return the new entry, or <code>null</code> if the resource is too large
+     *         to cache
+     * @throws IOException
+     *             if the resource cannot be read
+     */
+    public Entry load(String filename, URL url, String contentType)
+            throws IOException {
+        if (isTooLarge(filename)) {
+            return null;
+        }
+        int maxEntrySize = getMaxEntrySize();
+        URLConnection connection = url.openConnection();
+        long lastModified = connection.getLastModified();
+        // Same precision as If-Modified-Since
+        lastModified = lastModified - lastModified % 1000;
+        byte[] content;
+        try (InputStream is = connection.getInputStream()) {
+            // Avoid reading resources that are known to be too large
+            content = connection.getContentLengthLong() > maxEntrySize ? null
+                    : read(is, maxEntrySize);
+        }
+        if (content == null) {
+            markTooLarge(filename);
+            return null;
+        }
+
+        byte[] gzipContent = null;
+        try (InputStream is = new URL(url.toExternalForm() + ".gz")
+                .openStream()) {
+            gzipContent = read(is, maxEntrySize - content.length);
+            if (gzipContent == null) {
+                markTooLarge(filename);
+                return null;
+            }
+        } catch (FileNotFoundException e) {
+            // No precompressed variant
+        } catch (IOException e) {
+            getLogger().log(Level.FINE,
+                    "Could not read gzipped version of resource " + url, e);
+        }
+
+        boolean precompressed = gzipContent != null;
+        if (gzipContent == null && compressionThreshold >= 0
+                && content.length >= compressionThreshold
+                && ResponseCompression.isCompressible(contentType)) {
+            byte[] compressed = ResponseCompression.gzip(content);
+            if (compressed.length < content.length
+                    && content.length + compressed.length <= maxEntrySize) {
+                gzipContent = compressed;
+            }
+        }
+
+        Entry entry = new Entry(url, lastModified, contentType, content,
+                gzipContent, precompressed);
+        put(filename, entry);
+        return entry;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        tooLarge.clear();
+        size = 0;
+    }
+
+    /**
+     * Checks whether a resource has been found to be too large to cache.
+     * Such resources are not read again by {@link #load(String, URL, String)}
+     * until the cache is cleared.
+     *
+     * @param filename
+     *            the name of the resource, starting with /VAADIN/
+     * @return <code>true</code> if the resource is too large to cache,
+     *         <code>false</code> if it is not or if it has not been loaded
+     */
+    public synchronized boolean isTooLarge(String filename) {
+        return tooLarge.contains(filename);
+    }
+
+    private synchronized void markTooLarge(String filename) {
+        tooLarge.add(filename);
+    }
+
+    /**
+     * Gets the total size of the cached contents.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the maximum total size of the cached contents.
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the minimum size of a resource that is compressed by the cache.
+     *
+     * @return the compression threshold in bytes, or a negative number if
+     *         resources are not compressed
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Gets the size of the largest resource that is cached, including its
+     * precompressed variant.
+     *
+     * @return the maximum resource size in bytes
+     */
+    public int getMaxEntrySize() {
+        return (int) Math.min(Integer.MAX_VALUE, maxSize / MAX_ENTRY_DIVISOR);
+    }
+
+    private synchronized void put(String filename, Entry entry) {
+        Entry old = entries.put(filename, entry);
+        if (old != null) {
+            size -= old.getSize();
+        }
+        size += entry.getSize();
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getSize();
+        }
+    }
+
+    /**
+     * Reads the stream fully, giving up if it is longer than the limit.
+     */
+    private static byte[] read(InputStream is, int limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytes;
+        while ((bytes = is.read(buffer)) >= 0) {
+            if (out.size() + bytes > limit) {
+                return null;
+            }
+            out.write(buffer, 0, bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(StaticResourceCache.class.getName());
+    }
+}
@@ -35,7 +35,11 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -58,6 +62,12 @@ import com.vaadin.server.communication.HeartbeatHandler;
 import com.vaadin.server.communication.PublishedFileHandler;
 import com.vaadin.server.communication.SessionRequestHandler;
 import com.vaadin.server.communication.UidlRequestHandler;
+import com.vaadin.server.metrics.HistogramRequestMetrics;
+import com.vaadin.server.metrics.InstrumentedSessionLock;
+import com.vaadin.server.metrics.RequestMetrics;
+import com.vaadin.server.metrics.RequestMetrics.Measurement;
+import com.vaadin.server.metrics.RequestMetrics.Phase;
+import com.vaadin.server.metrics.SessionLockMonitor;
 import com.vaadin.shared.ApplicationConstants;
 import com.vaadin.shared.JsonConstants;
 import com.vaadin.shared.ui.ui.UIConstants;
@@ -121,8 +131,18 @@ public abstract class VaadinService implements Serializable {
     @Deprecated
     public static final String URL_PARAMETER_CLOSE_APPLICATION = "closeApplication";
 
+    /**
+     * Default time in milliseconds a thread can wait for a session lock
+     * before the thread holding the lock is logged.
+     *
+     * @since
+     */
+    public static final long DEFAULT_SESSION_LOCK_WARNING_THRESHOLD = 1000;
+
     private static final String REQUEST_START_TIME_ATTRIBUTE = "requestStartTime";
 
+    private static final String REQUEST_MEASUREMENT_ATTRIBUTE = "requestMeasurement";
+
     private final DeploymentConfiguration deploymentConfiguration;
 
     private final EventRouter eventRouter = new EventRouter();
@@ -148,6 +168,16 @@ public abstract class VaadinService implements Serializable {
      */
     private boolean initialized = false;
 
+    private RequestMetrics requestMetrics;
+
+    private SessionLockMonitor sessionLockMonitor;
+
+    private transient ScheduledExecutorService scheduledExecutor;
+
+    private transient ExecutorService backgroundExecutor;
+
+    private transient ForkJoinPool parallelPool;
+
     /**
      * Creates a new vaadin service based on a deployment configuration
      *
@@ -193,9 +223,104 @@ public abstract class VaadinService implements Serializable {
         Collections.reverse(handlers);
         requestHandlers = Collections.unmodifiableCollection(handlers);
 
+        requestMetrics = createRequestMetrics();
+        sessionLockMonitor = createSessionLockMonitor();
+
         initialized = true;
     }
 
+    /**
+     * Called during initialization to create the metrics collecting the time
+     * spent in the different phases of handling requests. The default
+     * implementation creates {@link HistogramRequestMetrics} exported to JMX
+     * if request metrics are enabled in the deployment configuration.
+     * Override this method to collect the metrics in some other way.
+     *
+     * @see DeploymentConfiguration#isRequestMetricsEnabled()
+     *
+     * @since
+     * @return the request metrics to use, or <code>null</code> to not
+     *         collect metrics
+     */
+    protected RequestMetrics createRequestMetrics() {
+        if (!getDeploymentConfiguration().isRequestMetricsEnabled()) {
+            return null;
+        }
+        boolean allocationTracked = getDeploymentConfiguration()
+                .getApplicationOrSystemProperty(
+                        Constants.SERVLET_PARAMETER_REQUEST_METRICS_ALLOCATIONS,
+                        "false")
+                .equals("true");
+        HistogramRequestMetrics metrics = new HistogramRequestMetrics(
+                allocationTracked);
+        metrics.registerMBeans(getServiceName());
+        return metrics;
+    }
+
+    /**
+     * Gets the metrics collecting the time spent in the different phases of
+     * handling requests.
+     *
+     * @see #createRequestMetrics()
+     *
+     * @since
+     * @return the request metrics, or <code>null</code> if metrics are not
+     *         collected
+     */
+    public RequestMetrics getRequestMetrics() {
+        return requestMetrics;
+    }
+
+    /**
+     * Called during initialization to create the monitor that collects
+     * diagnostics about the session locks. The default implementation creates
+     * a monitor exported to JMX if request metrics are collected, using the
+     * warning threshold defined by the
+     * {@value Constants#SERVLET_PARAMETER_SESSION_LOCK_WARNING_THRESHOLD}
+     * parameter.
+     *
+     * @see #getRequestMetrics()
+     *
+     * @since
+     * @return the session lock monitor to use, or <code>null</code> to use
+     *         plain session locks
+     */
+    protected SessionLockMonitor createSessionLockMonitor() {
+        if (requestMetrics == null) {
+            return null;
+        }
+        String threshold = getDeploymentConfiguration()
+                .getApplicationOrSystemProperty(
+                        Constants.SERVLET_PARAMETER_SESSION_LOCK_WARNING_THRESHOLD,
+                        Long.toString(
+                                DEFAULT_SESSION_LOCK_WARNING_THRESHOLD));
+        long thresholdMillis;
+        try {
+            thresholdMillis = Long.parseLong(threshold);
+        } catch (NumberFormatException e) {
+            getLogger().warning(
+                    Constants.WARNING_SESSION_LOCK_THRESHOLD_NOT_NUMERIC);
+            thresholdMillis = DEFAULT_SESSION_LOCK_WARNING_THRESHOLD;
+        }
+        SessionLockMonitor monitor = new SessionLockMonitor(requestMetrics,
+                thresholdMillis);
+        monitor.registerMBean(getServiceName());
+        return monitor;
+    }
+
+    /**
+     * Gets the monitor collecting diagnostics about the session locks.
+     *
+     * @see #createSessionLockMonitor()
+     *
+     * @since
+     * @return the session lock monitor, or <code>null</code> if session locks
+     *         are not monitored
+     */
+    public SessionLockMonitor getSessionLockMonitor() {
+        return sessionLockMonitor;
+    }
+
     /**
      * Called during initialization to add the request handlers for the service.
      * Note that the returned list will be reversed so the last handler will be
@@ -622,10 +747,19 @@ public abstract class VaadinService implements Serializable {
             synchronized (VaadinService.class) {
                 lock = getSessionLock(wrappedSession);
                 if (lock == null) {
-                    lock = new ReentrantLock();
+                    if (sessionLockMonitor != null) {
+                        lock = sessionLockMonitor.createLock();
+                    } else {
+                        lock = new ReentrantLock();
+                    }
                     setSessionLock(wrappedSession, lock);
                 }
             }
+        } else if (sessionLockMonitor != null
+                && lock instanceof InstrumentedSessionLock
+                && ((InstrumentedSessionLock) lock).getMonitor() == null) {
+            // Deserialized session
+            sessionLockMonitor.monitor((InstrumentedSessionLock) lock);
         }
         lock.lock();
 
@@ -1341,6 +1475,10 @@ public abstract class VaadinService implements Serializable {
         }
         setCurrentInstances(request, response);
         request.setAttribute(REQUEST_START_TIME_ATTRIBUTE, System.nanoTime());
+        if (requestMetrics != null) {
+            request.setAttribute(REQUEST_MEASUREMENT_ATTRIBUTE,
+                    RequestMetrics.start(requestMetrics));
+        }
     }
 
     /**
@@ -1369,6 +1507,12 @@ public abstract class VaadinService implements Serializable {
                 session.unlock();
             }
         }
+        if (requestMetrics != null) {
+            Measurement.end(
+                    (Measurement) request
+                            .getAttribute(REQUEST_MEASUREMENT_ATTRIBUTE),
+                    Phase.REQUEST, null);
+        }
         CurrentInstance.clearAll();
     }
 
@@ -1418,10 +1562,19 @@ public abstract class VaadinService implements Serializable {
                 return;
             }
 
-            for (RequestHandler handler : getRequestHandlers()) {
-                if (handler.handleRequest(vaadinSession, request, response)) {
-                    return;
+            String previousOperation = SessionLockMonitor
+                    .setCurrentOperation(null);
+            try {
+                for (RequestHandler handler : getRequestHandlers()) {
+                    SessionLockMonitor.setCurrentOperation(
+                            handler.getClass().getSimpleName());
+                    if (handler.handleRequest(vaadinSession, request,
+                            response)) {
+                        return;
+                    }
                 }
+            } finally {
+                SessionLockMonitor.setCurrentOperation(previousOperation);
             }
 
             // Request not handled by any RequestHandler
@@ -1782,13 +1935,49 @@ public abstract class VaadinService implements Serializable {
      * If the session is currently locked by the current thread or some other
      * thread, the queue will be purged when the session is unlocked. If the
      * lock is not held by any thread, it is acquired and the queue is purged
-     * right away.
+     * right away, unless the queue has been purged less than the
+     * {@link DeploymentConfiguration#getPushCoalescingInterval() push
+     * coalescing interval} ago. In that case the purge is delayed until the
+     * interval has passed, so that tasks enqueued in the meantime are run in
+     * the same batch.
      *
      * @since 7.1.2
      * @param session
      *            the session for which the access queue should be purged
      */
-    public void ensureAccessQueuePurged(VaadinSession session) {
+    public void ensureAccessQueuePurged(final VaadinSession session) {
+        int coalescingInterval = getDeploymentConfiguration()
+                .getPushCoalescingInterval();
+        if (coalescingInterval > 0 && !session.hasLock()) {
+            /*
+             * Run the tasks in batches at most once per interval. A thread
+             * holding the lock purges the queue when unlocking, so the
+             * interval only matters when the session is not locked.
+             */
+            long lastPurge = session.getLastAccessQueuePurge();
+            long delay = lastPurge
+                    + TimeUnit.MILLISECONDS.toNanos(coalescingInterval)
+                    - System.nanoTime();
+            if (lastPurge != 0 && delay > 0) {
+                if (session.setAccessQueuePurgeScheduled(true)) {
+                    /*
+                     * The scheduler only acts as a timer: the access tasks
+                     * themselves may block and must not hold up other
+                     * scheduled tasks.
+                     */
+                    getScheduledExecutor().schedule(
+                            () -> getBackgroundExecutor().execute(() -> {
+                                session.setAccessQueuePurgeScheduled(false);
+                                purgeAccessQueueIfUnlocked(session);
+                            }), delay, TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+        }
+        purgeAccessQueueIfUnlocked(session);
+    }
+
+    private void purgeAccessQueueIfUnlocked(VaadinSession session) {
         /*
          * If no thread is currently holding the lock, pending changes for UIs
          * with automatic push would not be processed and pushed until the next
@@ -1813,6 +2002,69 @@ public abstract class VaadinService implements Serializable {
         }
     }
 
+    /**
+     * Gets the executor used by the framework for timing delayed tasks, such
+     * as coalesced pushes. The executor uses a single daemon thread, so tasks
+     * should not block. Work that may block, such as locking a session,
+     * should be handed over to {@link #getBackgroundExecutor()}. The executor
+     * is shut down when the service is destroyed.
+     *
+     * @since
+     * @return the scheduled executor, not <code>null</code>
+     */
+    public synchronized ScheduledExecutorService getScheduledExecutor() {
+        if (scheduledExecutor == null) {
+            final String threadName = "Vaadin scheduler " + getServiceName();
+            scheduledExecutor = Executors
+                    .newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return scheduledExecutor;
+    }
+
+    /**
+     * Gets the executor used by the framework for running tasks that may
+     * block, such as delayed access queue purges and pushes triggered by
+     * {@link #getScheduledExecutor()}. Threads are daemon threads created on
+     * demand. The executor is shut down when the service is destroyed.
+     *
+     * @since
+     * @return the background executor, not <code>null</code>
+     */
+    public synchronized ExecutorService getBackgroundExecutor() {
+        if (backgroundExecutor == null) {
+            final String threadName = "Vaadin background " + getServiceName();
+            backgroundExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return backgroundExecutor;
+    }
+
+    /**
+     * Gets the pool used for parallel sorting and filtering of in-memory data
+     * sources that have not been given a pool of their own. Using a separate
+     * pool instead of the common fork-join pool keeps parallel processing from
+     * starving other users of the common pool. The pool has one thread per
+     * available processor and is shut down when the service is destroyed.
+     *
+     * @since
+     * @see com.vaadin.server.data.ListDataSource#parallel(int)
+     * @return the parallel processing pool, not <code>null</code>
+     */
+    public synchronized ForkJoinPool getParallelPool() {
+        if (parallelPool == null) {
+            parallelPool = new ForkJoinPool(
+                    Runtime.getRuntime().availableProcessors());
+        }
+        return parallelPool;
+    }
+
     /**
      * Purges the queue of pending access invocations enqueued with
      * {@link VaadinSession#access(Runnable)}.
@@ -1830,6 +2082,7 @@ public abstract class VaadinService implements Serializable {
         if (session.getPendingAccessQueue().isEmpty()) {
             return;
         }
+        session.setLastAccessQueuePurge(System.nanoTime());
 
         Map<Class<?>, CurrentInstance> oldInstances = CurrentInstance
                 .getInstances(false);
@@ -1902,6 +2155,26 @@ public abstract class VaadinService implements Serializable {
      */
     public void destroy() {
         eventRouter.fireEvent(new ServiceDestroyEvent(this));
+        if (requestMetrics instanceof HistogramRequestMetrics) {
+            ((HistogramRequestMetrics) requestMetrics).unregisterMBeans();
+        }
+        if (sessionLockMonitor != null) {
+            sessionLockMonitor.unregisterMBean();
+        }
+        synchronized (this) {
+            if (scheduledExecutor != null) {
+                scheduledExecutor.shutdownNow();
+                scheduledExecutor = null;
+            }
+            if (backgroundExecutor != null) {
+                backgroundExecutor.shutdownNow();
+                backgroundExecutor = null;
+            }
+            if (parallelPool != null) {
+                parallelPool.shutdownNow();
+                parallelPool = null;
+            }
+        }
     }
 
     /**
@@ -15,16 +15,14 @@
  */
 package com.vaadin.server;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
@@ -32,16 +30,24 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,6 +60,7 @@ import javax.servlet.http.HttpServletResponse;
 import com.vaadin.annotations.VaadinServletConfiguration;
 import com.vaadin.annotations.VaadinServletConfiguration.InitParameterName;
 import com.vaadin.sass.internal.ScssStylesheet;
+import com.vaadin.server.HttpRangeSupport.ByteRange;
 import com.vaadin.server.communication.ServletUIInitHandler;
 import com.vaadin.shared.JsonConstants;
 import com.vaadin.shared.Version;
@@ -74,13 +81,33 @@ public class VaadinServlet extends HttpServlet implements Constants {
         private final long timestamp;
         private final String scssFileName;
 
+        // Encoded and compressed on demand
+        private transient byte[] cssBytes;
+        private transient byte[] gzipCss;
+
+        // Time of the last successful validity check
+        private transient volatile long lastValidated = System
+                .currentTimeMillis();
+
+        // Whether modifications are detected by the scss source watcher
+        private transient volatile boolean watched = false;
+
         public ScssCacheEntry(String scssFileName, String css,
-                List<String> sourceUris) {
+                List<String> sourceUris, long compileStart) {
             this.scssFileName = scssFileName;
             this.css = css;
             this.sourceUris = sourceUris;
 
-            timestamp = getLastModified();
+            long lastModified = getLastModified();
+            if (lastModified >= compileStart) {
+                /*
+                 * A source was modified while it was being compiled. Use a
+                 * timestamp that does not match the sources, so that the
+                 * entry is never considered valid.
+                 */
+                lastModified = compileStart - 1;
+            }
+            timestamp = lastModified;
         }
 
         public ScssCacheEntry(JsonObject json) {
@@ -117,6 +144,20 @@ public class VaadinServlet extends HttpServlet implements Constants {
             return css;
         }
 
+        public byte[] getCssBytes() {
+            if (cssBytes == null) {
+                cssBytes = css.getBytes(StandardCharsets.UTF_8);
+            }
+            return cssBytes;
+        }
+
+        public byte[] getGzipCss() {
+            if (gzipCss == null) {
+                gzipCss = ResponseCompression.gzip(getCssBytes());
+            }
+            return gzipCss;
+        }
+
         private long getLastModified() {
             long newest = 0;
             for (String uri : sourceUris) {
@@ -175,14 +216,73 @@ public class VaadinServlet extends HttpServlet implements Constants {
             }
         }
 
+        /**
+         * Checks whether the entry is still valid, but checks the timestamps
+         * of the source files at most once per
+         * {@link VaadinServlet#SCSS_VALIDATION_INTERVAL}.
+         */
+        public boolean isStillValidRateLimited() {
+            if (timestamp == -1) {
+                return false;
+            } else if (watched) {
+                // Recompiled in the background when modified
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastValidated < SCSS_VALIDATION_INTERVAL) {
+                return true;
+            }
+            boolean valid = isStillValid();
+            if (valid) {
+                lastValidated = now;
+            }
+            return valid;
+        }
+
         public String getScssFileName() {
             return scssFileName;
         }
 
+        public void setWatched(boolean watched) {
+            this.watched = watched;
+        }
+
+        /**
+         * Gets the files this entry was compiled from, or <code>null</code>
+         * if some of the sources are not files in the file system.
+         */
+        public List<File> getSourceFiles() {
+            List<File> files = new ArrayList<File>();
+            for (String uri : sourceUris) {
+                File file = new File(uri);
+                if (!file.exists()) {
+                    URL resource = getService().getClassLoader()
+                            .getResource(uri);
+                    if (resource == null
+                            || !resource.getProtocol().equals("file")) {
+                        return null;
+                    }
+                    try {
+                        file = new File(resource.toURI());
+                    } catch (URISyntaxException e) {
+                        return null;
+                    }
+                }
+                files.add(file);
+            }
+            return files;
+        }
+
     }
 
     private VaadinServletService servletService;
 
+    private transient StaticResourceCache staticResourceCache;
+
+    private transient ScssSourceWatcher scssSourceWatcher;
+
+    private transient ExecutorService themePrecompiler;
+
     /**
      * Called by the servlet container to indicate to a servlet that the servlet
      * is being placed into service.
@@ -231,6 +331,35 @@ public class VaadinServlet extends HttpServlet implements Constants {
         // Sets current service even though there are no request and response
         servletService.setCurrentInstances(null, null);
 
+        if (deploymentConfiguration.isProductionMode() && deploymentConfiguration
+                .getStaticResourceCacheSize() > 0) {
+            int compressionThreshold = deploymentConfiguration
+                    .isStaticResourceCompressionEnabled()
+                            ? deploymentConfiguration.getCompressionThreshold()
+                            : -1;
+            staticResourceCache = new StaticResourceCache(
+                    deploymentConfiguration.getStaticResourceCacheSize(),
+                    compressionThreshold);
+        }
+
+        if (!deploymentConfiguration.isProductionMode()) {
+            if (deploymentConfiguration.getApplicationOrSystemProperty(
+                    SERVLET_PARAMETER_WATCH_THEMES, "true").equals("true")) {
+                scssSourceWatcher = new ScssSourceWatcher(
+                        servletConfig.getServletName(),
+                        this::recompileModifiedThemes);
+            }
+
+            String themes = deploymentConfiguration
+                    .getApplicationOrSystemProperty(
+                            SERVLET_PARAMETER_PRECOMPILE_THEMES, "");
+            for (String theme : themes.split(",")) {
+                if (!theme.trim().isEmpty()) {
+                    precompileTheme(theme.trim());
+                }
+            }
+        }
+
         servletInitialized();
 
         CurrentInstance.clearAll();
@@ -582,28 +711,6 @@ public class VaadinServlet extends HttpServlet implements Constants {
         }
     }
 
-    /**
-     * Writes the response in {@code output} using the contentType given in
-     * {@code contentType} to the provided {@link HttpServletResponse}
-     *
-     * @param response
-     * @param contentType
-     * @param output
-     *            Output to write (UTF-8 encoded)
-     * @throws IOException
-     */
-    private void writeResponse(HttpServletResponse response, String contentType,
-            String output) throws IOException {
-        response.setContentType(contentType);
-        final OutputStream out = response.getOutputStream();
-        // Set the response type
-        final PrintWriter outWriter = new PrintWriter(
-                new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
-        outWriter.print(output);
-        outWriter.flush();
-        outWriter.close();
-    }
-
     /**
      * Gets resource path using different implementations. Required to
      * supporting different servlet container implementations (application
@@ -669,16 +776,27 @@ public class VaadinServlet extends HttpServlet implements Constants {
      * Mutex for preventing to scss compilations to take place simultaneously.
      * This is a workaround needed as the scss compiler currently is not thread
      * safe (#10292).
-     * <p>
-     * In addition, this is also used to protect the cached compilation results.
      */
     private static final Object SCSS_MUTEX = new Object();
 
     /**
-     * Global cache of scss compilation results. This map is protected from
-     * concurrent access by {@link #SCSS_MUTEX}.
+     * The minimum time in milliseconds between checking whether the source
+     * files of a cached scss compilation result have been modified.
      */
-    private final Map<String, ScssCacheEntry> scssCache = new HashMap<String, ScssCacheEntry>();
+    private static final long SCSS_VALIDATION_INTERVAL = 1000;
+
+    /**
+     * Cache of scss compilation results. Reading a valid entry requires no
+     * locking.
+     */
+    private final ConcurrentHashMap<String, ScssCacheEntry> scssCache = new ConcurrentHashMap<String, ScssCacheEntry>();
+
+    /**
+     * Ongoing scss compilations. Requests for a theme that is being compiled
+     * wait for the result of the ongoing compilation instead of starting a
+     * new one.
+     */
+    private final ConcurrentHashMap<String, FutureTask<ScssCacheEntry>> scssCompilations = new ConcurrentHashMap<String, FutureTask<ScssCacheEntry>>();
 
     /**
      * Keeps track of whether a warning about not being able to persist cache
@@ -749,6 +867,15 @@ public class VaadinServlet extends HttpServlet implements Constants {
             HttpServletRequest request, HttpServletResponse response)
             throws IOException, ServletException {
 
+        if (staticResourceCache != null) {
+            StaticResourceCache.Entry entry = staticResourceCache
+                    .get(filename);
+            if (entry != null) {
+                serveCachedStaticResource(filename, entry, request, response);
+                return;
+            }
+        }
+
         final ServletContext sc = getServletContext();
         URL resourceUrl = findResourceURL(filename);
 
@@ -778,17 +905,26 @@ public class VaadinServlet extends HttpServlet implements Constants {
             return;
         }
 
-        String cacheControl = "public, max-age=0, must-revalidate";
-        int resourceCacheTime = getCacheTime(filename);
-        if (resourceCacheTime > 0) {
-            cacheControl = "max-age=" + String.valueOf(resourceCacheTime);
+        if (staticResourceCache != null) {
+            StaticResourceCache.Entry entry = null;
+            try {
+                entry = staticResourceCache.load(filename, resourceUrl,
+                        sc.getMimeType(filename));
+            } catch (IOException e) {
+                getLogger().log(Level.FINE,
+                        "Could not cache resource " + resourceUrl, e);
+            }
+            if (entry != null) {
+                serveCachedStaticResource(filename, entry, request, response);
+                return;
+            }
         }
-        response.setHeader("Cache-Control", cacheControl);
-        response.setDateHeader("Expires",
-                System.currentTimeMillis() + (resourceCacheTime * 1000));
 
-        // Find the modification timestamp
+        setCacheHeaders(filename, response);
+
+        // Find the modification timestamp and length
         long lastModifiedTime = 0;
+        long contentLength = -1;
         URLConnection connection = null;
         try {
             connection = resourceUrl.openConnection();
@@ -798,11 +934,7 @@ public class VaadinServlet extends HttpServlet implements Constants {
             // header).
             lastModifiedTime = lastModifiedTime - lastModifiedTime % 1000;
             response.setDateHeader("Last-Modified", lastModifiedTime);
-
-            if (browserHasNewestVersion(request, lastModifiedTime)) {
-                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                return;
-            }
+            contentLength = connection.getContentLengthLong();
         } catch (Exception e) {
             // Failed to find out last modified timestamp. Continue without it.
             getLogger().log(Level.FINEST,
@@ -825,15 +957,199 @@ public class VaadinServlet extends HttpServlet implements Constants {
             }
         }
 
+        String etag = null;
+        if (lastModifiedTime > 0 && contentLength >= 0) {
+            etag = HttpRangeSupport.createETag(contentLength,
+                    lastModifiedTime);
+            if (allowServePrecompressedResource(request,
+                    resourceUrl.toExternalForm())) {
+                // The precompressed version is equivalent but not identical
+                etag = "W/" + etag;
+            }
+            response.setHeader("ETag", etag);
+        }
+
+        VaadinServletRequest vaadinRequest = new VaadinServletRequest(request,
+                getService());
+        if (HttpRangeSupport.isNotModified(vaadinRequest, etag,
+                lastModifiedTime)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
         // Set type mime type if we can determine it based on the filename
         final String mimetype = sc.getMimeType(filename);
         if (mimetype != null) {
             response.setContentType(mimetype);
         }
 
+        if (contentLength >= 0) {
+            response.setHeader("Accept-Ranges", "bytes");
+            List<ByteRange> ranges = HttpRangeSupport.getRanges(vaadinRequest,
+                    contentLength, etag, lastModifiedTime);
+            if (ranges != null) {
+                writeStaticResourceRanges(response, resourceUrl, mimetype,
+                        contentLength, ranges);
+                return;
+            }
+        }
+
         writeStaticResourceResponse(request, response, resourceUrl);
     }
 
+    private void setCacheHeaders(String filename,
+            HttpServletResponse response) {
+        String cacheControl = "public, max-age=0, must-revalidate";
+        int resourceCacheTime = getCacheTime(filename);
+        if (resourceCacheTime > 0) {
+            cacheControl = "max-age=" + String.valueOf(resourceCacheTime);
+        }
+        response.setHeader("Cache-Control", cacheControl);
+        response.setDateHeader("Expires",
+                System.currentTimeMillis() + (resourceCacheTime * 1000));
+    }
+
+    /**
+     * Serves a resource from the static resource cache.
+     */
+    private void serveCachedStaticResource(String filename,
+            StaticResourceCache.Entry entry, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        setCacheHeaders(filename, response);
+
+        if (entry.getLastModified() > 0) {
+            response.setDateHeader("Last-Modified", entry.getLastModified());
+        }
+
+        if (entry.getContentType() != null) {
+            response.setContentType(entry.getContentType());
+        }
+
+        writeStaticResourceResponse(request, response, entry);
+    }
+
+    /**
+     * Writes part of a static resource for a <code>Range</code> request. Files
+     * are transferred directly from a {@link FileChannel}, other resources are
+     * read from a stream.
+     */
+    private void writeStaticResourceRanges(HttpServletResponse response,
+            URL resourceUrl, String contentType, long contentLength,
+            List<ByteRange> ranges) throws IOException {
+        VaadinServletResponse vaadinResponse = new VaadinServletResponse(
+                response, getService());
+        if (ranges.isEmpty()) {
+            HttpRangeSupport.writeNotSatisfiable(vaadinResponse,
+                    contentLength);
+            return;
+        }
+
+        if ("file".equals(resourceUrl.getProtocol())) {
+            try (FileChannel channel = FileChannel
+                    .open(Paths.get(resourceUrl.toURI()))) {
+                HttpRangeSupport.writeRanges(vaadinResponse, ranges,
+                        contentLength, contentType,
+                        HttpRangeSupport.fromChannel(channel));
+                return;
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // Not a regular file path, read as a stream instead
+            }
+        }
+        try (InputStream is = resourceUrl.openStream()) {
+            HttpRangeSupport.writeRanges(vaadinResponse, ranges, contentLength,
+                    contentType, HttpRangeSupport.fromStream(is));
+        }
+    }
+
+    /**
+     * Writes the contents of the given cached resource in the response. Used
+     * instead of {@link #writeStaticResourceResponse(HttpServletRequest,
+     * HttpServletResponse, URL)} for resources in the static resource cache.
+     * Responds with 304 Not Modified if the browser already has the resource
+     * and serves partial content for <code>Range</code> requests. Can be
+     * overridden to add/modify response headers and similar.
+     *
+     * @since
+     * @param request
+     *            The request for the resource
+     * @param response
+     *            The response
+     * @param entry
+     *            The cached resource to send
+     * @throws IOException
+     */
+    protected void writeStaticResourceResponse(HttpServletRequest request,
+            HttpServletResponse response, StaticResourceCache.Entry entry)
+            throws IOException {
+        byte[] content = entry.getContent();
+        String etag = entry.getETag();
+        boolean gzip = false;
+        if (entry.getGzipContent() != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+            // Ranges are always served from the uncompressed content
+            if (request.getHeader("Range") == null
+                    && acceptsCompressedVariant(request, entry)) {
+                content = entry.getGzipContent();
+                etag = entry.getGzipETag();
+                gzip = true;
+            }
+        }
+        response.setHeader("ETag", etag);
+
+        VaadinServletRequest vaadinRequest = new VaadinServletRequest(request,
+                getService());
+        if (HttpRangeSupport.isNotModified(vaadinRequest, etag,
+                entry.getLastModified())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        } else {
+            response.setHeader("Accept-Ranges", "bytes");
+            List<ByteRange> ranges = HttpRangeSupport.getRanges(vaadinRequest,
+                    content.length, etag, entry.getLastModified());
+            if (ranges != null) {
+                VaadinServletResponse vaadinResponse = new VaadinServletResponse(
+                        response, getService());
+                if (ranges.isEmpty()) {
+                    HttpRangeSupport.writeNotSatisfiable(vaadinResponse,
+                            content.length);
+                } else {
+                    HttpRangeSupport.writeRanges(vaadinResponse, ranges,
+                            content.length, entry.getContentType(),
+                            HttpRangeSupport.fromBytes(content));
+                }
+                return;
+            }
+        }
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
+    }
+
+    private boolean acceptsCompressedVariant(HttpServletRequest request,
+            StaticResourceCache.Entry entry) {
+        if (entry.isGzipPrecompressed()) {
+            return allowServePrecompressedResource(request,
+                    entry.getUrl().toExternalForm());
+        } else {
+            return ResponseCompression
+                    .acceptsGzip(request.getHeader("Accept-Encoding"));
+        }
+    }
+
+    /**
+     * Gets the cache of static resources served from the VAADIN directory.
+     *
+     * @since
+     * @return the static resource cache, or <code>null</code> if static
+     *         resources are not cached
+     */
+    protected StaticResourceCache getStaticResourceCache() {
+        return staticResourceCache;
+    }
+
     /**
      * Calculates the cache lifetime for the given filename in seconds. By
      * default filenames containing ".nocache." return 0, filenames containing
@@ -874,6 +1190,14 @@ public class VaadinServlet extends HttpServlet implements Constants {
     /**
      * Writes the contents of the given resourceUrl in the response. Can be
      * overridden to add/modify response headers and similar.
+     * <p>
+     * If the static resource cache has been enabled using the
+     * {@value #SERVLET_PARAMETER_STATIC_RESOURCE_CACHE_SIZE} parameter,
+     * static resources are served from the cache in production mode when
+     * possible, and this method is then not called. To modify those
+     * responses, override
+     * {@link #writeStaticResourceResponse(HttpServletRequest, HttpServletResponse, StaticResourceCache.Entry)}
+     * as well.
      *
      * @param request
      *            The request for the resource
@@ -1035,37 +1359,222 @@ public class VaadinServlet extends HttpServlet implements Constants {
             return true;
         }
 
-        synchronized (SCSS_MUTEX) {
-            ScssCacheEntry cacheEntry = scssCache.get(scssFilename);
+        ScssCacheEntry cacheEntry = getScssCacheEntry(filename, scssFilename,
+                sc);
+        if (cacheEntry == null) {
+            // compilation did not produce any result, but logged a message
+            return false;
+        }
 
-            if (cacheEntry == null) {
-                try {
-                    cacheEntry = loadPersistedScssCache(scssFilename, sc);
-                } catch (Exception e) {
-                    getLogger().log(Level.WARNING,
-                            "Could not read persisted scss cache", e);
+        // This is for development mode only so instruct the browser to
+        // never cache it
+        response.setHeader("Cache-Control", "no-cache");
+        final String mimetype = getService().getMimeType(filename);
+        writeCompiledCss(request, response, mimetype, cacheEntry);
+
+        return true;
+    }
+
+    /**
+     * Gets the compiled css for a scss file, compiling it if there is no valid
+     * cached result. Only one compilation per scss file is run at a time;
+     * concurrent requests for the same file wait for its result.
+     */
+    private ScssCacheEntry getScssCacheEntry(String filename,
+            String scssFilename, ServletContext sc) throws IOException {
+        ScssCacheEntry cacheEntry = scssCache.get(scssFilename);
+        if (cacheEntry != null && cacheEntry.isStillValidRateLimited()) {
+            return cacheEntry;
+        }
+
+        FutureTask<ScssCacheEntry> compilation = new FutureTask<ScssCacheEntry>(
+                () -> loadOrCompileScss(filename, scssFilename, sc));
+        FutureTask<ScssCacheEntry> ongoing = scssCompilations
+                .putIfAbsent(scssFilename, compilation);
+        if (ongoing == null) {
+            try {
+                compilation.run();
+            } finally {
+                scssCompilations.remove(scssFilename, compilation);
+            }
+            ongoing = compilation;
+        }
+
+        try {
+            return ongoing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting for compilation of "
+                            + scssFilename);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Compiles the <code>styles.scss</code> file of the given theme in the
+     * background, so that the first request for the theme does not have to
+     * wait for the compilation. Does nothing in production mode or if the
+     * theme has no scss file. The themes listed in the
+     * {@value #SERVLET_PARAMETER_PRECOMPILE_THEMES} parameter are
+     * precompiled when the servlet is initialized.
+     *
+     * @since
+     * @param themeName
+     *            the name of the theme
+     * @return a future that is done when the compilation has finished, or
+     *         <code>null</code> if nothing is compiled
+     */
+    protected Future<?> precompileTheme(String themeName) {
+        if (getService().getDeploymentConfiguration().isProductionMode()
+                || themeName.contains("/") || themeName.contains("..")) {
+            return null;
+        }
+        String themeDir = "/" + THEME_DIR_PATH + "/" + themeName;
+        String filename = themeDir + "/styles.css";
+        String scssFilename = themeDir + "/styles.scss";
+        ServletContext sc = getServletContext();
+        return getThemePrecompiler().submit(() -> {
+            try {
+                if (findResourceURL(scssFilename) != null) {
+                    getScssCacheEntry(filename, scssFilename, sc);
                 }
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING,
+                        "Could not precompile theme " + themeName, e);
+            }
+        });
+    }
+
+    private synchronized ExecutorService getThemePrecompiler() {
+        if (themePrecompiler == null) {
+            // Compilation may take long, so it gets its own daemon thread
+            final String threadName = "Vaadin theme precompiler "
+                    + getServletName();
+            themePrecompiler = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return themePrecompiler;
+    }
+
+    private ScssCacheEntry loadOrCompileScss(String filename,
+            String scssFilename, ServletContext sc) throws IOException {
+        ScssCacheEntry cacheEntry = scssCache.get(scssFilename);
+
+        if (cacheEntry == null) {
+            try {
+                cacheEntry = loadPersistedScssCache(scssFilename, sc);
+            } catch (Exception e) {
+                getLogger().log(Level.WARNING,
+                        "Could not read persisted scss cache", e);
             }
+        }
 
-            if (cacheEntry == null || !cacheEntry.isStillValid()) {
+        if (cacheEntry == null || !cacheEntry.isStillValid()) {
+            synchronized (SCSS_MUTEX) {
                 cacheEntry = compileScssOnTheFly(filename, scssFilename, sc);
-                persistCacheEntry(cacheEntry);
+                if (cacheEntry != null) {
+                    persistCacheEntry(cacheEntry);
+                }
             }
+        }
+
+        if (cacheEntry == null) {
+            scssCache.remove(scssFilename);
+        } else {
+            watchSources(scssFilename, cacheEntry);
             scssCache.put(scssFilename, cacheEntry);
+        }
+        return cacheEntry;
+    }
+
+    private void watchSources(String scssFilename, ScssCacheEntry cacheEntry) {
+        if (scssSourceWatcher != null) {
+            List<File> sourceFiles = cacheEntry.getSourceFiles();
+            /*
+             * Modifications made before the sources were registered are not
+             * reported by the watcher, so check the timestamps once more. If
+             * they have changed, the entry is left to the timestamp checks.
+             */
+            cacheEntry.setWatched(sourceFiles != null
+                    && scssSourceWatcher.watch(scssFilename, sourceFiles)
+                    && cacheEntry.isStillValid());
+        }
+    }
 
+    /**
+     * Recompiles themes with modified sources in the background. The cached
+     * css is replaced only when the new compilation is ready, so requests
+     * are served the previous css in the meantime instead of waiting for the
+     * compiler. If the compilation fails, the next request for the theme
+     * checks the sources and compiles it again, reporting the failure.
+     */
+    private void recompileModifiedThemes(Set<String> scssFilenames) {
+        ServletContext sc = getServletContext();
+        for (String scssFilename : scssFilenames) {
+            ScssCacheEntry previous = scssCache.get(scssFilename);
+            if (previous == null) {
+                continue;
+            }
+            String filename = scssFilename.substring(0,
+                    scssFilename.length() - ".scss".length()) + ".css";
+            ScssCacheEntry cacheEntry = null;
+            try {
+                synchronized (SCSS_MUTEX) {
+                    cacheEntry = compileScssOnTheFly(filename, scssFilename,
+                            sc);
+                    if (cacheEntry != null) {
+                        persistCacheEntry(cacheEntry);
+                    }
+                }
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING,
+                        "Could not recompile " + scssFilename, e);
+            }
             if (cacheEntry == null) {
-                // compilation did not produce any result, but logged a message
-                return false;
+                previous.setWatched(false);
+            } else {
+                // Also watches any new imports
+                watchSources(scssFilename, cacheEntry);
+                scssCache.replace(scssFilename, previous, cacheEntry);
             }
+        }
+    }
 
-            // This is for development mode only so instruct the browser to
-            // never cache it
-            response.setHeader("Cache-Control", "no-cache");
-            final String mimetype = getService().getMimeType(filename);
-            writeResponse(response, mimetype, cacheEntry.getCss());
-
-            return true;
+    /**
+     * Writes a compiled theme, gzip compressed if static resource compression
+     * is enabled and the client accepts it.
+     */
+    private void writeCompiledCss(HttpServletRequest request,
+            HttpServletResponse response, String contentType,
+            ScssCacheEntry cacheEntry) throws IOException {
+        response.setContentType(contentType);
+        byte[] content = cacheEntry.getCssBytes();
+        DeploymentConfiguration configuration = getService()
+                .getDeploymentConfiguration();
+        if (configuration.isStaticResourceCompressionEnabled()) {
+            response.setHeader("Vary", "Accept-Encoding");
+            if (content.length >= configuration.getCompressionThreshold()
+                    && ResponseCompression.acceptsGzip(
+                            request.getHeader("Accept-Encoding"))) {
+                response.setHeader("Content-Encoding", "gzip");
+                content = cacheEntry.getGzipCss();
+            }
         }
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
     }
 
     private ScssCacheEntry loadPersistedScssCache(String scssFilename,
@@ -1093,6 +1602,7 @@ public class VaadinServlet extends HttpServlet implements Constants {
 
     private ScssCacheEntry compileScssOnTheFly(String filename,
             String scssFilename, ServletContext sc) throws IOException {
+        long compileStart = System.currentTimeMillis();
         String realFilename = sc.getRealPath(scssFilename);
         ScssStylesheet scss = ScssStylesheet.get(realFilename);
         if (scss == null) {
@@ -1122,7 +1632,7 @@ public class VaadinServlet extends HttpServlet implements Constants {
         }
 
         return new ScssCacheEntry(realFilename, scss.printState(),
-                scss.getSourceUris());
+                scss.getSourceUris(), compileStart);
     }
 
     /**
@@ -1186,48 +1696,6 @@ public class VaadinServlet extends HttpServlet implements Constants {
         }
     }
 
-    /**
-     * Checks if the browser has an up to date cached version of requested
-     * resource. Currently the check is performed using the "If-Modified-Since"
-     * header. Could be expanded if needed.
-     *
-     * @param request
-     *            The HttpServletRequest from the browser.
-     * @param resourceLastModifiedTimestamp
-     *            The timestamp when the resource was last modified. 0 if the
-     *            last modification time is unknown.
-     * @return true if the If-Modified-Since header tells the cached version in
-     *         the browser is up to date, false otherwise
-     */
-    private boolean browserHasNewestVersion(HttpServletRequest request,
-            long resourceLastModifiedTimestamp) {
-        if (resourceLastModifiedTimestamp < 1) {
-            // We do not know when it was modified so the browser cannot have an
-            // up-to-date version
-            return false;
-        }
-        /*
-         * The browser can request the resource conditionally using an
-         * If-Modified-Since header. Check this against the last modification
-         * time.
-         */
-        try {
-            // If-Modified-Since represents the timestamp of the version cached
-            // in the browser
-            long headerIfModifiedSince = request
-                    .getDateHeader("If-Modified-Since");
-
-            if (headerIfModifiedSince >= resourceLastModifiedTimestamp) {
-                // Browser has this an up-to-date version of the resource
-                return true;
-            }
-        } catch (Exception e) {
-            // Failed to parse header. Fail silently - the browser does not have
-            // an up-to-date version in its cache.
-        }
-        return false;
-    }
-
     /**
      *
      * @author Vaadin Ltd
@@ -1364,6 +1832,15 @@ public class VaadinServlet extends HttpServlet implements Constants {
     @Override
     public void destroy() {
         super.destroy();
+        if (scssSourceWatcher != null) {
+            scssSourceWatcher.close();
+        }
+        synchronized (this) {
+            if (themePrecompiler != null) {
+                themePrecompiler.shutdownNow();
+                themePrecompiler = null;
+            }
+        }
         getService().destroy();
     }
 
@@ -37,6 +37,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -268,6 +269,13 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
      */
     private transient ConcurrentLinkedQueue<FutureAccess> pendingAccessQueue = new ConcurrentLinkedQueue<FutureAccess>();
 
+    /*
+     * State for coalescing the purges of the pending access queue, see
+     * VaadinService.ensureAccessQueuePurged(VaadinSession)
+     */
+    private transient volatile long lastAccessQueuePurge;
+    private transient AtomicBoolean accessQueuePurgeScheduled = new AtomicBoolean();
+
     /**
      * Creates a new VaadinSession tied to a VaadinService.
      *
@@ -1405,6 +1413,40 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         return pendingAccessQueue;
     }
 
+    /**
+     * Gets the time the pending access queue was last purged.
+     *
+     * @return the time as given by {@link System#nanoTime()}, or 0 if the
+     *         queue has not been purged
+     */
+    long getLastAccessQueuePurge() {
+        return lastAccessQueuePurge;
+    }
+
+    /**
+     * Sets the time the pending access queue was last purged.
+     *
+     * @param lastAccessQueuePurge
+     *            the time as given by {@link System#nanoTime()}
+     */
+    void setLastAccessQueuePurge(long lastAccessQueuePurge) {
+        this.lastAccessQueuePurge = lastAccessQueuePurge;
+    }
+
+    /**
+     * Marks that a delayed purge of the pending access queue has been
+     * scheduled or has started.
+     *
+     * @param scheduled
+     *            <code>true</code> when scheduling a purge,
+     *            <code>false</code> when the scheduled purge starts
+     * @return <code>true</code> if the state was changed, <code>false</code>
+     *         if it already had the given value
+     */
+    boolean setAccessQueuePurgeScheduled(boolean scheduled) {
+        return accessQueuePurgeScheduled.compareAndSet(!scheduled, scheduled);
+    }
+
     /**
      * Gets the CSRF token (aka double submit cookie) that is used to protect
      * against Cross Site Request Forgery attacks.
@@ -1427,6 +1469,7 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         try {
             stream.defaultReadObject();
             pendingAccessQueue = new ConcurrentLinkedQueue<FutureAccess>();
+            accessQueuePurgeScheduled = new AtomicBoolean();
         } finally {
             CurrentInstance.restoreInstances(old);
         }
@@ -35,8 +35,13 @@ import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.AtmosphereResource.TRANSPORT;
 import org.atmosphere.util.Version;
 
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.metrics.RequestMetrics;
+import com.vaadin.server.metrics.RequestMetrics.Measurement;
+import com.vaadin.server.metrics.RequestMetrics.Phase;
 import com.vaadin.shared.communication.PushConstants;
 import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
 
 /**
  * A {@link PushConnection} implementation using the Atmosphere push support
@@ -137,6 +142,13 @@ public class AtmospherePushConnection implements PushConnection {
     private transient FragmentedMessage incomingMessage;
     private transient Future<Object> outgoingMessage;
 
+    /**
+     * The time of the latest push, as given by {@link System#nanoTime()}, or 0
+     * if nothing has been pushed
+     */
+    private transient long lastPushTime;
+    private transient boolean pushScheduled;
+
     public AtmospherePushConnection(UI ui) {
         this.ui = ui;
     }
@@ -149,7 +161,12 @@ public class AtmospherePushConnection implements PushConnection {
     /**
      * Pushes pending state changes and client RPC calls to the client. If
      * {@code isConnected()} is false, defers the push until a connection is
-     * established.
+     * established. If push coalescing is enabled and the previous push was
+     * less than the coalescing interval ago, an asynchronous push is delayed
+     * until the interval has passed and all changes made in the meantime are
+     * sent in the same message.
+     *
+     * @see com.vaadin.server.DeploymentConfiguration#getPushCoalescingInterval()
      *
      * @param async
      *            True if this push asynchronously originates from the server,
@@ -162,17 +179,71 @@ public class AtmospherePushConnection implements PushConnection {
             } else {
                 state = State.RESPONSE_PENDING;
             }
+        } else if (async && isPushDelayed()) {
+            // Changes are sent by the scheduled push
         } else {
             try {
                 Writer writer = new StringWriter();
                 new UidlWriter().write(getUI(), writer, async);
+                Measurement measurement = RequestMetrics
+                        .start(getUI().getSession().getService());
                 sendMessage("for(;;);[{" + writer.toString() + "}]");
+                Measurement.end(measurement, Phase.PUSH_SEND, null);
+                lastPushTime = System.nanoTime();
             } catch (Exception e) {
                 throw new RuntimeException("Push failed", e);
             }
         }
     }
 
+    /**
+     * Checks whether an asynchronous push should be delayed because of push
+     * coalescing, and schedules a push at the end of the coalescing interval
+     * if it should.
+     */
+    private boolean isPushDelayed() {
+        if (lastPushTime == 0) {
+            return false;
+        }
+        VaadinService service = getUI().getSession().getService();
+        int interval = service.getDeploymentConfiguration()
+                .getPushCoalescingInterval();
+        if (interval <= 0) {
+            return false;
+        }
+        long delay = lastPushTime + TimeUnit.MILLISECONDS.toNanos(interval)
+                - System.nanoTime();
+        if (delay <= 0) {
+            return false;
+        }
+        if (!pushScheduled) {
+            pushScheduled = true;
+            service.getScheduledExecutor().schedule(
+                    () -> service.getBackgroundExecutor()
+                            .execute(this::pushScheduled),
+                    delay, TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    private void pushScheduled() {
+        final UI ui = getUI();
+        /*
+         * Push directly under the session lock instead of enqueueing an access
+         * task, which could itself be delayed by access task coalescing.
+         */
+        try {
+            ui.accessSynchronously(() -> {
+                pushScheduled = false;
+                if (ui.getConnectorTracker().hasDirtyConnectors()) {
+                    push(true);
+                }
+            });
+        } catch (UIDetachedException e) {
+            // Nothing to push to
+        }
+    }
+
     /**
      * Sends the given message to the current client. Cannot be called if
      * {@isConnected()} is false.
@@ -19,15 +19,20 @@ package com.vaadin.server.communication;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.vaadin.server.AbstractClientConnector;
 import com.vaadin.server.ClientConnector;
-import com.vaadin.server.LegacyCommunicationManager;
 import com.vaadin.server.PaintException;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinService;
+import com.vaadin.shared.ApplicationConstants;
+import com.vaadin.ui.ConnectorTracker;
 import com.vaadin.ui.UI;
 
 import elemental.json.Json;
@@ -47,6 +52,12 @@ public class ConnectorHierarchyWriter implements Serializable {
     /**
      * Writes a JSON object containing the connector hierarchy (parent-child
      * mappings) of the dirty connectors in the given UI.
+     * <p>
+     * The children of a connector are only written if they have changed
+     * since they were last sent to the client. If only a few children have
+     * been added, removed or moved, the changes are not written but returned
+     * as a delta to be sent in the
+     * {@link ApplicationConstants#HIERARCHY_DELTA} entry instead.
      *
      * @param ui
      *            The {@link UI} whose hierarchy to write.
@@ -54,53 +65,214 @@ public class ConnectorHierarchyWriter implements Serializable {
      *            The {@link Writer} used to write the JSON.
      * @param stateUpdateConnectors
      *            connector ids with state changes
+     * @return a JSON object containing the hierarchy deltas of the connectors
+     *         not included in the written hierarchy, not <code>null</code>
      * @throws IOException
      *             If the serialization fails.
      */
-    public void write(UI ui, Writer writer, Set<String> stateUpdateConnectors)
-            throws IOException {
+    public JsonObject write(UI ui, Writer writer,
+            Set<String> stateUpdateConnectors) throws IOException {
 
-        Collection<ClientConnector> dirtyVisibleConnectors = ui
-                .getConnectorTracker().getDirtyVisibleConnectors();
+        ConnectorTracker connectorTracker = ui.getConnectorTracker();
+        Collection<ClientConnector> dirtyVisibleConnectors = connectorTracker
+                .getDirtyVisibleConnectors();
 
         JsonObject hierarchyInfo = Json.createObject();
+        JsonObject hierarchyDeltas = Json.createObject();
         for (ClientConnector connector : dirtyVisibleConnectors) {
             String connectorId = connector.getConnectorId();
-            JsonArray children = Json.createArray();
+            List<String> childIds = new ArrayList<String>();
 
             for (ClientConnector child : AbstractClientConnector
                     .getAllChildrenIterable(connector)) {
-                if (LegacyCommunicationManager
-                        .isConnectorVisibleToClient(child)) {
-                    children.set(children.length(), child.getConnectorId());
+                if (connectorTracker.isConnectorVisibleToClient(child)) {
+                    childIds.add(child.getConnectorId());
                 }
             }
 
+            List<String> sentChildIds = connectorTracker
+                    .getSentChildIds(connector);
+            connectorTracker.setSentChildIds(connector, childIds);
+
             // Omit for leaf nodes with state changes
-            if (children.length() > 0
-                    || !stateUpdateConnectors.contains(connectorId)) {
-                try {
-                    hierarchyInfo.put(connectorId, children);
-                } catch (JsonException e) {
-                    throw new PaintException(
-                            "Failed to send hierarchy information about "
-                                    + connectorId + " to the client: "
-                                    + e.getMessage(),
-                            e);
+            boolean implicitlyEmpty = childIds.isEmpty()
+                    && stateUpdateConnectors.contains(connectorId);
+            try {
+                if (sentChildIds == null) {
+                    if (!implicitlyEmpty) {
+                        hierarchyInfo.put(connectorId, toJsonArray(childIds));
+                    }
+                    continue;
+                }
+
+                JsonObject delta = createDelta(sentChildIds, childIds);
+                if (delta == null) {
+                    // Unchanged, but the client assumes that a connector with
+                    // state changes and no hierarchy entry has no children
+                    if (!implicitlyEmpty
+                            && stateUpdateConnectors.contains(connectorId)) {
+                        hierarchyDeltas.put(connectorId, Json.createObject());
+                    }
+                } else if (implicitlyEmpty) {
+                    continue;
+                } else if (getDeltaSize(delta) < childIds.size()) {
+                    hierarchyDeltas.put(connectorId, delta);
+                } else {
+                    hierarchyInfo.put(connectorId, toJsonArray(childIds));
                 }
+            } catch (JsonException e) {
+                throw new PaintException(
+                        "Failed to send hierarchy information about "
+                                + connectorId + " to the client: "
+                                + e.getMessage(),
+                        e);
             }
         }
         // Dummy assert just for conditionally storing away data that will be
         // used by the real assert later on
-        assert storeSentHierarchy(hierarchyInfo, stateUpdateConnectors);
+        assert storeSentHierarchy(hierarchyInfo, hierarchyDeltas,
+                stateUpdateConnectors);
 
         writer.write(JsonUtil.stringify(hierarchyInfo));
+        return hierarchyDeltas;
+    }
+
+    /**
+     * Creates a delta that transforms the old list of child ids to the new
+     * one. Children that keep their relative order are left in place and the
+     * other children still present are moved, so that the number of moves is
+     * minimal.
+     *
+     * @param oldIds
+     *            the child ids known by the client
+     * @param newIds
+     *            the current child ids
+     * @return the delta, or <code>null</code> if the lists are equal
+     */
+    static JsonObject createDelta(List<String> oldIds, List<String> newIds) {
+        if (oldIds.equals(newIds)) {
+            return null;
+        }
+
+        Map<String, Integer> newIndices = new HashMap<String, Integer>();
+        for (int i = 0; i < newIds.size(); i++) {
+            newIndices.put(newIds.get(i), i);
+        }
+
+        JsonArray removed = Json.createArray();
+        int[] keptIndices = new int[oldIds.size()];
+        int keptCount = 0;
+        for (String id : oldIds) {
+            Integer newIndex = newIndices.get(id);
+            if (newIndex == null) {
+                removed.set(removed.length(), id);
+            } else {
+                keptIndices[keptCount++] = newIndex;
+            }
+        }
+
+        boolean[] inPlace = new boolean[newIds.size()];
+        for (int index : longestIncreasingSubsequence(keptIndices,
+                keptCount)) {
+            inPlace[index] = true;
+        }
+
+        JsonArray inserted = Json.createArray();
+        JsonArray indices = Json.createArray();
+        for (int i = 0; i < keptCount; i++) {
+            if (!inPlace[keptIndices[i]]) {
+                // Moved
+                removed.set(removed.length(), newIds.get(keptIndices[i]));
+            }
+        }
+        for (int i = 0; i < newIds.size(); i++) {
+            if (!inPlace[i]) {
+                inserted.set(inserted.length(), newIds.get(i));
+                indices.set(indices.length(), i);
+            }
+        }
+
+        JsonObject delta = Json.createObject();
+        if (removed.length() > 0) {
+            delta.put(ApplicationConstants.HIERARCHY_DELTA_REMOVED, removed);
+        }
+        if (inserted.length() > 0) {
+            delta.put(ApplicationConstants.HIERARCHY_DELTA_INSERTED, inserted);
+            delta.put(ApplicationConstants.HIERARCHY_DELTA_INDICES, indices);
+        }
+        return delta;
+    }
+
+    /**
+     * Finds a longest strictly increasing subsequence of the first
+     * {@code length} values.
+     *
+     * @return the values in the subsequence
+     */
+    private static int[] longestIncreasingSubsequence(int[] values,
+            int length) {
+        // tails[k] is the position of the smallest tail of an increasing
+        // subsequence of length k + 1
+        int[] tails = new int[length];
+        int[] predecessors = new int[length];
+        int subsequenceLength = 0;
+        for (int i = 0; i < length; i++) {
+            int low = 0;
+            int high = subsequenceLength;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == subsequenceLength) {
+                subsequenceLength++;
+            }
+        }
+
+        int[] result = new int[subsequenceLength];
+        int position = subsequenceLength > 0 ? tails[subsequenceLength - 1]
+                : -1;
+        for (int k = subsequenceLength - 1; k >= 0; k--) {
+            result[k] = values[position];
+            position = predecessors[position];
+        }
+        return result;
+    }
+
+    private static int getDeltaSize(JsonObject delta) {
+        int size = 0;
+        for (String key : delta.keys()) {
+            size += delta.getArray(key).length();
+        }
+        return size;
+    }
+
+    private static JsonArray toJsonArray(List<String> ids) {
+        JsonArray array = Json.createArray();
+        for (String id : ids) {
+            array.set(array.length(), id);
+        }
+        return array;
     }
 
     private boolean storeSentHierarchy(JsonObject hierarchyInfo,
-            Set<String> stateUpdateConnectors) {
+            JsonObject hierarchyDeltas, Set<String> stateUpdateConnectors) {
         VaadinRequest request = VaadinService.getCurrentRequest();
         if (request != null) {
+            if (hierarchyDeltas.keys().length > 0) {
+                // Only the keys are used for checking removals
+                JsonObject sentHierarchy = Json.parse(hierarchyInfo.toJson());
+                for (String connectorId : hierarchyDeltas.keys()) {
+                    sentHierarchy.put(connectorId,
+                            hierarchyDeltas.getObject(connectorId));
+                }
+                hierarchyInfo = sentHierarchy;
+            }
             request.setAttribute(
                     ConnectorHierarchyWriter.class.getName() + ".hierarchyInfo",
                     hierarchyInfo);
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.communication;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonException;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+
+/**
+ * Pull parser reading JSON incrementally from a {@link Reader}. Objects and
+ * arrays can be traversed one member at a time, so that only the values that
+ * are currently processed need to be kept in memory.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+class JsonStreamReader {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The number grammar of RFC 7159, which is stricter than what
+     * {@link Double#parseDouble(String)} accepts.
+     */
+    private static final Pattern NUMBER = Pattern
+            .compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * For each open object or array, whether no member has been read yet.
+     */
+    private final Deque<Boolean> first = new ArrayDeque<Boolean>();
+
+    /**
+     * Creates a new reader.
+     *
+     * @param reader
+     *            the reader to read JSON from, not <code>null</code>
+     */
+    public JsonStreamReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Checks whether there is anything but whitespace left in the input.
+     *
+     * @return <code>true</code> if there is more input, <code>false</code>
+     *         if the end of the input has been reached
+     * @throws IOException
+     *             if reading fails
+     */
+    public boolean hasMoreInput() throws IOException {
+        return peekNonWhitespace() != -1;
+    }
+
+    /**
+     * Consumes the start of a JSON object.
+     *
+     * @throws IOException
+     *             if reading fails
+     */
+    public void beginObject() throws IOException {
+        expect('{');
+        first.push(Boolean.TRUE);
+    }
+
+    /**
+     * Reads the name of the next member of the current object.
+     *
+     * @return the name of the next member, or <code>null</code> if the end of
+     *         the object has been reached
+     * @throws IOException
+     *             if reading fails
+     */
+    public String nextName() throws IOException {
+        if (!hasNext('}')) {
+            return null;
+        }
+        String name = readString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Consumes the end of the current object.
+     *
+     * @throws IOException
+     *             if reading fails
+     */
+    public void endObject() throws IOException {
+        expect('}');
+        first.pop();
+    }
+
+    /**
+     * Consumes the start of a JSON array.
+     *
+     * @throws IOException
+     *             if reading fails
+     */
+    public void beginArray() throws IOException {
+        expect('[');
+        first.push(Boolean.TRUE);
+    }
+
+    /**
+     * Checks whether the current array has more elements and consumes the
+     * separator before the next element. This should be called exactly once
+     * before reading each element.
+     *
+     * @return <code>true</code> if there is another element to read,
+     *         <code>false</code> if the end of the array has been reached
+     * @throws IOException
+     *             if reading fails
+     */
+    public boolean hasNextElement() throws IOException {
+        return hasNext(']');
+    }
+
+    /**
+     * Consumes the end of the current array.
+     *
+     * @throws IOException
+     *             if reading fails
+     */
+    public void endArray() throws IOException {
+        expect(']');
+        first.pop();
+    }
+
+    /**
+     * Reads a JSON string.
+     *
+     * @return the string value
+     * @throws IOException
+     *             if reading fails
+     */
+    public String readString() throws IOException {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return sb.toString();
+            } else if (c == '\\') {
+                sb.append(readEscaped());
+            } else if (c == -1) {
+                throw new JsonException("Unterminated string");
+            } else {
+                sb.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Reads the next value, including any nested values, into memory.
+     *
+     * @return the value
+     * @throws IOException
+     *             if reading fails
+     */
+    public JsonValue readValue() throws IOException {
+        int c = peekNonWhitespace();
+        switch (c) {
+        case '{':
+            JsonObject object = Json.createObject();
+            beginObject();
+            String name;
+            while ((name = nextName()) != null) {
+                object.put(name, readValue());
+            }
+            endObject();
+            return object;
+        case '[':
+            JsonArray array = Json.createArray();
+            beginArray();
+            while (hasNextElement()) {
+                array.set(array.length(), readValue());
+            }
+            endArray();
+            return array;
+        case '"':
+            return Json.create(readString());
+        default:
+            return readLiteral();
+        }
+    }
+
+    /**
+     * Skips the next value, including any nested values, without keeping it
+     * in memory.
+     *
+     * @throws IOException
+     *             if reading fails
+     */
+    public void skipValue() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '{') {
+            beginObject();
+            while (nextName() != null) {
+                skipValue();
+            }
+            endObject();
+        } else if (c == '[') {
+            beginArray();
+            while (hasNextElement()) {
+                skipValue();
+            }
+            endArray();
+        } else if (c == '"') {
+            expect('"');
+            while (true) {
+                c = read();
+                if (c == '"') {
+                    return;
+                } else if (c == '\\') {
+                    readEscaped();
+                } else if (c == -1) {
+                    throw new JsonException("Unterminated string");
+                }
+            }
+        } else {
+            readLiteral();
+        }
+    }
+
+    private boolean hasNext(char end) throws IOException {
+        int c = peekNonWhitespace();
+        if (c == end) {
+            return false;
+        }
+        if (first.peek().booleanValue()) {
+            first.pop();
+            first.push(Boolean.FALSE);
+        } else {
+            expect(',');
+        }
+        return true;
+    }
+
+    private JsonValue readLiteral() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = peek();
+            if (c == -1 || c == ',' || c == ']' || c == '}'
+                    || Character.isWhitespace(c)) {
+                break;
+            }
+            sb.append((char) read());
+        }
+        String literal = sb.toString();
+        if ("true".equals(literal)) {
+            return Json.create(true);
+        } else if ("false".equals(literal)) {
+            return Json.create(false);
+        } else if ("null".equals(literal)) {
+            return Json.createNull();
+        }
+        if (!NUMBER.matcher(literal).matches()) {
+            throw new JsonException("Invalid JSON literal: " + literal);
+        }
+        return Json.create(Double.parseDouble(literal));
+    }
+
+    private char readEscaped() throws IOException {
+        int c = read();
+        switch (c) {
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(read(), 16);
+                if (digit == -1) {
+                    throw new JsonException("Invalid unicode escape");
+                }
+                code = code * 16 + digit;
+            }
+            return (char) code;
+        case '"':
+        case '\\':
+        case '/':
+            return (char) c;
+        default:
+            throw new JsonException("Invalid escape character: " + c);
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = peekNonWhitespace();
+        if (c != expected) {
+            throw new JsonException("Expected '" + expected + "' but found "
+                    + (c == -1 ? "end of input" : "'" + (char) c + "'"));
+        }
+        position++;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        int c = peek();
+        while (c != -1 && Character.isWhitespace(c)) {
+            position++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+}
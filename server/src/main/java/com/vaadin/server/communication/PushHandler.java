@@ -40,6 +40,7 @@ import com.vaadin.server.VaadinService;
 import com.vaadin.server.VaadinServletRequest;
 import com.vaadin.server.VaadinServletService;
 import com.vaadin.server.VaadinSession;
+import com.vaadin.server.metrics.SessionLockMonitor;
 import com.vaadin.shared.ApplicationConstants;
 import com.vaadin.shared.communication.PushMode;
 import com.vaadin.ui.UI;
@@ -200,6 +201,8 @@ public class PushHandler {
         VaadinServletRequest vaadinRequest = new VaadinServletRequest(req,
                 service);
         VaadinSession session = null;
+        String previousOperation = SessionLockMonitor
+                .setCurrentOperation(PushHandler.class.getSimpleName());
 
         if (websocket) {
             // For any HTTP request we have already started the request in the
@@ -281,6 +284,7 @@ public class PushHandler {
 
                 // can't call ErrorHandler, we don't have a lock
             }
+            SessionLockMonitor.setCurrentOperation(previousOperation);
         }
     }
 
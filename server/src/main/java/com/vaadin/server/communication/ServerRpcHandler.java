@@ -30,6 +30,7 @@ import java.util.logging.Logger;
 
 import com.vaadin.server.ClientConnector;
 import com.vaadin.server.Constants;
+import com.vaadin.server.DeploymentConfiguration;
 import com.vaadin.server.JsonCodec;
 import com.vaadin.server.LegacyCommunicationManager;
 import com.vaadin.server.LegacyCommunicationManager.InvalidUIDLSecurityKeyException;
@@ -39,6 +40,9 @@ import com.vaadin.server.ServerRpcMethodInvocation;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinService;
 import com.vaadin.server.VariableOwner;
+import com.vaadin.server.metrics.RequestMetrics;
+import com.vaadin.server.metrics.RequestMetrics.Measurement;
+import com.vaadin.server.metrics.RequestMetrics.Phase;
 import com.vaadin.shared.ApplicationConstants;
 import com.vaadin.shared.Connector;
 import com.vaadin.shared.Version;
@@ -50,6 +54,7 @@ import com.vaadin.ui.Component;
 import com.vaadin.ui.ConnectorTracker;
 import com.vaadin.ui.UI;
 
+import elemental.json.Json;
 import elemental.json.JsonArray;
 import elemental.json.JsonException;
 import elemental.json.JsonObject;
@@ -81,9 +86,25 @@ public class ServerRpcHandler implements Serializable {
         private final boolean resynchronize;
         private final int clientToServerMessageId;
         private String widgetsetVersion = null;
+        private final boolean compactUidl;
 
         public RpcRequest(String jsonString, VaadinRequest request) {
-            json = JsonUtil.parse(jsonString);
+            this((JsonObject) JsonUtil.parse(jsonString), request);
+        }
+
+        /**
+         * Creates a new RPC request from a JSON object received from the
+         * client.
+         *
+         * @since
+         * @param json
+         *            the JSON object received from the client, not
+         *            <code>null</code>
+         * @param request
+         *            the request the JSON was received in
+         */
+        public RpcRequest(JsonObject json, VaadinRequest request) {
+            this.json = json;
 
             JsonValue token = json.get(ApplicationConstants.CSRF_TOKEN);
             if (token == null) {
@@ -115,6 +136,9 @@ public class ServerRpcHandler implements Serializable {
                         .getString(ApplicationConstants.WIDGETSET_VERSION_ID);
             }
 
+            compactUidl = json.hasKey(ApplicationConstants.COMPACT_UIDL_ID)
+                    && json.getBoolean(ApplicationConstants.COMPACT_UIDL_ID);
+
             if (json.hasKey(ApplicationConstants.CLIENT_TO_SERVER_ID)) {
                 clientToServerMessageId = (int) json
                         .getNumber(ApplicationConstants.CLIENT_TO_SERVER_ID);
@@ -139,7 +163,8 @@ public class ServerRpcHandler implements Serializable {
          * Gets the data to recreate the RPC as requested by the client side.
          *
          * @return the data describing which RPC should be made, and all their
-         *         data
+         *         data, or <code>null</code> if the invocations were not part
+         *         of the JSON this request was created from
          */
         public JsonArray getRpcInvocationsData() {
             return invocations;
@@ -198,6 +223,17 @@ public class ServerRpcHandler implements Serializable {
         public String getWidgetsetVersion() {
             return widgetsetVersion;
         }
+
+        /**
+         * Checks whether the client requested compact UIDL messages.
+         *
+         * @since
+         * @return <code>true</code> if the client supports compact UIDL
+         *         messages; <code>false</code> otherwise
+         */
+        public boolean isCompactUidl() {
+            return compactUidl;
+        }
     }
 
     private static final int MAX_BUFFER_SIZE = 64 * 1024;
@@ -221,15 +257,105 @@ public class ServerRpcHandler implements Serializable {
             throws IOException, InvalidUIDLSecurityKeyException {
         ui.getSession().setLastRequestTimestamp(System.currentTimeMillis());
 
-        String changeMessage = getMessage(reader);
-
-        if (changeMessage == null || changeMessage.equals("")) {
+        JsonStreamReader messageReader = new JsonStreamReader(reader);
+        if (!messageReader.hasMoreInput()) {
             // The client sometimes sends empty messages, this is probably a bug
             return;
         }
 
-        RpcRequest rpcRequest = new RpcRequest(changeMessage, request);
+        /*
+         * The message is read one member at a time. Clients send the
+         * invocations last, so the security and message id checks can be done
+         * before reaching them, and each invocation can then be decoded as
+         * soon as it has been read instead of keeping the whole message in
+         * memory. If the checks cannot be done before the invocations, they
+         * are read into memory and handled after the whole message.
+         */
+        JsonObject json = Json.createObject();
+        RpcRequest rpcRequest = null;
+        boolean accepted = false;
+        List<MethodInvocation> invocations = null;
+
+        messageReader.beginObject();
+        String name;
+        while ((name = messageReader.nextName()) != null) {
+            if (ApplicationConstants.RPC_INVOCATIONS.equals(name)
+                    && rpcRequest == null && isRequestComplete(json, ui)) {
+                rpcRequest = new RpcRequest(json, request);
+                accepted = acceptRequest(ui, rpcRequest);
+                if (accepted) {
+                    Measurement measurement = RequestMetrics
+                            .start(ui.getSession().getService());
+                    invocations = readInvocations(messageReader,
+                            ui.getConnectorTracker(), rpcRequest.getSyncId());
+                    Measurement.end(measurement, Phase.RPC_DECODE, null);
+                } else {
+                    messageReader.skipValue();
+                }
+            } else {
+                json.put(name, messageReader.readValue());
+            }
+        }
+        messageReader.endObject();
+        if (messageReader.hasMoreInput()) {
+            throw new JsonException("Unexpected input after the message");
+        }
+
+        if (rpcRequest == null) {
+            rpcRequest = new RpcRequest(json, request);
+            accepted = acceptRequest(ui, rpcRequest);
+            if (accepted) {
+                handleInvocations(ui, rpcRequest.getSyncId(),
+                        rpcRequest.getRpcInvocationsData());
+            }
+        } else {
+            if (accepted) {
+                handleInvocations(ui, invocations);
+            }
+            // Include any members after the invocations
+            rpcRequest = new RpcRequest(json, request);
+        }
+
+        ui.getConnectorTracker()
+                .cleanConcurrentlyRemovedConnectorIds(rpcRequest.getSyncId());
+
+        if (rpcRequest.isResynchronize()) {
+            ui.getSession().getCommunicationManager().repaintAll(ui);
+        }
+
+    }
 
+    /**
+     * Checks whether the members of a message read so far contain everything
+     * needed to validate the request.
+     */
+    private boolean isRequestComplete(JsonObject json, UI ui) {
+        if (!json.hasKey(ApplicationConstants.CLIENT_TO_SERVER_ID)) {
+            return false;
+        }
+        DeploymentConfiguration configuration = ui.getSession().getService()
+                .getDeploymentConfiguration();
+        if (configuration.isSyncIdCheckEnabled()
+                && !json.hasKey(ApplicationConstants.SERVER_SYNC_ID)) {
+            return false;
+        }
+        // The client omits the token if protection is disabled
+        return json.hasKey(ApplicationConstants.CSRF_TOKEN)
+                || !configuration.isXsrfProtectionEnabled();
+    }
+
+    /**
+     * Validates the given request and checks whether its invocations should
+     * be handled.
+     *
+     * @return <code>true</code> if the invocations should be handled,
+     *         <code>false</code> if the message has already been handled or
+     *         is unexpected
+     * @throws InvalidUIDLSecurityKeyException
+     *             if the CSRF token of the request is invalid
+     */
+    private boolean acceptRequest(UI ui, RpcRequest rpcRequest)
+            throws InvalidUIDLSecurityKeyException {
         // Security: double cookie submission pattern unless disabled by
         // property
         if (!VaadinService.isCsrfTokenValid(ui.getSession(),
@@ -239,6 +365,13 @@ public class ServerRpcHandler implements Serializable {
 
         checkWidgetsetVersion(rpcRequest.getWidgetsetVersion());
 
+        ConnectorTracker connectorTracker = ui.getConnectorTracker();
+        if (rpcRequest.isCompactUidl()
+                && connectorTracker.getStateKeyDictionary() == null
+                && ui.getSession().getConfiguration().isCompactUidlEnabled()) {
+            connectorTracker.setStateKeyDictionary(new StateKeyDictionary());
+        }
+
         int expectedId = ui.getLastProcessedClientToServerId() + 1;
         if (rpcRequest.getClientToServerId() != -1
                 && rpcRequest.getClientToServerId() != expectedId) {
@@ -267,20 +400,43 @@ public class ServerRpcHandler implements Serializable {
                                 + expectedId + ", got: "
                                 + rpcRequest.getClientToServerId());
             }
+            return false;
         } else {
             // Message id ok, process RPCs
             ui.setLastProcessedClientToServerId(expectedId);
-            handleInvocations(ui, rpcRequest.getSyncId(),
-                    rpcRequest.getRpcInvocationsData());
+            return true;
         }
+    }
 
-        ui.getConnectorTracker()
-                .cleanConcurrentlyRemovedConnectorIds(rpcRequest.getSyncId());
-
-        if (rpcRequest.isResynchronize()) {
-            ui.getSession().getCommunicationManager().repaintAll(ui);
+    /**
+     * Reads and decodes the invocations of a message one at a time, so that
+     * only the JSON of a single invocation is kept in memory.
+     */
+    private List<MethodInvocation> readInvocations(
+            JsonStreamReader messageReader, ConnectorTracker connectorTracker,
+            int lastSyncIdSeenByClient) throws IOException {
+        List<MethodInvocation> invocations = new ArrayList<MethodInvocation>();
+        try {
+            MethodInvocation previousInvocation = null;
+            messageReader.beginArray();
+            while (messageReader.hasNextElement()) {
+                JsonArray invocationJson = (JsonArray) messageReader
+                        .readValue();
+                MethodInvocation invocation = parseInvocation(invocationJson,
+                        previousInvocation, connectorTracker,
+                        lastSyncIdSeenByClient);
+                if (invocation != null) {
+                    invocations.add(invocation);
+                    previousInvocation = invocation;
+                }
+            }
+            messageReader.endArray();
+        } catch (JsonException | ClassCastException e) {
+            getLogger().warning("Unable to parse RPC call from the client: "
+                    + e.getMessage());
+            throw new RuntimeException(e);
         }
-
+        return invocations;
     }
 
     /**
@@ -324,21 +480,58 @@ public class ServerRpcHandler implements Serializable {
      *            JSON containing all information needed to execute all
      *            requested RPC calls.
      * @since 7.7
+     * @deprecated As of 8.0. {@link #handleRpc(UI, Reader, VaadinRequest)}
+     *             decodes the invocations while reading the message and only
+     *             calls this method if the invocations arrive before the
+     *             members needed to validate the request. Override
+     *             {@link #handleInvocations(UI, List)} instead, which is
+     *             called for all messages.
      */
+    @Deprecated
     protected void handleInvocations(UI ui, int lastSyncIdSeenByClient,
             JsonArray invocationsData) {
+        try {
+            Measurement measurement = RequestMetrics
+                    .start(ui.getSession().getService());
+            List<MethodInvocation> invocations = parseInvocations(
+                    ui.getConnectorTracker(), invocationsData,
+                    lastSyncIdSeenByClient);
+            Measurement.end(measurement, Phase.RPC_DECODE, null);
+            handleInvocations(ui, invocations);
+        } catch (JsonException e) {
+            getLogger().warning("Unable to parse RPC call from the client: "
+                    + e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Processes invocations that have already been decoded from the data
+     * received from the client. This method is called for all messages
+     * received from the client.
+     *
+     * @see #handleInvocations(UI, int, JsonArray)
+     *
+     * @param ui
+     *            the UI receiving the invocations
+     * @param invocations
+     *            the decoded invocations, in the order they were sent
+     * @since
+     */
+    protected void handleInvocations(UI ui,
+            List<MethodInvocation> invocations) {
         // TODO PUSH Refactor so that this is not needed
         LegacyCommunicationManager manager = ui.getSession()
                 .getCommunicationManager();
 
+        RequestMetrics metrics = ui.getSession().getService() == null ? null
+                : ui.getSession().getService().getRequestMetrics();
+
         try {
             ConnectorTracker connectorTracker = ui.getConnectorTracker();
 
             Set<Connector> enabledConnectors = new HashSet<Connector>();
 
-            List<MethodInvocation> invocations = parseInvocations(
-                    ui.getConnectorTracker(), invocationsData,
-                    lastSyncIdSeenByClient);
             for (MethodInvocation invocation : invocations) {
                 final ClientConnector connector = connectorTracker
                         .getConnector(invocation.getConnectorId());
@@ -403,6 +596,7 @@ public class ServerRpcHandler implements Serializable {
 
                 }
 
+                Measurement measurement = RequestMetrics.start(metrics);
                 if (invocation instanceof ServerRpcMethodInvocation) {
                     handleInvocation(ui, connector,
                             (ServerRpcMethodInvocation) invocation);
@@ -410,6 +604,8 @@ public class ServerRpcHandler implements Serializable {
                     LegacyChangeVariablesInvocation legacyInvocation = (LegacyChangeVariablesInvocation) invocation;
                     handleInvocation(ui, connector, legacyInvocation);
                 }
+                Measurement.end(measurement, Phase.RPC_INVOCATION,
+                        connector.getClass().getName());
             }
         } catch (JsonException e) {
             getLogger().warning("Unable to parse RPC call from the client: "
@@ -627,6 +823,19 @@ public class ServerRpcHandler implements Serializable {
         owner.changeVariables(source, m);
     }
 
+    /**
+     * Reads the whole message from the given reader.
+     *
+     * @param reader
+     *            the reader to read from
+     * @return the message
+     * @throws IOException
+     *             if reading fails
+     * @deprecated As of 8.0. This method is no longer called, since
+     *             {@link #handleRpc(UI, Reader, VaadinRequest)} reads the
+     *             message incrementally.
+     */
+    @Deprecated
     protected String getMessage(Reader reader) throws IOException {
 
         StringBuilder sb = new StringBuilder(MAX_BUFFER_SIZE);
@@ -26,9 +26,9 @@ import java.util.Set;
 import com.vaadin.server.ClientConnector;
 import com.vaadin.server.PaintException;
 import com.vaadin.shared.communication.SharedState;
+import com.vaadin.ui.ConnectorTracker;
 import com.vaadin.ui.UI;
 
-import elemental.json.Json;
 import elemental.json.JsonException;
 import elemental.json.JsonObject;
 import elemental.json.impl.JsonUtil;
@@ -43,7 +43,13 @@ public class SharedStateWriter implements Serializable {
 
     /**
      * Writes a JSON object containing the pending state changes of the dirty
-     * connectors of the given UI.
+     * connectors of the given UI. The state of each connector is written to
+     * the writer as soon as it has been encoded, so the combined JSON object
+     * for all connectors is never built in memory.
+     * <p>
+     * If the client uses compact UIDL messages, the property names of the
+     * states are replaced with the keys of the
+     * {@link ConnectorTracker#getStateKeyDictionary() state key dictionary}.
      *
      * @param ui
      *            The UI whose state changes should be written.
@@ -55,21 +61,27 @@ public class SharedStateWriter implements Serializable {
      */
     public Set<String> write(UI ui, Writer writer) throws IOException {
 
-        Collection<ClientConnector> dirtyVisibleConnectors = ui
-                .getConnectorTracker().getDirtyVisibleConnectors();
+        ConnectorTracker connectorTracker = ui.getConnectorTracker();
+        Collection<ClientConnector> dirtyVisibleConnectors = connectorTracker
+                .getDirtyVisibleConnectors();
+        StateKeyDictionary dictionary = connectorTracker
+                .getStateKeyDictionary();
 
         Set<String> writtenConnectors = new HashSet<String>();
-        JsonObject sharedStates = Json.createObject();
+        writer.write('{');
         for (ClientConnector connector : dirtyVisibleConnectors) {
             // encode and send shared state
             String connectorId = connector.getConnectorId();
+            String stateJson;
             try {
-                JsonObject stateJson = connector.encodeState();
-
-                if (stateJson != null && stateJson.keys().length != 0) {
-                    sharedStates.put(connectorId, stateJson);
-                    writtenConnectors.add(connectorId);
+                JsonObject state = connector.encodeState();
+                if (state == null || state.keys().length == 0) {
+                    continue;
+                }
+                if (dictionary != null) {
+                    state = dictionary.compact(state);
                 }
+                stateJson = JsonUtil.stringify(state);
             } catch (JsonException e) {
                 throw new PaintException(
                         "Failed to serialize shared state for connector "
@@ -77,8 +89,16 @@ public class SharedStateWriter implements Serializable {
                                 + connectorId + "): " + e.getMessage(),
                         e);
             }
+
+            if (!writtenConnectors.isEmpty()) {
+                writer.write(',');
+            }
+            writer.write(JsonUtil.quote(connectorId));
+            writer.write(':');
+            writer.write(stateJson);
+            writtenConnectors.add(connectorId);
         }
-        writer.write(JsonUtil.stringify(sharedStates));
+        writer.write('}');
 
         return writtenConnectors;
     }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.communication;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.shared.ApplicationConstants;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+
+/**
+ * Dictionary of shared state property names used for compact UIDL messages.
+ * <p>
+ * Instead of repeating the property names of the state of every connector,
+ * compact messages use the index of the property name in the dictionary as the
+ * key. The dictionary is shared with the client, which expands the keys before
+ * decoding the state. Property names that are not yet known by the client are
+ * sent in the {@value ApplicationConstants#STATE_KEYS} array of the message,
+ * prefixed with the index of the first new name.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class StateKeyDictionary implements Serializable {
+
+    private final Map<String, String> compactKeys = new HashMap<String, String>();
+    private final List<String> newKeys = new ArrayList<String>();
+
+    /**
+     * Gets the compact key for the given property name, adding it to the
+     * dictionary if needed.
+     *
+     * @param key
+     *            the property name, not <code>null</code>
+     * @return the compact key to use instead of the property name
+     */
+    public String getCompactKey(String key) {
+        String compactKey = compactKeys.get(key);
+        if (compactKey == null) {
+            compactKey = Integer.toString(compactKeys.size());
+            compactKeys.put(key, compactKey);
+            newKeys.add(key);
+        }
+        return compactKey;
+    }
+
+    /**
+     * Creates a copy of the given encoded state where the top level property
+     * names have been replaced with compact keys.
+     *
+     * @param state
+     *            the encoded state, not <code>null</code>
+     * @return a compact copy of the state
+     */
+    public JsonObject compact(JsonObject state) {
+        JsonObject compactState = Json.createObject();
+        for (String key : state.keys()) {
+            compactState.put(getCompactKey(key), state.<JsonValue> get(key));
+        }
+        return compactState;
+    }
+
+    /**
+     * Gets the property names added since the previous invocation, and
+     * considers them known by the client. The first item in the array is the
+     * index of the first added name, followed by the names.
+     *
+     * @return a JSON array describing the new property names
+     */
+    public JsonArray takeNewKeys() {
+        JsonArray array = Json.createArray();
+        array.set(0, compactKeys.size() - newKeys.size());
+        for (String key : newKeys) {
+            array.set(array.length(), key);
+        }
+        newKeys.clear();
+        return array;
+    }
+
+    /**
+     * Removes all property names from the dictionary. This should be done when
+     * the client side has been reset.
+     */
+    public void clear() {
+        compactKeys.clear();
+        newKeys.clear();
+    }
+}
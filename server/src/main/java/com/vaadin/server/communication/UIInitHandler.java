@@ -25,6 +25,7 @@ import java.util.logging.Logger;
 
 import com.vaadin.annotations.PreserveOnRefresh;
 import com.vaadin.server.LegacyApplicationUIProvider;
+import com.vaadin.server.ResponseCompression;
 import com.vaadin.server.SynchronizedRequestHandler;
 import com.vaadin.server.UIClassSelectionEvent;
 import com.vaadin.server.UICreateEvent;
@@ -80,8 +81,9 @@ public abstract class UIInitHandler extends SynchronizedRequestHandler {
             String initialUIDL = getInitialUidl(request, uI);
             params.put("uidl", initialUIDL);
 
+            // Not compressed since the initial UIDL contains the CSRF token
             return commitJsonResponse(request, response,
-                    JsonUtil.stringify(params));
+                    JsonUtil.stringify(params), false);
         } catch (JsonException e) {
             throw new IOException("Error producing initial UIDL", e);
         }
@@ -104,6 +106,32 @@ public abstract class UIInitHandler extends SynchronizedRequestHandler {
      */
     static boolean commitJsonResponse(VaadinRequest request,
             VaadinResponse response, String json) throws IOException {
+        return commitJsonResponse(request, response, json, true);
+    }
+
+    /**
+     * Commit the JSON response, optionally leaving it uncompressed even if
+     * UIDL compression is enabled. Responses containing secrets such as the
+     * CSRF token should not be compressed, since compressing them together
+     * with application content exposes the secrets to BREACH style attacks.
+     *
+     * @param request
+     *            The request that resulted in this response
+     * @param response
+     *            The response to write to
+     * @param json
+     *            The JSON to write
+     * @param compress
+     *            <code>true</code> to compress the response if UIDL
+     *            compression is enabled, <code>false</code> to never compress
+     *            it
+     * @return true if the JSON was written successfully, false otherwise
+     * @throws IOException
+     *             If there was an exception while writing to the output
+     */
+    static boolean commitJsonResponse(VaadinRequest request,
+            VaadinResponse response, String json, boolean compress)
+            throws IOException {
         // The response was produced without errors so write it to the client
         response.setContentType(JsonConstants.JSON_CONTENT_TYPE);
 
@@ -112,12 +140,16 @@ public abstract class UIInitHandler extends SynchronizedRequestHandler {
         response.setHeader("Cache-Control", "no-cache");
 
         byte[] b = json.getBytes("UTF-8");
-        response.setContentLength(b.length);
+        if (compress) {
+            ResponseCompression.writeResponse(request, response, b);
+        } else {
+            response.setContentLength(b.length);
 
-        OutputStream outputStream = response.getOutputStream();
-        outputStream.write(b);
-        // NOTE GateIn requires the buffers to be flushed to work
-        outputStream.flush();
+            OutputStream outputStream = response.getOutputStream();
+            outputStream.write(b);
+            // NOTE GateIn requires the buffers to be flushed to work
+            outputStream.flush();
+        }
 
         return true;
     }
@@ -17,7 +17,6 @@
 package com.vaadin.server.communication;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -84,34 +83,57 @@ public class UidlRequestHandler extends SynchronizedRequestHandler
             return true;
         }
 
-        StringWriter stringWriter = new StringWriter();
+        UidlResponseWriter writer = createResponseWriter(session,
+                request, response);
 
         try {
             rpcHandler.handleRpc(uI, request.getReader(), request);
 
-            writeUidl(request, response, uI, stringWriter);
+            writeUidl(request, response, uI, writer);
+            writer.finish();
         } catch (JsonException e) {
             getLogger().log(Level.SEVERE, "Error writing JSON to response", e);
             // Refresh on client side
-            writeRefresh(request, response);
+            writeRefresh(request, response, writer);
             return true;
         } catch (InvalidUIDLSecurityKeyException e) {
             getLogger().log(Level.WARNING,
                     "Invalid security key received from {0}",
                     request.getRemoteHost());
             // Refresh on client side
-            writeRefresh(request, response);
+            writeRefresh(request, response, writer);
             return true;
         } finally {
-            stringWriter.close();
+            if (!writer.isFinished() && writer.abort()) {
+                getLogger().severe(
+                        "Error writing UIDL response, the client will be refreshed");
+            }
         }
 
-        return UIInitHandler.commitJsonResponse(request, response,
-                stringWriter.toString());
+        return true;
     }
 
-    private void writeRefresh(VaadinRequest request, VaadinResponse response)
-            throws IOException {
+    /**
+     * Creates the writer used for the UIDL response. Responses larger than the
+     * buffer of the writer are streamed to the client, gzip compressed if
+     * {@link com.vaadin.server.DeploymentConfiguration#isUidlCompressionEnabled()
+     * UIDL compression} is enabled.
+     */
+    private UidlResponseWriter createResponseWriter(VaadinSession session,
+            VaadinRequest request, VaadinResponse response) {
+        boolean compress = session.getConfiguration()
+                .isUidlCompressionEnabled();
+        return new UidlResponseWriter(request, response,
+                UidlResponseWriter.DEFAULT_BUFFER_SIZE, compress);
+    }
+
+    private void writeRefresh(VaadinRequest request, VaadinResponse response,
+            UidlResponseWriter writer) throws IOException {
+        if (writer.abort()) {
+            // Part of the response has already been sent, the refresh token
+            // has been appended to it
+            return;
+        }
         String json = VaadinService.createCriticalNotificationJSON(null, null,
                 null, null);
         UIInitHandler.commitJsonResponse(request, response, json);
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.communication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import com.vaadin.server.ResponseCompression;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.shared.ApplicationConstants;
+import com.vaadin.shared.JsonConstants;
+
+/**
+ * Writer for UIDL responses that streams large responses directly to the
+ * response output stream instead of building them in memory.
+ * <p>
+ * Output is buffered until the buffer size is exceeded, so small responses are
+ * sent exactly as before, with a content length, and can still be replaced by
+ * an error response. Once the buffer overflows, the response is committed and
+ * the rest of the output is written directly to the client, gzip compressed if
+ * compression is enabled and accepted by the client.
+ * <p>
+ * If writing fails after the response has been committed, {@link #abort()}
+ * terminates the response with {@link ApplicationConstants#UIDL_REFRESH_TOKEN}
+ * so that the client refreshes instead of trying to parse an incomplete
+ * message.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+class UidlResponseWriter extends Writer {
+
+    /**
+     * The default number of characters buffered before the response is
+     * committed.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    private final VaadinRequest request;
+    private final VaadinResponse response;
+    private final int bufferSize;
+    private final boolean compress;
+
+    private StringBuilder buffer = new StringBuilder();
+    private OutputStream stream;
+    private GZIPOutputStream gzipStream;
+    private Writer out;
+    private boolean finished = false;
+
+    /**
+     * Creates a new writer for the given response.
+     *
+     * @param request
+     *            the request that resulted in this response
+     * @param response
+     *            the response to write to
+     * @param bufferSize
+     *            the number of characters to buffer before the response is
+     *            committed
+     * @param compress
+     *            <code>true</code> to gzip compress streamed responses if the
+     *            client accepts it; <code>false</code> otherwise
+     */
+    public UidlResponseWriter(VaadinRequest request, VaadinResponse response,
+            int bufferSize, boolean compress) {
+        this.request = request;
+        this.response = response;
+        this.bufferSize = bufferSize;
+        this.compress = compress;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        if (out != null) {
+            out.write(cbuf, off, len);
+        } else {
+            buffer.append(cbuf, off, len);
+            commitIfFull();
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        ensureOpen();
+        if (out != null) {
+            out.write(str, off, len);
+        } else {
+            buffer.append(str, off, off + len);
+            commitIfFull();
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        if (out != null) {
+            out.write(c);
+        } else {
+            buffer.append((char) c);
+            commitIfFull();
+        }
+    }
+
+    /**
+     * Does nothing. Buffered output is only sent when the buffer is full or
+     * when the response is finished, and streamed output is flushed by
+     * {@link #finish()}.
+     */
+    @Override
+    public void flush() {
+        // Flushing partial messages would only produce small network packets
+    }
+
+    /**
+     * Finishes the response if it has not already been finished or aborted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            finish();
+        }
+    }
+
+    /**
+     * Checks whether the response has been committed, i.e. whether some of the
+     * output has already been sent to the client.
+     *
+     * @return <code>true</code> if the response has been committed;
+     *         <code>false</code> if all output is still buffered
+     */
+    public boolean isCommitted() {
+        return out != null;
+    }
+
+    /**
+     * Checks whether the response has been finished or aborted.
+     *
+     * @return <code>true</code> if no more output can be written;
+     *         <code>false</code> otherwise
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Sends all remaining output to the client and completes the response.
+     *
+     * @throws IOException
+     *             if writing to the response fails
+     */
+    public void finish() throws IOException {
+        ensureOpen();
+        finished = true;
+        if (out == null) {
+            String json = buffer.toString();
+            buffer = null;
+            UIInitHandler.commitJsonResponse(request, response, json);
+        } else {
+            completeStream();
+        }
+    }
+
+    /**
+     * Aborts the response. Buffered output is discarded. If the response has
+     * already been committed, it is terminated with
+     * {@link ApplicationConstants#UIDL_REFRESH_TOKEN} to make the client
+     * refresh, since a regular error response can no longer be sent.
+     *
+     * @return <code>true</code> if a response has already been sent;
+     *         <code>false</code> if nothing has been sent and the caller should
+     *         write a response of its own
+     * @throws IOException
+     *             if writing to the response fails
+     */
+    public boolean abort() throws IOException {
+        if (finished) {
+            return true;
+        }
+        finished = true;
+        buffer = null;
+        if (out == null) {
+            return false;
+        }
+        out.write("\n" + ApplicationConstants.UIDL_REFRESH_TOKEN + "\n");
+        completeStream();
+        return true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("The UIDL response has already been sent");
+        }
+    }
+
+    private void commitIfFull() throws IOException {
+        if (buffer.length() > bufferSize) {
+            commit();
+        }
+    }
+
+    private void commit() throws IOException {
+        response.setContentType(JsonConstants.JSON_CONTENT_TYPE);
+        // Ensure that the browser does not cache UIDL responses.
+        response.setHeader("Cache-Control", "no-cache");
+
+        stream = response.getOutputStream();
+        if (compress) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        if (compress && ResponseCompression
+                .acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            response.setHeader("Content-Encoding", "gzip");
+            gzipStream = new GZIPOutputStream(stream, bufferSize);
+            out = new OutputStreamWriter(gzipStream, StandardCharsets.UTF_8);
+        } else {
+            out = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        }
+
+        out.append(buffer);
+        buffer = null;
+    }
+
+    private void completeStream() throws IOException {
+        out.flush();
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+        // NOTE GateIn requires the buffers to be flushed to work
+        stream.flush();
+    }
+}
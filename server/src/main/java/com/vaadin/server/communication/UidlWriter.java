@@ -38,12 +38,16 @@ import com.vaadin.server.LegacyCommunicationManager.ClientCache;
 import com.vaadin.server.SystemMessages;
 import com.vaadin.server.VaadinService;
 import com.vaadin.server.VaadinSession;
+import com.vaadin.server.metrics.RequestMetrics;
+import com.vaadin.server.metrics.RequestMetrics.Measurement;
+import com.vaadin.server.metrics.RequestMetrics.Phase;
 import com.vaadin.shared.ApplicationConstants;
 import com.vaadin.ui.ConnectorTracker;
 import com.vaadin.ui.UI;
 
 import elemental.json.Json;
 import elemental.json.JsonArray;
+import elemental.json.JsonObject;
 import elemental.json.impl.JsonUtil;
 
 /**
@@ -89,12 +93,13 @@ public class UidlWriter implements Serializable {
         ConnectorTracker uiConnectorTracker = ui.getConnectorTracker();
         getLogger().log(Level.FINE, "* Creating response to client");
 
+        RequestMetrics metrics = service.getRequestMetrics();
+        Measurement measurement = RequestMetrics.start(metrics);
         while (true) {
             ArrayList<ClientConnector> connectorsToProcess = new ArrayList<ClientConnector>();
             for (ClientConnector c : uiConnectorTracker.getDirtyConnectors()) {
                 if (!processedConnectors.contains(c)
-                        && LegacyCommunicationManager
-                                .isConnectorVisibleToClient(c)) {
+                        && uiConnectorTracker.isConnectorVisibleToClient(c)) {
                     connectorsToProcess.add(c);
                 }
             }
@@ -116,9 +121,12 @@ public class UidlWriter implements Serializable {
             }
         }
 
+        Measurement.end(measurement, Phase.BEFORE_CLIENT_RESPONSE, null);
+
         getLogger().log(Level.FINE, "Found " + processedConnectors.size()
                 + " dirty connectors to paint");
 
+        measurement = RequestMetrics.start(metrics);
         uiConnectorTracker.setWritingResponse(true);
         try {
 
@@ -157,31 +165,44 @@ public class UidlWriter implements Serializable {
             // processing.
 
             writer.write("\"state\":");
+            Measurement stateMeasurement = RequestMetrics.start(metrics);
             Set<String> stateUpdateConnectors = new SharedStateWriter()
                     .write(ui, writer);
+            Measurement.end(stateMeasurement, Phase.STATE_ENCODING, null);
             writer.write(", "); // close states
 
-            // TODO This should be optimized. The type only needs to be
-            // sent once for each connector id + on refresh. Use the same cache
-            // as
-            // widget mapping
+            // Property names used in compact states for the first time
+            StateKeyDictionary stateKeyDictionary = uiConnectorTracker
+                    .getStateKeyDictionary();
+            if (stateKeyDictionary != null) {
+                writer.write("\"" + ApplicationConstants.STATE_KEYS + "\":");
+                writer.write(
+                        JsonUtil.stringify(stateKeyDictionary.takeNewKeys()));
+                writer.write(", ");
+            }
 
+            // Types are only sent for connectors the client does not know
             writer.write("\"types\":");
             new ConnectorTypeWriter().write(ui, writer, paintTarget);
             writer.write(", "); // close states
 
-            // Send update hierarchy information to the client.
-
-            // This could be optimized aswell to send only info if hierarchy has
-            // actually changed. Much like with the shared state. Note though
-            // that an empty hierarchy is information aswell (e.g. change from 1
-            // child to 0 children)
+            // Send update hierarchy information to the client. Children are
+            // only sent if they have changed, and small changes are sent as
+            // deltas. Note though that an empty hierarchy is information
+            // aswell (e.g. change from 1 child to 0 children)
 
             writer.write("\"hierarchy\":");
-            new ConnectorHierarchyWriter().write(ui, writer,
-                    stateUpdateConnectors);
+            JsonObject hierarchyDeltas = new ConnectorHierarchyWriter()
+                    .write(ui, writer, stateUpdateConnectors);
             writer.write(", "); // close hierarchy
 
+            if (hierarchyDeltas.keys().length > 0) {
+                writer.write(
+                        "\"" + ApplicationConstants.HIERARCHY_DELTA + "\":");
+                writer.write(JsonUtil.stringify(hierarchyDeltas));
+                writer.write(", ");
+            }
+
             // send server to client RPC calls for components in the UI, in call
             // order
 
@@ -332,6 +353,7 @@ public class UidlWriter implements Serializable {
         } finally {
             uiConnectorTracker.setWritingResponse(false);
             uiConnectorTracker.cleanConnectorMap();
+            Measurement.end(measurement, Phase.JSON_WRITING, null);
         }
     }
 
@@ -22,7 +22,9 @@ import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
- * A {@link DataSource} for any back end.
+ * A {@link DataSource} for any back end. The {@link Query} passed to the
+ * request and size callbacks contains the filters set to the
+ * {@link DataCommunicator}, so that they can be applied in the back end query.
  *
  * @param <T>
  *            data source data type
@@ -31,6 +33,7 @@ public class BackEndDataSource<T> implements DataSource<T> {
 
     private Function<Query, Stream<T>> request;
     private Function<Query, Integer> sizeCallback;
+    private boolean multiRangeSupported = false;
 
     /**
      * Constructs a new DataSource to request data from an arbitrary back end
@@ -68,13 +71,40 @@ public class BackEndDataSource<T> implements DataSource<T> {
      * @return new data source with modified sorting
      */
     public BackEndDataSource<T> sortingBy(List<SortOrder<String>> sortOrders) {
-        return new BackEndDataSource<>(query -> {
+        BackEndDataSource<T> sorted = new BackEndDataSource<>(query -> {
             List<SortOrder<String>> queryOrder = new ArrayList<>(
                     query.getSortOrders());
             queryOrder.addAll(sortOrders);
-            return request.apply(new Query(query.getLimit(), query.getOffset(),
+            if (query.isMultiRange()) {
+                return request.apply(new Query(query.getRanges(), queryOrder,
+                        query.getFilters()));
+            }
+            return request.apply(new Query(query.getOffset(), query.getLimit(),
                     queryOrder, query.getFilters()));
         }, sizeCallback);
+        sorted.multiRangeSupported = multiRangeSupported;
+        return sorted;
+    }
+
+    /**
+     * Declares that the request function of this data source handles queries
+     * with several ranges of rows. This allows fetching all rows needed in
+     * one round trip with a single back end request, e.g. one SQL statement
+     * combining the ranges. The request function must return the data for
+     * each range of {@link Query#getRanges()} in order.
+     *
+     * @return new data source that receives multi-range queries
+     */
+    public BackEndDataSource<T> withMultiRangeQueries() {
+        BackEndDataSource<T> multiRange = new BackEndDataSource<>(request,
+                sizeCallback);
+        multiRange.multiRangeSupported = true;
+        return multiRange;
+    }
+
+    @Override
+    public boolean isMultiRangeSupported() {
+        return multiRangeSupported;
     }
 
     @Override
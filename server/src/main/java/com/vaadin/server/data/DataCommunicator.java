@@ -20,16 +20,20 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.vaadin.server.AbstractExtension;
-import com.vaadin.server.KeyMapper;
+import com.vaadin.server.JsonCodec;
 import com.vaadin.shared.data.DataCommunicatorClientRpc;
 import com.vaadin.shared.data.DataCommunicatorConstants;
 import com.vaadin.shared.data.DataRequestRpc;
@@ -38,6 +42,8 @@ import com.vaadin.shared.ui.grid.Range;
 import elemental.json.Json;
 import elemental.json.JsonArray;
 import elemental.json.JsonObject;
+import elemental.json.JsonType;
+import elemental.json.JsonValue;
 
 /**
  * DataProvider base class. This class is the base for all DataProvider
@@ -58,7 +64,9 @@ public class DataCommunicator<T> extends AbstractExtension {
         @Override
         public void requestRows(int firstRowIndex, int numberOfRows,
                 int firstCachedRowIndex, int cacheSize) {
-            pushRows = Range.withLength(firstRowIndex, numberOfRows);
+            pushRows.add(Range.withLength(firstRowIndex, numberOfRows));
+            clientCachedRows = Range.withLength(firstCachedRowIndex,
+                    cacheSize);
             markAsDirty();
         }
 
@@ -72,29 +80,31 @@ public class DataCommunicator<T> extends AbstractExtension {
 
     /**
      * A class for handling currently active data and dropping data that is no
-     * longer needed. Data tracking is based on key string provided by
-     * {@link DataKeyMapper}.
+     * longer needed. Data tracking is based on the int keys provided by
+     * {@link IntKeyMapper}. Keys are only converted to strings when written to
+     * the client.
      * <p>
      * When the {@link DataCommunicator} is pushing new data to the client-side
-     * via {@link DataCommunicator#pushData(long, Collection)},
-     * {@link #addActiveData(Collection)} and {@link #cleanUp(Collection)} are
-     * called with the same parameter. In the clean up method any dropped data
-     * objects that are not in the given collection will be cleaned up and
+     * via {@link DataCommunicator#pushData(int, Stream)},
+     * {@link #addActiveData(Stream)} is called with the pushed data. After all
+     * data for a response has been pushed, {@link #cleanUp(Stream)} is called
+     * with all of it. In the clean up method any dropped data objects that are
+     * not in the given collection will be cleaned up and
      * {@link TypedDataGenerator#destroyData(Object)} will be called for them.
      */
     protected class ActiveDataHandler
             implements Serializable, TypedDataGenerator<T> {
 
         /**
-         * Set of key strings for currently active data objects
+         * Set of keys for currently active data objects
          */
-        private final Set<String> activeData = new HashSet<>();
+        private final IntHashSet activeData = new IntHashSet();
 
         /**
-         * Set of key strings for data objects dropped on the client. This set
-         * is used to clean up old data when it's no longer needed.
+         * Set of keys for data objects dropped on the client. This set is used
+         * to clean up old data when it's no longer needed.
          */
-        private final Set<String> droppedData = new HashSet<>();
+        private final IntHashSet droppedData = new IntHashSet();
 
         /**
          * Adds given objects as currently active objects.
@@ -103,9 +113,7 @@ public class DataCommunicator<T> extends AbstractExtension {
          *            collection of new active data objects
          */
         public void addActiveData(Stream<T> dataObjects) {
-            dataObjects.map(getKeyMapper()::key)
-                    .filter(key -> !activeData.contains(key))
-                    .forEach(activeData::add);
+            dataObjects.mapToInt(keyMapper::intKey).forEach(activeData::add);
         }
 
         /**
@@ -121,13 +129,14 @@ public class DataCommunicator<T> extends AbstractExtension {
          *            collection of most recently sent data to the client
          */
         public void cleanUp(Stream<T> dataObjects) {
-            Collection<String> keys = dataObjects.map(getKeyMapper()::key)
-                    .collect(Collectors.toSet());
-
+            if (droppedData.isEmpty()) {
+                return;
+            }
             // Remove still active rows that were dropped by the client
-            droppedData.removeAll(keys);
+            dataObjects.mapToInt(keyMapper::intKey)
+                    .forEach(droppedData::remove);
             // Do data clean up for object no longer needed.
-            dropData(droppedData);
+            dropData(droppedData.toArray());
             droppedData.clear();
         }
 
@@ -138,8 +147,9 @@ public class DataCommunicator<T> extends AbstractExtension {
          *            key string
          */
         public void dropActiveData(String key) {
-            if (activeData.contains(key)) {
-                droppedData.add(key);
+            int intKey = IntKeyMapper.parseKey(key);
+            if (activeData.contains(intKey)) {
+                droppedData.add(intKey);
             }
         }
 
@@ -149,44 +159,89 @@ public class DataCommunicator<T> extends AbstractExtension {
          * @return collection of active data objects
          */
         public Collection<T> getActiveData() {
-            HashSet<T> hashSet = new HashSet<>();
-            for (String key : activeData) {
-                hashSet.add(getKeyMapper().get(key));
+            List<T> list = new ArrayList<>(activeData.size());
+            for (int key : activeData.toArray()) {
+                list.add(keyMapper.get(key));
             }
-            return hashSet;
+            return list;
+        }
+
+        /**
+         * Drops all currently active data. This will invoke
+         * {@link TypedDataGenerator#destroyData} for each of the data
+         * objects.
+         */
+        public void dropAllActiveData() {
+            dropData(activeData.toArray());
+            droppedData.clear();
         }
 
         @Override
         public void generateData(T data, JsonObject jsonObject) {
             // Write the key string for given data object
             jsonObject.put(DataCommunicatorConstants.KEY,
-                    getKeyMapper().key(data));
+                    keyMapper.key(data));
         }
 
         @Override
         public void destroyData(T data) {
+            int key = keyMapper.intKey(data);
             // Remove from active data set
-            activeData.remove(getKeyMapper().key(data));
+            activeData.remove(key);
+            if (sentRows != null) {
+                sentRows.remove(key);
+            }
             // Drop the registered key
-            getKeyMapper().remove(data);
+            keyMapper.remove(data);
         }
     }
 
+    /**
+     * Maximum number of filter sets to cache data source sizes for.
+     */
+    private static final int SIZE_CACHE_LIMIT = 16;
+
     private Collection<TypedDataGenerator<T>> generators = new LinkedHashSet<>();
     private ActiveDataHandler handler = new ActiveDataHandler();
 
     private DataSource<T> dataSource;
-    private DataKeyMapper<T> keyMapper;
+    private IntKeyMapper<T> keyMapper;
+    private Function<T, ?> identityProvider;
 
     private boolean reset = false;
-    private final Set<T> updatedData = new HashSet<>();
-    private Range pushRows = Range.withLength(0, 40);
+    /**
+     * Refreshed data objects by their id in the key mapper, so that the most
+     * recent instance of an entity is sent
+     */
+    private final Map<Object, T> updatedData = new LinkedHashMap<>();
+    private final List<Range> pushRows = new ArrayList<>();
+    private Range clientCachedRows = Range.withLength(0, 0);
 
     private Comparator<T> inMemorySorting;
+    private InMemoryDataIndex<T> inMemoryIndex;
     private List<SortOrder<String>> backEndSorting = new ArrayList<>();
+    private Set<Object> filters = Collections.emptySet();
     private DataCommunicatorClientRpc rpc;
 
+    private final Map<Set<Object>, Integer> sizeCache = new HashMap<>();
+    private boolean sizeEstimated = false;
+    private int sizeEstimateIncrement = 200;
+    private int estimatedSize;
+    private boolean estimatedSizeExact;
+
+    private boolean incrementalUpdates = false;
+    /**
+     * Last row data sent to the client by key, when incremental updates are
+     * used. Rows without a stored copy are sent in full.
+     */
+    private transient Map<Integer, JsonObject> sentRows;
+
+    private PrefetchPolicy prefetchPolicy;
+    private Range previousRequest = Range.withLength(0, 0);
+    private transient Map<Range, List<T>> prefetchedRows;
+
     public DataCommunicator() {
+        pushRows.add(Range.withLength(0, 40));
         addDataGenerator(handler);
         rpc = getRpcProxy(DataCommunicatorClientRpc.class);
         registerRpc(createRpc());
@@ -205,49 +260,351 @@ public class DataCommunicator<T> extends AbstractExtension {
             return;
         }
 
-        // FIXME: Sorting and Filtering with Backend
-        Set<Object> filters = Collections.emptySet();
+        // All rows requested during the round trip are fetched together
+        List<Range> ranges = mergeRanges(pushRows);
 
+        boolean estimateSize = isSizeEstimationUsed();
         if (initial || reset) {
-            int dataSourceSize = getDataSource().size(new Query(filters));
-            rpc.reset(dataSourceSize);
+            if (estimateSize) {
+                int end = ranges.isEmpty() ? 0
+                        : ranges.get(ranges.size() - 1).getEnd();
+                estimatedSize = end + sizeEstimateIncrement;
+                estimatedSizeExact = false;
+                rpc.reset(estimatedSize);
+            } else {
+                rpc.reset(getDataSourceSize());
+            }
         }
 
-        if (!pushRows.isEmpty()) {
-            int offset = pushRows.getStart();
-            int limit = pushRows.length();
-
-            Stream<T> rowsToPush;
+        if (!ranges.isEmpty()) {
+            List<List<T>> rowsToPush;
 
-            if (getDataSource().isInMemory()) {
-                // We can safely request all the data when in memory
-                // FIXME: filter.
-                rowsToPush = getDataSource().apply(new Query());
-                if (inMemorySorting != null) {
-                    rowsToPush = rowsToPush.sorted(inMemorySorting);
+            if (inMemoryIndex != null) {
+                // Filtered and sorted data is materialized once and reused
+                rowsToPush = new ArrayList<>();
+                for (Range range : ranges) {
+                    rowsToPush.add(inMemoryIndex
+                            .fetch(range.getStart(), range.length())
+                            .collect(Collectors.toList()));
                 }
-                rowsToPush = rowsToPush.skip(offset).limit(limit);
             } else {
-                Query query = new Query(offset, limit, backEndSorting, filters);
-                rowsToPush = getDataSource().apply(query);
+                rowsToPush = fetchFromBackEnd(ranges);
             }
-            pushData(offset, rowsToPush);
+
+            List<T> pushed = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); ++i) {
+                Range range = ranges.get(i);
+                List<T> rows = rowsToPush.get(i);
+                if (estimateSize) {
+                    updateEstimatedSize(range.getStart(), range.length(),
+                            rows.size());
+                }
+                pushed.addAll(pushData(range.getStart(), rows.stream()));
+            }
+            handler.cleanUp(pushed.stream());
         }
 
         if (!updatedData.isEmpty()) {
-            JsonArray dataArray = Json.createArray();
-            int i = 0;
-            for (T data : updatedData) {
-                dataArray.set(i++, getDataObject(data));
-            }
-            rpc.updateData(dataArray);
+            sendUpdatedData();
         }
 
-        pushRows = Range.withLength(0, 0);
+        pushRows.clear();
         reset = false;
         updatedData.clear();
     }
 
+    /**
+     * Sends the refreshed data that is active on the client. With incremental
+     * updates, only the fields that differ from the previously sent row data
+     * are sent for rows that have been sent before.
+     */
+    private void sendUpdatedData() {
+        JsonArray dataArray = Json.createArray();
+        JsonArray patchArray = Json.createArray();
+        for (T data : updatedData.values()) {
+            // Only rows that are active on the client can be updated
+            if (!keyMapper.has(data)) {
+                continue;
+            }
+
+            JsonObject row = getDataObject(data);
+            JsonObject previous = sentRows != null
+                    ? sentRows.get(keyMapper.intKey(data)) : null;
+            if (previous == null) {
+                dataArray.set(dataArray.length(), row);
+            } else {
+                JsonObject patch = createPatch(previous, row);
+                if (patch != null) {
+                    patch.put(DataCommunicatorConstants.KEY,
+                            row.getString(DataCommunicatorConstants.KEY));
+                    patchArray.set(patchArray.length(), patch);
+                }
+            }
+            rememberSentRow(data, row);
+        }
+
+        if (dataArray.length() > 0) {
+            rpc.updateData(dataArray);
+        }
+        if (patchArray.length() > 0) {
+            rpc.patchData(patchArray);
+        }
+    }
+
+    /**
+     * Creates a patch that turns the previous row data into the current row
+     * data. Nested objects are patched recursively. Removed fields are listed
+     * in {@link DataCommunicatorConstants#REMOVED}.
+     *
+     * @param previous
+     *            previously sent row data
+     * @param current
+     *            current row data
+     * @return the patch; {@code null} if the data has not changed
+     */
+    private static JsonObject createPatch(JsonObject previous,
+            JsonObject current) {
+        JsonObject patch = Json.createObject();
+        boolean changed = false;
+        for (String key : current.keys()) {
+            JsonValue value = current.get(key);
+            JsonValue oldValue = previous.hasKey(key) ? previous.get(key)
+                    : null;
+            if (oldValue != null && oldValue.getType() == JsonType.OBJECT
+                    && value.getType() == JsonType.OBJECT) {
+                JsonObject nested = createPatch((JsonObject) oldValue,
+                        (JsonObject) value);
+                if (nested != null) {
+                    patch.put(key, nested);
+                    changed = true;
+                }
+            } else if (oldValue == null
+                    || !JsonCodec.jsonEquals(oldValue, value)) {
+                patch.put(key, value);
+                changed = true;
+            }
+        }
+
+        JsonArray removed = Json.createArray();
+        for (String key : previous.keys()) {
+            if (!current.hasKey(key)) {
+                removed.set(removed.length(), key);
+            }
+        }
+        if (removed.length() > 0) {
+            patch.put(DataCommunicatorConstants.REMOVED, removed);
+            changed = true;
+        }
+
+        return changed ? patch : null;
+    }
+
+    private void rememberSentRow(T data, JsonObject row) {
+        if (!incrementalUpdates) {
+            return;
+        }
+        if (sentRows == null) {
+            sentRows = new HashMap<>();
+        }
+        sentRows.put(keyMapper.intKey(data), row);
+    }
+
+    /**
+     * Gets the size of the data source with the current filters. Sizes of
+     * back end data sources are cached per set of filters until the data is
+     * reset or {@link #invalidateSize()} is called.
+     *
+     * @return the size of the data source
+     */
+    protected int getDataSourceSize() {
+        if (inMemoryIndex != null) {
+            // Filters are evaluated once when building the index
+            return inMemoryIndex.size();
+        }
+        Integer size = sizeCache.get(filters);
+        if (size == null) {
+            size = getDataSource().size(new Query(filters));
+            if (sizeCache.size() >= SIZE_CACHE_LIMIT) {
+                sizeCache.clear();
+            }
+            sizeCache.put(filters, size);
+        }
+        return size;
+    }
+
+    private boolean isSizeEstimationUsed() {
+        return sizeEstimated && inMemoryIndex == null;
+    }
+
+    /**
+     * Updates the estimated size based on the amount of data fetched for the
+     * requested range. Fetching fewer items than requested reveals the exact
+     * size; reaching the end of the estimate grows it.
+     */
+    private void updateEstimatedSize(int offset, int limit, int fetched) {
+        int newSize = estimatedSize;
+        if (fetched < limit) {
+            newSize = offset + fetched;
+            estimatedSizeExact = true;
+        } else if (!estimatedSizeExact && offset + limit
+                + sizeEstimateIncrement / 2 > estimatedSize) {
+            newSize = offset + limit + sizeEstimateIncrement;
+        }
+        if (newSize != estimatedSize) {
+            estimatedSize = newSize;
+            rpc.updateSize(estimatedSize);
+        }
+    }
+
+    /**
+     * Fetches the requested ranges of rows from a back end data source. If a
+     * prefetch policy is set, rows are served from the prefetched rows when
+     * possible, and larger ranges are fetched otherwise. All ranges that need
+     * fetching are fetched with a single query if the data source supports
+     * multi-range queries.
+     *
+     * @param requested
+     *            the requested ranges in ascending order, not overlapping
+     * @return list of data for each requested range
+     */
+    private List<List<T>> fetchFromBackEnd(List<Range> requested) {
+        Map<Range, List<T>> available = prefetchedRows != null ? prefetchedRows
+                : Collections.emptyMap();
+
+        List<Range> missing = new ArrayList<>();
+        for (Range range : requested) {
+            if (findContaining(available.keySet(), range) == null) {
+                missing.add(range);
+            }
+        }
+
+        Map<Range, List<T>> fetched = Collections.emptyMap();
+        if (!missing.isEmpty()) {
+            List<Range> toFetch = missing;
+            if (prefetchPolicy != null) {
+                toFetch = new ArrayList<>();
+                for (Range range : missing) {
+                    toFetch.add(getPrefetchRange(range));
+                }
+                toFetch = mergeRanges(toFetch);
+            }
+            fetched = fetchRanges(toFetch);
+        }
+
+        List<List<T>> result = new ArrayList<>();
+        for (Range range : requested) {
+            Range block = findContaining(fetched.keySet(), range);
+            List<T> rows = block != null ? fetched.get(block) : null;
+            if (block == null) {
+                block = findContaining(available.keySet(), range);
+                rows = available.get(block);
+            }
+
+            // The back end may have returned fewer rows at the end of the data
+            int from = Math.min(range.getStart() - block.getStart(),
+                    rows.size());
+            int to = Math.min(from + range.length(), rows.size());
+            result.add(rows.subList(from, to));
+        }
+
+        if (prefetchPolicy != null) {
+            if (!missing.isEmpty()) {
+                prefetchedRows = fetched;
+            }
+            previousRequest = requested.get(requested.size() - 1);
+        }
+        return result;
+    }
+
+    private Range getPrefetchRange(Range requested) {
+        Range fetch = prefetchPolicy.getFetchRange(requested, previousRequest,
+                clientCachedRows);
+        if (!requested.isSubsetOf(fetch)) {
+            fetch = Range.between(
+                    Math.min(fetch.getStart(), requested.getStart()),
+                    Math.max(fetch.getEnd(), requested.getEnd()));
+        }
+        return fetch;
+    }
+
+    /**
+     * Fetches the given ranges of rows from the back end, with one query if
+     * the data source supports multi-range queries and one query per range
+     * otherwise.
+     *
+     * @param ranges
+     *            the ranges to fetch in ascending order, not overlapping
+     * @return map from fetched ranges to their data, in range order
+     */
+    private Map<Range, List<T>> fetchRanges(List<Range> ranges) {
+        Map<Range, List<T>> fetched = new LinkedHashMap<>();
+        if (ranges.size() > 1 && getDataSource().isMultiRangeSupported()) {
+            Iterator<T> data = getDataSource()
+                    .apply(new Query(ranges, backEndSorting, filters))
+                    .iterator();
+            for (Range range : ranges) {
+                List<T> rows = new ArrayList<>();
+                while (rows.size() < range.length() && data.hasNext()) {
+                    rows.add(data.next());
+                }
+                fetched.put(range, rows);
+            }
+        } else {
+            for (Range range : ranges) {
+                Query query = new Query(range.getStart(), range.length(),
+                        backEndSorting, filters);
+                fetched.put(range, getDataSource().apply(query)
+                        .collect(Collectors.toList()));
+            }
+        }
+        return fetched;
+    }
+
+    private static Range findContaining(Collection<Range> ranges,
+            Range range) {
+        for (Range candidate : ranges) {
+            if (range.isSubsetOf(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sorts the given ranges and merges overlapping and adjacent ranges.
+     * Empty ranges are left out.
+     *
+     * @param ranges
+     *            the ranges to merge
+     * @return list of merged ranges in ascending order
+     */
+    private static List<Range> mergeRanges(List<Range> ranges) {
+        List<Range> sorted = new ArrayList<>();
+        for (Range range : ranges) {
+            if (!range.isEmpty()) {
+                sorted.add(range);
+            }
+        }
+        sorted.sort(Comparator.comparingInt(Range::getStart));
+
+        List<Range> merged = new ArrayList<>();
+        for (Range range : sorted) {
+            int last = merged.size() - 1;
+            if (last >= 0 && range.getStart() <= merged.get(last).getEnd()) {
+                Range previous = merged.get(last);
+                merged.set(last, Range.between(previous.getStart(),
+                        Math.max(previous.getEnd(), range.getEnd())));
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    private void clearPrefetchedRows() {
+        prefetchedRows = null;
+    }
+
     /**
      * Adds a data generator to this data communicator. Data generators can be
      * used to insert custom data to the rows sent to the client. If the data
@@ -285,25 +642,30 @@ public class DataCommunicator<T> extends AbstractExtension {
     }
 
     /**
-     * Sends given collection of data objects to the client-side.
+     * Sends given collection of data objects to the client-side and marks
+     * them as active. Clean up of dropped data is done separately once all
+     * data for a response has been pushed.
      *
      * @param firstIndex
      *            first index of pushed data
      * @param data
      *            data objects to send as an iterable
+     * @return list of the pushed data objects
      */
-    protected void pushData(int firstIndex, Stream<T> data) {
+    protected List<T> pushData(int firstIndex, Stream<T> data) {
         JsonArray dataArray = Json.createArray();
 
         int i = 0;
         List<T> collected = data.collect(Collectors.toList());
         for (T item : collected) {
-            dataArray.set(i++, getDataObject(item));
+            JsonObject row = getDataObject(item);
+            dataArray.set(i++, row);
+            rememberSentRow(item, row);
         }
 
         rpc.setData(firstIndex, dataArray);
         handler.addActiveData(collected.stream());
-        handler.cleanUp(collected.stream());
+        return collected;
     }
 
     /**
@@ -329,13 +691,11 @@ public class DataCommunicator<T> extends AbstractExtension {
      * {@link TypedDataGenerator#destroyData} for each of those objects.
      *
      * @param droppedKeys
-     *            collection of dropped keys
+     *            array of dropped keys
      */
-    private void dropData(Collection<String> droppedKeys) {
-        for (String key : droppedKeys) {
-            assert key != null : "Bookkeepping failure. Dropping a null key";
-
-            T data = getKeyMapper().get(key);
+    private void dropData(int[] droppedKeys) {
+        for (int key : droppedKeys) {
+            T data = keyMapper.get(key);
             assert data != null : "Bookkeepping failure. No data object to match key";
 
             for (TypedDataGenerator<T> g : generators) {
@@ -345,9 +705,33 @@ public class DataCommunicator<T> extends AbstractExtension {
     }
 
     /**
-     * Informs the DataProvider that the collection has changed.
+     * Informs the DataProvider that the collection has changed. This also
+     * invalidates any cached in-memory index and sizes of the data.
      */
     protected void reset() {
+        if (inMemoryIndex != null) {
+            inMemoryIndex.invalidate();
+        }
+        sizeCache.clear();
+        markReset();
+    }
+
+    /**
+     * Discards the cached sizes of the data source and sends all data to the
+     * client again. This should be called when the amount of data in a back
+     * end has changed.
+     */
+    public void invalidateSize() {
+        sizeCache.clear();
+        markReset();
+    }
+
+    /**
+     * Marks that all data should be sent to the client again, without
+     * invalidating the in-memory index.
+     */
+    private void markReset() {
+        clearPrefetchedRows();
         if (reset) {
             return;
         }
@@ -357,17 +741,106 @@ public class DataCommunicator<T> extends AbstractExtension {
     }
 
     /**
-     * Informs the DataProvider that a data object has been updated.
+     * Informs the DataProvider that a data object has been updated. The data
+     * object is matched to the rows on the client by its id as returned by
+     * the identity provider, so it may be a different instance than the one
+     * originally sent.
+     * <p>
+     * If in-memory sorting or filtering is in use and the update changes the
+     * position of the data object among its neighbours or whether it passes
+     * the filters, the in-memory index is invalidated and all data is sent to
+     * the client again.
      *
      * @param data
      *            updated data object
+     * @see #setIdentityProvider(Function)
      */
     public void refresh(T data) {
+        Objects.requireNonNull(data, "data cannot be null");
+        if (inMemoryIndex != null
+                && !inMemoryIndex.refresh(data, keyMapper::getId)) {
+            /*
+             * The update changed the position of the data in the sorted index
+             * or whether it passes the filters, which changes the rows
+             * already on the client.
+             */
+            reset();
+        }
+        // Prefetched rows may contain an outdated version of the data
+        clearPrefetchedRows();
         if (updatedData.isEmpty()) {
             markAsDirty();
         }
 
-        updatedData.add(data);
+        updatedData.put(keyMapper.getId(data), data);
+    }
+
+    /**
+     * Sets the function used to identify data objects. The ids returned by
+     * the function are used instead of the data objects themselves for key
+     * mapping, tracking the data that is active on the client and matching
+     * refreshed data to the rows on the client. The ids should be cheap to
+     * compare and hash, such as database primary keys, and must not change
+     * while the data is shown.
+     * <p>
+     * Changing the identity provider drops all active data and sends all data
+     * to the client again.
+     *
+     * @param identityProvider
+     *            function returning a non-null id for a data object, or
+     *            {@code null} to identify data objects by their
+     *            {@code equals} and {@code hashCode}
+     */
+    public void setIdentityProvider(Function<T, ?> identityProvider) {
+        if (identityProvider == this.identityProvider) {
+            return;
+        }
+        this.identityProvider = identityProvider;
+        handler.dropAllActiveData();
+        updatedData.clear();
+        keyMapper = createKeyMapper();
+        markReset();
+    }
+
+    /**
+     * Sets whether refreshed data is sent incrementally. When enabled, the
+     * last row data sent to the client is kept in memory for each active row,
+     * and refreshing a data object only sends the fields that have changed.
+     * This reduces the amount of data sent for frequently updated rows at the
+     * cost of memory on the server.
+     * <p>
+     * Incremental updates are disabled by default.
+     *
+     * @param incrementalUpdates
+     *            {@code true} to send only changed fields of refreshed data;
+     *            {@code false} to send whole rows
+     * @see #refresh(Object)
+     */
+    public void setIncrementalUpdates(boolean incrementalUpdates) {
+        this.incrementalUpdates = incrementalUpdates;
+        if (!incrementalUpdates) {
+            sentRows = null;
+        }
+    }
+
+    /**
+     * Gets whether refreshed data is sent incrementally.
+     *
+     * @return {@code true} if only changed fields of refreshed data are sent;
+     *         {@code false} if whole rows are sent
+     */
+    public boolean isIncrementalUpdates() {
+        return incrementalUpdates;
+    }
+
+    /**
+     * Gets the function used to identify data objects.
+     *
+     * @return the identity provider, or {@code null} if data objects are
+     *         identified by their {@code equals} and {@code hashCode}
+     */
+    public Function<T, ?> getIdentityProvider() {
+        return identityProvider;
     }
 
     /**
@@ -378,7 +851,11 @@ public class DataCommunicator<T> extends AbstractExtension {
      */
     public void setInMemorySorting(Comparator<T> comparator) {
         inMemorySorting = comparator;
-        reset();
+        if (inMemoryIndex != null) {
+            // Keeps materialized data, only the sorting is redone
+            inMemoryIndex.setComparator(comparator);
+        }
+        markReset();
     }
 
     /**
@@ -390,18 +867,135 @@ public class DataCommunicator<T> extends AbstractExtension {
     public void setBackEndSorting(List<SortOrder<String>> sortOrder) {
         backEndSorting.clear();
         backEndSorting.addAll(sortOrder);
-        reset();
+        markReset();
     }
 
     /**
-     * Creates a {@link DataKeyMapper} to use with this DataCommunicator.
+     * Sets the filters to use when requesting data. The filters are passed to
+     * the data source in the {@link Query}, so a back end data source can
+     * apply them in its own query. For an in-memory data source the filters
+     * must be {@link java.util.function.Predicate Predicates}, and they are
+     * evaluated once when the data is indexed.
+     *
+     * @param filters
+     *            set of filters, not null
+     */
+    public void setFilters(Set<Object> filters) {
+        Objects.requireNonNull(filters, "filters cannot be null");
+        this.filters = Collections
+                .unmodifiableSet(new LinkedHashSet<>(filters));
+        if (inMemoryIndex != null) {
+            inMemoryIndex.setFilters(this.filters);
+        }
+        // Sizes are cached per filter set, so the cache is kept
+        markReset();
+    }
+
+    /**
+     * Gets the filters used when requesting data.
+     *
+     * @return unmodifiable set of filters
+     */
+    public Set<Object> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Sets whether the size of a back end data source is estimated instead of
+     * requested up front. When estimated, the client is first given a size
+     * slightly larger than the requested data, and the size grows as the user
+     * scrolls towards its end. The exact size is known once the data source
+     * returns fewer items than requested. This avoids potentially expensive
+     * size queries, at the cost of a scroll area that changes size.
      * <p>
-     * This method is called from the constructor.
+     * Sizes of in-memory data sources are always exact.
+     *
+     * @param sizeEstimated
+     *            {@code true} to estimate the size; {@code false} to request
+     *            the exact size from the data source
+     */
+    public void setSizeEstimated(boolean sizeEstimated) {
+        if (this.sizeEstimated != sizeEstimated) {
+            this.sizeEstimated = sizeEstimated;
+            markReset();
+        }
+    }
+
+    /**
+     * Gets whether the size of a back end data source is estimated instead of
+     * requested up front.
+     *
+     * @return {@code true} if the size is estimated; {@code false} if not
+     */
+    public boolean isSizeEstimated() {
+        return sizeEstimated;
+    }
+
+    /**
+     * Sets how much the estimated size grows when the user scrolls near the
+     * end of the estimate. The default is 200.
+     *
+     * @param sizeEstimateIncrement
+     *            the estimate increment, greater than zero
+     */
+    public void setSizeEstimateIncrement(int sizeEstimateIncrement) {
+        if (sizeEstimateIncrement <= 0) {
+            throw new IllegalArgumentException(
+                    "Size estimate increment must be positive");
+        }
+        this.sizeEstimateIncrement = sizeEstimateIncrement;
+    }
+
+    /**
+     * Gets how much the estimated size grows when the user scrolls near the
+     * end of the estimate.
+     *
+     * @return the estimate increment
+     */
+    public int getSizeEstimateIncrement() {
+        return sizeEstimateIncrement;
+    }
+
+    /**
+     * Sets the policy for prefetching rows from a back end data source. With
+     * a prefetch policy, a larger range of rows than requested by the client
+     * is fetched with one query and kept in memory, so that following
+     * requests within that range don't need to query the back end. The
+     * prefetched rows are discarded whenever the data is reset.
+     * <p>
+     * Prefetching is not used with in-memory data sources.
+     *
+     * @param prefetchPolicy
+     *            the prefetch policy to use, or {@code null} to only fetch
+     *            the requested rows
+     * @see DirectionalPrefetchPolicy
+     */
+    public void setPrefetchPolicy(PrefetchPolicy prefetchPolicy) {
+        this.prefetchPolicy = prefetchPolicy;
+        clearPrefetchedRows();
+    }
+
+    /**
+     * Gets the policy for prefetching rows from a back end data source.
+     *
+     * @return the prefetch policy, or {@code null} if not prefetching
+     */
+    public PrefetchPolicy getPrefetchPolicy() {
+        return prefetchPolicy;
+    }
+
+    /**
+     * Creates an {@link IntKeyMapper} to use with this DataCommunicator. The
+     * key mapper should use the current identity provider.
+     * <p>
+     * This method is called from the constructor and when the identity
+     * provider is changed.
      *
      * @return key mapper
+     * @see #getIdentityProvider()
      */
-    protected DataKeyMapper<T> createKeyMapper() {
-        return new KeyMapper<>();
+    protected IntKeyMapper<T> createKeyMapper() {
+        return new IntKeyMapper<>(identityProvider);
     }
 
     /**
@@ -433,6 +1027,29 @@ public class DataCommunicator<T> extends AbstractExtension {
     public void setDataSource(DataSource<T> dataSource) {
         Objects.requireNonNull(dataSource, "data source cannot be null");
         this.dataSource = dataSource;
+        if (dataSource.isInMemory()) {
+            inMemoryIndex = createInMemoryIndex(dataSource);
+            inMemoryIndex.setComparator(inMemorySorting);
+            inMemoryIndex.setFilters(filters);
+        } else {
+            inMemoryIndex = null;
+        }
         reset();
     }
+
+    /**
+     * Creates an {@link InMemoryDataIndex} for an in-memory data source. The
+     * index is used to fetch sorted ranges of data without sorting all the
+     * data for each request.
+     * <p>
+     * This method is called when an in-memory data source is set.
+     *
+     * @param dataSource
+     *            the in-memory data source to index
+     * @return in-memory data index
+     */
+    protected InMemoryDataIndex<T> createInMemoryIndex(
+            DataSource<T> dataSource) {
+        return new InMemoryDataIndex<>(dataSource);
+    }
 }
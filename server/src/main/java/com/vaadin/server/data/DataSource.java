@@ -52,6 +52,19 @@ public interface DataSource<T>
      */
     int size(Query t);
 
+    /**
+     * Gets whether this DataSource can handle queries with several ranges of
+     * rows in one request. If not, multi-range queries are split into one
+     * query per range.
+     *
+     * @return {@code true} if multi-range queries are supported;
+     *         {@code false} if not
+     * @see Query#getRanges()
+     */
+    default boolean isMultiRangeSupported() {
+        return false;
+    }
+
     /**
      * This method creates a new {@link ListDataSource} from a given Collection.
      * The ListDataSource creates a protective List copy of all the contents in
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.data;
+
+import com.vaadin.shared.ui.grid.Range;
+
+/**
+ * {@link PrefetchPolicy} that reads ahead in the direction the user is
+ * scrolling. When scrolling down, rows after the requested range are
+ * prefetched, and when scrolling up, rows before it. A smaller number of rows
+ * is also fetched in the opposite direction to make small direction changes
+ * cheap, unless the client already has those rows cached.
+ *
+ * @since
+ */
+public class DirectionalPrefetchPolicy implements PrefetchPolicy {
+
+    private final int readAhead;
+    private final int readBehind;
+
+    /**
+     * Creates a new policy reading ahead the given number of rows in the
+     * scrolling direction and a quarter of that in the other direction.
+     *
+     * @param readAhead
+     *            the number of rows to prefetch in the scrolling direction,
+     *            not negative
+     */
+    public DirectionalPrefetchPolicy(int readAhead) {
+        this(readAhead, readAhead / 4);
+    }
+
+    /**
+     * Creates a new policy reading ahead and behind the given number of rows.
+     *
+     * @param readAhead
+     *            the number of rows to prefetch in the scrolling direction,
+     *            not negative
+     * @param readBehind
+     *            the number of rows to prefetch in the other direction, not
+     *            negative
+     */
+    public DirectionalPrefetchPolicy(int readAhead, int readBehind) {
+        if (readAhead < 0 || readBehind < 0) {
+            throw new IllegalArgumentException(
+                    "Prefetched row counts can't be negative");
+        }
+        this.readAhead = readAhead;
+        this.readBehind = readBehind;
+    }
+
+    @Override
+    public Range getFetchRange(Range requested, Range previousRequest,
+            Range clientCache) {
+        boolean scrollingUp = !previousRequest.isEmpty()
+                && requested.getStart() < previousRequest.getStart();
+        int before = scrollingUp ? readAhead : readBehind;
+        int after = scrollingUp ? readBehind : readAhead;
+
+        int start = Math.max(0, requested.getStart() - before);
+        int end = (int) Math.min((long) requested.getEnd() + after,
+                Integer.MAX_VALUE);
+
+        // Rows behind the request that the client has cached are not needed
+        if (scrollingUp) {
+            Range behind = Range.between(requested.getEnd(), end);
+            if (!behind.isEmpty() && behind.isSubsetOf(clientCache)) {
+                end = requested.getEnd();
+            }
+        } else {
+            Range behind = Range.between(start, requested.getStart());
+            if (!behind.isEmpty() && behind.isSubsetOf(clientCache)) {
+                start = requested.getStart();
+            }
+        }
+        return Range.between(start, end);
+    }
+
+    /**
+     * Gets the number of rows to prefetch in the scrolling direction.
+     *
+     * @return the number of rows read ahead
+     */
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Gets the number of rows to prefetch in the direction opposite to
+     * scrolling.
+     *
+     * @return the number of rows read behind
+     */
+    public int getReadBehind() {
+        return readBehind;
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Materialized index of the contents of an in-memory {@link DataSource}. The
+ * index keeps the filtered data in the order defined by the in-memory sorting,
+ * so fetching a range of data is a random access operation instead of
+ * filtering and sorting all data for each request.
+ * <p>
+ * The index is built lazily when data is first requested. Sorting is done
+ * incrementally: only the smallest items up to the end of the requested range
+ * are selected and sorted, and the sorted part grows as later ranges are
+ * requested. The resulting order is the same as with a stable sort of the
+ * data source contents. Large sorts are run in parallel if the data source is
+ * a {@link ListDataSource} with parallel processing enabled.
+ * <p>
+ * The index has to be invalidated with {@link #invalidate()} whenever the
+ * content of the data source changes. The index is not serialized but rebuilt
+ * on demand.
+ *
+ * @since
+ * @param <T>
+ *            data type
+ */
+public class InMemoryDataIndex<T> implements Serializable {
+
+    /**
+     * When the unsorted part would need to be partially sorted beyond this
+     * fraction of its size, it is sorted completely instead.
+     */
+    private static final int FULL_SORT_DIVISOR = 4;
+
+    private final DataSource<T> dataSource;
+    private Comparator<T> comparator;
+    private Set<Object> filters = Collections.emptySet();
+
+    /**
+     * Data in data source order; {@code null} when the index is not built
+     */
+    private transient List<T> items;
+
+    /**
+     * Positions of the items in sorted order. Only the first
+     * {@link #sortedCount} positions are final, the rest are in arbitrary
+     * order. {@code null} when there is no comparator.
+     */
+    private transient int[] order;
+
+    private transient int sortedCount;
+
+    /**
+     * Constructs a new index for the given in-memory data source.
+     *
+     * @param dataSource
+     *            the data source to index, not null
+     */
+    public InMemoryDataIndex(DataSource<T> dataSource) {
+        Objects.requireNonNull(dataSource, "data source cannot be null");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Gets the data source this index is built from.
+     *
+     * @return the data source
+     */
+    public DataSource<T> getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Sets the {@link Comparator} used to order the indexed data. Changing the
+     * comparator discards the current sorting, but the materialized data is
+     * kept.
+     *
+     * @param comparator
+     *            comparator used to sort data, or {@code null} to use the
+     *            order of the data source
+     */
+    public void setComparator(Comparator<T> comparator) {
+        this.comparator = comparator;
+        order = null;
+        sortedCount = 0;
+    }
+
+    /**
+     * Gets the {@link Comparator} used to order the indexed data.
+     *
+     * @return comparator used to sort data, or {@code null} if not sorted
+     */
+    public Comparator<T> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Sets the filters passed to the data source when the index is built.
+     * Changing the filters invalidates the index.
+     *
+     * @param filters
+     *            set of filters, not null
+     */
+    public void setFilters(Set<Object> filters) {
+        Objects.requireNonNull(filters, "filters cannot be null");
+        this.filters = Collections
+                .unmodifiableSet(new LinkedHashSet<>(filters));
+        invalidate();
+    }
+
+    /**
+     * Gets the filters passed to the data source when the index is built.
+     *
+     * @return unmodifiable set of filters
+     */
+    public Set<Object> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Discards the materialized index. The index is rebuilt from the data
+     * source on next access.
+     */
+    public void invalidate() {
+        items = null;
+        order = null;
+        sortedCount = 0;
+    }
+
+    /**
+     * Updates the index for a data object that has been modified in place or
+     * replaced by an equivalent object. The index stays valid if the update
+     * does not change whether the object passes the filters, nor its position
+     * relative to its neighbours in the sorted part of the index. Otherwise
+     * the index is invalidated.
+     *
+     * @param data
+     *            the updated data object, not null
+     * @param identityProvider
+     *            function returning the id used to find the indexed object
+     *            corresponding to the updated one, not null
+     * @return {@code true} if the index is still valid; {@code false} if it
+     *         was invalidated
+     */
+    public boolean refresh(T data, Function<T, ?> identityProvider) {
+        if (items == null || comparator == null && filters.isEmpty()) {
+            return true;
+        }
+
+        boolean matches;
+        if (filters.isEmpty()) {
+            matches = true;
+        } else if (dataSource instanceof ListDataSource) {
+            matches = ((ListDataSource<T>) dataSource).matches(data,
+                    new Query(filters));
+        } else {
+            // Cannot evaluate the filters for a single object
+            invalidate();
+            return false;
+        }
+
+        Object id = identityProvider.apply(data);
+        int position = -1;
+        for (int i = 0; i < items.size(); ++i) {
+            if (Objects.equals(id, identityProvider.apply(items.get(i)))) {
+                position = i;
+                break;
+            }
+        }
+        if (position < 0 || !matches) {
+            // Unchanged if the object was and still is filtered out
+            if (position >= 0 || matches) {
+                invalidate();
+                return false;
+            }
+            return true;
+        }
+
+        if (items.get(position) != data) {
+            try {
+                items.set(position, data);
+            } catch (UnsupportedOperationException e) {
+                invalidate();
+                return false;
+            }
+        }
+        if (comparator != null && order != null
+                && !isInSortedPlace(position)) {
+            invalidate();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the item at the given position is still ordered
+     * correctly relative to its neighbours in the sorted part of the index
+     * and, if it is in the last sorted place or in the unsorted part, to the
+     * boundary between the parts.
+     */
+    private boolean isInSortedPlace(int position) {
+        int rank = -1;
+        for (int i = 0; i < order.length; ++i) {
+            if (order[i] == position) {
+                rank = i;
+                break;
+            }
+        }
+        if (rank >= sortedCount) {
+            // Only needs to stay after the sorted part
+            return sortedCount == 0
+                    || compare(order[sortedCount - 1], position) < 0;
+        }
+        if (rank > 0 && compare(order[rank - 1], position) > 0) {
+            return false;
+        }
+        if (rank + 1 < sortedCount) {
+            return compare(position, order[rank + 1]) < 0;
+        }
+        // Last sorted item, must not be larger than any unsorted item
+        for (int i = sortedCount; i < order.length; ++i) {
+            if (compare(order[i], position) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets whether the index is currently built and up to date.
+     *
+     * @return {@code true} if the index is built; {@code false} if not
+     */
+    public boolean isValid() {
+        return items != null;
+    }
+
+    /**
+     * Gets the number of items from the start of the index that are
+     * currently in their final sorted position.
+     *
+     * @return the number of sorted items
+     */
+    public int getSortedCount() {
+        if (items == null) {
+            return 0;
+        }
+        return comparator == null ? items.size() : sortedCount;
+    }
+
+    /**
+     * Gets the amount of data in the index, after filtering.
+     *
+     * @return the size of the indexed data
+     */
+    public int size() {
+        return getItems().size();
+    }
+
+    /**
+     * Fetches a range of data from the index. The range is clamped to the
+     * size of the index. Only as much of the data is sorted as needed to
+     * return the requested range.
+     *
+     * @param offset
+     *            first index to fetch
+     * @param limit
+     *            maximum number of items to fetch
+     * @return stream of indexed data in the requested range
+     */
+    public Stream<T> fetch(int offset, int limit) {
+        List<T> list = getItems();
+        int start = Math.min(Math.max(offset, 0), list.size());
+        int end = (int) Math.min((long) start + Math.max(limit, 0),
+                list.size());
+
+        if (comparator == null) {
+            return list.subList(start, end).stream();
+        }
+
+        ensureSorted(end);
+        int[] sorted = order;
+        return IntStream.range(start, end).mapToObj(i -> list.get(sorted[i]));
+    }
+
+    /**
+     * Materializes the filtered data from the data source. The returned list
+     * should support fast random access. Sorting is applied separately.
+     *
+     * @return list of all data in the data source matching the filters
+     */
+    protected List<T> buildIndex() {
+        return dataSource.apply(new Query(filters))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private List<T> getItems() {
+        if (items == null) {
+            items = buildIndex();
+        }
+        return items;
+    }
+
+    /**
+     * Makes sure that at least the first {@code end} positions are sorted.
+     * The sorted part is grown at least geometrically so that scrolling
+     * through all data does not select from the unsorted part for every
+     * range.
+     */
+    private void ensureSorted(int end) {
+        int size = items.size();
+        if (order == null) {
+            order = IntStream.range(0, size).toArray();
+            sortedCount = 0;
+        }
+        if (end <= sortedCount) {
+            return;
+        }
+
+        int target = Math.min(size, Math.max(end, sortedCount * 2));
+        if (target - sortedCount > (size - sortedCount) / FULL_SORT_DIVISOR) {
+            target = size;
+        } else {
+            select(sortedCount, size, target);
+        }
+        sort(sortedCount, target);
+        sortedCount = target;
+    }
+
+    /**
+     * Compares item positions by the item order, using the position in the
+     * data source as a tie breaker to keep the order stable.
+     */
+    private int compare(int a, int b) {
+        int result = comparator.compare(items.get(a), items.get(b));
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+
+    /**
+     * Reorders positions in {@code [from, to)} so that the positions in
+     * {@code [from, k)} refer to the smallest items, in arbitrary order.
+     */
+    private void select(int from, int to, int k) {
+        int left = from;
+        int right = to - 1;
+        while (left < right) {
+            int pivot = partition(left, right, (left + right) >>> 1);
+            if (pivot == k || pivot == k - 1) {
+                return;
+            } else if (pivot < k) {
+                left = pivot + 1;
+            } else {
+                right = pivot - 1;
+            }
+        }
+    }
+
+    private int partition(int left, int right, int pivotIndex) {
+        int pivot = order[pivotIndex];
+        swap(pivotIndex, right);
+        int store = left;
+        for (int i = left; i < right; ++i) {
+            if (compare(order[i], pivot) < 0) {
+                swap(store++, i);
+            }
+        }
+        swap(store, right);
+        return store;
+    }
+
+    private boolean isParallel(int count) {
+        return dataSource instanceof ListDataSource
+                && ((ListDataSource<T>) dataSource).isParallel(count);
+    }
+
+    private void swap(int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+    }
+
+    private void sort(int from, int to) {
+        Integer[] positions = new Integer[to - from];
+        for (int i = from; i < to; ++i) {
+            positions[i - from] = order[i];
+        }
+        if (isParallel(positions.length)) {
+            ListDataSource<T> listDataSource = (ListDataSource<T>) dataSource;
+            listDataSource.invokeParallel(() -> {
+                Arrays.parallelSort(positions, this::compare);
+                return null;
+            });
+        } else {
+            Arrays.sort(positions, this::compare);
+        }
+        for (int i = from; i < to; ++i) {
+            order[i] = positions[i - from];
+        }
+    }
+}
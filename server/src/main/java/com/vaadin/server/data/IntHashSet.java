@@ -0,0 +1,177 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.data;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Set of positive {@code int} values backed by a linear probing hash table.
+ * Used for tracking keys of an {@link IntKeyMapper} without boxing.
+ *
+ * @since
+ */
+class IntHashSet implements Serializable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Hash table of values; zero marks an empty slot */
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Adds a value to this set.
+     *
+     * @param value
+     *            the value to add, positive
+     * @return {@code true} if the value was added; {@code false} if it was
+     *         already in the set
+     */
+    public boolean add(int value) {
+        assert value > 0 : "Only positive values can be stored";
+        int slot = slot(value);
+        if (values[slot] != 0) {
+            return false;
+        }
+        if ((size + 1) * 2 > values.length) {
+            resize(values.length * 2);
+            slot = slot(value);
+        }
+        values[slot] = value;
+        ++size;
+        return true;
+    }
+
+    /**
+     * Removes a value from this set.
+     *
+     * @param value
+     *            the value to remove
+     * @return {@code true} if the value was removed; {@code false} if it was
+     *         not in the set
+     */
+    public boolean remove(int value) {
+        if (value <= 0) {
+            return false;
+        }
+        int slot = slot(value);
+        if (values[slot] == 0) {
+            return false;
+        }
+        deleteSlot(slot);
+        --size;
+        return true;
+    }
+
+    /**
+     * Checks whether a value is in this set.
+     *
+     * @param value
+     *            the value to check
+     * @return {@code true} if the value is in the set; {@code false} if not
+     */
+    public boolean contains(int value) {
+        return value > 0 && values[slot(value)] != 0;
+    }
+
+    /**
+     * Gets the number of values in this set.
+     *
+     * @return the size of the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets whether this set is empty.
+     *
+     * @return {@code true} if the set is empty; {@code false} if not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values from this set.
+     */
+    public void clear() {
+        if (values.length > INITIAL_CAPACITY) {
+            values = new int[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(values, 0);
+        }
+        size = 0;
+    }
+
+    /**
+     * Gets the values in this set in no particular order.
+     *
+     * @return array of the values
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int value : values) {
+            if (value != 0) {
+                result[i++] = value;
+            }
+        }
+        return result;
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slot(int value) {
+        int mask = values.length - 1;
+        int slot = mix(value) & mask;
+        while (values[slot] != 0 && values[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        int[] old = values;
+        values = new int[capacity];
+        for (int value : old) {
+            if (value != 0) {
+                values[slot(value)] = value;
+            }
+        }
+    }
+
+    private void deleteSlot(int slot) {
+        int mask = values.length - 1;
+        int hole = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == 0) {
+                break;
+            }
+            int home = mix(values[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        values[hole] = 0;
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.data;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * {@link DataKeyMapper} that maps data objects to {@code int} keys. The
+ * mappings are stored in open addressing hash tables backed by arrays, so
+ * mapping a data object does not allocate any entry or key objects. Key
+ * strings are only created when a key is written to the client with
+ * {@link #key(Object)}.
+ * <p>
+ * Keys are positive integers. Like with other key mappers, dropped keys are
+ * not reused.
+ * <p>
+ * Data objects are identified either by the objects themselves, using their
+ * {@code equals} and {@code hashCode}, or by an id returned by an identity
+ * provider function. With an identity provider, different instances of the
+ * same entity get the same key, and the mapper always returns the most
+ * recently keyed instance.
+ *
+ * @since
+ * @param <T>
+ *            data type
+ */
+public class IntKeyMapper<T> implements DataKeyMapper<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Function<T, ?> identityProvider;
+
+    private int lastKey = 0;
+    private int size = 0;
+
+    /*
+     * Two linear probing tables of the same capacity. The first maps data
+     * object ids to keys and the second keys to data objects. Empty slots have
+     * a null id and a zero key respectively. The tables are rebuilt when
+     * deserializing, since object hash codes may differ between JVMs.
+     */
+    private transient Object[] objects;
+    private transient int[] objectKeys;
+    private transient int[] keys;
+    private transient Object[] keyObjects;
+
+    /**
+     * Creates a new empty key mapper that identifies data objects by their
+     * {@code equals} and {@code hashCode}.
+     */
+    public IntKeyMapper() {
+        this(null);
+    }
+
+    /**
+     * Creates a new empty key mapper that identifies data objects by the ids
+     * returned by the given identity provider. The ids should be cheap to
+     * compare and hash, and must not change while the data object is mapped.
+     *
+     * @param identityProvider
+     *            function returning a non-null id for a data object, or
+     *            {@code null} to identify data objects by themselves
+     */
+    public IntKeyMapper(Function<T, ?> identityProvider) {
+        this.identityProvider = identityProvider;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Gets the identity provider used by this key mapper.
+     *
+     * @return the identity provider, or {@code null} if data objects are
+     *         identified by themselves
+     */
+    public Function<T, ?> getIdentityProvider() {
+        return identityProvider;
+    }
+
+    /**
+     * Gets the id identifying the given data object in this key mapper.
+     *
+     * @param dataObject
+     *            the data object, not null
+     * @return the id of the data object
+     */
+    public Object getId(T dataObject) {
+        if (identityProvider == null) {
+            return dataObject;
+        }
+        return Objects.requireNonNull(identityProvider.apply(dataObject),
+                "identity provider cannot return null");
+    }
+
+    /**
+     * Gets the key for a data object. If no key exists beforehand, a new key
+     * is created. If another instance with the same id is already mapped, the
+     * key is shared and the given instance replaces the mapped one. The key of
+     * {@code null} is {@code 0}.
+     *
+     * @param dataObject
+     *            data object for key mapping
+     * @return positive key for the data object; {@code 0} for {@code null}
+     */
+    public int intKey(T dataObject) {
+        if (dataObject == null) {
+            return 0;
+        }
+
+        Object id = getId(dataObject);
+        int slot = objectSlot(id);
+        if (objects[slot] != null) {
+            int key = objectKeys[slot];
+            if (identityProvider != null) {
+                keyObjects[keySlot(key)] = dataObject;
+            }
+            return key;
+        }
+
+        if ((size + 1) * 2 > objects.length) {
+            resize(objects.length * 2);
+            slot = objectSlot(id);
+        }
+
+        int key = ++lastKey;
+        objects[slot] = id;
+        objectKeys[slot] = key;
+        putKey(key, dataObject);
+        ++size;
+        return key;
+    }
+
+    /**
+     * Gets the data object identified by the given key.
+     *
+     * @param key
+     *            key of a data object
+     * @return identified data object; {@code null} if invalid key
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int key) {
+        if (key <= 0) {
+            return null;
+        }
+        return (T) keyObjects[keySlot(key)];
+    }
+
+    /**
+     * Checks whether the given key is mapped to a data object.
+     *
+     * @param key
+     *            the key to check
+     * @return {@code true} if the key is mapped; {@code false} if not
+     */
+    public boolean containsKey(int key) {
+        return key > 0 && keys[keySlot(key)] != 0;
+    }
+
+    /**
+     * Checks whether the given data object has a key.
+     *
+     * @param dataObject
+     *            the data object to check
+     * @return {@code true} if the data object is mapped; {@code false} if not
+     */
+    public boolean has(T dataObject) {
+        return dataObject != null
+                && objects[objectSlot(getId(dataObject))] != null;
+    }
+
+    /**
+     * Gets the number of mapped data objects.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Parses a key string created by {@link #key(Object)}.
+     *
+     * @param key
+     *            the key string
+     * @return the key; {@code 0} if the string is not a valid key
+     */
+    public static int parseKey(String key) {
+        if (key == null || key.isEmpty() || key.length() > 10) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < key.length(); ++i) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value > Integer.MAX_VALUE ? 0 : (int) value;
+    }
+
+    @Override
+    public String key(T dataObject) {
+        if (dataObject == null) {
+            return "null";
+        }
+        return String.valueOf(intKey(dataObject));
+    }
+
+    @Override
+    public T get(String key) {
+        return get(parseKey(key));
+    }
+
+    @Override
+    public void remove(T dataObject) {
+        if (dataObject == null) {
+            return;
+        }
+        int slot = objectSlot(getId(dataObject));
+        if (objects[slot] == null) {
+            return;
+        }
+        int key = objectKeys[slot];
+        deleteObjectSlot(slot);
+        deleteKeySlot(keySlot(key));
+        --size;
+    }
+
+    @Override
+    public void removeAll() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    private void allocate(int capacity) {
+        objects = new Object[capacity];
+        objectKeys = new int[capacity];
+        keys = new int[capacity];
+        keyObjects = new Object[capacity];
+    }
+
+    private void resize(int capacity) {
+        Object[] oldObjects = objects;
+        int[] oldObjectKeys = objectKeys;
+        int[] oldKeys = keys;
+        Object[] oldKeyObjects = keyObjects;
+        allocate(capacity);
+        for (int i = 0; i < oldObjects.length; ++i) {
+            if (oldObjects[i] != null) {
+                putId(oldObjects[i], oldObjectKeys[i]);
+            }
+            if (oldKeys[i] != 0) {
+                putKey(oldKeys[i], oldKeyObjects[i]);
+            }
+        }
+    }
+
+    private void putId(Object id, int key) {
+        int slot = objectSlot(id);
+        objects[slot] = id;
+        objectKeys[slot] = key;
+    }
+
+    private void putKey(int key, Object dataObject) {
+        int slot = keySlot(key);
+        keys[slot] = key;
+        keyObjects[slot] = dataObject;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Finds the slot containing the given id, or the empty slot where it would
+     * be inserted.
+     */
+    private int objectSlot(Object id) {
+        int mask = objects.length - 1;
+        int slot = mix(id.hashCode()) & mask;
+        while (objects[slot] != null && !objects[slot].equals(id)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Finds the slot containing the given key, or the empty slot where it
+     * would be inserted.
+     */
+    private int keySlot(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot of the object table, moving later entries of the same
+     * probe sequence back so that lookups don't stop at the hole.
+     */
+    private void deleteObjectSlot(int slot) {
+        int mask = objects.length - 1;
+        int hole = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            if (objects[i] == null) {
+                break;
+            }
+            int home = mix(objects[i].hashCode()) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                objects[hole] = objects[i];
+                objectKeys[hole] = objectKeys[i];
+                hole = i;
+            }
+        }
+        objects[hole] = null;
+        objectKeys[hole] = 0;
+    }
+
+    /**
+     * Empties a slot of the key table, moving later entries of the same probe
+     * sequence back so that lookups don't stop at the hole.
+     */
+    private void deleteKeySlot(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            if (keys[i] == 0) {
+                break;
+            }
+            int home = mix(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                keyObjects[hole] = keyObjects[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+        keyObjects[hole] = null;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] != 0) {
+                out.writeInt(keys[i]);
+                out.writeObject(keyObjects[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        allocate(in.readInt());
+        for (int i = 0; i < size; ++i) {
+            int key = in.readInt();
+            T dataObject = (T) in.readObject();
+            putId(getId(dataObject), key);
+            putKey(key, dataObject);
+        }
+    }
+}
@@ -19,12 +19,23 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import com.vaadin.server.VaadinService;
+
 /**
  * {@link DataSource} wrapper for {@link Collection}s. This class does not
- * actually handle the {@link Query} parameters.
+ * handle the index limits or sorting of the {@link Query}. The filters of the
+ * query are applied to the data, and they must be {@link Predicate Predicates}
+ * of the data type.
  *
  * @param <T>
  *            data type
@@ -34,6 +45,10 @@ public class ListDataSource<T> implements DataSource<T> {
     private Function<Query, Stream<T>> request;
     private int size;
 
+    private Comparator<T> sortOrder;
+    private int parallelThreshold = Integer.MAX_VALUE;
+    private transient ForkJoinPool parallelPool;
+
     /**
      * Constructs a new ListDataSource. This method makes a protective copy of
      * the contents of the Collection.
@@ -59,9 +74,83 @@ public class ListDataSource<T> implements DataSource<T> {
         this.request = request;
     }
 
+    /**
+     * Creates a copy of this data source with the same data and settings.
+     *
+     * @return copy of this data source
+     */
+    private ListDataSource<T> copy() {
+        ListDataSource<T> copy = new ListDataSource<>(request);
+        copy.size = size;
+        copy.sortOrder = sortOrder;
+        copy.parallelThreshold = parallelThreshold;
+        copy.parallelPool = parallelPool;
+        return copy;
+    }
+
     @Override
     public Stream<T> apply(Query query) {
-        return request.apply(query);
+        Stream<T> stream = request.apply(query);
+        Predicate<T> filter = getFilter(query);
+        if (filter == null && sortOrder == null) {
+            return stream;
+        }
+        if (!isParallel(size)) {
+            return process(stream, filter);
+        }
+        List<T> processed = invokeParallel(() -> process(stream.parallel(),
+                filter).collect(Collectors.toList()));
+        return processed.stream();
+    }
+
+    private Stream<T> process(Stream<T> stream, Predicate<T> filter) {
+        if (filter != null) {
+            stream = stream.filter(filter);
+        }
+        if (sortOrder != null) {
+            stream = stream.sorted(sortOrder);
+        }
+        return stream;
+    }
+
+    /**
+     * Combines the filters of the given query into a single predicate.
+     *
+     * @param query
+     *            the query to get filters from
+     * @return predicate matching all filters, or {@code null} if the query
+     *         has no filters
+     * @throws IllegalArgumentException
+     *             if a filter is not a {@link Predicate}
+     */
+    /**
+     * Checks whether the given data passes the filters of the given query.
+     *
+     * @param data
+     *            the data to check
+     * @param query
+     *            the query to get filters from
+     * @return {@code true} if the data passes all filters; {@code false} if
+     *         not
+     */
+    boolean matches(T data, Query query) {
+        Predicate<T> filter = getFilter(query);
+        return filter == null || filter.test(data);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate<T> getFilter(Query query) {
+        Predicate<T> combined = null;
+        for (Object filter : query.getFilters()) {
+            if (!(filter instanceof Predicate)) {
+                throw new IllegalArgumentException(
+                        "In-memory data source filters must be predicates, got "
+                                + filter);
+            }
+            Predicate<T> predicate = (Predicate<T>) filter;
+            combined = combined == null ? predicate : combined.and(predicate);
+        }
+        return combined;
     }
 
     /**
@@ -72,7 +161,12 @@ public class ListDataSource<T> implements DataSource<T> {
      * @return new data source with modified sorting
      */
     public ListDataSource<T> sortingBy(Comparator<T> sortOrder) {
-        return new ListDataSource<>(q -> request.apply(q).sorted(sortOrder));
+        Objects.requireNonNull(sortOrder, "Sort order can't be null");
+        ListDataSource<T> sorted = copy();
+        // Sorting is stable, so the previous order is kept for equal items
+        sorted.sortOrder = this.sortOrder == null ? sortOrder
+                : sortOrder.thenComparing(this.sortOrder);
+        return sorted;
     }
 
     /**
@@ -90,6 +184,97 @@ public class ListDataSource<T> implements DataSource<T> {
         return sortingBy(Comparator.comparing(sortOrder));
     }
 
+    /**
+     * Enables parallel sorting and filtering for this data source when it
+     * contains at least the given amount of data. Parallel processing is run
+     * in the {@link VaadinService#getParallelPool() parallel pool} of the
+     * current service, which is separate from the common fork-join pool so
+     * that request threads using the common pool are not starved. If there is
+     * no current service, the data is processed sequentially.
+     * <p>
+     * Parallel sorting has an overhead that only pays off with large amounts
+     * of data. A threshold in the range of tens of thousands of items is a
+     * reasonable starting point. Comparators and filters used with a parallel
+     * data source must be thread safe.
+     *
+     * @param threshold
+     *            the minimum amount of data for parallel processing
+     * @return new data source with parallel processing enabled
+     */
+    public ListDataSource<T> parallel(int threshold) {
+        return parallel(threshold, null);
+    }
+
+    /**
+     * Enables parallel sorting and filtering for this data source when it
+     * contains at least the given amount of data. Parallel processing is run
+     * in the given pool.
+     * <p>
+     * The pool is not serialized with the data source. A deserialized data
+     * source uses the parallel pool of the current service instead.
+     *
+     * @param threshold
+     *            the minimum amount of data for parallel processing
+     * @param pool
+     *            the pool to run parallel processing in, or {@code null} to
+     *            use the parallel pool of the current service
+     * @return new data source with parallel processing enabled
+     */
+    public ListDataSource<T> parallel(int threshold, ForkJoinPool pool) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException(
+                    "Threshold can't be negative: " + threshold);
+        }
+        ListDataSource<T> parallel = copy();
+        parallel.parallelThreshold = threshold;
+        parallel.parallelPool = pool;
+        return parallel;
+    }
+
+    /**
+     * Gets whether the given amount of data should be processed in parallel.
+     *
+     * @param dataSize
+     *            the amount of data to process
+     * @return {@code true} if parallel processing is enabled, a pool is
+     *         available and the data size is at least the threshold;
+     *         {@code false} if not
+     */
+    public boolean isParallel(int dataSize) {
+        return dataSize >= parallelThreshold && getParallelPool() != null;
+    }
+
+    /**
+     * Runs the given task in the parallel processing pool of this data source
+     * and waits for the result. Parallel streams and parallel array
+     * operations started from the task use the same pool. Should only be
+     * called if {@link #isParallel(int)} returns {@code true}.
+     *
+     * @param task
+     *            the task to run, not null
+     * @param <R>
+     *            the result type
+     * @return the result of the task
+     */
+    public <R> R invokeParallel(Supplier<R> task) {
+        Objects.requireNonNull(task, "Task can't be null");
+        ForkJoinPool pool = getParallelPool();
+        if (pool == null) {
+            throw new IllegalStateException(
+                    "No pool given and no current VaadinService available");
+        }
+        return pool.invoke(ForkJoinTask.adapt((Callable<R>) task::get));
+    }
+
+    private ForkJoinPool getParallelPool() {
+        if (parallelPool != null) {
+            return parallelPool;
+        }
+        // Looked up for each use, since the service pool is not serialized
+        VaadinService service = VaadinService.getCurrent();
+        return service == null ? null : service.getParallelPool();
+    }
+
     @Override
     public boolean isInMemory() {
         return true;
@@ -98,11 +283,20 @@ public class ListDataSource<T> implements DataSource<T> {
     /**
      * {@inheritDoc}
      * <p>
-     * For in-memory data source the query is not handled, and it will always
-     * return the full size.
+     * For in-memory data source only the filters of the query are handled.
+     * Without filters the full size is returned without going through the
+     * data.
      */
     @Override
     public int size(Query t) {
-        return size;
+        Predicate<T> filter = getFilter(t);
+        if (filter == null) {
+            return size;
+        }
+        if (!isParallel(size)) {
+            return (int) request.apply(t).filter(filter).count();
+        }
+        return invokeParallel(() -> (int) request.apply(t).parallel()
+                .filter(filter).count());
     }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.data;
+
+import java.io.Serializable;
+
+import com.vaadin.shared.ui.grid.Range;
+
+/**
+ * Policy for prefetching data from a back end {@link DataSource} in
+ * {@link DataCommunicator}. When the client requests rows that have not been
+ * prefetched, the policy decides which larger range of rows to fetch with a
+ * single back end query. Later requests within that range are served from
+ * memory.
+ *
+ * @since
+ * @see DataCommunicator#setPrefetchPolicy(PrefetchPolicy)
+ * @see DirectionalPrefetchPolicy
+ */
+@FunctionalInterface
+public interface PrefetchPolicy extends Serializable {
+
+    /**
+     * Gets the range of rows to fetch from the back end. The returned range
+     * should contain the requested range; if it does not, it is extended to
+     * do so.
+     *
+     * @param requested
+     *            the range of rows requested by the client
+     * @param previousRequest
+     *            the range of rows requested by the client in the previous
+     *            request, empty if there is no previous request
+     * @param clientCache
+     *            the range of rows currently cached on the client
+     * @return the range of rows to fetch
+     */
+    Range getFetchRange(Range requested, Range previousRequest,
+            Range clientCache);
+}
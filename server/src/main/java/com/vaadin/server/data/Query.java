@@ -16,13 +16,26 @@
 package com.vaadin.server.data;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Stream;
+
+import com.vaadin.shared.ui.grid.Range;
 
 /**
  * Query object used to request data from a backend. Contains index limits,
  * sorting and filtering information.
+ * <p>
+ * Filters are opaque to the query. Back end data sources can translate the
+ * filter types they know into their own queries, while {@link ListDataSource}
+ * evaluates filters that are {@link java.util.function.Predicate Predicates}.
+ * <p>
+ * A query can contain several ranges of rows to fetch. Such queries are only
+ * passed to data sources that declare support for them with
+ * {@link DataSource#isMultiRangeSupported()}.
  *
  * @since
  */
@@ -32,6 +45,7 @@ public class Query implements Serializable {
     private final int limit;
     private final List<SortOrder<String>> sortOrders;
     private final Set<Object> filters;
+    private final List<Range> ranges;
 
     /**
      * Constructs a Query for all rows from 0 to {@link Integer#MAX_VALUE}
@@ -42,6 +56,7 @@ public class Query implements Serializable {
         limit = Integer.MAX_VALUE;
         sortOrders = Collections.emptyList();
         filters = Collections.emptySet();
+        ranges = null;
     }
 
     /**
@@ -56,6 +71,7 @@ public class Query implements Serializable {
         limit = Integer.MAX_VALUE;
         sortOrders = Collections.emptyList();
         this.filters = filters;
+        ranges = null;
     }
 
     /**
@@ -77,6 +93,39 @@ public class Query implements Serializable {
         this.limit = limit;
         this.sortOrders = sortOrders;
         this.filters = filters;
+        ranges = null;
+    }
+
+    /**
+     * Constructs a new Query object for several ranges of rows with given
+     * sorting and filtering. The offset and limit of the query cover all the
+     * ranges.
+     *
+     * @param ranges
+     *            the ranges to fetch in ascending order, not overlapping and
+     *            not empty
+     * @param sortOrders
+     *            sorting order for fetching
+     * @param filters
+     *            filtering for fetching
+     */
+    public Query(List<Range> ranges, List<SortOrder<String>> sortOrders,
+            Set<Object> filters) {
+        Objects.requireNonNull(ranges, "Ranges can't be null");
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("Ranges can't be empty");
+        }
+        for (int i = 1; i < ranges.size(); ++i) {
+            if (ranges.get(i).getStart() < ranges.get(i - 1).getEnd()) {
+                throw new IllegalArgumentException(
+                        "Ranges must be in ascending order and not overlap");
+            }
+        }
+        this.ranges = Collections.unmodifiableList(new ArrayList<>(ranges));
+        offset = ranges.get(0).getStart();
+        limit = ranges.get(ranges.size() - 1).getEnd() - offset;
+        this.sortOrders = sortOrders;
+        this.filters = filters;
     }
 
     /**
@@ -100,6 +149,33 @@ public class Query implements Serializable {
         return limit;
     }
 
+    /**
+     * Gets the ranges of rows to fetch. For a query constructed with an
+     * offset and a limit, the only range starts at the offset.
+     * <p>
+     * The data for a multi-range query must be returned in the order of the
+     * ranges, so that the data for each range directly follows the data for
+     * the previous range.
+     *
+     * @return unmodifiable list of ranges in ascending order
+     */
+    public List<Range> getRanges() {
+        if (ranges != null) {
+            return ranges;
+        }
+        int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        return Collections.singletonList(Range.between(offset, end));
+    }
+
+    /**
+     * Gets whether this query contains more than one range of rows to fetch.
+     *
+     * @return {@code true} if there are several ranges; {@code false} if not
+     */
+    public boolean isMultiRange() {
+        return ranges != null && ranges.size() > 1;
+    }
+
     /**
      * Gets the sorting for items to fetch.
      *
@@ -117,4 +193,20 @@ public class Query implements Serializable {
     public Set<Object> getFilters() {
         return filters;
     }
+
+    /**
+     * Gets the filters of the given type for items to fetch. Back ends can use
+     * this to pick the filters they translate to their own queries.
+     *
+     * @param filterType
+     *            the type of filters to get, not null
+     * @param <F>
+     *            the filter type
+     * @return stream of filters of the given type
+     */
+    public <F> Stream<F> getFilters(Class<F> filterType) {
+        Objects.requireNonNull(filterType, "Filter type can't be null");
+        return filters.stream().filter(filterType::isInstance)
+                .map(filterType::cast);
+    }
 }
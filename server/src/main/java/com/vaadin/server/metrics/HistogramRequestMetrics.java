@@ -0,0 +1,233 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link RequestMetrics} implementation that keeps a {@link PhaseHistogram}
+ * for each phase and for each detail of a phase. The histograms can be
+ * exported to JMX using {@link #registerMBeans(String)}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class HistogramRequestMetrics implements RequestMetrics {
+
+    /**
+     * JMX domain of the exported histograms.
+     */
+    public static final String JMX_DOMAIN = "com.vaadin";
+
+    private static final String WHOLE_PHASE = "";
+
+    private final boolean allocationTracked;
+
+    private final EnumMap<Phase, ConcurrentHashMap<String, PhaseHistogram>> histograms = new EnumMap<Phase, ConcurrentHashMap<String, PhaseHistogram>>(
+            Phase.class);
+
+    /**
+     * Name of the service in JMX, or <code>null</code> if not exported
+     */
+    private transient volatile String jmxServiceName;
+    private transient List<ObjectName> registeredNames;
+
+    /**
+     * Creates new request metrics.
+     *
+     * @param allocationTracked
+     *            <code>true</code> to also measure the bytes allocated
+     *            during each phase, <code>false</code> to only measure time
+     */
+    public HistogramRequestMetrics(boolean allocationTracked) {
+        this.allocationTracked = allocationTracked;
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase,
+                    new ConcurrentHashMap<String, PhaseHistogram>());
+        }
+    }
+
+    @Override
+    public void record(Phase phase, String detail, long durationNanos,
+            long allocatedBytes) {
+        getOrCreateHistogram(phase, WHOLE_PHASE).record(durationNanos,
+                allocatedBytes);
+        if (detail != null) {
+            getOrCreateHistogram(phase, detail).record(durationNanos,
+                    allocatedBytes);
+        }
+    }
+
+    @Override
+    public boolean isAllocationTracked() {
+        return allocationTracked;
+    }
+
+    /**
+     * Gets the histogram of all measurements of a phase.
+     *
+     * @param phase
+     *            the phase, not <code>null</code>
+     * @return the histogram, or <code>null</code> if the phase has not been
+     *         measured
+     */
+    public PhaseHistogram getHistogram(Phase phase) {
+        return getHistogram(phase, null);
+    }
+
+    /**
+     * Gets the histogram of the measurements of a specific part of a phase.
+     *
+     * @param phase
+     *            the phase, not <code>null</code>
+     * @param detail
+     *            the part of the phase, or <code>null</code> for the whole
+     *            phase
+     * @return the histogram, or <code>null</code> if nothing has been
+     *         measured
+     */
+    public PhaseHistogram getHistogram(Phase phase, String detail) {
+        return histograms.get(phase)
+                .get(detail == null ? WHOLE_PHASE : detail);
+    }
+
+    /**
+     * Gets all histograms that have measurements.
+     *
+     * @return a list of histograms, ordered by phase
+     */
+    public List<PhaseHistogram> getHistograms() {
+        List<PhaseHistogram> list = new ArrayList<PhaseHistogram>();
+        for (Map<String, PhaseHistogram> phaseHistograms : histograms
+                .values()) {
+            list.addAll(phaseHistograms.values());
+        }
+        return list;
+    }
+
+    /**
+     * Clears the measurements of all histograms.
+     */
+    public void reset() {
+        for (PhaseHistogram histogram : getHistograms()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Registers all current and future histograms in the platform MBean
+     * server, in the {@value #JMX_DOMAIN} domain with the keys
+     * {@code type=RequestMetrics}, {@code service}, {@code phase} and
+     * {@code detail}.
+     *
+     * @param serviceName
+     *            the name of the service the metrics are collected for, not
+     *            <code>null</code>
+     */
+    public synchronized void registerMBeans(String serviceName) {
+        if (jmxServiceName != null) {
+            unregisterMBeans();
+        }
+        registeredNames = new ArrayList<ObjectName>();
+        jmxServiceName = serviceName;
+        for (PhaseHistogram histogram : getHistograms()) {
+            register(histogram);
+        }
+    }
+
+    /**
+     * Unregisters the histograms registered by
+     * {@link #registerMBeans(String)}.
+     */
+    public synchronized void unregisterMBeans() {
+        if (jmxServiceName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                getLogger().log(Level.FINE, "Could not unregister " + name,
+                        e);
+            }
+        }
+        registeredNames = null;
+        jmxServiceName = null;
+    }
+
+    private PhaseHistogram getOrCreateHistogram(Phase phase, String detail) {
+        ConcurrentHashMap<String, PhaseHistogram> phaseHistograms = histograms
+                .get(phase);
+        PhaseHistogram histogram = phaseHistograms.get(detail);
+        if (histogram == null) {
+            PhaseHistogram newHistogram = new PhaseHistogram(phase, detail);
+            histogram = phaseHistograms.putIfAbsent(detail, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+                if (jmxServiceName != null) {
+                    registerNew(histogram);
+                }
+            }
+        }
+        return histogram;
+    }
+
+    private synchronized void registerNew(PhaseHistogram histogram) {
+        if (jmxServiceName != null) {
+            register(histogram);
+        }
+    }
+
+    private void register(PhaseHistogram histogram) {
+        try {
+            StringBuilder name = new StringBuilder(JMX_DOMAIN)
+                    .append(":type=RequestMetrics,service=")
+                    .append(ObjectName.quote(jmxServiceName))
+                    .append(",phase=").append(histogram.getPhase());
+            if (!histogram.getDetail().isEmpty()) {
+                name.append(",detail=")
+                        .append(ObjectName.quote(histogram.getDetail()));
+            }
+            ObjectName objectName = new ObjectName(name.toString());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                // E.g. left behind by a service with the same name
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(histogram, objectName);
+            registeredNames.add(objectName);
+        } catch (JMException e) {
+            getLogger().log(Level.WARNING,
+                    "Could not register request metrics in JMX", e);
+        }
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(HistogramRequestMetrics.class.getName());
+    }
+}
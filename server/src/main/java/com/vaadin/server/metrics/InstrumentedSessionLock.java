@@ -0,0 +1,231 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Session lock that records how long threads wait for and hold it, and reports
+ * the thread holding the lock when another thread has been waiting for longer
+ * than the warning threshold of its {@link SessionLockMonitor}.
+ * <p>
+ * Only the outermost lock and unlock of a thread are measured. A lock that has
+ * been deserialized works as a normal {@link ReentrantLock} until it is
+ * attached to a monitor again.
+ * <p>
+ * The lock is identified by {@link #getId()} in the diagnostics instead of the
+ * id of the HTTP session, which must not end up in logs and changes when the
+ * session is reinitialized.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class InstrumentedSessionLock extends ReentrantLock {
+
+    private transient volatile SessionLockMonitor monitor;
+
+    /**
+     * The time the current owner acquired the lock, in nanoseconds
+     */
+    private transient volatile long acquireTime;
+
+    /**
+     * What the current owner is doing, or <code>null</code> if not known
+     */
+    private transient volatile String ownerOperation;
+
+    /**
+     * Creates a new lock.
+     *
+     * @param monitor
+     *            the monitor to report to, or <code>null</code> to not
+     *            measure anything
+     */
+    public InstrumentedSessionLock(SessionLockMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Gets an identifier of this lock for diagnostics. The identifier stays
+     * the same for the lifetime of the lock instance, but is not guaranteed
+     * to be unique.
+     *
+     * @return the identity hash code of this lock in hexadecimal
+     */
+    public String getId() {
+        return Integer.toHexString(System.identityHashCode(this));
+    }
+
+    /**
+     * Gets the monitor this lock reports to.
+     *
+     * @return the monitor, or <code>null</code> if the lock is not monitored
+     */
+    public SessionLockMonitor getMonitor() {
+        return monitor;
+    }
+
+    void setMonitor(SessionLockMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void lock() {
+        SessionLockMonitor monitor = this.monitor;
+        if (monitor == null || isHeldByCurrentThread()) {
+            super.lock();
+            return;
+        }
+
+        String operation = SessionLockMonitor.getCurrentOperation();
+        long start = System.nanoTime();
+        if (!super.tryLock()) {
+            await(monitor, operation);
+        }
+        acquired(monitor, operation, start);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        SessionLockMonitor monitor = this.monitor;
+        if (monitor == null || isHeldByCurrentThread()) {
+            super.lockInterruptibly();
+            return;
+        }
+
+        String operation = SessionLockMonitor.getCurrentOperation();
+        long start = System.nanoTime();
+        super.lockInterruptibly();
+        acquired(monitor, operation, start);
+    }
+
+    @Override
+    public boolean tryLock() {
+        boolean reentrant = isHeldByCurrentThread();
+        long start = System.nanoTime();
+        if (!super.tryLock()) {
+            return false;
+        }
+        SessionLockMonitor monitor = this.monitor;
+        if (monitor != null && !reentrant) {
+            acquired(monitor, SessionLockMonitor.getCurrentOperation(),
+                    start);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        boolean reentrant = isHeldByCurrentThread();
+        long start = System.nanoTime();
+        if (!super.tryLock(timeout, unit)) {
+            return false;
+        }
+        SessionLockMonitor monitor = this.monitor;
+        if (monitor != null && !reentrant) {
+            acquired(monitor, SessionLockMonitor.getCurrentOperation(),
+                    start);
+        }
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        SessionLockMonitor monitor = this.monitor;
+        if (monitor != null && getHoldCount() == 1) {
+            monitor.recordHold(ownerOperation,
+                    System.nanoTime() - acquireTime);
+            ownerOperation = null;
+        }
+        super.unlock();
+    }
+
+    /**
+     * Gets what the thread currently holding the lock is doing.
+     *
+     * @return the operation of the owner, or <code>null</code> if not known
+     *         or if the lock is not held
+     */
+    public String getOwnerOperation() {
+        return ownerOperation;
+    }
+
+    /**
+     * Gets how long the lock has been held by its current owner.
+     *
+     * @return the hold time in nanoseconds, or 0 if the lock is not held
+     */
+    public long getHoldTimeNanos() {
+        long time = System.nanoTime() - acquireTime;
+        return isLocked() ? time : 0;
+    }
+
+    // Made public for diagnostics
+    @Override
+    public Thread getOwner() {
+        return super.getOwner();
+    }
+
+    // Made public for diagnostics
+    @Override
+    public Collection<Thread> getQueuedThreads() {
+        return super.getQueuedThreads();
+    }
+
+    /**
+     * Gets the names of the threads waiting for this lock.
+     *
+     * @return a list of thread names, empty if there are no waiters
+     */
+    public List<String> getQueuedThreadNames() {
+        List<String> names = new ArrayList<String>();
+        for (Thread thread : getQueuedThreads()) {
+            names.add(thread.getName());
+        }
+        return names;
+    }
+
+    private void await(SessionLockMonitor monitor, String operation) {
+        monitor.recordContention();
+        boolean interrupted = false;
+        try {
+            if (super.tryLock(monitor.getWarningThresholdMillis(),
+                    TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            monitor.waitThresholdExceeded(this, operation);
+        } catch (InterruptedException e) {
+            // lock() is not interruptible, restore the status when done
+            interrupted = true;
+        }
+        super.lock();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acquired(SessionLockMonitor monitor, String operation,
+            long start) {
+        acquireTime = System.nanoTime();
+        ownerOperation = operation;
+        monitor.recordWait(operation, acquireTime - start);
+    }
+}
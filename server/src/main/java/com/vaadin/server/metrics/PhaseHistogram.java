@@ -0,0 +1,194 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.metrics;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.vaadin.server.metrics.RequestMetrics.Phase;
+
+/**
+ * Lock-free histogram of the durations measured for one request handling
+ * phase. Durations are counted in buckets whose bounds are powers of two
+ * nanoseconds, so percentiles are approximate but recording is cheap.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class PhaseHistogram implements PhaseHistogramMXBean, Serializable {
+
+    private static final int BUCKETS = 64;
+
+    private final Phase phase;
+    private final String detail;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    /**
+     * Creates a new histogram.
+     *
+     * @param phase
+     *            the measured phase, not <code>null</code>
+     * @param detail
+     *            the more specific part of the phase, or an empty string
+     */
+    public PhaseHistogram(Phase phase, String detail) {
+        this.phase = phase;
+        this.detail = detail;
+    }
+
+    /**
+     * Records a measurement.
+     *
+     * @param durationNanos
+     *            the measured duration in nanoseconds
+     * @param allocated
+     *            the number of bytes allocated during the measurement, or a
+     *            negative value if not known
+     */
+    public void record(long durationNanos, long allocated) {
+        long duration = Math.max(durationNanos, 0);
+        buckets.incrementAndGet(getBucket(duration));
+        count.increment();
+        totalNanos.add(duration);
+        if (duration > maxNanos.get()) {
+            maxNanos.accumulateAndGet(duration, Math::max);
+        }
+        if (allocated > 0) {
+            allocatedBytes.add(allocated);
+        }
+    }
+
+    /**
+     * Gets the measured phase.
+     *
+     * @return the phase
+     */
+    public Phase getMeasuredPhase() {
+        return phase;
+    }
+
+    @Override
+    public String getPhase() {
+        return phase.name();
+    }
+
+    @Override
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getTotalTimeMillis() {
+        return totalNanos.sum() / 1000000.0;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    @Override
+    public double getMedianMicros() {
+        return getPercentileMicros(50);
+    }
+
+    @Override
+    public double get95thPercentileMicros() {
+        return getPercentileMicros(95);
+    }
+
+    @Override
+    public double get99thPercentileMicros() {
+        return getPercentileMicros(99);
+    }
+
+    /**
+     * Gets an upper bound of the given percentile of the measured times. The
+     * bound is at most twice the actual value and never more than the
+     * maximum time.
+     *
+     * @param percentile
+     *            the percentile, between 0 and 100
+     * @return the percentile in microseconds, or 0 if there are no
+     *         measurements
+     */
+    public double getPercentileMicros(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                long upperBound = i == 0 ? 0
+                        : i == BUCKETS - 1 ? Long.MAX_VALUE
+                                : (1L << i) - 1;
+                return Math.min(upperBound, maxNanos.get()) / 1000.0;
+            }
+        }
+        return getMaxMicros();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        allocatedBytes.reset();
+    }
+
+    /**
+     * Bucket {@code i} contains durations below 2^i nanoseconds that are not
+     * in a lower bucket.
+     */
+    private static int getBucket(long durationNanos) {
+        return Math.min(BUCKETS - 1,
+                64 - Long.numberOfLeadingZeros(durationNanos));
+    }
+}
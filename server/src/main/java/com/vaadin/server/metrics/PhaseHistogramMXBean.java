@@ -0,0 +1,105 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.metrics;
+
+/**
+ * Management interface for the statistics of one measured request handling
+ * phase, exported to JMX by {@link HistogramRequestMetrics}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public interface PhaseHistogramMXBean {
+
+    /**
+     * Gets the name of the measured phase.
+     *
+     * @return the phase name
+     */
+    public String getPhase();
+
+    /**
+     * Gets the more specific part of the phase, such as a connector type.
+     *
+     * @return the detail, or an empty string for the whole phase
+     */
+    public String getDetail();
+
+    /**
+     * Gets the number of measurements.
+     *
+     * @return the number of measurements
+     */
+    public long getCount();
+
+    /**
+     * Gets the total time of all measurements.
+     *
+     * @return the total time in milliseconds
+     */
+    public double getTotalTimeMillis();
+
+    /**
+     * Gets the mean time of the measurements.
+     *
+     * @return the mean time in microseconds, or 0 if there are no
+     *         measurements
+     */
+    public double getMeanMicros();
+
+    /**
+     * Gets the longest measured time.
+     *
+     * @return the maximum time in microseconds
+     */
+    public double getMaxMicros();
+
+    /**
+     * Gets an upper bound of the median time. The bound is at most twice the
+     * actual value.
+     *
+     * @return the median time in microseconds
+     */
+    public double getMedianMicros();
+
+    /**
+     * Gets an upper bound of the 95th percentile of the times. The bound is
+     * at most twice the actual value.
+     *
+     * @return the 95th percentile in microseconds
+     */
+    public double get95thPercentileMicros();
+
+    /**
+     * Gets an upper bound of the 99th percentile of the times. The bound is
+     * at most twice the actual value.
+     *
+     * @return the 99th percentile in microseconds
+     */
+    public double get99thPercentileMicros();
+
+    /**
+     * Gets the total number of bytes allocated by the measured threads.
+     *
+     * @return the allocated bytes, or 0 if allocations are not tracked
+     */
+    public long getAllocatedBytes();
+
+    /**
+     * Clears all measurements.
+     */
+    public void reset();
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.metrics;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import com.vaadin.server.VaadinService;
+
+/**
+ * Service provider interface for collecting the time spent in the different
+ * phases of handling requests. An instance is available from
+ * {@link VaadinService#getRequestMetrics()} when metrics are enabled.
+ * <p>
+ * Measurements are taken with {@link #start(RequestMetrics)} and
+ * {@link Measurement#end(Phase, String)}. When metrics are disabled, the
+ * metrics instance is <code>null</code> and measuring does nothing, so the
+ * framework can measure its phases without any overhead in that case.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public interface RequestMetrics extends Serializable {
+
+    /**
+     * The measured phases of request handling.
+     */
+    public enum Phase {
+        /**
+         * Handling of a whole request by the service.
+         */
+        REQUEST,
+        /**
+         * Waiting for the session lock, detailed by the request handler type
+         * waiting for it.
+         */
+        LOCK_WAIT,
+        /**
+         * Holding the session lock, detailed by the request handler type
+         * holding it.
+         */
+        LOCK_HOLD,
+        /**
+         * Reading and decoding RPC invocations received from the client.
+         */
+        RPC_DECODE,
+        /**
+         * Invoking an RPC method, detailed by connector type.
+         */
+        RPC_INVOCATION,
+        /**
+         * Calling beforeClientResponse for the dirty connectors.
+         */
+        BEFORE_CLIENT_RESPONSE,
+        /**
+         * Encoding and writing the shared states of the dirty connectors.
+         */
+        STATE_ENCODING,
+        /**
+         * Writing a complete UIDL response, including state encoding.
+         */
+        JSON_WRITING,
+        /**
+         * Sending a message to the client through a push connection.
+         */
+        PUSH_SEND;
+    }
+
+    /**
+     * An ongoing measurement of a phase.
+     */
+    public static final class Measurement implements Serializable {
+        private static final ThreadMXBean THREAD_BEAN = ManagementFactory
+                .getThreadMXBean();
+        private static final boolean ALLOCATIONS_SUPPORTED = isAllocationMeasurementSupported();
+
+        private final RequestMetrics metrics;
+        private final long startTime;
+        private final long startAllocatedBytes;
+
+        private Measurement(RequestMetrics metrics) {
+            this.metrics = metrics;
+            startAllocatedBytes = metrics.isAllocationTracked()
+                    ? getAllocatedBytes() : -1;
+            startTime = System.nanoTime();
+        }
+
+        /**
+         * Ends this measurement and records it.
+         *
+         * @param phase
+         *            the measured phase, not <code>null</code>
+         * @param detail
+         *            a more specific part of the phase, such as the type of
+         *            the connector receiving an RPC call, or
+         *            <code>null</code> for the whole phase
+         */
+        public void end(Phase phase, String detail) {
+            long duration = System.nanoTime() - startTime;
+            long allocatedBytes = startAllocatedBytes == -1 ? -1
+                    : getAllocatedBytes() - startAllocatedBytes;
+            metrics.record(phase, detail, duration, allocatedBytes);
+        }
+
+        /**
+         * Ends the given measurement if it is not <code>null</code>.
+         *
+         * @param measurement
+         *            the measurement to end, or <code>null</code> to do
+         *            nothing
+         * @param phase
+         *            the measured phase, not <code>null</code>
+         * @param detail
+         *            a more specific part of the phase, or <code>null</code>
+         */
+        public static void end(Measurement measurement, Phase phase,
+                String detail) {
+            if (measurement != null) {
+                measurement.end(phase, detail);
+            }
+        }
+
+        private static long getAllocatedBytes() {
+            if (!ALLOCATIONS_SUPPORTED) {
+                return 0;
+            }
+            return ((com.sun.management.ThreadMXBean) THREAD_BEAN)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        private static boolean isAllocationMeasurementSupported() {
+            try {
+                // Only available in some JVMs
+                Class<?> type = Class
+                        .forName("com.sun.management.ThreadMXBean");
+                return type.isInstance(THREAD_BEAN)
+                        && ((com.sun.management.ThreadMXBean) THREAD_BEAN)
+                                .isThreadAllocatedMemoryEnabled();
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Records a completed measurement of a phase. Implementations should be
+     * thread safe and fast, since this is called while handling requests.
+     *
+     * @param phase
+     *            the measured phase, not <code>null</code>
+     * @param detail
+     *            a more specific part of the phase, or <code>null</code>
+     * @param durationNanos
+     *            the duration of the phase in nanoseconds
+     * @param allocatedBytes
+     *            the number of bytes allocated by the thread during the
+     *            phase, or -1 if allocations are not tracked
+     */
+    public void record(Phase phase, String detail, long durationNanos,
+            long allocatedBytes);
+
+    /**
+     * Checks whether the number of bytes allocated by the current thread
+     * should be measured for each phase. Measuring allocations has a small
+     * overhead and is only supported by some JVMs.
+     *
+     * @return <code>true</code> to measure allocations, <code>false</code>
+     *         otherwise
+     */
+    public boolean isAllocationTracked();
+
+    /**
+     * Starts measuring a phase.
+     *
+     * @param metrics
+     *            the metrics to record the measurement to, or
+     *            <code>null</code> if metrics are disabled
+     * @return the started measurement, or <code>null</code> if metrics are
+     *         disabled
+     */
+    public static Measurement start(RequestMetrics metrics) {
+        if (metrics == null) {
+            return null;
+        }
+        return new Measurement(metrics);
+    }
+
+    /**
+     * Starts measuring a phase with the metrics of the given service.
+     *
+     * @param service
+     *            the service to get metrics from, or <code>null</code>
+     * @return the started measurement, or <code>null</code> if metrics are
+     *         disabled
+     */
+    public static Measurement start(VaadinService service) {
+        return service == null ? null : start(service.getRequestMetrics());
+    }
+}
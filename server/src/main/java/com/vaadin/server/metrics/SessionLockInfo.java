@@ -0,0 +1,126 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.metrics;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Snapshot of the state of a session lock, returned by
+ * {@link SessionLockMonitorMXBean#getContendedSessions()}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class SessionLockInfo implements Serializable {
+
+    private final String lockId;
+    private final String ownerThread;
+    private final String ownerOperation;
+    private final long holdTimeMillis;
+    private final List<String> queuedThreads;
+    private final List<String> ownerStackTrace;
+
+    /**
+     * Creates a new lock snapshot.
+     *
+     * @param lockId
+     *            the identifier of the lock, see
+     *            {@link InstrumentedSessionLock#getId()}
+     * @param ownerThread
+     *            the name of the thread holding the lock, or
+     *            <code>null</code> if not held
+     * @param ownerOperation
+     *            what the owner is doing, or <code>null</code> if not known
+     * @param holdTimeMillis
+     *            how long the owner has held the lock
+     * @param queuedThreads
+     *            the names of the threads waiting for the lock
+     * @param ownerStackTrace
+     *            the stack trace of the owner thread
+     */
+    @ConstructorProperties({ "lockId", "ownerThread", "ownerOperation",
+            "holdTimeMillis", "queuedThreads", "ownerStackTrace" })
+    public SessionLockInfo(String lockId, String ownerThread,
+            String ownerOperation, long holdTimeMillis,
+            List<String> queuedThreads, List<String> ownerStackTrace) {
+        this.lockId = lockId;
+        this.ownerThread = ownerThread;
+        this.ownerOperation = ownerOperation;
+        this.holdTimeMillis = holdTimeMillis;
+        this.queuedThreads = queuedThreads;
+        this.ownerStackTrace = ownerStackTrace;
+    }
+
+    /**
+     * Gets the identifier of the lock.
+     *
+     * @see InstrumentedSessionLock#getId()
+     *
+     * @return the lock identifier
+     */
+    public String getLockId() {
+        return lockId;
+    }
+
+    /**
+     * Gets the name of the thread holding the lock.
+     *
+     * @return the thread name, or <code>null</code> if the lock is not held
+     */
+    public String getOwnerThread() {
+        return ownerThread;
+    }
+
+    /**
+     * Gets what the thread holding the lock is doing, typically the type of
+     * the request handler.
+     *
+     * @return the operation, or <code>null</code> if not known
+     */
+    public String getOwnerOperation() {
+        return ownerOperation;
+    }
+
+    /**
+     * Gets how long the lock had been held when the snapshot was taken.
+     *
+     * @return the hold time in milliseconds
+     */
+    public long getHoldTimeMillis() {
+        return holdTimeMillis;
+    }
+
+    /**
+     * Gets the names of the threads waiting for the lock.
+     *
+     * @return a list of thread names
+     */
+    public List<String> getQueuedThreads() {
+        return queuedThreads;
+    }
+
+    /**
+     * Gets the stack trace of the thread holding the lock.
+     *
+     * @return the stack trace elements as strings, empty if the lock is not
+     *         held
+     */
+    public List<String> getOwnerStackTrace() {
+        return ownerStackTrace;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.metrics;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.metrics.RequestMetrics.Phase;
+
+/**
+ * Collects diagnostics about the session locks of a service. Lock wait and
+ * hold times are recorded as {@link Phase#LOCK_WAIT} and
+ * {@link Phase#LOCK_HOLD} in the request metrics, detailed by the operation
+ * set with {@link #setCurrentOperation(String)}. When a thread waits for a
+ * lock longer than the warning threshold, the thread holding the lock and its
+ * stack trace are logged. The currently contended locks can be inspected
+ * through JMX after calling {@link #registerMBean(String)}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public class SessionLockMonitor implements SessionLockMonitorMXBean,
+        Serializable {
+
+    /**
+     * Operation of threads that lock a session outside of request handling.
+     */
+    public static final String BACKGROUND_OPERATION = "background";
+
+    private static final ThreadLocal<String> currentOperation = new ThreadLocal<String>();
+
+    private final RequestMetrics metrics;
+
+    private volatile long warningThresholdMillis;
+
+    private final LongAdder contendedLockCount = new LongAdder();
+    private final LongAdder slowLockCount = new LongAdder();
+
+    private transient Set<InstrumentedSessionLock> locks;
+
+    private transient ObjectName registeredName;
+
+    /**
+     * Creates a new monitor.
+     *
+     * @param metrics
+     *            the metrics to record lock wait and hold times to, or
+     *            <code>null</code> to not record them
+     * @param warningThresholdMillis
+     *            the time a thread can wait for a lock before the thread
+     *            holding the lock is logged
+     */
+    public SessionLockMonitor(RequestMetrics metrics,
+            long warningThresholdMillis) {
+        this.metrics = metrics;
+        setWarningThresholdMillis(warningThresholdMillis);
+    }
+
+    /**
+     * Sets what the current thread is doing while it locks sessions. The
+     * operation is used as the detail of the recorded lock times and shown
+     * for the thread holding a lock in the diagnostics.
+     *
+     * @param operation
+     *            the operation, typically the simple name of a request
+     *            handler type, or <code>null</code> to clear
+     * @return the previous operation of the thread, to be restored when done
+     */
+    public static String setCurrentOperation(String operation) {
+        String previous = currentOperation.get();
+        if (operation == null) {
+            currentOperation.remove();
+        } else {
+            currentOperation.set(operation);
+        }
+        return previous;
+    }
+
+    /**
+     * Gets what the current thread is doing while it locks sessions.
+     *
+     * @return the operation set with {@link #setCurrentOperation(String)},
+     *         {@value #BACKGROUND_OPERATION} if not set and no request is
+     *         being handled, otherwise <code>null</code>
+     */
+    public static String getCurrentOperation() {
+        String operation = currentOperation.get();
+        if (operation == null && VaadinService.getCurrentRequest() == null) {
+            return BACKGROUND_OPERATION;
+        }
+        return operation;
+    }
+
+    /**
+     * Creates a new monitored lock for a session.
+     *
+     * @return a new lock
+     */
+    public InstrumentedSessionLock createLock() {
+        InstrumentedSessionLock lock = new InstrumentedSessionLock(this);
+        monitor(lock);
+        return lock;
+    }
+
+    /**
+     * Starts monitoring the given lock, e.g. after the session it belongs to
+     * has been deserialized.
+     *
+     * @param lock
+     *            the lock to monitor, not <code>null</code>
+     */
+    public synchronized void monitor(InstrumentedSessionLock lock) {
+        if (locks == null) {
+            locks = Collections.newSetFromMap(
+                    new WeakHashMap<InstrumentedSessionLock, Boolean>());
+        }
+        locks.add(lock);
+        lock.setMonitor(this);
+    }
+
+    @Override
+    public synchronized int getMonitoredSessionCount() {
+        return locks == null ? 0 : locks.size();
+    }
+
+    @Override
+    public long getContendedLockCount() {
+        return contendedLockCount.sum();
+    }
+
+    @Override
+    public long getSlowLockCount() {
+        return slowLockCount.sum();
+    }
+
+    @Override
+    public long getWarningThresholdMillis() {
+        return warningThresholdMillis;
+    }
+
+    @Override
+    public void setWarningThresholdMillis(long warningThresholdMillis) {
+        if (warningThresholdMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Warning threshold cannot be negative");
+        }
+        this.warningThresholdMillis = warningThresholdMillis;
+    }
+
+    @Override
+    public List<SessionLockInfo> getContendedSessions() {
+        List<InstrumentedSessionLock> contended = new ArrayList<InstrumentedSessionLock>();
+        synchronized (this) {
+            if (locks != null) {
+                for (InstrumentedSessionLock lock : locks) {
+                    if (lock.hasQueuedThreads()) {
+                        contended.add(lock);
+                    }
+                }
+            }
+        }
+
+        List<SessionLockInfo> infos = new ArrayList<SessionLockInfo>();
+        for (InstrumentedSessionLock lock : contended) {
+            infos.add(createInfo(lock));
+        }
+        return infos;
+    }
+
+    @Override
+    public void reset() {
+        contendedLockCount.reset();
+        slowLockCount.reset();
+    }
+
+    /**
+     * Registers this monitor in the platform MBean server, in the
+     * {@value HistogramRequestMetrics#JMX_DOMAIN} domain with the keys
+     * {@code type=SessionLocks} and {@code service}.
+     *
+     * @param serviceName
+     *            the name of the service the locks belong to, not
+     *            <code>null</code>
+     */
+    public synchronized void registerMBean(String serviceName) {
+        unregisterMBean();
+        try {
+            ObjectName name = new ObjectName(HistogramRequestMetrics.JMX_DOMAIN
+                    + ":type=SessionLocks,service="
+                    + ObjectName.quote(serviceName));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                // E.g. left behind by a service with the same name
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            getLogger().log(Level.WARNING,
+                    "Could not register session lock monitor in JMX", e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean registered by {@link #registerMBean(String)}.
+     */
+    public synchronized void unregisterMBean() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(registeredName);
+        } catch (JMException e) {
+            getLogger().log(Level.FINE,
+                    "Could not unregister " + registeredName, e);
+        }
+        registeredName = null;
+    }
+
+    void recordWait(String operation, long durationNanos) {
+        if (metrics != null) {
+            metrics.record(Phase.LOCK_WAIT, operation, durationNanos, -1);
+        }
+    }
+
+    void recordHold(String operation, long durationNanos) {
+        if (metrics != null) {
+            metrics.record(Phase.LOCK_HOLD, operation, durationNanos, -1);
+        }
+    }
+
+    void recordContention() {
+        contendedLockCount.increment();
+    }
+
+    void waitThresholdExceeded(InstrumentedSessionLock lock,
+            String operation) {
+        slowLockCount.increment();
+        if (!getLogger().isLoggable(Level.WARNING)) {
+            return;
+        }
+        SessionLockInfo info = createInfo(lock);
+        if (info.getOwnerThread() == null) {
+            // Released just now
+            return;
+        }
+
+        StringBuilder message = new StringBuilder();
+        message.append("Thread ").append(Thread.currentThread().getName());
+        if (operation != null) {
+            message.append(" (").append(operation).append(')');
+        }
+        message.append(" has waited more than ")
+                .append(warningThresholdMillis)
+                .append(" ms for session lock ").append(info.getLockId())
+                .append(", held for ").append(info.getHoldTimeMillis())
+                .append(" ms by thread ")
+                .append(info.getOwnerThread());
+        if (info.getOwnerOperation() != null) {
+            message.append(" (").append(info.getOwnerOperation())
+                    .append(')');
+        }
+        message.append(" with ").append(info.getQueuedThreads().size())
+                .append(" threads waiting. Owner stack trace:");
+        for (String element : info.getOwnerStackTrace()) {
+            message.append("\n\tat ").append(element);
+        }
+        getLogger().warning(message.toString());
+    }
+
+    private static SessionLockInfo createInfo(InstrumentedSessionLock lock) {
+        Thread owner = lock.getOwner();
+        List<String> stackTrace = new ArrayList<String>();
+        if (owner != null) {
+            for (StackTraceElement element : owner.getStackTrace()) {
+                stackTrace.add(element.toString());
+            }
+        }
+        return new SessionLockInfo(lock.getId(),
+                owner == null ? null : owner.getName(),
+                lock.getOwnerOperation(),
+                TimeUnit.NANOSECONDS.toMillis(lock.getHoldTimeNanos()),
+                lock.getQueuedThreadNames(), stackTrace);
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SessionLockMonitor.class.getName());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface for the session lock diagnostics exported to JMX by
+ * {@link SessionLockMonitor}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ */
+public interface SessionLockMonitorMXBean {
+
+    /**
+     * Gets the number of session locks currently monitored.
+     *
+     * @return the number of monitored locks
+     */
+    public int getMonitoredSessionCount();
+
+    /**
+     * Gets how many times a thread has had to wait for a session lock held
+     * by another thread.
+     *
+     * @return the number of contended lock acquisitions
+     */
+    public long getContendedLockCount();
+
+    /**
+     * Gets how many times a thread has waited for a session lock for longer
+     * than the warning threshold.
+     *
+     * @return the number of slow lock acquisitions
+     */
+    public long getSlowLockCount();
+
+    /**
+     * Gets the time a thread can wait for a session lock before the thread
+     * holding the lock is logged.
+     *
+     * @return the threshold in milliseconds
+     */
+    public long getWarningThresholdMillis();
+
+    /**
+     * Sets the time a thread can wait for a session lock before the thread
+     * holding the lock is logged.
+     *
+     * @param warningThresholdMillis
+     *            the threshold in milliseconds, not negative
+     */
+    public void setWarningThresholdMillis(long warningThresholdMillis);
+
+    /**
+     * Gets the state of all session locks that have threads waiting for
+     * them, including the stack trace of the thread holding the lock.
+     *
+     * @return a list of lock snapshots, empty if no locks are contended
+     */
+    public List<SessionLockInfo> getContendedSessions();
+
+    /**
+     * Clears the lock counters.
+     */
+    public void reset();
+}
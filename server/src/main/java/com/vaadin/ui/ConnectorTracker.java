@@ -19,10 +19,12 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
@@ -40,6 +42,7 @@ import com.vaadin.server.StreamVariable;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinService;
 import com.vaadin.server.communication.ConnectorHierarchyWriter;
+import com.vaadin.server.communication.StateKeyDictionary;
 
 import elemental.json.Json;
 import elemental.json.JsonException;
@@ -78,8 +81,52 @@ public class ConnectorTracker implements Serializable {
      */
     private final Set<ClientConnector> unregisteredConnectors = new HashSet<ClientConnector>();
 
+    /**
+     * Connectors that have been registered or marked dirty since the last time
+     * {@link #cleanConnectorMap()} was invoked. Only these connectors and
+     * their descendants can have become invisible, so only they need to be
+     * checked when cleaning up.
+     */
+    private Set<ClientConnector> cleanupCandidates = new HashSet<ClientConnector>();
+
+    /**
+     * How often, in invocations of {@link #cleanConnectorMap()}, all
+     * registered connectors are checked instead of only the cleanup
+     * candidates. With assertions enabled, all connectors are checked on
+     * every invocation.
+     */
+    private static final int FULL_CLEANUP_INTERVAL = 100;
+
+    private static final boolean ALWAYS_CLEAN_ALL = ConnectorTracker.class
+            .desiredAssertionStatus();
+
+    private int cleanupsSinceFullCleanup = 0;
+
     private boolean writingResponse = false;
 
+    /**
+     * Visibility to the client of the connectors checked while the current
+     * response is being written, or <code>null</code> if visibility is not
+     * currently memoized.
+     *
+     * @see #isConnectorVisibleToClient(ClientConnector)
+     */
+    private transient Map<ClientConnector, Boolean> visibilitySnapshot;
+    private transient int visibilityLookups;
+
+    /**
+     * Dictionary of the shared state property names known by the client, or
+     * <code>null</code> if the client does not use compact UIDL messages.
+     */
+    private StateKeyDictionary stateKeyDictionary;
+
+    /**
+     * Ids of the visible children of each connector as last sent to the
+     * client. Only contains connectors that are initialized on the client
+     * side.
+     */
+    private HashMap<ClientConnector, List<String>> sentChildIds = new HashMap<ClientConnector, List<String>>();
+
     private UI uI;
     private transient Map<ClientConnector, JsonObject> diffStates = new HashMap<ClientConnector, JsonObject>();
 
@@ -154,6 +201,8 @@ public class ConnectorTracker implements Serializable {
                             connectorId });
         }
         dirtyConnectors.add(connector);
+        cleanupCandidates.add(connector);
+        invalidateVisibilitySnapshot();
     }
 
     /**
@@ -192,6 +241,8 @@ public class ConnectorTracker implements Serializable {
         unregisteredConnectorIds.add(connectorId);
 
         dirtyConnectors.remove(connector);
+        cleanupCandidates.remove(connector);
+        invalidateVisibilitySnapshot();
         if (unregisteredConnectors.add(connector)) {
             if (getLogger().isLoggable(Level.FINE)) {
                 getLogger().log(Level.FINE, "Unregistered {0} ({1})",
@@ -246,6 +297,36 @@ public class ConnectorTracker implements Serializable {
     public void markAllClientSidesUninitialized() {
         uninitializedConnectors.addAll(connectorIdToConnector.values());
         diffStates.clear();
+        sentChildIds.clear();
+        if (stateKeyDictionary != null) {
+            stateKeyDictionary.clear();
+        }
+    }
+
+    /**
+     * Gets the dictionary of shared state property names used for compact
+     * UIDL messages to the client of this UI.
+     *
+     * @since
+     * @return the state key dictionary, or <code>null</code> if compact UIDL
+     *         messages are not used
+     */
+    public StateKeyDictionary getStateKeyDictionary() {
+        return stateKeyDictionary;
+    }
+
+    /**
+     * Sets the dictionary of shared state property names used for compact
+     * UIDL messages to the client of this UI. This should only be called by
+     * the framework when the client has requested compact messages.
+     *
+     * @since
+     * @param stateKeyDictionary
+     *            the state key dictionary, or <code>null</code> to not use
+     *            compact UIDL messages
+     */
+    public void setStateKeyDictionary(StateKeyDictionary stateKeyDictionary) {
+        this.stateKeyDictionary = stateKeyDictionary;
     }
 
     /**
@@ -276,6 +357,13 @@ public class ConnectorTracker implements Serializable {
     /**
      * Cleans the connector map from all connectors that are no longer attached
      * to the application. This should only be called by the framework.
+     * <p>
+     * Only connectors that have been registered or marked dirty since the
+     * previous invocation, and their descendants, are checked. Other
+     * connectors cannot have become invisible, since changing the visibility
+     * of a connector marks it or one of its ancestors as dirty. As a
+     * safeguard against components that fail to do so, all connectors are
+     * still checked periodically.
      */
     public void cleanConnectorMap() {
         if (!unregisteredConnectors.isEmpty()) {
@@ -288,53 +376,152 @@ public class ConnectorTracker implements Serializable {
                 + "and that all custom component containers call child.setParent(this) when a child is added and child.setParent(null) when the child is no longer used. "
                 + "See previous log messages for details.";
 
-        // remove detached components from paintableIdMap so they
-        // can be GC'ed
-        Iterator<ClientConnector> iterator = connectorIdToConnector.values()
-                .iterator();
         GlobalResourceHandler globalResourceHandler = uI.getSession()
                 .getGlobalResourceHandler(false);
-        while (iterator.hasNext()) {
-            ClientConnector connector = iterator.next();
+        Set<ClientConnector> hiddenSubtrees = new HashSet<ClientConnector>();
+        for (ClientConnector connector : cleanupCandidates) {
             assert connector != null;
+            if (!isRegistered(connector)) {
+                continue;
+            }
             if (connector.getUI() != uI) {
-                // If connector is no longer part of this uI,
-                // remove it from the map. If it is re-attached to the
-                // application at some point it will be re-added through
-                // registerConnector(connector)
+                removeDetachedConnector(connector, globalResourceHandler);
+            } else if (isConnectorVisibleToClient(connector)) {
+                // Children of a selective renderer may have been hidden
+                for (ClientConnector child : AbstractClientConnector
+                        .getAllChildrenIterable(connector)) {
+                    if (!isConnectorVisibleToClient(child)) {
+                        cleanInvisibleSubtree(child, hiddenSubtrees);
+                    }
+                }
+            } else {
+                cleanInvisibleSubtree(connector, hiddenSubtrees);
+            }
+        }
+        if (getLogger().isLoggable(Level.FINE)) {
+            getLogger().log(Level.FINE,
+                    "cleanConnectorMap checked {0} of {1} connectors",
+                    new Object[] { cleanupCandidates.size()
+                            + hiddenSubtrees.size(),
+                            connectorIdToConnector.size() });
+        }
+        // A new set, since iterating a cleared set is as slow as iterating
+        // the largest set of candidates it has had
+        cleanupCandidates = new HashSet<ClientConnector>();
 
-                // This code should never be called as cleanup should take place
-                // in detach()
+        /*
+         * Check all connectors every now and then, or always with assertions
+         * enabled, in case some component does not unregister or call
+         * markAsDirty() as it should. The problems found are cleaned up right
+         * away and logged, so that they can be fixed.
+         */
+        if (++cleanupsSinceFullCleanup >= FULL_CLEANUP_INTERVAL
+                || ALWAYS_CLEAN_ALL) {
+            cleanupsSinceFullCleanup = 0;
+            cleanAllConnectors(globalResourceHandler);
+        }
 
+        cleanStreamVariables();
+
+        if (visibilitySnapshot != null) {
+            if (getLogger().isLoggable(Level.FINE)) {
+                getLogger().log(Level.FINE,
+                        "Visibility of {0} connectors computed for {1} lookups",
+                        new Object[] { visibilitySnapshot.size(),
+                                visibilityLookups });
+            }
+            visibilitySnapshot = null;
+        }
+    }
+
+    private void cleanAllConnectors(
+            GlobalResourceHandler globalResourceHandler) {
+        for (ClientConnector connector : new ArrayList<ClientConnector>(
+                connectorIdToConnector.values())) {
+            if (connector.getUI() != uI) {
+                removeDetachedConnector(connector, globalResourceHandler);
+            } else if (!uninitializedConnectors.contains(connector)
+                    && !isConnectorVisibleToClient(connector)) {
                 getLogger().log(Level.WARNING,
-                        "cleanConnectorMap unregistered connector {0}. This should have been done when the connector was detached.",
+                        "{0} is no longer visible but was not marked as dirty. "
+                                + "Check that components call markAsDirty() when their visibility "
+                                + "or the rendered children of a SelectiveRenderer change.",
                         getConnectorAndParentInfo(connector));
+                removeClientSideState(connector);
+            }
+        }
+    }
 
-                if (globalResourceHandler != null) {
-                    globalResourceHandler.unregisterConnector(connector);
-                }
-                uninitializedConnectors.remove(connector);
-                diffStates.remove(connector);
-                iterator.remove();
-            } else if (!uninitializedConnectors.contains(connector)
-                    && !LegacyCommunicationManager
-                            .isConnectorVisibleToClient(connector)) {
-                uninitializedConnectors.add(connector);
-                diffStates.remove(connector);
-
-                assert isRemovalSentToClient(connector) : "Connector "
-                        + connector + " (id = " + connector.getConnectorId()
-                        + ") is no longer visible to the client, but no corresponding hierarchy change is being sent.";
-
-                if (getLogger().isLoggable(Level.FINE)) {
-                    getLogger().log(Level.FINE,
-                            "cleanConnectorMap removed state for {0} as it is not visible",
-                            getConnectorAndParentInfo(connector));
-                }
+    private boolean isRegistered(ClientConnector connector) {
+        return connectorIdToConnector
+                .get(connector.getConnectorId()) == connector;
+    }
+
+    /**
+     * Removes a connector which is no longer part of this UI from the map. If
+     * it is re-attached to the application at some point it will be re-added
+     * through registerConnector(connector).
+     */
+    private void removeDetachedConnector(ClientConnector connector,
+            GlobalResourceHandler globalResourceHandler) {
+        // This code should never be called as cleanup should take place
+        // in detach()
+
+        getLogger().log(Level.WARNING,
+                "cleanConnectorMap unregistered connector {0}. This should have been done when the connector was detached.",
+                getConnectorAndParentInfo(connector));
+
+        if (globalResourceHandler != null) {
+            globalResourceHandler.unregisterConnector(connector);
+        }
+        uninitializedConnectors.remove(connector);
+        diffStates.remove(connector);
+        sentChildIds.remove(connector);
+        connectorIdToConnector.remove(connector.getConnectorId());
+    }
+
+    /**
+     * Discards the client side state of the given invisible connector and all
+     * its descendants, which are not visible either.
+     */
+    private void cleanInvisibleSubtree(ClientConnector root,
+            Set<ClientConnector> visited) {
+        LinkedList<ClientConnector> stack = new LinkedList<ClientConnector>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            ClientConnector connector = stack.pop();
+            if (!visited.add(connector)) {
+                continue;
+            }
+            if (isRegistered(connector)
+                    && !uninitializedConnectors.contains(connector)) {
+                markInvisible(connector);
+            }
+            for (ClientConnector child : AbstractClientConnector
+                    .getAllChildrenIterable(connector)) {
+                stack.add(child);
             }
         }
+    }
 
-        cleanStreamVariables();
+    private void markInvisible(ClientConnector connector) {
+        removeClientSideState(connector);
+
+        assert isRemovalSentToClient(connector) : "Connector " + connector
+                + " (id = " + connector.getConnectorId()
+                + ") is no longer visible to the client, but no corresponding hierarchy change is being sent.";
+    }
+
+    private void removeClientSideState(ClientConnector connector) {
+        uninitializedConnectors.add(connector);
+        diffStates.remove(connector);
+        sentChildIds.remove(connector);
+
+        if (getLogger().isLoggable(Level.FINE)) {
+            getLogger().log(Level.FINE,
+                    "cleanConnectorMap removed state for {0} as it is not visible",
+                    getConnectorAndParentInfo(connector));
+        }
     }
 
     private boolean isRemovalSentToClient(ClientConnector connector) {
@@ -394,12 +581,12 @@ public class ConnectorTracker implements Serializable {
         return true;
     }
 
-    private static boolean hasVisibleChild(ClientConnector parent) {
+    private boolean hasVisibleChild(ClientConnector parent) {
         Iterator<? extends ClientConnector> iterator = AbstractClientConnector
                 .getAllChildrenIterable(parent).iterator();
         while (iterator.hasNext()) {
             ClientConnector child = iterator.next();
-            if (LegacyCommunicationManager.isConnectorVisibleToClient(child)) {
+            if (isConnectorVisibleToClient(child)) {
                 return true;
             }
         }
@@ -409,8 +596,7 @@ public class ConnectorTracker implements Serializable {
     private ClientConnector findFirstVisibleParent(ClientConnector connector) {
         while (connector != null) {
             connector = connector.getParent();
-            if (LegacyCommunicationManager
-                    .isConnectorVisibleToClient(connector)) {
+            if (connector != null && isConnectorVisibleToClient(connector)) {
                 return connector;
             }
         }
@@ -431,6 +617,7 @@ public class ConnectorTracker implements Serializable {
             }
             uninitializedConnectors.remove(connector);
             diffStates.remove(connector);
+            sentChildIds.remove(connector);
         }
         unregisteredConnectors.clear();
     }
@@ -498,6 +685,8 @@ public class ConnectorTracker implements Serializable {
         }
 
         dirtyConnectors.add(connector);
+        cleanupCandidates.add(connector);
+        invalidateVisibilitySnapshot();
     }
 
     /**
@@ -626,13 +815,75 @@ public class ConnectorTracker implements Serializable {
         ArrayList<ClientConnector> dirtyVisibleConnectors = new ArrayList<ClientConnector>(
                 dirtyConnectors.size());
         for (ClientConnector c : dirtyConnectors) {
-            if (LegacyCommunicationManager.isConnectorVisibleToClient(c)) {
+            if (isConnectorVisibleToClient(c)) {
                 dirtyVisibleConnectors.add(c);
             }
         }
         return dirtyVisibleConnectors;
     }
 
+    /**
+     * Checks if the connector is visible to the client, using the same rules
+     * as {@link LegacyCommunicationManager#isConnectorVisibleToClient}.
+     * <p>
+     * While a response is being written, the visibility of each connector is
+     * computed only once and shared by all parts of the response, as well as
+     * by the following {@link #cleanConnectorMap()}. The memoized values are
+     * discarded whenever a connector is registered, unregistered or marked
+     * dirty, since the hierarchy or visibility may have changed.
+     *
+     * @since
+     * @param connector
+     *            the connector to check, not <code>null</code>
+     * @return <code>true</code> if the connector is visible to the client,
+     *         <code>false</code> otherwise
+     */
+    public boolean isConnectorVisibleToClient(ClientConnector connector) {
+        if (visibilitySnapshot == null) {
+            return LegacyCommunicationManager
+                    .isConnectorVisibleToClient(connector);
+        }
+        visibilityLookups++;
+        Boolean visible = visibilitySnapshot.get(connector);
+        if (visible == null) {
+            visible = Boolean.valueOf(computeVisibility(connector));
+            visibilitySnapshot.put(connector, visible);
+        }
+        return visible.booleanValue();
+    }
+
+    /**
+     * Computes the visibility of a connector, looking up the visibility of its
+     * parent from the snapshot.
+     */
+    private boolean computeVisibility(ClientConnector connector) {
+        if (connector instanceof Component) {
+            Component component = (Component) connector;
+            if (!component.isVisible()) {
+                return false;
+            }
+            HasComponents parent = component.getParent();
+            if (parent instanceof SelectiveRenderer
+                    && !((SelectiveRenderer) parent).isRendered(component)) {
+                return false;
+            }
+            if (parent == null) {
+                // Only the UI is visible without a parent
+                return component instanceof UI;
+            }
+            return isConnectorVisibleToClient(parent);
+        } else {
+            ClientConnector parent = connector.getParent();
+            return parent != null && isConnectorVisibleToClient(parent);
+        }
+    }
+
+    private void invalidateVisibilitySnapshot() {
+        if (visibilitySnapshot != null && !visibilitySnapshot.isEmpty()) {
+            visibilitySnapshot.clear();
+        }
+    }
+
     public JsonObject getDiffState(ClientConnector connector) {
         assert getConnector(connector.getConnectorId()) == connector;
         return diffStates.get(connector);
@@ -643,6 +894,39 @@ public class ConnectorTracker implements Serializable {
         diffStates.put(connector, diffState);
     }
 
+    /**
+     * Gets the ids of the children of the given connector as they were last
+     * sent to the client. This should only be called by the framework.
+     *
+     * @since
+     * @param connector
+     *            the connector to get the child ids for
+     * @return unmodifiable list of child connector ids, or <code>null</code>
+     *         if the children of the connector are not known by the client
+     */
+    public List<String> getSentChildIds(ClientConnector connector) {
+        assert getConnector(connector.getConnectorId()) == connector;
+        return sentChildIds.get(connector);
+    }
+
+    /**
+     * Records the ids of the children of the given connector that have been
+     * sent to the client. This should only be called by the framework.
+     *
+     * @since
+     * @param connector
+     *            the connector whose children have been sent
+     * @param childIds
+     *            the ids of the children sent to the client, not
+     *            <code>null</code>
+     */
+    public void setSentChildIds(ClientConnector connector,
+            List<String> childIds) {
+        assert getConnector(connector.getConnectorId()) == connector;
+        sentChildIds.put(connector,
+                Collections.unmodifiableList(new ArrayList<String>(childIds)));
+    }
+
     public boolean isDirty(ClientConnector connector) {
         return dirtyConnectors.contains(connector);
     }
@@ -696,6 +980,10 @@ public class ConnectorTracker implements Serializable {
             // Bump sync id when done writing - the client is not expected to
             // know about anything happening after this moment.
             currentSyncId++;
+        } else {
+            // Memoize visibility until the connector map has been cleaned
+            visibilitySnapshot = new HashMap<ClientConnector, Boolean>();
+            visibilityLookups = 0;
         }
         this.writingResponse = writingResponse;
     }
@@ -0,0 +1,71 @@
+package com.vaadin.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.server.ClientConnector;
+import com.vaadin.tests.util.MockUI;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+
+/*
+ * Measures ConnectorTracker.cleanConnectorMap() after a response in which a
+ * single label of a UI with many connectors has changed.
+ *
+ * Please run with -server and without -ea. Your results will vary.
+ */
+public class ConnectorMapCleanupPerformanceTester {
+
+    private static final int ROUNDS = 1000;
+
+    public static void main(String[] args) {
+        for (int size : new int[] { 1000, 10000, 50000 }) {
+            List<Label> labels = new ArrayList<Label>();
+            UI ui = createUI(size, labels);
+            // Warm up
+            run(ui, labels, false);
+            run(ui, labels, true);
+        }
+    }
+
+    private static UI createUI(int size, List<Label> labels) {
+        UI ui = new MockUI();
+        CssLayout layout = new CssLayout();
+        ui.setContent(layout);
+        for (int i = 0; i < size; ++i) {
+            Label label = new Label("Label " + i);
+            labels.add(label);
+            layout.addComponent(label);
+        }
+        ConnectorTracker tracker = ui.getConnectorTracker();
+        for (ClientConnector connector : tracker.getDirtyConnectors()) {
+            tracker.markClientSideInitialized(connector);
+        }
+        tracker.markAllConnectorsClean();
+        tracker.cleanConnectorMap();
+        return ui;
+    }
+
+    private static void run(UI ui, List<Label> labels, boolean print) {
+        ConnectorTracker tracker = ui.getConnectorTracker();
+        long time = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            labels.get(round % labels.size()).setValue("Round " + round);
+            tracker.setWritingResponse(true);
+            tracker.markAllConnectorsClean();
+            tracker.setWritingResponse(false);
+
+            long start = System.nanoTime();
+            tracker.cleanConnectorMap();
+            time += System.nanoTime() - start;
+        }
+
+        if (print) {
+            System.out.println(String.format(
+                    "%6d connectors: %8.3f us/cleanConnectorMap",
+                    labels.size() + 2, time / 1000.0 / ROUNDS));
+        }
+    }
+}
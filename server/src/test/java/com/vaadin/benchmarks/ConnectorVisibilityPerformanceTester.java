@@ -0,0 +1,88 @@
+package com.vaadin.benchmarks;
+
+import com.vaadin.server.AbstractClientConnector;
+import com.vaadin.server.ClientConnector;
+import com.vaadin.tests.util.MockUI;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+
+/*
+ * Measures the visibility checks done while writing a response for a UI where
+ * all connectors are dirty: the dirty visible connectors are collected by the
+ * state, type and hierarchy writers, the hierarchy writer checks all children
+ * and the connector map is cleaned. Without a snapshot, each check walks up to
+ * the UI.
+ *
+ * Please run with -server. Your results will vary.
+ */
+public class ConnectorVisibilityPerformanceTester {
+
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        for (int depth : new int[] { 5, 20, 50 }) {
+            UI ui = createUI(depth, 10000 / depth);
+            // Warm up both code paths
+            for (int i = 0; i < 5; ++i) {
+                run(ui, depth, false, false);
+                run(ui, depth, true, false);
+            }
+            run(ui, depth, false, true);
+            run(ui, depth, true, true);
+        }
+    }
+
+    private static UI createUI(int depth, int labelsPerLevel) {
+        UI ui = new MockUI();
+        CssLayout parent = new CssLayout();
+        ui.setContent(parent);
+        for (int level = 0; level < depth; ++level) {
+            for (int i = 0; i < labelsPerLevel; ++i) {
+                parent.addComponent(new Label("Label " + i));
+            }
+            CssLayout child = new CssLayout();
+            parent.addComponent(child);
+            parent = child;
+        }
+        return ui;
+    }
+
+    private static void run(UI ui, int depth, boolean snapshot,
+            boolean print) {
+        ConnectorTracker tracker = ui.getConnectorTracker();
+        int connectors = 0;
+        long time = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            tracker.markAllConnectorsDirty();
+            long start = System.nanoTime();
+            if (snapshot) {
+                tracker.setWritingResponse(true);
+            }
+            for (int i = 0; i < 3; ++i) {
+                connectors = tracker.getDirtyVisibleConnectors().size();
+            }
+            for (ClientConnector connector : tracker
+                    .getDirtyVisibleConnectors()) {
+                for (ClientConnector child : AbstractClientConnector
+                        .getAllChildrenIterable(connector)) {
+                    tracker.isConnectorVisibleToClient(child);
+                }
+            }
+            if (snapshot) {
+                tracker.setWritingResponse(false);
+            }
+            tracker.markAllConnectorsClean();
+            tracker.cleanConnectorMap();
+            time += System.nanoTime() - start;
+        }
+
+        if (print) {
+            System.out.println(String.format(
+                    "%-12s %6d connectors, depth %3d: %8.3f ms/response",
+                    snapshot ? "snapshot" : "no snapshot", connectors, depth,
+                    time / 1000000.0 / ROUNDS));
+        }
+    }
+}
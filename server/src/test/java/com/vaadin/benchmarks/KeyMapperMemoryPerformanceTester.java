@@ -0,0 +1,130 @@
+package com.vaadin.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import com.vaadin.server.KeyMapper;
+import com.vaadin.server.data.DataKeyMapper;
+import com.vaadin.server.data.IntKeyMapper;
+
+/*
+ * Compares the retained heap and the allocations of KeyMapper and IntKeyMapper
+ * when keying a number of data objects, like DataCommunicator does for the
+ * rows cached on the client. IntKeyMapper is measured both through the string
+ * key API and through the int key API used internally by DataCommunicator.
+ *
+ * Please run with -server and a fixed heap, e.g. -Xms1g -Xmx1g, so that the
+ * heap measurements are not disturbed by heap resizing. Allocation is
+ * measured with the HotSpot specific ThreadMXBean when available. Your
+ * results will vary.
+ */
+public class KeyMapperMemoryPerformanceTester {
+
+    private static final int[] SIZES = { 100, 1000, 10000, 100000 };
+
+    /* Total number of keyed objects per measurement */
+    private static final int OBJECTS = 1000000;
+
+    public static void main(String[] args) {
+        // Warm up both mappers
+        for (int i = 0; i < 5; ++i) {
+            runAll(false);
+        }
+        runAll(true);
+    }
+
+    private static void runAll(boolean print) {
+        for (int size : SIZES) {
+            List<Object> data = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                data.add(new Object());
+            }
+            int mappers = Math.max(1, OBJECTS / size);
+
+            long[] keyMapper = measure(KeyMapper::new, KeyMapper::key, data,
+                    mappers);
+            long[] stringKeys = measure(IntKeyMapper::new, IntKeyMapper::key,
+                    data, mappers);
+            long[] intKeys = measure(IntKeyMapper::new, IntKeyMapper::intKey,
+                    data, mappers);
+
+            if (print) {
+                System.out.println(String.format(
+                        "size %6d (bytes/object retained, allocated): "
+                                + "KeyMapper %6.1f %6.1f, "
+                                + "IntKeyMapper string keys %6.1f %6.1f, "
+                                + "IntKeyMapper int keys %6.1f %6.1f",
+                        size, perObject(keyMapper[0], size, mappers),
+                        perObject(keyMapper[1], size, mappers),
+                        perObject(stringKeys[0], size, mappers),
+                        perObject(stringKeys[1], size, mappers),
+                        perObject(intKeys[0], size, mappers),
+                        perObject(intKeys[1], size, mappers)));
+            }
+        }
+    }
+
+    /*
+     * Keys the data with the given number of mappers, then removes and
+     * re-keys half of it to simulate scrolling. Returns the retained and the
+     * allocated bytes.
+     */
+    private static <M extends DataKeyMapper<Object>> long[] measure(
+            Supplier<M> factory, BiConsumer<M, Object> keyer,
+            List<Object> data, int mappers) {
+        List<M> retained = new ArrayList<>(mappers);
+        long before = usedHeap();
+        long allocatedBefore = allocatedBytes();
+        for (int m = 0; m < mappers; ++m) {
+            M mapper = factory.get();
+            for (Object o : data) {
+                keyer.accept(mapper, o);
+            }
+            for (int i = 0; i < data.size(); i += 2) {
+                mapper.remove(data.get(i));
+            }
+            for (int i = 0; i < data.size(); i += 2) {
+                keyer.accept(mapper, data.get(i));
+            }
+            retained.add(mapper);
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        long used = usedHeap() - before;
+        // Release the mappers and let the heap settle before the next
+        // measurement
+        retained.clear();
+        usedHeap();
+        return new long[] { used, allocated };
+    }
+
+    private static double perObject(long bytes, int size, int mappers) {
+        return (double) bytes / size / mappers;
+    }
+
+    private static long usedHeap() {
+        // Collect until the used heap no longer shrinks
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; ++i) {
+            System.gc();
+            long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory
+                .getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
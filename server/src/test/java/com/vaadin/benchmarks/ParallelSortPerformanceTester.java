@@ -0,0 +1,107 @@
+package com.vaadin.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import com.vaadin.server.data.DataSource;
+import com.vaadin.server.data.ListDataSource;
+import com.vaadin.server.data.Query;
+
+/*
+ * Compares sequential and parallel sorting in ListDataSource for growing data
+ * sizes to find the point where parallel sorting starts to pay off. Use the
+ * result to choose the threshold given to ListDataSource.parallel(int).
+ *
+ * Please run with -server and a heap large enough for the biggest data size,
+ * e.g. -Xmx2g. The number of available processors is printed with the results.
+ * Your results will vary.
+ */
+public class ParallelSortPerformanceTester {
+
+    private static final int[] SIZES = { 1000, 5000, 10000, 50000, 100000,
+            500000, 1000000 };
+
+    private static final int ROUNDS = 10;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors());
+
+    private static final Comparator<Bean> COMPARATOR = Comparator
+            .comparing(Bean::getName).thenComparingInt(Bean::getValue);
+
+    public static void main(String[] args) {
+        System.out.println("Processors: "
+                + Runtime.getRuntime().availableProcessors());
+
+        // Warm up both code paths
+        for (int i = 0; i < 3; ++i) {
+            runAll(false);
+        }
+        runAll(true);
+    }
+
+    private static void runAll(boolean print) {
+        for (int size : SIZES) {
+            List<Bean> data = createData(size);
+            ListDataSource<Bean> sequential = DataSource.create(data)
+                    .sortingBy(COMPARATOR);
+            ListDataSource<Bean> parallel = DataSource.create(data)
+                    .parallel(0, POOL).sortingBy(COMPARATOR);
+
+            long sequentialTime = time(sequential);
+            long parallelTime = time(parallel);
+
+            if (print) {
+                System.out.println(String.format(
+                        "size %8d: sequential %8.2f ms, parallel %8.2f ms, speedup %.2f",
+                        size, sequentialTime / 1e6, parallelTime / 1e6,
+                        (double) sequentialTime / parallelTime));
+            }
+        }
+    }
+
+    private static long time(ListDataSource<Bean> dataSource) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            // Fetch the first page the same way a component would
+            List<Bean> page = dataSource.apply(new Query()).limit(40)
+                    .collect(Collectors.toList());
+            if (page.size() != 40) {
+                throw new IllegalStateException("Unexpected result size");
+            }
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+
+    private static List<Bean> createData(int size) {
+        Random random = new Random(size);
+        List<Bean> data = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            data.add(new Bean("name" + random.nextInt(size),
+                    random.nextInt()));
+        }
+        return data;
+    }
+
+    private static class Bean {
+        private final String name;
+        private final int value;
+
+        public Bean(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.vaadin.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.vaadin.server.GeneratedBeanEncoderFactory;
+import com.vaadin.server.JsonCodec;
+import com.vaadin.server.JsonCodec.BeanEncoderFactory;
+import com.vaadin.shared.AbstractComponentState;
+import com.vaadin.shared.ui.button.ButtonState;
+import com.vaadin.shared.ui.slider.SliderState;
+import com.vaadin.shared.ui.textfield.TextFieldState;
+
+import elemental.json.JsonObject;
+
+/*
+ * Compares reflection based and generated encoding of shared states derived
+ * from AbstractComponentState, as done for dirty connectors on every
+ * response. Each state is encoded and diffed against the encoded default
+ * state.
+ *
+ * Please run with -server. Your results will vary.
+ */
+public class StateEncodingPerformanceTester {
+
+    private static final int ROUNDS = 200000;
+
+    public static void main(String[] args) {
+        AbstractComponentState[] states = createStates();
+
+        // Warm up both code paths
+        for (int i = 0; i < 5; ++i) {
+            run(null, states, false);
+            run(new GeneratedBeanEncoderFactory(), states, false);
+        }
+        run(null, states, true);
+        run(new GeneratedBeanEncoderFactory(), states, true);
+    }
+
+    private static AbstractComponentState[] createStates() {
+        ButtonState button = new ButtonState();
+        button.caption = "Save";
+        button.styles = Arrays.asList("primary", "small");
+        button.registeredEventListeners = Collections.singleton("click");
+
+        SliderState slider = new SliderState();
+        slider.maxValue = 1000;
+        slider.value = 42;
+
+        TextFieldState textField = new TextFieldState();
+        textField.text = "Some text";
+        textField.maxLength = 100;
+        textField.width = "100%";
+
+        return new AbstractComponentState[] { button, slider, textField };
+    }
+
+    private static void run(BeanEncoderFactory factory,
+            AbstractComponentState[] states, boolean print) {
+        JsonCodec.setBeanEncoderFactory(factory);
+
+        for (AbstractComponentState state : states) {
+            Class<? extends AbstractComponentState> type = state.getClass();
+            JsonObject reference;
+            try {
+                reference = (JsonObject) JsonCodec
+                        .encode(type.newInstance(), null, type, null)
+                        .getEncodedValue();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+
+            int diffSize = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                diffSize += ((JsonObject) JsonCodec
+                        .encode(state, reference, type, null).getDiff())
+                                .keys().length;
+            }
+            long time = System.nanoTime() - start;
+
+            if (print) {
+                System.out.println(String.format(
+                        "%-10s %-25s %8.1f ns/encode (diff size %d)",
+                        factory == null ? "reflective" : "generated",
+                        type.getSimpleName(), (double) time / ROUNDS,
+                        diffSize / ROUNDS));
+            }
+        }
+    }
+}
@@ -152,5 +152,40 @@ public class AbstractDeploymentConfigurationTest {
             return DefaultDeploymentConfiguration.DEFAULT_SEND_URLS_AS_PARAMETERS;
         }
 
+        @Override
+        public boolean isUidlCompressionEnabled() {
+            return DefaultDeploymentConfiguration.DEFAULT_UIDL_COMPRESSION;
+        }
+
+        @Override
+        public boolean isCompactUidlEnabled() {
+            return DefaultDeploymentConfiguration.DEFAULT_COMPACT_UIDL;
+        }
+
+        @Override
+        public boolean isRequestMetricsEnabled() {
+            return DefaultDeploymentConfiguration.DEFAULT_REQUEST_METRICS;
+        }
+
+        @Override
+        public int getPushCoalescingInterval() {
+            return DefaultDeploymentConfiguration.DEFAULT_PUSH_COALESCING_INTERVAL;
+        }
+
+        @Override
+        public int getStaticResourceCacheSize() {
+            return DefaultDeploymentConfiguration.DEFAULT_STATIC_RESOURCE_CACHE_SIZE;
+        }
+
+        @Override
+        public boolean isStaticResourceCompressionEnabled() {
+            return DefaultDeploymentConfiguration.DEFAULT_STATIC_RESOURCE_COMPRESSION;
+        }
+
+        @Override
+        public int getCompressionThreshold() {
+            return DefaultDeploymentConfiguration.DEFAULT_COMPRESSION_THRESHOLD;
+        }
+
     }
 }
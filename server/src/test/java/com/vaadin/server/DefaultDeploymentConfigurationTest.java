@@ -52,4 +52,11 @@ public class DefaultDeploymentConfigurationTest {
                 DefaultDeploymentConfigurationTest.class, new Properties());
         Assert.assertEquals(value, config.getSystemProperty(prop));
     }
+
+    @Test
+    public void staticResourceCacheIsDisabledByDefault() {
+        DefaultDeploymentConfiguration config = new DefaultDeploymentConfiguration(
+                DefaultDeploymentConfigurationTest.class, new Properties());
+        Assert.assertEquals(0, config.getStaticResourceCacheSize());
+    }
 }
@@ -3,19 +3,33 @@ package com.vaadin.server;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class DownloadStreamTest {
     private String filename = "日本語.png";
     private DownloadStream stream;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setup() {
         stream = new DownloadStream(mock(InputStream.class), "", filename);
@@ -34,4 +48,72 @@ public class DownloadStreamTest {
                 contains(
                         String.format("filename*=utf-8''%s", encodedFileName)));
     }
+
+    @Test
+    public void fileIsServedWithRange() throws IOException {
+        DownloadStream fileStream = createFileStream();
+        VaadinRequest request = mock(VaadinRequest.class);
+        when(request.getHeader("Range")).thenReturn("bytes=3-5");
+        VaadinResponse response = mock(VaadinResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(out);
+
+        fileStream.writeResponse(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader("Content-Range", "bytes 3-5/10");
+        verify(response).setHeader("Content-Length", "3");
+        Assert.assertEquals("345", out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void fileIsServedInFull() throws IOException {
+        DownloadStream fileStream = createFileStream();
+        VaadinResponse response = mock(VaadinResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(out);
+
+        fileStream.writeResponse(mock(VaadinRequest.class), response);
+
+        verify(response).setHeader("Accept-Ranges", "bytes");
+        verify(response, never()).setStatus(
+                HttpServletResponse.SC_PARTIAL_CONTENT);
+        Assert.assertEquals("0123456789", out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void partiallyReadFileIsServedFromCurrentPosition()
+            throws IOException {
+        DownloadStream fileStream = createFileStream();
+        fileStream.getStream().skip(3);
+        VaadinResponse response = mock(VaadinResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(out);
+
+        fileStream.writeResponse(mock(VaadinRequest.class), response);
+
+        verify(response).setHeader("Content-Length", "7");
+        Assert.assertEquals("3456789", out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void matchingETagIsNotModified() throws IOException {
+        DownloadStream fileStream = createFileStream();
+        VaadinRequest request = mock(VaadinRequest.class);
+        when(request.getHeader("If-None-Match"))
+                .thenReturn(fileStream.getParameter("ETag"));
+        VaadinResponse response = mock(VaadinResponse.class);
+
+        fileStream.writeResponse(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+    }
+
+    private DownloadStream createFileStream() throws IOException {
+        File file = folder.newFile("content.txt");
+        Files.write(file.toPath(),
+                "0123456789".getBytes(StandardCharsets.US_ASCII));
+        return new FileResource(file).getStream();
+    }
 }
@@ -0,0 +1,155 @@
+package com.vaadin.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.server.JsonCodec.BeanEncoder;
+import com.vaadin.shared.AbstractComponentState;
+import com.vaadin.shared.communication.URLReference;
+import com.vaadin.shared.ui.button.ButtonState;
+import com.vaadin.shared.ui.slider.SliderState;
+
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+
+public class GeneratedBeanEncoderFactoryTest {
+
+    public static class Bean {
+        public int intValue;
+        public long longValue;
+        public float floatValue;
+        public char charValue = 'c';
+        public Integer boxed;
+        private String property;
+
+        public String getProperty() {
+            return property;
+        }
+
+        public void setProperty(String property) {
+            this.property = property;
+        }
+    }
+
+    public static class ConflictingBean {
+        public String foo;
+
+        public String getFoo() {
+            return foo;
+        }
+
+        public void setFoo(String foo) {
+            this.foo = foo;
+        }
+    }
+
+    private static class PrivateBean {
+        public int value;
+    }
+
+    private final GeneratedBeanEncoderFactory factory = new GeneratedBeanEncoderFactory();
+
+    @After
+    public void restoreFactory() {
+        JsonCodec.setBeanEncoderFactory(new GeneratedBeanEncoderFactory());
+    }
+
+    @Test
+    public void defaultFactoryGeneratesEncoders() {
+        Assert.assertTrue(JsonCodec
+                .getBeanEncoderFactory() instanceof GeneratedBeanEncoderFactory);
+    }
+
+    @Test
+    public void componentStateEncodingMatchesReflection() {
+        ButtonState reference = new ButtonState();
+        ButtonState state = new ButtonState();
+        state.caption = "Caption";
+        state.width = null;
+        state.styles = Arrays.asList("foo", "bar");
+        state.tabIndex = 4;
+        state.enabled = false;
+        state.registeredEventListeners = Collections.singleton("click");
+        state.resources.put("icon", new URLReference());
+        assertSameEncoding(state, reference, ButtonState.class);
+        assertSameEncoding(reference, reference, ButtonState.class);
+        assertSameEncoding(state, null, ButtonState.class);
+
+        SliderState slider = new SliderState();
+        slider.maxValue = 1000.5;
+        slider.resolution = 2;
+        assertSameEncoding(slider, new SliderState(), SliderState.class);
+        assertSameEncoding(new AbstractComponentState(),
+                new AbstractComponentState(), AbstractComponentState.class);
+    }
+
+    @Test
+    public void beanEncodingMatchesReflection() {
+        Bean bean = new Bean();
+        bean.intValue = 5;
+        bean.longValue = 1L << 40;
+        bean.floatValue = 1.5f;
+        bean.boxed = 3;
+        bean.setProperty("foo");
+        assertSameEncoding(bean, new Bean(), Bean.class);
+        assertSameEncoding(new Bean(), bean, Bean.class);
+    }
+
+    @Test
+    public void unsupportedTypesFallBackToReflection() {
+        Assert.assertNull(factory.createEncoder(ConflictingBean.class));
+        Assert.assertNull(factory.createEncoder(PrivateBean.class));
+    }
+
+    @Test
+    public void encoderCanBeSerialized() throws Exception {
+        BeanEncoder encoder = factory.createEncoder(Bean.class);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(encoder);
+        }
+        BeanEncoder copy = (BeanEncoder) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Bean bean = new Bean();
+        bean.intValue = 5;
+        bean.setProperty("foo");
+        assertJsonEquals(encoder.encode(bean, null, null).getEncodedValue(),
+                copy.encode(bean, null, null).getEncodedValue());
+    }
+
+    private void assertSameEncoding(Object value, Object reference,
+            Class<?> type) {
+        JsonCodec.setBeanEncoderFactory(null);
+        JsonObject referenceJson = reference == null ? null
+                : (JsonObject) JsonCodec
+                        .encode(reference, null, type, null)
+                        .getEncodedValue();
+        EncodeResult expected = JsonCodec.encode(value, referenceJson, type,
+                null);
+
+        BeanEncoder encoder = factory.createEncoder(type);
+        Assert.assertNotNull(encoder);
+        EncodeResult actual = encoder.encode(value, referenceJson, null);
+
+        assertJsonEquals(expected.getEncodedValue(),
+                actual.getEncodedValue());
+        assertJsonEquals(expected.getDiff(), actual.getDiff());
+    }
+
+    private static void assertJsonEquals(JsonValue expected,
+            JsonValue actual) {
+        Assert.assertTrue(
+                "Expected " + expected.toJson() + " but was "
+                        + actual.toJson(),
+                JsonCodec.jsonEquals(expected, actual));
+    }
+}
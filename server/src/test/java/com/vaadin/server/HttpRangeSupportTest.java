@@ -0,0 +1,170 @@
+package com.vaadin.server;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.server.HttpRangeSupport.ByteRange;
+
+public class HttpRangeSupportTest {
+
+    private static final byte[] CONTENT = "0123456789"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void parseSingleRanges() {
+        Assert.assertEquals(ranges(2, 5),
+                HttpRangeSupport.parseRanges("bytes=2-5", 10));
+        Assert.assertEquals(ranges(7, 9),
+                HttpRangeSupport.parseRanges("bytes=7-", 10));
+        Assert.assertEquals(ranges(7, 9),
+                HttpRangeSupport.parseRanges("bytes=-3", 10));
+        Assert.assertEquals(ranges(0, 9),
+                HttpRangeSupport.parseRanges("bytes=-30", 10));
+        Assert.assertEquals(ranges(5, 9),
+                HttpRangeSupport.parseRanges("bytes=5-100", 10));
+    }
+
+    @Test
+    public void overlappingRangesAreMerged() {
+        Assert.assertEquals(ranges(0, 4, 7, 9),
+                HttpRangeSupport.parseRanges("bytes=7-8, 0-2,3-4,-2", 10));
+    }
+
+    @Test
+    public void unsatisfiableRangesAreEmpty() {
+        Assert.assertEquals(Collections.emptyList(),
+                HttpRangeSupport.parseRanges("bytes=10-20", 10));
+        Assert.assertEquals(Collections.emptyList(),
+                HttpRangeSupport.parseRanges("bytes=-0", 10));
+    }
+
+    @Test
+    public void invalidRangesAreIgnored() {
+        Assert.assertNull(HttpRangeSupport.parseRanges("items=0-1", 10));
+        Assert.assertNull(HttpRangeSupport.parseRanges("bytes=5-2", 10));
+        Assert.assertNull(HttpRangeSupport.parseRanges("bytes=a-b", 10));
+        Assert.assertNull(HttpRangeSupport.parseRanges("bytes=1", 10));
+
+        StringBuilder tooMany = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= HttpRangeSupport.MAX_RANGES; i++) {
+            tooMany.append(",").append(i * 2).append("-").append(i * 2);
+        }
+        Assert.assertNull(
+                HttpRangeSupport.parseRanges(tooMany.toString(), 100));
+    }
+
+    @Test
+    public void ifNoneMatchUsesWeakComparison() {
+        Assert.assertTrue(HttpRangeSupport.matchesWeakly("\"a\"", "\"a\""));
+        Assert.assertTrue(
+                HttpRangeSupport.matchesWeakly("\"b\", W/\"a\"", "\"a\""));
+        Assert.assertTrue(HttpRangeSupport.matchesWeakly("\"a\"", "W/\"a\""));
+        Assert.assertTrue(HttpRangeSupport.matchesWeakly("*", "\"a\""));
+        Assert.assertFalse(HttpRangeSupport.matchesWeakly("\"b\"", "\"a\""));
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        VaadinRequest request = mock(VaadinRequest.class);
+        when(request.getHeader("If-None-Match")).thenReturn("\"b\"");
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(2000L);
+
+        Assert.assertFalse(
+                HttpRangeSupport.isNotModified(request, "\"a\"", 1000));
+        Assert.assertTrue(
+                HttpRangeSupport.isNotModified(request, "\"b\"", 1000));
+
+        when(request.getHeader("If-None-Match")).thenReturn(null);
+        Assert.assertTrue(
+                HttpRangeSupport.isNotModified(request, "\"a\"", 1000));
+        Assert.assertFalse(
+                HttpRangeSupport.isNotModified(request, "\"a\"", 3000));
+    }
+
+    @Test
+    public void outdatedIfRangeServesFullContent() {
+        VaadinRequest request = mock(VaadinRequest.class);
+        when(request.getHeader("Range")).thenReturn("bytes=0-1");
+        when(request.getHeader("If-Range")).thenReturn("\"old\"");
+
+        Assert.assertNull(
+                HttpRangeSupport.getRanges(request, 10, "\"new\"", 0));
+        Assert.assertEquals(ranges(0, 1),
+                HttpRangeSupport.getRanges(request, 10, "\"old\"", 0));
+        // Weak ETags cannot be used with If-Range
+        Assert.assertNull(
+                HttpRangeSupport.getRanges(request, 10, "W/\"old\"", 0));
+    }
+
+    @Test
+    public void writeSingleRange() throws IOException {
+        VaadinResponse response = mock(VaadinResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(out);
+
+        HttpRangeSupport.writeRanges(response, ranges(2, 4), CONTENT.length,
+                "text/plain", HttpRangeSupport.fromBytes(CONTENT));
+
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader("Content-Range", "bytes 2-4/10");
+        verify(response).setHeader("Content-Length", "3");
+        verify(response).setContentType("text/plain");
+        Assert.assertEquals("234", out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void writeMultipleRanges() throws IOException {
+        VaadinResponse response = mock(VaadinResponse.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(out);
+
+        HttpRangeSupport.writeRanges(response, ranges(0, 1, 8, 9),
+                CONTENT.length, "text/plain",
+                HttpRangeSupport.fromBytes(CONTENT));
+
+        String body = out.toString("US-ASCII");
+        String boundary = body.substring(4, body.indexOf("\r\n", 4));
+        verify(response).setContentType(
+                "multipart/byteranges; boundary=" + boundary);
+        verify(response).setHeader("Content-Length",
+                String.valueOf(out.size()));
+        Assert.assertEquals("\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Range: bytes 0-1/10\r\n\r\n01" + "\r\n--" + boundary
+                + "\r\n" + "Content-Type: text/plain\r\n"
+                + "Content-Range: bytes 8-9/10\r\n\r\n89" + "\r\n--" + boundary
+                + "--\r\n", body);
+    }
+
+    @Test
+    public void streamSourceSkipsBetweenRanges() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpRangeSupport.RangeSource source = HttpRangeSupport
+                .fromStream(new ByteArrayInputStream(CONTENT));
+        source.write(out, 1, 2);
+        source.write(out, 6, 3);
+        Assert.assertEquals("12678", out.toString("US-ASCII"));
+    }
+
+    private static List<ByteRange> ranges(long... bounds) {
+        ByteRange[] ranges = new ByteRange[bounds.length / 2];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = new ByteRange(bounds[i * 2], bounds[i * 2 + 1]);
+        }
+        return Arrays.asList(ranges);
+    }
+}
@@ -0,0 +1,134 @@
+package com.vaadin.server;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+
+public class ResponseCompressionTest {
+
+    private MockDeploymentConfiguration configuration;
+    private VaadinRequest request;
+    private VaadinResponse response;
+    private ByteArrayOutputStream out;
+
+    @Before
+    public void setUp() throws IOException {
+        configuration = new MockDeploymentConfiguration();
+        configuration.setUidlCompressionEnabled(true);
+        configuration.setCompressionThreshold(100);
+        VaadinService service = mock(VaadinService.class);
+        when(service.getDeploymentConfiguration()).thenReturn(configuration);
+
+        request = mock(VaadinRequest.class);
+        when(request.getService()).thenReturn(service);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+        response = mock(VaadinResponse.class);
+        out = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(out);
+    }
+
+    @Test
+    public void acceptEncodingIsParsed() {
+        Assert.assertTrue(ResponseCompression.acceptsGzip("gzip"));
+        Assert.assertTrue(ResponseCompression.acceptsGzip("deflate, gzip"));
+        Assert.assertTrue(ResponseCompression.acceptsGzip("br;q=1, *;q=0.5"));
+        Assert.assertTrue(ResponseCompression.acceptsGzip("GZIP;q=0.1"));
+        Assert.assertFalse(ResponseCompression.acceptsGzip(null));
+        Assert.assertFalse(ResponseCompression.acceptsGzip("identity"));
+        Assert.assertFalse(ResponseCompression.acceptsGzip("gzip;q=0"));
+        Assert.assertFalse(ResponseCompression.acceptsGzip("br, *;q=0"));
+    }
+
+    @Test
+    public void explicitGzipQualityOverridesWildcard() {
+        Assert.assertFalse(ResponseCompression.acceptsGzip("gzip;q=0, *"));
+        Assert.assertFalse(ResponseCompression.acceptsGzip("*, gzip;q=0"));
+        Assert.assertTrue(ResponseCompression.acceptsGzip("gzip, *;q=0"));
+        Assert.assertTrue(ResponseCompression.acceptsGzip("br, *"));
+    }
+
+    @Test
+    public void textTypesAreCompressible() {
+        Assert.assertTrue(ResponseCompression.isCompressible("text/css"));
+        Assert.assertTrue(ResponseCompression
+                .isCompressible("application/json; charset=UTF-8"));
+        Assert.assertTrue(
+                ResponseCompression.isCompressible("application/javascript"));
+        Assert.assertTrue(ResponseCompression.isCompressible("image/svg+xml"));
+        Assert.assertFalse(ResponseCompression.isCompressible("image/png"));
+        Assert.assertFalse(ResponseCompression.isCompressible(null));
+    }
+
+    @Test
+    public void largeResponseIsCompressed() throws IOException {
+        byte[] content = new byte[1000];
+
+        ResponseCompression.writeResponse(request, response, content);
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response).setHeader("Vary", "Accept-Encoding");
+        verify(response).setContentLength(out.size());
+        Assert.assertArrayEquals(content, gunzip(out.toByteArray()));
+    }
+
+    @Test
+    public void smallResponseIsNotCompressed() throws IOException {
+        byte[] content = new byte[99];
+
+        ResponseCompression.writeResponse(request, response, content);
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        verify(response).setContentLength(99);
+        Assert.assertArrayEquals(content, out.toByteArray());
+    }
+
+    @Test
+    public void responseIsNotCompressedWhenDisabled() throws IOException {
+        configuration.setUidlCompressionEnabled(false);
+        byte[] content = new byte[1000];
+
+        ResponseCompression.writeResponse(request, response, content);
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        verify(response, never()).setHeader("Vary", "Accept-Encoding");
+        Assert.assertArrayEquals(content, out.toByteArray());
+    }
+
+    @Test
+    public void responseIsNotCompressedWhenNotAccepted() throws IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn(null);
+        byte[] content = new byte[1000];
+
+        ResponseCompression.writeResponse(request, response, content);
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        verify(response).setHeader("Vary", "Accept-Encoding");
+        Assert.assertArrayEquals(content, out.toByteArray());
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                result.write(buffer, 0, read);
+            }
+        }
+        return result.toByteArray();
+    }
+}
@@ -0,0 +1,153 @@
+package com.vaadin.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StaticResourceCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StaticResourceCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new StaticResourceCache(8 * 1000);
+    }
+
+    @Test
+    public void resourceIsLoadedWithoutGzipVariant() throws IOException {
+        URL url = createFile("styles.css", 100);
+
+        StaticResourceCache.Entry entry = cache.load("/VAADIN/styles.css",
+                url, "text/css");
+
+        Assert.assertSame(entry, cache.get("/VAADIN/styles.css"));
+        Assert.assertEquals(url, entry.getUrl());
+        Assert.assertEquals("text/css", entry.getContentType());
+        Assert.assertEquals(100, entry.getContent().length);
+        Assert.assertNull(entry.getGzipContent());
+        Assert.assertNull(entry.getGzipETag());
+        Assert.assertEquals(0, entry.getLastModified() % 1000);
+        Assert.assertEquals(100, cache.getSize());
+    }
+
+    @Test
+    public void gzipVariantIsLoaded() throws IOException {
+        URL url = createFile("widgetset.js", 100);
+        createFile("widgetset.js.gz", 50);
+
+        StaticResourceCache.Entry entry = cache.load("/VAADIN/widgetset.js",
+                url, null);
+
+        Assert.assertEquals(50, entry.getGzipContent().length);
+        Assert.assertTrue(entry.isGzipPrecompressed());
+        Assert.assertNotEquals(entry.getETag(), entry.getGzipETag());
+        Assert.assertEquals(150, cache.getSize());
+    }
+
+    @Test
+    public void compressibleResourceIsCompressed() throws IOException {
+        cache = new StaticResourceCache(80 * 1000, 100);
+        URL url = createFile("styles.css", 1000);
+
+        StaticResourceCache.Entry entry = cache.load("/VAADIN/styles.css",
+                url, "text/css");
+
+        Assert.assertNotNull(entry.getGzipContent());
+        Assert.assertFalse(entry.isGzipPrecompressed());
+        Assert.assertTrue(entry.getGzipContent().length < 1000);
+        Assert.assertEquals(1000 + entry.getGzipContent().length,
+                cache.getSize());
+    }
+
+    @Test
+    public void smallOrIncompressibleResourceIsNotCompressed()
+            throws IOException {
+        cache = new StaticResourceCache(80 * 1000, 100);
+        URL small = createFile("small.css", 99);
+        URL image = createFile("image.png", 1000);
+
+        Assert.assertNull(cache.load("/VAADIN/small.css", small, "text/css")
+                .getGzipContent());
+        Assert.assertNull(cache.load("/VAADIN/image.png", image, "image/png")
+                .getGzipContent());
+    }
+
+    @Test
+    public void etagDependsOnContent() throws IOException {
+        URL first = createFile("first.js", 100);
+        byte[] content = new byte[100];
+        content[0] = 1;
+        URL second = createFile("second.js", content);
+        URL third = createFile("third.js", 100);
+
+        String etag = cache.load("/VAADIN/first.js", first, null).getETag();
+        Assert.assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        Assert.assertNotEquals(etag,
+                cache.load("/VAADIN/second.js", second, null).getETag());
+        Assert.assertEquals(etag,
+                cache.load("/VAADIN/third.js", third, null).getETag());
+    }
+
+    @Test
+    public void largeResourceIsNotCached() throws IOException {
+        URL url = createFile("large.js", cache.getMaxEntrySize() + 1);
+
+        Assert.assertNull(cache.load("/VAADIN/large.js", url, null));
+        Assert.assertNull(cache.get("/VAADIN/large.js"));
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertTrue(cache.isTooLarge("/VAADIN/large.js"));
+    }
+
+    @Test
+    public void tooLargeResourceIsNotReadAgain() throws IOException {
+        URL url = createFile("large.js", cache.getMaxEntrySize() + 1);
+        cache.load("/VAADIN/large.js", url, null);
+        Files.write(new File(folder.getRoot(), "large.js").toPath(),
+                new byte[10]);
+
+        Assert.assertNull(cache.load("/VAADIN/large.js", url, null));
+
+        cache.clear();
+        Assert.assertFalse(cache.isTooLarge("/VAADIN/large.js"));
+        Assert.assertNotNull(cache.load("/VAADIN/large.js", url, null));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            cache.load("/VAADIN/" + i, createFile(i + ".js", 1000), null);
+        }
+        Assert.assertEquals(8000, cache.getSize());
+
+        cache.get("/VAADIN/0");
+        cache.load("/VAADIN/8", createFile("8.js", 1000), null);
+
+        Assert.assertNotNull(cache.get("/VAADIN/0"));
+        Assert.assertNull(cache.get("/VAADIN/1"));
+        Assert.assertEquals(8000, cache.getSize());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertNull(cache.get("/VAADIN/0"));
+    }
+
+    private URL createFile(String name, int size) throws IOException {
+        return createFile(name, new byte[size]);
+    }
+
+    private URL createFile(String name, byte[] content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content);
+        return file.toURI().toURL();
+    }
+}
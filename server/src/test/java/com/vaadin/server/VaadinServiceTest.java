@@ -18,6 +18,10 @@ package com.vaadin.server;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpSessionBindingEvent;
@@ -26,6 +30,8 @@ import org.easymock.EasyMock;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+
 /**
  *
  * @author Vaadin Ltd
@@ -140,4 +146,33 @@ public class VaadinServiceTest {
 
         assertThat(notification, containsString("\"url\":null"));
     }
+
+    @Test
+    public void accessTasksAreCoalesced() throws Exception {
+        VaadinServlet servlet = new VaadinServlet();
+        servlet.init(new MockServletConfig());
+        MockDeploymentConfiguration configuration = new MockDeploymentConfiguration();
+        configuration.setPushCoalescingInterval(100);
+        VaadinServletService service = new VaadinServletService(servlet,
+                configuration);
+        service.init();
+        try {
+            MockVaadinSession session = new MockVaadinSession(service);
+            AtomicInteger runs = new AtomicInteger();
+
+            // The first task is run right away
+            session.access(runs::incrementAndGet);
+            Assert.assertEquals(1, runs.get());
+
+            // Tasks within the interval are run in the same batch
+            session.access(runs::incrementAndGet);
+            Future<Void> last = session.access(runs::incrementAndGet);
+            Assert.assertEquals(1, runs.get());
+
+            last.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(3, runs.get());
+        } finally {
+            service.destroy();
+        }
+    }
 }
@@ -0,0 +1,263 @@
+package com.vaadin.server;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.vaadin.sass.internal.ScssStylesheet;
+
+public class VaadinServletScssTest {
+
+    private static final String CSS_PATH = "/VAADIN/themes/test/styles.css";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private VaadinServlet servlet;
+    private File scssFile;
+    private final AtomicInteger compilations = new AtomicInteger();
+    private Logger logger;
+    private Level oldLevel;
+
+    private final Handler compilationCounter = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getMessage().startsWith("Compiling")) {
+                compilations.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @BeforeClass
+    public static void initCompiler() throws ClassNotFoundException {
+        // The compiler resets the logging configuration when it is loaded,
+        // which would remove the handler counting compilations
+        Class.forName(ScssStylesheet.class.getName());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        File themeDir = folder.newFolder("VAADIN", "themes", "test");
+        scssFile = new File(themeDir, "styles.scss");
+        writeScss("red");
+
+        logger = Logger.getLogger(VaadinServlet.class.getName());
+        oldLevel = logger.getLevel();
+        logger.setLevel(Level.FINE);
+        compilationCounter.setLevel(Level.FINE);
+        logger.addHandler(compilationCounter);
+    }
+
+    private void initServlet(boolean watchThemes) throws ServletException {
+        Properties initParameters = new Properties();
+        initParameters.setProperty(Constants.SERVLET_PARAMETER_WATCH_THEMES,
+                Boolean.toString(watchThemes));
+        final ServletContext context = new MockServletContext() {
+            @Override
+            public String getRealPath(String path) {
+                return new File(folder.getRoot(), path).getPath();
+            }
+
+            @Override
+            public URL getResource(String path)
+                    throws MalformedURLException {
+                File file = new File(folder.getRoot(), path);
+                return file.exists() ? file.toURI().toURL() : null;
+            }
+        };
+        servlet = new VaadinServlet();
+        servlet.init(new MockServletConfig(initParameters) {
+            @Override
+            public ServletContext getServletContext() {
+                return context;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        logger.removeHandler(compilationCounter);
+        logger.setLevel(oldLevel);
+        if (servlet != null) {
+            servlet.destroy();
+        }
+        new File(scssFile.getPath() + ".cache").delete();
+    }
+
+    @Test
+    public void concurrentRequestsShareOneCompilation() throws Exception {
+        initServlet(false);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        start.await();
+                        return requestCss();
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                Assert.assertTrue(result.get().contains("red"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, compilations.get());
+    }
+
+    @Test
+    public void modifiedThemeIsRecompiled() throws Exception {
+        initServlet(false);
+        Assert.assertTrue(requestCss().contains("red"));
+        Assert.assertTrue(requestCss().contains("red"));
+        Assert.assertEquals(1, compilations.get());
+
+        writeScss("blue");
+        scssFile.setLastModified(scssFile.lastModified() + 2000);
+        // Modifications are checked at most once per second
+        Thread.sleep(1100);
+
+        Assert.assertTrue(requestCss().contains("blue"));
+        Assert.assertEquals(2, compilations.get());
+    }
+
+    @Test
+    public void themeIsPrecompiled() throws Exception {
+        initServlet(false);
+        servlet.precompileTheme("test").get();
+        Assert.assertEquals(1, compilations.get());
+
+        Assert.assertTrue(requestCss().contains("red"));
+        Assert.assertEquals(1, compilations.get());
+
+        Assert.assertNull(servlet.precompileTheme("../test"));
+    }
+
+    @Test
+    public void modifiedThemeIsRecompiledInBackground() throws Exception {
+        initServlet(true);
+        Assert.assertTrue(requestCss().contains("red"));
+        Assert.assertEquals(1, compilations.get());
+
+        writeScss("blue");
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (compilations.get() < 2
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, compilations.get());
+        // The new css is swapped in after the compilation has finished
+        while (!requestCss().contains("blue")
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(requestCss().contains("blue"));
+        Assert.assertEquals(2, compilations.get());
+    }
+
+    @Test
+    public void sourceModifiedDuringCompilationIsRecompiled()
+            throws Exception {
+        initServlet(true);
+        // Looks like a modification made after the compilation started
+        scssFile.setLastModified(System.currentTimeMillis() + 5000);
+        Assert.assertTrue(requestCss().contains("red"));
+        Assert.assertEquals(1, compilations.get());
+
+        // Not trusted to the watcher, so checked again after the interval
+        Thread.sleep(1100);
+        requestCss();
+        Assert.assertEquals(2, compilations.get());
+    }
+
+    @Test
+    public void watcherThreadIsStartedOnlyForCompiledThemes()
+            throws Exception {
+        initServlet(true);
+        Assert.assertFalse(isWatcherThreadRunning());
+
+        requestCss();
+        Assert.assertTrue(isWatcherThreadRunning());
+    }
+
+    private boolean isWatcherThreadRunning() {
+        String name = "Vaadin theme watcher "
+                + servlet.getServletConfig().getServletName();
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().equals(name));
+    }
+
+    private void writeScss(String color) throws IOException {
+        String scss = "$c: " + color + ";\n.v-test { color: $c; }\n";
+        Files.write(scssFile.toPath(), scss.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String requestCss() throws IOException, ServletException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRequestURI()).thenReturn(CSS_PATH);
+        when(request.getPathInfo()).thenReturn(CSS_PATH);
+        when(request.getServletPath()).thenReturn("");
+        when(request.getContextPath()).thenReturn("");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+        });
+
+        servlet.service(request, response);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -19,13 +19,24 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import org.atmosphere.cpr.AtmosphereResource;
 import org.easymock.EasyMock;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.vaadin.server.LegacyCommunicationManager;
+import com.vaadin.server.MockServletConfig;
+import com.vaadin.server.MockVaadinSession;
+import com.vaadin.server.VaadinServlet;
+import com.vaadin.server.VaadinServletService;
 import com.vaadin.server.communication.AtmospherePushConnection.State;
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+import com.vaadin.tests.util.MockUI;
+import com.vaadin.ui.Label;
 import com.vaadin.ui.UI;
 
 public class AtmospherePushConnectionTest {
@@ -50,4 +61,59 @@ public class AtmospherePushConnectionTest {
 
         Assert.assertEquals(State.DISCONNECTED, connection.getState());
     }
+
+    @Test
+    public void pushesAreCoalesced() throws Exception {
+        VaadinServlet servlet = new VaadinServlet();
+        servlet.init(new MockServletConfig());
+        MockDeploymentConfiguration configuration = new MockDeploymentConfiguration();
+        configuration.setPushCoalescingInterval(100);
+        VaadinServletService service = new VaadinServletService(servlet,
+                configuration);
+        service.init();
+
+        MockVaadinSession session = new MockVaadinSession(service);
+        final List<String> messages = new CopyOnWriteArrayList<String>();
+        session.lock();
+        UI ui;
+        AtmospherePushConnection connection;
+        Label label = new Label("first");
+        try {
+            session.setCommunicationManager(
+                    new LegacyCommunicationManager(session));
+            ui = new MockUI(session);
+            ui.setContent(label);
+            connection = new AtmospherePushConnection(ui) {
+                @Override
+                void sendMessage(String message) {
+                    messages.add(message);
+                }
+            };
+            connection.connect(EasyMock
+                    .createNiceMock(AtmosphereResource.class));
+
+            connection.push();
+            Assert.assertEquals(1, messages.size());
+
+            label.setValue("second");
+            connection.push();
+            label.setValue("third");
+            connection.push();
+            Assert.assertEquals(1, messages.size());
+        } finally {
+            session.unlock();
+        }
+
+        try {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (messages.size() < 2 && System.nanoTime() < end) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(2, messages.size());
+            Assert.assertTrue(messages.get(1).contains("third"));
+            Assert.assertFalse(messages.get(1).contains("second"));
+        } finally {
+            service.destroy();
+        }
+    }
 }
@@ -0,0 +1,192 @@
+package com.vaadin.server.communication;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.shared.ApplicationConstants;
+import com.vaadin.tests.util.MockUI;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+
+public class ConnectorHierarchyWriterTest {
+
+    private UI ui;
+    private ConnectorTracker tracker;
+    private CssLayout layout;
+
+    @Before
+    public void setUp() {
+        ui = new MockUI();
+        tracker = ui.getConnectorTracker();
+        layout = new CssLayout();
+        for (int i = 0; i < 10; i++) {
+            layout.addComponent(new Label("label " + i));
+        }
+        ui.setContent(layout);
+    }
+
+    @Test
+    public void deltaForEqualListsIsNull() {
+        Assert.assertNull(ConnectorHierarchyWriter.createDelta(ids("1", "2"),
+                ids("1", "2")));
+    }
+
+    @Test
+    public void deltaContainsInsertsRemovesAndMoves() {
+        JsonObject delta = ConnectorHierarchyWriter.createDelta(
+                ids("1", "2", "3", "4"), ids("2", "3", "5", "1"));
+
+        Assert.assertEquals(ids("4", "1"), toList(
+                delta.getArray(ApplicationConstants.HIERARCHY_DELTA_REMOVED)));
+        Assert.assertEquals(ids("5", "1"), toList(
+                delta.getArray(ApplicationConstants.HIERARCHY_DELTA_INSERTED)));
+        JsonArray indices = delta
+                .getArray(ApplicationConstants.HIERARCHY_DELTA_INDICES);
+        Assert.assertEquals(2, indices.length());
+        Assert.assertEquals(2, (int) indices.getNumber(0));
+        Assert.assertEquals(3, (int) indices.getNumber(1));
+    }
+
+    @Test
+    public void appliedDeltaProducesNewList() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<String> oldIds = randomIds(random);
+            List<String> newIds = randomIds(random);
+            JsonObject delta = ConnectorHierarchyWriter.createDelta(oldIds,
+                    newIds);
+            if (delta == null) {
+                Assert.assertEquals(oldIds, newIds);
+            } else {
+                Assert.assertEquals(newIds, apply(oldIds, delta));
+            }
+        }
+    }
+
+    @Test
+    public void onlyChangedHierarchyIsWritten() throws IOException {
+        Set<String> stateUpdates = Collections.emptySet();
+        JsonObject hierarchy = write(stateUpdates);
+        Assert.assertEquals(10, hierarchy.getArray(layout.getConnectorId())
+                .length());
+
+        layout.addComponent(new Label("new"));
+        StringWriter writer = new StringWriter();
+        JsonObject deltas = new ConnectorHierarchyWriter().write(ui, writer,
+                stateUpdates);
+        Assert.assertFalse(Json.parse(writer.toString())
+                .hasKey(layout.getConnectorId()));
+        JsonObject delta = deltas.getObject(layout.getConnectorId());
+        Assert.assertEquals(1, delta
+                .getArray(ApplicationConstants.HIERARCHY_DELTA_INSERTED)
+                .length());
+        Assert.assertFalse(
+                delta.hasKey(ApplicationConstants.HIERARCHY_DELTA_REMOVED));
+        tracker.markAllConnectorsClean();
+
+        // Unchanged children are not sent again
+        layout.markAsDirty();
+        writer = new StringWriter();
+        deltas = new ConnectorHierarchyWriter().write(ui, writer,
+                stateUpdates);
+        Assert.assertFalse(Json.parse(writer.toString())
+                .hasKey(layout.getConnectorId()));
+        Assert.assertFalse(deltas.hasKey(layout.getConnectorId()));
+        tracker.markAllConnectorsClean();
+
+        // Full hierarchy is sent again after the client side is reset
+        tracker.markAllClientSidesUninitialized();
+        tracker.markAllConnectorsDirty();
+        hierarchy = write(stateUpdates);
+        Assert.assertEquals(11, hierarchy.getArray(layout.getConnectorId())
+                .length());
+    }
+
+    @Test
+    public void unchangedConnectorWithStateChangeGetsEmptyDelta()
+            throws IOException {
+        write(Collections.<String> emptySet());
+
+        layout.markAsDirty();
+        JsonObject deltas = new ConnectorHierarchyWriter().write(ui,
+                new StringWriter(), Collections.singleton(layout
+                        .getConnectorId()));
+        Assert.assertEquals(0,
+                deltas.getObject(layout.getConnectorId()).keys().length);
+    }
+
+    private JsonObject write(Set<String> stateUpdates) throws IOException {
+        StringWriter writer = new StringWriter();
+        new ConnectorHierarchyWriter().write(ui, writer, stateUpdates);
+        tracker.markAllConnectorsClean();
+        return Json.parse(writer.toString());
+    }
+
+    /**
+     * Applies a delta the same way as the client does.
+     */
+    private static List<String> apply(List<String> oldIds, JsonObject delta) {
+        Set<String> removed = new HashSet<String>();
+        if (delta.hasKey(ApplicationConstants.HIERARCHY_DELTA_REMOVED)) {
+            removed.addAll(toList(delta
+                    .getArray(ApplicationConstants.HIERARCHY_DELTA_REMOVED)));
+        }
+        List<String> result = new ArrayList<String>();
+        for (String id : oldIds) {
+            if (!removed.contains(id)) {
+                result.add(id);
+            }
+        }
+        if (delta.hasKey(ApplicationConstants.HIERARCHY_DELTA_INSERTED)) {
+            JsonArray inserted = delta
+                    .getArray(ApplicationConstants.HIERARCHY_DELTA_INSERTED);
+            JsonArray indices = delta
+                    .getArray(ApplicationConstants.HIERARCHY_DELTA_INDICES);
+            for (int i = 0; i < inserted.length(); i++) {
+                result.add((int) indices.getNumber(i), inserted.getString(i));
+            }
+        }
+        return result;
+    }
+
+    private static List<String> randomIds(Random random) {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            if (random.nextBoolean()) {
+                ids.add(String.valueOf(i));
+            }
+        }
+        Collections.shuffle(ids.subList(0, random.nextInt(ids.size() + 1)),
+                random);
+        return ids;
+    }
+
+    private static List<String> toList(JsonArray array) {
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.get(i).asString());
+        }
+        return list;
+    }
+
+    private static List<String> ids(String... ids) {
+        return Arrays.asList(ids);
+    }
+}
@@ -0,0 +1,123 @@
+package com.vaadin.server.communication;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import elemental.json.JsonArray;
+import elemental.json.JsonException;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+import elemental.json.impl.JsonUtil;
+
+public class JsonStreamReaderTest {
+
+    @Test
+    public void readValueMatchesParser() throws IOException {
+        String json = "{\"a\": [1, 2.5, -3e2, true, false, null],"
+                + " \"b\": {\"c\": \"x\\\"y\\\\z\\u00e4\\n\"}, \"d\": []}";
+        JsonValue value = new JsonStreamReader(new StringReader(json))
+                .readValue();
+        Assert.assertEquals(JsonUtil.stringify(JsonUtil.parse(json)),
+                JsonUtil.stringify(value));
+    }
+
+    @Test
+    public void membersAreReadOneAtATime() throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(new StringReader(
+                "{\"skip\": {\"x\": [1, \"]\"]}, \"items\": [[1], [2]]}"));
+        reader.beginObject();
+        Assert.assertEquals("skip", reader.nextName());
+        reader.skipValue();
+        Assert.assertEquals("items", reader.nextName());
+
+        reader.beginArray();
+        Assert.assertTrue(reader.hasNextElement());
+        Assert.assertEquals(1,
+                ((JsonArray) reader.readValue()).getNumber(0), 0);
+        Assert.assertTrue(reader.hasNextElement());
+        Assert.assertEquals(2,
+                ((JsonArray) reader.readValue()).getNumber(0), 0);
+        Assert.assertFalse(reader.hasNextElement());
+        reader.endArray();
+
+        Assert.assertNull(reader.nextName());
+        reader.endObject();
+        Assert.assertFalse(reader.hasMoreInput());
+    }
+
+    @Test
+    public void emptyInputHasNoMoreInput() throws IOException {
+        Assert.assertFalse(
+                new JsonStreamReader(new StringReader("  \n")).hasMoreInput());
+    }
+
+    @Test
+    public void readsAcrossBufferBoundaries() throws IOException {
+        StringBuilder sb = new StringBuilder("{\"long\":\"");
+        for (int i = 0; i < 20000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        sb.append("\"}");
+        JsonObject value = (JsonObject) new JsonStreamReader(
+                new StringReader(sb.toString())).readValue();
+        Assert.assertEquals(20000, value.getString("long").length());
+    }
+
+    @Test(expected = JsonException.class)
+    public void missingSeparatorThrows() throws IOException {
+        new JsonStreamReader(new StringReader("[1 2]")).readValue();
+    }
+
+    @Test(expected = JsonException.class)
+    public void unterminatedStringThrows() throws IOException {
+        new JsonStreamReader(new StringReader("[\"abc")).readValue();
+    }
+
+    @Test
+    public void numbersOutsideJsonGrammarThrow() throws IOException {
+        for (String literal : new String[] { "NaN", "Infinity", "-Infinity",
+                "+1", "0x1p3", "1d", "1f", "01", "1.", ".5", "1e", "-" }) {
+            try {
+                new JsonStreamReader(new StringReader("[" + literal + "]"))
+                        .readValue();
+                Assert.fail("Accepted " + literal);
+            } catch (JsonException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void numbersInJsonGrammarAreRead() throws IOException {
+        JsonArray array = (JsonArray) new JsonStreamReader(
+                new StringReader("[0, -0.5, 10, 1E3, 2e-2, 3.5e+1]"))
+                        .readValue();
+        Assert.assertEquals(JsonUtil.parse("[0, -0.5, 10, 1000, 0.02, 35]")
+                .toJson(), array.toJson());
+    }
+
+    @Test
+    public void inputAfterObjectIsDetected() throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(
+                new StringReader("{\"a\": 1} {\"b\": 2}"));
+        reader.beginObject();
+        Assert.assertEquals("a", reader.nextName());
+        reader.skipValue();
+        Assert.assertNull(reader.nextName());
+        reader.endObject();
+        Assert.assertTrue(reader.hasMoreInput());
+    }
+
+    @Test
+    public void whitespaceAfterObjectIsNotInput() throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(
+                new StringReader("{} \n"));
+        reader.beginObject();
+        Assert.assertNull(reader.nextName());
+        reader.endObject();
+        Assert.assertFalse(reader.hasMoreInput());
+    }
+}
@@ -0,0 +1,120 @@
+package com.vaadin.server.communication;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.server.LegacyCommunicationManager;
+import com.vaadin.server.LegacyCommunicationManager.InvalidUIDLSecurityKeyException;
+import com.vaadin.server.MockServletConfig;
+import com.vaadin.server.ServiceException;
+import com.vaadin.server.VaadinServlet;
+import com.vaadin.server.VaadinServletRequest;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.tests.util.AlwaysLockedVaadinSession;
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+import com.vaadin.tests.util.MockUI;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.UI;
+
+import elemental.json.JsonException;
+
+public class ServerRpcHandlerTest {
+
+    private VaadinSession session;
+    private VaadinServletRequest request;
+    private UI ui;
+    private Button button;
+    private int clicks;
+
+    @Before
+    public void setUp() throws ServiceException, ServletException {
+        VaadinServlet servlet = new VaadinServlet();
+        servlet.init(new MockServletConfig());
+        VaadinServletService service = new VaadinServletService(servlet,
+                new MockDeploymentConfiguration());
+        session = new AlwaysLockedVaadinSession(service);
+        session.setCommunicationManager(
+                new LegacyCommunicationManager(session));
+        request = new VaadinServletRequest(
+                EasyMock.createMock(HttpServletRequest.class), service);
+
+        ui = new MockUI(session);
+        button = new Button("button", event -> clicks++);
+        ui.setContent(button);
+    }
+
+    @Test
+    public void invocationsAfterHeaderAreHandled() throws Exception {
+        handle("{" + header(session.getCsrfToken(), 0) + "," + rpc() + "}");
+        Assert.assertEquals(1, clicks);
+        Assert.assertEquals(0, ui.getLastProcessedClientToServerId());
+    }
+
+    @Test
+    public void invocationsBeforeHeaderAreHandled() throws Exception {
+        handle("{" + rpc() + "," + header(session.getCsrfToken(), 0) + "}");
+        Assert.assertEquals(1, clicks);
+        Assert.assertEquals(0, ui.getLastProcessedClientToServerId());
+    }
+
+    @Test(expected = InvalidUIDLSecurityKeyException.class)
+    public void invalidTokenIsRejected() throws Exception {
+        try {
+            handle("{" + header("invalid", 0) + "," + rpc() + "}");
+        } finally {
+            Assert.assertEquals(0, clicks);
+        }
+    }
+
+    @Test
+    public void unexpectedMessageIdSkipsInvocations() throws Exception {
+        handle("{" + header(session.getCsrfToken(), 5) + "," + rpc() + "}");
+        Assert.assertEquals(0, clicks);
+        Assert.assertEquals(-1, ui.getLastProcessedClientToServerId());
+    }
+
+    @Test
+    public void emptyMessageIsIgnored() throws Exception {
+        handle("");
+        Assert.assertEquals(-1, ui.getLastProcessedClientToServerId());
+    }
+
+    @Test(expected = JsonException.class)
+    public void inputAfterMessageIsRejected() throws Exception {
+        try {
+            handle("{" + header(session.getCsrfToken(), 0) + "," + rpc()
+                    + "} {}");
+        } finally {
+            Assert.assertEquals(0, clicks);
+        }
+    }
+
+    private void handle(String message)
+            throws IOException, InvalidUIDLSecurityKeyException {
+        new ServerRpcHandler().handleRpc(ui, new StringReader(message),
+                request);
+    }
+
+    private static String header(String csrfToken, int clientId) {
+        return "\"csrfToken\":\"" + csrfToken + "\", \"syncId\":0,"
+                + " \"clientId\":" + clientId;
+    }
+
+    private String rpc() {
+        return "\"rpc\":[[\"" + button.getConnectorId()
+                + "\",\"com.vaadin.shared.ui.button.ButtonServerRpc\",\"click\","
+                + "[{\"clientY\":\"53\", \"clientX\":\"79\", \"shiftKey\":false,"
+                + " \"button\":\"LEFT\", \"ctrlKey\":false, \"type\":\"1\","
+                + " \"metaKey\":false, \"altKey\":false, \"relativeY\":\"17\","
+                + " \"relativeX\":\"61\"}]]]";
+    }
+}
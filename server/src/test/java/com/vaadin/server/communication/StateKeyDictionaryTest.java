@@ -0,0 +1,93 @@
+package com.vaadin.server.communication;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.tests.util.MockUI;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.impl.JsonUtil;
+
+public class StateKeyDictionaryTest {
+
+    private StateKeyDictionary dictionary = new StateKeyDictionary();
+
+    @Test
+    public void compactReplacesPropertyNames() {
+        JsonObject state = Json.parse(
+                "{\"caption\":\"Save\",\"styles\":[\"primary\"],\"enabled\":false}");
+        JsonObject compact = dictionary.compact(state);
+
+        JsonArray keys = dictionary.takeNewKeys();
+        Assert.assertEquals(0, (int) keys.getNumber(0));
+        Assert.assertEquals(4, keys.length());
+        for (String key : state.keys()) {
+            String compactKey = dictionary.getCompactKey(key);
+            Assert.assertEquals(key,
+                    keys.getString(Integer.parseInt(compactKey) + 1));
+            Assert.assertEquals(JsonUtil.stringify(state.get(key)),
+                    JsonUtil.stringify(compact.get(compactKey)));
+        }
+    }
+
+    @Test
+    public void onlyNewKeysAreSent() {
+        dictionary.compact(Json.parse("{\"caption\":\"Save\"}"));
+        dictionary.takeNewKeys();
+
+        JsonObject compact = dictionary
+                .compact(Json.parse("{\"width\":\"100%\",\"caption\":\"\"}"));
+        Assert.assertEquals("100%", compact.getString("1"));
+        Assert.assertEquals("", compact.getString("0"));
+        Assert.assertEquals("[1,\"width\"]",
+                JsonUtil.stringify(dictionary.takeNewKeys()));
+        Assert.assertEquals("[2]",
+                JsonUtil.stringify(dictionary.takeNewKeys()));
+    }
+
+    @Test
+    public void sharedStateWriterUsesDictionary() throws IOException {
+        UI ui = new MockUI();
+        Label label = new Label("Hello");
+        ui.setContent(label);
+        ConnectorTracker tracker = ui.getConnectorTracker();
+        tracker.setStateKeyDictionary(dictionary);
+
+        StringWriter writer = new StringWriter();
+        tracker.setWritingResponse(true);
+        new SharedStateWriter().write(ui, writer);
+        tracker.setWritingResponse(false);
+
+        JsonObject states = Json.parse(writer.toString());
+        JsonObject labelState = states.getObject(label.getConnectorId());
+        JsonArray keys = dictionary.takeNewKeys();
+        Assert.assertEquals(0, (int) keys.getNumber(0));
+        for (String key : labelState.keys()) {
+            String name = keys.getString(Integer.parseInt(key) + 1);
+            if ("text".equals(name)) {
+                Assert.assertEquals("Hello", labelState.getString(key));
+                return;
+            }
+        }
+        Assert.fail("Label text was not written");
+    }
+
+    @Test
+    public void clearRestartsFromZero() {
+        dictionary.compact(Json.parse("{\"caption\":\"Save\"}"));
+        dictionary.takeNewKeys();
+        dictionary.clear();
+
+        dictionary.compact(Json.parse("{\"width\":\"100%\"}"));
+        Assert.assertEquals("[0,\"width\"]",
+                JsonUtil.stringify(dictionary.takeNewKeys()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.vaadin.server.communication;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinService;
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+
+public class UIInitHandlerTest {
+
+    private VaadinRequest request;
+    private VaadinResponse response;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() throws IOException {
+        MockDeploymentConfiguration configuration = new MockDeploymentConfiguration();
+        configuration.setUidlCompressionEnabled(true);
+        configuration.setCompressionThreshold(0);
+        VaadinService service = mock(VaadinService.class);
+        when(service.getDeploymentConfiguration()).thenReturn(configuration);
+
+        request = mock(VaadinRequest.class);
+        when(request.getService()).thenReturn(service);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+        response = mock(VaadinResponse.class);
+        output = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(output);
+    }
+
+    @Test
+    public void uidlResponseIsCompressed() throws IOException {
+        UIInitHandler.commitJsonResponse(request, response,
+                createJson("uidl"));
+        verify(response).setHeader("Content-Encoding", "gzip");
+    }
+
+    @Test
+    public void uncompressedResponseIsNeverCompressed() throws IOException {
+        String json = createJson("Vaadin-Security-Key");
+        UIInitHandler.commitJsonResponse(request, response, json, false);
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        Assert.assertEquals(json, output.toString("UTF-8"));
+    }
+
+    private static String createJson(String key) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < 100; i++) {
+            sb.append("\"").append(key).append(i).append("\":").append(i)
+                    .append(',');
+        }
+        return sb.append("\"end\":0}").toString();
+    }
+}
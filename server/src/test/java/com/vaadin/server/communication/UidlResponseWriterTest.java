@@ -0,0 +1,150 @@
+package com.vaadin.server.communication;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.shared.ApplicationConstants;
+
+public class UidlResponseWriterTest {
+
+    private static final int BUFFER_SIZE = 100;
+
+    private VaadinRequest request;
+    private VaadinResponse response;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() throws IOException {
+        request = mock(VaadinRequest.class);
+        response = mock(VaadinResponse.class);
+        output = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(output);
+    }
+
+    @Test
+    public void smallResponseIsBuffered() throws IOException {
+        UidlResponseWriter writer = new UidlResponseWriter(request, response,
+                BUFFER_SIZE, true);
+        writer.write("for(;;);[{}]");
+        Assert.assertFalse(writer.isCommitted());
+        Assert.assertEquals(0, output.size());
+
+        writer.finish();
+        Assert.assertEquals("for(;;);[{}]", getOutput());
+        verify(response).setContentLength(12);
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    @Test
+    public void largeResponseIsStreamed() throws IOException {
+        String json = createJson(1000);
+        UidlResponseWriter writer = new UidlResponseWriter(request, response,
+                BUFFER_SIZE, false);
+        writer.write(json);
+        Assert.assertTrue(writer.isCommitted());
+        writer.finish();
+
+        Assert.assertEquals(json, getOutput());
+        verify(response, never()).setContentLength(Mockito.anyInt());
+    }
+
+    @Test
+    public void largeResponseIsCompressedWhenAccepted() throws IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+        String json = createJson(1000);
+        UidlResponseWriter writer = new UidlResponseWriter(request, response,
+                BUFFER_SIZE, true);
+        writer.write(json);
+        writer.finish();
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        Assert.assertEquals(json, decompress(output.toByteArray()));
+    }
+
+    @Test
+    public void largeResponseIsNotCompressedWhenNotAccepted()
+            throws IOException {
+        String json = createJson(1000);
+        UidlResponseWriter writer = new UidlResponseWriter(request, response,
+                BUFFER_SIZE, true);
+        writer.write(json);
+        writer.finish();
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        Assert.assertEquals(json, getOutput());
+    }
+
+    @Test
+    public void abortBeforeCommitDiscardsOutput() throws IOException {
+        UidlResponseWriter writer = new UidlResponseWriter(request, response,
+                BUFFER_SIZE, false);
+        writer.write("for(;;);[{");
+        Assert.assertFalse(writer.abort());
+        Assert.assertTrue(writer.isFinished());
+        Assert.assertEquals(0, output.size());
+    }
+
+    @Test
+    public void abortAfterCommitAppendsRefreshToken() throws IOException {
+        UidlResponseWriter writer = new UidlResponseWriter(request, response,
+                BUFFER_SIZE, false);
+        writer.write(createJson(1000));
+        Assert.assertTrue(writer.abort());
+
+        String text = getOutput();
+        Assert.assertTrue(text.endsWith(
+                "\n" + ApplicationConstants.UIDL_REFRESH_TOKEN + "\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterFinishFails() throws IOException {
+        UidlResponseWriter writer = new UidlResponseWriter(request, response,
+                BUFFER_SIZE, false);
+        writer.finish();
+        writer.write("x");
+    }
+
+    private String getOutput() {
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String createJson(int entries) {
+        StringBuilder sb = new StringBuilder("for(;;);[{");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("\"").append(i).append("\":\"äö\"");
+        }
+        return sb.append("}]").toString();
+    }
+
+    private static String decompress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(bytes))) {
+            byte[] buf = new byte[4096];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                result.write(buf, 0, read);
+            }
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,475 @@
+package com.vaadin.server.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.server.ClientMethodInvocation;
+import com.vaadin.shared.data.DataCommunicatorConstants;
+import com.vaadin.shared.ui.grid.Range;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+
+public class DataCommunicatorTest {
+
+    private static final int BACK_END_SIZE = 1000;
+
+    private AtomicInteger sizeQueries;
+    private List<Query> dataQueries;
+    private DataCommunicator<Integer> communicator;
+
+    @Before
+    public void setUp() {
+        sizeQueries = new AtomicInteger();
+        dataQueries = new ArrayList<>();
+        communicator = new DataCommunicator<>();
+        communicator.setDataSource(new BackEndDataSource<>(query -> {
+            dataQueries.add(query);
+            return query.getRanges().stream()
+                    .flatMap(range -> IntStream
+                            .range(range.getStart(),
+                                    Math.min(range.getEnd(), BACK_END_SIZE))
+                            .boxed());
+        },
+                query -> {
+                    sizeQueries.incrementAndGet();
+                    return BACK_END_SIZE;
+                }));
+    }
+
+    @Test
+    public void testSizeIsCachedOverSortChanges() {
+        communicator.beforeClientResponse(true);
+        communicator.setBackEndSorting(Collections.emptyList());
+        communicator.beforeClientResponse(false);
+        communicator.setBackEndSorting(Collections.emptyList());
+        communicator.beforeClientResponse(false);
+
+        Assert.assertEquals(1, sizeQueries.get());
+        Assert.assertEquals(Collections.nCopies(3, BACK_END_SIZE),
+                getSentSizes(communicator.retrievePendingRpcCalls(),
+                        "reset"));
+    }
+
+    @Test
+    public void testSizeIsCachedPerFilters() {
+        communicator.beforeClientResponse(true);
+        communicator.setFilters(Collections.singleton("foo"));
+        communicator.beforeClientResponse(false);
+        communicator.setFilters(Collections.emptySet());
+        communicator.beforeClientResponse(false);
+
+        Assert.assertEquals(2, sizeQueries.get());
+    }
+
+    @Test
+    public void testInvalidateSize() {
+        communicator.beforeClientResponse(true);
+        communicator.invalidateSize();
+        communicator.beforeClientResponse(false);
+
+        Assert.assertEquals(2, sizeQueries.get());
+    }
+
+    @Test
+    public void testEstimatedSizeGrowsAndBecomesExact() {
+        communicator.setSizeEstimated(true);
+        communicator.setSizeEstimateIncrement(100);
+        communicator.beforeClientResponse(true);
+
+        Assert.assertEquals(Collections.singletonList(140), getSentSizes(
+                communicator.retrievePendingRpcCalls(), "reset"));
+
+        Assert.assertEquals(Collections.singletonList(240),
+                getSentSizes(requestRows(100, 40), "updateSize"));
+        Assert.assertEquals(Collections.singletonList(BACK_END_SIZE),
+                getSentSizes(requestRows(980, 40), "updateSize"));
+        Assert.assertEquals(Collections.emptyList(),
+                getSentSizes(requestRows(900, 40), "updateSize"));
+
+        Assert.assertEquals(0, sizeQueries.get());
+    }
+
+    @Test
+    public void testInMemorySizeIsNotEstimated() {
+        communicator.setDataSource(DataSource.create(1, 2, 3));
+        communicator.setSizeEstimated(true);
+        communicator.beforeClientResponse(true);
+
+        Assert.assertEquals(Collections.singletonList(3), getSentSizes(
+                communicator.retrievePendingRpcCalls(), "reset"));
+    }
+
+    @Test
+    public void testPrefetchServesRequestsFromMemory() {
+        communicator.setPrefetchPolicy(new DirectionalPrefetchPolicy(200, 0));
+        communicator.beforeClientResponse(true);
+        Assert.assertEquals(1, dataQueries.size());
+        Assert.assertEquals(0, dataQueries.get(0).getOffset());
+        Assert.assertEquals(240, dataQueries.get(0).getLimit());
+
+        assertRows(requestRows(40, 40), 40);
+        assertRows(requestRows(200, 40), 200);
+        Assert.assertEquals(1, dataQueries.size());
+
+        assertRows(requestRows(220, 40), 220);
+        Assert.assertEquals(2, dataQueries.size());
+        Assert.assertEquals(220, dataQueries.get(1).getOffset());
+        Assert.assertEquals(240, dataQueries.get(1).getLimit());
+    }
+
+    @Test
+    public void testPrefetchReadsAheadWhenScrollingUp() {
+        communicator.setPrefetchPolicy(new DirectionalPrefetchPolicy(200, 0));
+        communicator.beforeClientResponse(true);
+
+        requestRows(500, 40);
+        assertRows(requestRows(400, 40), 400);
+
+        Query query = dataQueries.get(dataQueries.size() - 1);
+        Assert.assertEquals(200, query.getOffset());
+        Assert.assertEquals(240, query.getLimit());
+    }
+
+    @Test
+    public void testPrefetchAtEndOfData() {
+        communicator.setPrefetchPolicy(new DirectionalPrefetchPolicy(200, 0));
+        communicator.beforeClientResponse(true);
+
+        assertRows(requestRows(960, 40), 960);
+        assertRows(requestRows(990, 20), 990);
+    }
+
+    @Test
+    public void testResetDiscardsPrefetchedRows() {
+        communicator.setPrefetchPolicy(new DirectionalPrefetchPolicy(200, 0));
+        communicator.beforeClientResponse(true);
+        communicator.setBackEndSorting(Collections.emptyList());
+        requestRows(40, 40);
+
+        Assert.assertEquals(2, dataQueries.size());
+    }
+
+    @Test
+    public void testRangesRequestedInSameRoundTrip() {
+        communicator.beforeClientResponse(true);
+        dataQueries.clear();
+        communicator.retrievePendingRpcCalls();
+
+        communicator.createRpc().requestRows(500, 40, 0, 0);
+        communicator.createRpc().requestRows(100, 40, 0, 0);
+        communicator.beforeClientResponse(false);
+
+        Assert.assertEquals(2, dataQueries.size());
+        List<ClientMethodInvocation> setData = getInvocations(
+                communicator.retrievePendingRpcCalls(), "setData");
+        Assert.assertEquals(2, setData.size());
+        assertRows(setData.subList(0, 1), 100);
+        assertRows(setData.subList(1, 2), 500);
+    }
+
+    @Test
+    public void testMultiRangeQuery() {
+        communicator.setDataSource(((BackEndDataSource<Integer>) communicator
+                .getDataSource()).withMultiRangeQueries());
+        communicator.beforeClientResponse(true);
+        dataQueries.clear();
+        communicator.retrievePendingRpcCalls();
+
+        communicator.createRpc().requestRows(500, 40, 0, 0);
+        communicator.createRpc().requestRows(980, 40, 0, 0);
+        communicator.createRpc().requestRows(100, 40, 0, 0);
+        communicator.beforeClientResponse(false);
+
+        Assert.assertEquals(1, dataQueries.size());
+        Query query = dataQueries.get(0);
+        Assert.assertTrue(query.isMultiRange());
+        Assert.assertEquals(Arrays.asList(Range.withLength(100, 40),
+                Range.withLength(500, 40), Range.withLength(980, 40)),
+                query.getRanges());
+
+        List<ClientMethodInvocation> setData = getInvocations(
+                communicator.retrievePendingRpcCalls(), "setData");
+        Assert.assertEquals(3, setData.size());
+        assertRows(setData.subList(0, 1), 100);
+        assertRows(setData.subList(1, 2), 500);
+        assertRows(setData.subList(2, 3), 980);
+        Assert.assertEquals(20,
+                ((JsonArray) setData.get(2).getParameters()[1]).length());
+    }
+
+    @Test
+    public void testOverlappingRangesAreMerged() {
+        communicator.beforeClientResponse(true);
+        dataQueries.clear();
+
+        communicator.createRpc().requestRows(100, 40, 0, 0);
+        communicator.createRpc().requestRows(120, 40, 0, 0);
+        communicator.beforeClientResponse(false);
+
+        Assert.assertEquals(1, dataQueries.size());
+        Assert.assertEquals(100, dataQueries.get(0).getOffset());
+        Assert.assertEquals(60, dataQueries.get(0).getLimit());
+    }
+
+    @Test
+    public void testDroppedRowsAreCleanedUp() {
+        communicator.beforeClientResponse(true);
+        String key0 = communicator.getKeyMapper().key(0);
+        String key1 = communicator.getKeyMapper().key(1);
+        Assert.assertEquals(40, getKeyMapperSize());
+
+        JsonArray dropped = Json.createArray();
+        dropped.set(0, key0);
+        dropped.set(1, key1);
+        dropped.set(2, "unknown");
+        communicator.createRpc().dropRows(dropped);
+        // Row 1 is still sent to the client, so it should not be dropped
+        communicator.createRpc().requestRows(1, 40, 1, 40);
+        communicator.beforeClientResponse(false);
+
+        Assert.assertNull(communicator.getKeyMapper().get(key0));
+        Assert.assertEquals(Integer.valueOf(1),
+                communicator.getKeyMapper().get(key1));
+        Assert.assertEquals(40, getKeyMapperSize());
+    }
+
+    @Test
+    public void testRefreshMatchesByIdentity() {
+        DataCommunicator<Bean> beans = new DataCommunicator<>();
+        List<Bean> data = IntStream.range(0, 100).mapToObj(Bean::new)
+                .collect(Collectors.toList());
+        beans.setDataSource(DataSource.create(data));
+        beans.setIdentityProvider(Bean::getId);
+        beans.beforeClientResponse(true);
+        String key = beans.getKeyMapper().key(data.get(5));
+        beans.retrievePendingRpcCalls();
+
+        Bean copy = new Bean(5);
+        beans.refresh(copy);
+        // Not active on the client, should not be sent
+        beans.refresh(new Bean(50));
+        beans.beforeClientResponse(false);
+
+        List<ClientMethodInvocation> updates = getInvocations(
+                beans.retrievePendingRpcCalls(), "updateData");
+        Assert.assertEquals(1, updates.size());
+        JsonArray updated = (JsonArray) updates.get(0).getParameters()[0];
+        Assert.assertEquals(1, updated.length());
+        Assert.assertEquals(key, updated.getObject(0)
+                .getString(DataCommunicatorConstants.KEY));
+        Assert.assertSame(copy, beans.getKeyMapper().get(key));
+    }
+
+    @Test
+    public void testSetIdentityProviderDropsActiveData() {
+        communicator.beforeClientResponse(true);
+        String key = communicator.getKeyMapper().key(0);
+
+        communicator.setIdentityProvider(i -> i);
+        Assert.assertNull(communicator.getKeyMapper().get(key));
+        Assert.assertEquals(0, getKeyMapperSize());
+
+        communicator.retrievePendingRpcCalls();
+        communicator.beforeClientResponse(false);
+        Assert.assertEquals(1, getInvocations(
+                communicator.retrievePendingRpcCalls(), "reset").size());
+        assertRows(requestRows(0, 40), 0);
+    }
+
+    @Test
+    public void testIncrementalUpdatesSendChangedFields() {
+        DataCommunicator<Bean> beans = new DataCommunicator<>();
+        List<Bean> data = IntStream.range(0, 10).mapToObj(Bean::new)
+                .collect(Collectors.toList());
+        beans.setDataSource(DataSource.create(data));
+        beans.setIdentityProvider(Bean::getId);
+        beans.setIncrementalUpdates(true);
+        beans.addDataGenerator(new TypedDataGenerator<Bean>() {
+            @Override
+            public void generateData(Bean bean, JsonObject json) {
+                json.put("id", bean.getId());
+                JsonObject nested = Json.createObject();
+                nested.put("value", bean.value);
+                nested.put("constant", "foo");
+                if (bean.value == 0) {
+                    nested.put("zero", true);
+                }
+                json.put("nested", nested);
+            }
+
+            @Override
+            public void destroyData(Bean bean) {
+            }
+        });
+        beans.beforeClientResponse(true);
+        beans.retrievePendingRpcCalls();
+
+        Bean updated = new Bean(3);
+        updated.value = 42;
+        beans.refresh(updated);
+        // Nothing has changed
+        beans.refresh(new Bean(4));
+        beans.beforeClientResponse(false);
+
+        List<ClientMethodInvocation> calls = beans.retrievePendingRpcCalls();
+        Assert.assertTrue(getInvocations(calls, "updateData").isEmpty());
+        List<ClientMethodInvocation> patches = getInvocations(calls,
+                "patchData");
+        Assert.assertEquals(1, patches.size());
+        JsonArray patchArray = (JsonArray) patches.get(0).getParameters()[0];
+        Assert.assertEquals(1, patchArray.length());
+
+        JsonObject patch = patchArray.getObject(0);
+        Assert.assertEquals(beans.getKeyMapper().key(updated),
+                patch.getString(DataCommunicatorConstants.KEY));
+        Assert.assertFalse(patch.hasKey("id"));
+        JsonObject nested = patch.getObject("nested");
+        Assert.assertEquals(42, nested.getNumber("value"), 0);
+        Assert.assertFalse(nested.hasKey("constant"));
+        Assert.assertEquals("zero", nested
+                .getArray(DataCommunicatorConstants.REMOVED).getString(0));
+    }
+
+    @Test
+    public void testFullUpdatesWithoutIncrementalUpdates() {
+        DataCommunicator<Bean> beans = new DataCommunicator<>();
+        List<Bean> data = IntStream.range(0, 10).mapToObj(Bean::new)
+                .collect(Collectors.toList());
+        beans.setDataSource(DataSource.create(data));
+        beans.beforeClientResponse(true);
+        beans.retrievePendingRpcCalls();
+
+        beans.refresh(data.get(3));
+        beans.beforeClientResponse(false);
+
+        List<ClientMethodInvocation> calls = beans.retrievePendingRpcCalls();
+        Assert.assertEquals(1, getInvocations(calls, "updateData").size());
+        Assert.assertTrue(getInvocations(calls, "patchData").isEmpty());
+    }
+
+    @Test
+    public void testRefreshWithInMemorySortingResendsData() {
+        DataCommunicator<Bean> beans = new DataCommunicator<>();
+        List<Bean> data = IntStream.range(0, 10).mapToObj(Bean::new)
+                .collect(Collectors.toList());
+        data.forEach(bean -> bean.value = bean.getId());
+        beans.setDataSource(DataSource.create(data));
+        beans.setInMemorySorting(
+                (bean1, bean2) -> Integer.compare(bean1.value, bean2.value));
+        beans.beforeClientResponse(true);
+        beans.retrievePendingRpcCalls();
+
+        data.get(3).value = 100;
+        beans.refresh(data.get(3));
+        beans.beforeClientResponse(false);
+
+        List<ClientMethodInvocation> calls = beans.retrievePendingRpcCalls();
+        Assert.assertEquals(Collections.singletonList(10),
+                getSentSizes(calls, "reset"));
+
+        beans.createRpc().requestRows(0, 10, 0, 0);
+        beans.beforeClientResponse(false);
+        calls = beans.retrievePendingRpcCalls();
+        JsonArray rows = (JsonArray) getInvocations(calls, "setData").get(0)
+                .getParameters()[1];
+        Assert.assertSame(data.get(3), beans.getKeyMapper().get(rows
+                .getObject(9).getString(DataCommunicatorConstants.KEY)));
+    }
+
+    @Test
+    public void testRefreshWithUnchangedSortOrderOnlyUpdatesData() {
+        DataCommunicator<Bean> beans = new DataCommunicator<>();
+        List<Bean> data = IntStream.range(0, 10).mapToObj(Bean::new)
+                .collect(Collectors.toList());
+        data.forEach(bean -> bean.value = bean.getId() * 10);
+        beans.setDataSource(DataSource.create(data));
+        beans.setInMemorySorting(
+                (bean1, bean2) -> Integer.compare(bean1.value, bean2.value));
+        beans.beforeClientResponse(true);
+        beans.retrievePendingRpcCalls();
+
+        data.get(3).value = 35;
+        beans.refresh(data.get(3));
+        beans.beforeClientResponse(false);
+
+        List<ClientMethodInvocation> calls = beans.retrievePendingRpcCalls();
+        Assert.assertTrue(getInvocations(calls, "reset").isEmpty());
+        Assert.assertEquals(1, getInvocations(calls, "updateData").size());
+    }
+
+    /**
+     * Bean without equals and hashCode, identified by its id.
+     */
+    private static class Bean {
+        private final int id;
+        private int value;
+
+        public Bean(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+    }
+
+    private int getKeyMapperSize() {
+        return ((IntKeyMapper<Integer>) communicator.getKeyMapper()).size();
+    }
+
+    private void assertRows(List<ClientMethodInvocation> invocations,
+            int firstRow) {
+        ClientMethodInvocation setData = getInvocations(invocations,
+                "setData").get(0);
+        Assert.assertEquals(firstRow, setData.getParameters()[0]);
+        JsonArray data = (JsonArray) setData.getParameters()[1];
+        for (int i = 0; i < data.length(); ++i) {
+            String key = data.getObject(i)
+                    .getString(DataCommunicatorConstants.KEY);
+            Assert.assertEquals(Integer.valueOf(firstRow + i),
+                    communicator.getKeyMapper().get(key));
+        }
+    }
+
+    private List<ClientMethodInvocation> requestRows(int firstRow,
+            int count) {
+        // Discard invocations from earlier responses
+        communicator.retrievePendingRpcCalls();
+        communicator.createRpc().requestRows(firstRow, count, 0, 0);
+        communicator.beforeClientResponse(false);
+
+        List<ClientMethodInvocation> invocations = communicator
+                .retrievePendingRpcCalls();
+        JsonArray data = (JsonArray) getInvocations(invocations, "setData")
+                .get(0).getParameters()[1];
+        Assert.assertEquals(Math.min(count, BACK_END_SIZE - firstRow),
+                data.length());
+        return invocations;
+    }
+
+    private static List<Integer> getSentSizes(
+            List<ClientMethodInvocation> invocations, String method) {
+        return getInvocations(invocations, method).stream()
+                .map(invocation -> (Integer) invocation.getParameters()[0])
+                .collect(Collectors.toList());
+    }
+
+    private static List<ClientMethodInvocation> getInvocations(
+            List<ClientMethodInvocation> invocations, String method) {
+        return invocations.stream()
+                .filter(invocation -> invocation.getMethodName()
+                        .equals(method))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,44 @@
+package com.vaadin.server.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.shared.ui.grid.Range;
+
+public class DirectionalPrefetchPolicyTest {
+
+    private static final Range EMPTY = Range.withLength(0, 0);
+
+    private DirectionalPrefetchPolicy policy = new DirectionalPrefetchPolicy(
+            100, 20);
+
+    @Test
+    public void testReadAheadWhenScrollingDown() {
+        Assert.assertEquals(Range.between(180, 340), policy.getFetchRange(
+                Range.withLength(200, 40), Range.withLength(100, 40), EMPTY));
+    }
+
+    @Test
+    public void testReadAheadWhenScrollingUp() {
+        Assert.assertEquals(Range.between(100, 260), policy.getFetchRange(
+                Range.withLength(200, 40), Range.withLength(300, 40), EMPTY));
+    }
+
+    @Test
+    public void testReadBehindIsClampedToZero() {
+        Assert.assertEquals(Range.between(0, 150), policy.getFetchRange(
+                Range.withLength(10, 40), EMPTY, EMPTY));
+    }
+
+    @Test
+    public void testClientCachedRowsAreNotReadBehind() {
+        Assert.assertEquals(Range.between(200, 340),
+                policy.getFetchRange(Range.withLength(200, 40),
+                        Range.withLength(100, 40), Range.between(100, 200)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeReadAhead() {
+        new DirectionalPrefetchPolicy(-1);
+    }
+}
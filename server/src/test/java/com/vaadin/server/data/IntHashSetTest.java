@@ -0,0 +1,51 @@
+package com.vaadin.server.data;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntHashSetTest {
+
+    @Test
+    public void testRandomOperationsMatchHashSet() {
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; ++i) {
+            int value = 1 + random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                Assert.assertEquals(expected.add(value), set.add(value));
+            }
+        }
+
+        Assert.assertEquals(expected.size(), set.size());
+        for (int value = 0; value <= 1000; ++value) {
+            Assert.assertEquals(expected.contains(value), set.contains(value));
+        }
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        Assert.assertArrayEquals(
+                expected.stream().mapToInt(Integer::intValue).sorted()
+                        .toArray(),
+                values);
+    }
+
+    @Test
+    public void testClear() {
+        IntHashSet set = new IntHashSet();
+        for (int i = 1; i <= 100; ++i) {
+            set.add(i);
+        }
+        set.clear();
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertFalse(set.contains(50));
+        Assert.assertEquals(0, set.toArray().length);
+    }
+}
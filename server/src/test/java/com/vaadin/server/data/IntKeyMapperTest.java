@@ -0,0 +1,164 @@
+package com.vaadin.server.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntKeyMapperTest {
+
+    /**
+     * Bean with a poor hash code to make probe sequences collide.
+     */
+    private static class Bean implements Serializable {
+        private final int id;
+
+        public Bean(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 7;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Bean && ((Bean) obj).id == id;
+        }
+    }
+
+    @Test
+    public void testKeys() {
+        IntKeyMapper<Object> mapper = new IntKeyMapper<>();
+        Object o1 = new Object();
+        Object o2 = new Object();
+
+        int key1 = mapper.intKey(o1);
+        int key2 = mapper.intKey(o2);
+        Assert.assertNotEquals(key1, key2);
+        Assert.assertEquals(key1, mapper.intKey(o1));
+        Assert.assertSame(o1, mapper.get(key1));
+        Assert.assertSame(o2, mapper.get(mapper.key(o2)));
+        Assert.assertEquals(String.valueOf(key2), mapper.key(o2));
+        Assert.assertEquals(2, mapper.size());
+    }
+
+    @Test
+    public void testRemovedKeysAreNotReused() {
+        IntKeyMapper<Object> mapper = new IntKeyMapper<>();
+        Object o1 = new Object();
+        int key1 = mapper.intKey(o1);
+
+        mapper.remove(o1);
+        Assert.assertFalse(mapper.has(o1));
+        Assert.assertFalse(mapper.containsKey(key1));
+        Assert.assertNull(mapper.get(key1));
+        Assert.assertNotEquals(key1, mapper.intKey(o1));
+    }
+
+    @Test
+    public void testRemoveAll() {
+        IntKeyMapper<Object> mapper = new IntKeyMapper<>();
+        for (int i = 0; i < 100; ++i) {
+            mapper.intKey(new Object());
+        }
+        mapper.removeAll();
+        Assert.assertEquals(0, mapper.size());
+        Assert.assertEquals(101, mapper.intKey(new Object()));
+    }
+
+    @Test
+    public void testInvalidKeyStrings() {
+        IntKeyMapper<Object> mapper = new IntKeyMapper<>();
+        mapper.intKey(new Object());
+        Assert.assertEquals("null", mapper.key(null));
+        Assert.assertNull(mapper.get("null"));
+        Assert.assertNull(mapper.get((String) null));
+        Assert.assertNull(mapper.get(""));
+        Assert.assertNull(mapper.get("-1"));
+        Assert.assertNull(mapper.get("99999999999"));
+    }
+
+    @Test
+    public void testIdentityProvider() {
+        IntKeyMapper<Bean> mapper = new IntKeyMapper<>(bean -> bean.id / 10);
+        Bean first = new Bean(10);
+        Bean copy = new Bean(11);
+        int key = mapper.intKey(first);
+
+        Assert.assertTrue(mapper.has(copy));
+        Assert.assertEquals(key, mapper.intKey(copy));
+        Assert.assertSame("Latest instance should be returned", copy,
+                mapper.get(key));
+        Assert.assertNotEquals(key, mapper.intKey(new Bean(20)));
+
+        mapper.remove(first);
+        Assert.assertFalse(mapper.has(copy));
+        Assert.assertEquals(1, mapper.size());
+    }
+
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        IntKeyMapper<Bean> mapper = new IntKeyMapper<>();
+        Map<Bean, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; ++i) {
+            Bean bean = new Bean(random.nextInt(500));
+            if (random.nextInt(3) == 0) {
+                mapper.remove(bean);
+                expected.remove(bean);
+            } else {
+                int key = mapper.intKey(bean);
+                Integer old = expected.put(bean, key);
+                Assert.assertTrue(old == null || old == key);
+            }
+        }
+
+        Assert.assertEquals(expected.size(), mapper.size());
+        expected.forEach((bean, key) -> {
+            Assert.assertTrue(mapper.has(bean));
+            Assert.assertEquals(bean, mapper.get(key));
+        });
+    }
+
+    @Test
+    public void testSerialization()
+            throws IOException, ClassNotFoundException {
+        IntKeyMapper<Bean> mapper = new IntKeyMapper<>();
+        Set<Integer> keys = new HashSet<>();
+        for (int i = 0; i < 50; ++i) {
+            keys.add(mapper.intKey(new Bean(i)));
+        }
+        mapper.remove(new Bean(10));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(mapper);
+        }
+        @SuppressWarnings("unchecked")
+        IntKeyMapper<Bean> copy = (IntKeyMapper<Bean>) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Assert.assertEquals(49, copy.size());
+        for (int i = 0; i < 50; ++i) {
+            Assert.assertEquals(i != 10, copy.has(new Bean(i)));
+            if (i != 10) {
+                Assert.assertEquals(mapper.intKey(new Bean(i)),
+                        copy.intKey(new Bean(i)));
+            }
+        }
+        Assert.assertEquals(51, copy.intKey(new Bean(100)));
+    }
+}
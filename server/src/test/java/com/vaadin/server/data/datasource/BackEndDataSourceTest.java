@@ -0,0 +1,110 @@
+package com.vaadin.server.data.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.server.data.BackEndDataSource;
+import com.vaadin.server.data.Query;
+import com.vaadin.server.data.SortOrder;
+import com.vaadin.shared.data.sort.SortDirection;
+import com.vaadin.shared.ui.grid.Range;
+
+public class BackEndDataSourceTest {
+
+    private List<Query> queries;
+    private BackEndDataSource<StrBean> dataSource;
+
+    @Before
+    public void setUp() {
+        queries = new ArrayList<>();
+        dataSource = new BackEndDataSource<>(query -> {
+            queries.add(query);
+            return Stream.empty();
+        }, query -> {
+            queries.add(query);
+            return 0;
+        });
+    }
+
+    @Test
+    public void testSortingByKeepsOffsetAndLimit() {
+        Set<Object> filters = Collections.singleton("value = 'Foo'");
+        dataSource.sortingBy(Collections.singletonList(
+                new SortOrder<>("value", SortDirection.ASCENDING)))
+                .apply(new Query(10, 20, Collections.emptyList(), filters));
+
+        Query query = queries.get(0);
+        Assert.assertEquals(10, query.getOffset());
+        Assert.assertEquals(20, query.getLimit());
+        Assert.assertEquals(1, query.getSortOrders().size());
+        Assert.assertEquals(filters, query.getFilters());
+    }
+
+    @Test
+    public void testFiltersArePassedToSizeCallback() {
+        Set<Object> filters = Collections.singleton("value = 'Foo'");
+        dataSource.size(new Query(filters));
+
+        Assert.assertEquals(filters, queries.get(0).getFilters());
+    }
+
+    @Test
+    public void testGetFiltersByType() {
+        Query query = new Query(0, 10, Collections.emptyList(),
+                new LinkedHashSet<>(Arrays.asList("Foo", 1, "Bar")));
+        Assert.assertArrayEquals(new String[] { "Foo", "Bar" },
+                query.getFilters(String.class).toArray());
+        Assert.assertEquals(1, query.getFilters(Integer.class).count());
+    }
+
+    @Test
+    public void testSortingByKeepsRanges() {
+        List<Range> ranges = Arrays.asList(Range.withLength(0, 10),
+                Range.withLength(50, 10));
+        dataSource.withMultiRangeQueries()
+                .sortingBy(Collections.singletonList(
+                        new SortOrder<>("value", SortDirection.ASCENDING)))
+                .apply(new Query(ranges, Collections.emptyList(),
+                        Collections.emptySet()));
+
+        Query query = queries.get(0);
+        Assert.assertEquals(ranges, query.getRanges());
+        Assert.assertEquals(0, query.getOffset());
+        Assert.assertEquals(60, query.getLimit());
+        Assert.assertEquals(1, query.getSortOrders().size());
+    }
+
+    @Test
+    public void testMultiRangeSupport() {
+        Assert.assertFalse(dataSource.isMultiRangeSupported());
+        Assert.assertTrue(dataSource.withMultiRangeQueries()
+                .sortingBy(Collections.emptyList()).isMultiRangeSupported());
+    }
+
+    @Test
+    public void testSingleRangeQuery() {
+        Query query = new Query(10, 20, Collections.emptyList(),
+                Collections.emptySet());
+        Assert.assertFalse(query.isMultiRange());
+        Assert.assertEquals(Collections.singletonList(Range.withLength(10, 20)),
+                query.getRanges());
+        Assert.assertEquals(Range.between(0, Integer.MAX_VALUE),
+                new Query().getRanges().get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverlappingRangesNotAllowed() {
+        new Query(Arrays.asList(Range.withLength(0, 10),
+                Range.withLength(5, 10)), Collections.emptyList(),
+                Collections.emptySet());
+    }
+}
@@ -0,0 +1,251 @@
+package com.vaadin.server.data.datasource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.server.data.DataSource;
+import com.vaadin.server.data.InMemoryDataIndex;
+import com.vaadin.server.data.ListDataSource;
+
+public class InMemoryDataIndexTest {
+
+    private List<StrBean> data;
+    private AtomicInteger requests;
+    private InMemoryDataIndex<StrBean> index;
+
+    @Before
+    public void setUp() {
+        data = StrBean.generateRandomBeans(100);
+        requests = new AtomicInteger();
+        ListDataSource<StrBean> dataSource = DataSource.create(data);
+        index = new InMemoryDataIndex<>(new ListDataSource<StrBean>(q -> {
+            requests.incrementAndGet();
+            return dataSource.apply(q);
+        }) {
+        });
+    }
+
+    @Test
+    public void testFetchUsesDataSourceOrderWithoutComparator() {
+        List<StrBean> list = index.fetch(10, 20).collect(Collectors.toList());
+        Assert.assertEquals(data.subList(10, 30), list);
+    }
+
+    @Test
+    public void testFetchSortedRange() {
+        Comparator<StrBean> comp = Comparator.comparing(StrBean::getValue)
+                .thenComparing(StrBean::getId);
+        index.setComparator(comp);
+
+        List<StrBean> sorted = new ArrayList<>(data);
+        sorted.sort(comp);
+
+        Assert.assertEquals(sorted.subList(0, 40),
+                index.fetch(0, 40).collect(Collectors.toList()));
+        Assert.assertEquals(sorted.subList(40, 80),
+                index.fetch(40, 40).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testFetchRangeIsClampedToSize() {
+        Assert.assertEquals(10, index.fetch(90, 40).count());
+        Assert.assertEquals(0, index.fetch(200, 40).count());
+        Assert.assertEquals(100,
+                index.fetch(0, Integer.MAX_VALUE).count());
+    }
+
+    @Test
+    public void testIndexIsBuiltOnce() {
+        index.fetch(0, 40).count();
+        index.fetch(40, 40).count();
+        Assert.assertEquals(100, index.size());
+        Assert.assertEquals("Data source should be queried only once", 1,
+                requests.get());
+    }
+
+    @Test
+    public void testInvalidateRebuildsIndex() {
+        index.fetch(0, 40).count();
+        Assert.assertTrue(index.isValid());
+
+        index.invalidate();
+        Assert.assertFalse(index.isValid());
+
+        index.fetch(0, 40).count();
+        Assert.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testSetComparatorKeepsData() {
+        index.fetch(0, 40).count();
+        index.setComparator(Comparator.comparing(StrBean::getId));
+        Assert.assertTrue(index.isValid());
+        Assert.assertEquals(0, index.getSortedCount());
+
+        List<StrBean> list = index.fetch(0, 100).collect(Collectors.toList());
+        for (int i = 1; i < list.size(); ++i) {
+            Assert.assertTrue(list.get(i - 1).getId() <= list.get(i).getId());
+        }
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testFirstRangeIsPartiallySorted() {
+        index = new InMemoryDataIndex<>(
+                DataSource.create(StrBean.generateRandomBeans(10000)));
+        index.setComparator(Comparator.comparing(StrBean::getRandomNumber));
+
+        index.fetch(0, 40).count();
+        Assert.assertTrue("Only the requested range should be sorted",
+                index.getSortedCount() < index.size());
+        Assert.assertTrue(index.getSortedCount() >= 40);
+    }
+
+    @Test
+    public void testIncrementalSortMatchesStableSort() {
+        List<StrBean> beans = StrBean.generateRandomBeans(5000);
+        // Many ties to verify that the order is stable
+        Comparator<StrBean> comp = Comparator.comparing(StrBean::getValue);
+        index = new InMemoryDataIndex<>(DataSource.create(beans));
+        index.setComparator(comp);
+
+        List<StrBean> sorted = new ArrayList<>(beans);
+        sorted.sort(comp);
+
+        List<StrBean> fetched = new ArrayList<>();
+        for (int offset = 0; offset < beans.size(); offset += 40) {
+            index.fetch(offset, 40).forEach(fetched::add);
+        }
+        Assert.assertEquals(sorted, fetched);
+        Assert.assertEquals(beans.size(), index.getSortedCount());
+    }
+
+    @Test
+    public void testRandomAccessMatchesStableSort() {
+        List<StrBean> beans = StrBean.generateRandomBeans(5000);
+        Comparator<StrBean> comp = Comparator.comparing(StrBean::getValue)
+                .thenComparing(StrBean::getRandomNumber);
+        index = new InMemoryDataIndex<>(DataSource.create(beans));
+        index.setComparator(comp);
+
+        List<StrBean> sorted = new ArrayList<>(beans);
+        sorted.sort(comp);
+
+        Assert.assertEquals(sorted.subList(0, 40),
+                index.fetch(0, 40).collect(Collectors.toList()));
+        Assert.assertEquals(sorted.subList(100, 140),
+                index.fetch(100, 40).collect(Collectors.toList()));
+        Assert.assertEquals(sorted.subList(4000, 4040),
+                index.fetch(4000, 40).collect(Collectors.toList()));
+        Assert.assertEquals(sorted.subList(40, 80),
+                index.fetch(40, 40).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testParallelSortMatchesStableSort() {
+        List<StrBean> beans = StrBean.generateRandomBeans(5000);
+        Comparator<StrBean> comp = Comparator.comparing(StrBean::getValue);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        index = new InMemoryDataIndex<>(
+                DataSource.create(beans).parallel(0, pool));
+        index.setComparator(comp);
+
+        List<StrBean> sorted = new ArrayList<>(beans);
+        sorted.sort(comp);
+
+        try {
+            Assert.assertEquals(sorted, index.fetch(0, beans.size())
+                    .collect(Collectors.toList()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFilteredIndex() {
+        Predicate<StrBean> filter = bean -> bean.getValue().equals("Bar");
+        Comparator<StrBean> comp = Comparator.comparing(StrBean::getId);
+        index.setComparator(comp);
+        index.setFilters(Collections.singleton(filter));
+
+        List<StrBean> expected = data.stream().filter(filter).sorted(comp)
+                .collect(Collectors.toList());
+        Assert.assertEquals(expected.size(), index.size());
+        Assert.assertEquals(expected,
+                index.fetch(0, 100).collect(Collectors.toList()));
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testSetFiltersInvalidatesIndex() {
+        index.fetch(0, 40).count();
+        Predicate<StrBean> filter = bean -> bean.getId() < 50;
+        index.setFilters(Collections.singleton(filter));
+        Assert.assertFalse(index.isValid());
+        Assert.assertEquals(data.stream().filter(filter).count(),
+                index.size());
+        Assert.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testRefreshKeepsIndexWhenOrderIsUnchanged() {
+        index.setComparator(Comparator.comparing(StrBean::getValue)
+                .thenComparing(StrBean::getId));
+        List<StrBean> sorted = index.fetch(0, 40)
+                .collect(Collectors.toList());
+
+        Assert.assertTrue(index.refresh(sorted.get(5), Function.identity()));
+        Assert.assertTrue(index.isValid());
+        Assert.assertEquals(sorted,
+                index.fetch(0, 40).collect(Collectors.toList()));
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testRefreshInvalidatesIndexWhenOrderChanges() {
+        index.setComparator(Comparator.comparing(StrBean::getValue)
+                .thenComparing(StrBean::getId));
+        StrBean bean = index.fetch(5, 1).findFirst().get();
+
+        bean.setValue("Zzz");
+
+        Assert.assertFalse(index.refresh(bean, Function.identity()));
+        Assert.assertFalse(index.isValid());
+        Assert.assertEquals(bean,
+                index.fetch(99, 1).findFirst().get());
+    }
+
+    @Test
+    public void testRefreshInvalidatesIndexWhenFilterResultChanges() {
+        index.setFilters(Collections.singleton(
+                (Predicate<StrBean>) bean -> !bean.getValue().equals("Foo")));
+        index.size();
+        StrBean foo = data.stream()
+                .filter(bean -> bean.getValue().equals("Foo")).findFirst()
+                .get();
+        StrBean bar = data.stream()
+                .filter(bean -> bean.getValue().equals("Bar")).findFirst()
+                .get();
+
+        foo.setValue("Foo");
+        Assert.assertTrue(index.refresh(foo, Function.identity()));
+        bar.setValue("Baz");
+        Assert.assertTrue(index.refresh(bar, Function.identity()));
+        Assert.assertTrue(index.isValid());
+
+        bar.setValue("Foo");
+        Assert.assertFalse(index.refresh(bar, Function.identity()));
+        Assert.assertFalse(index.isValid());
+    }
+}
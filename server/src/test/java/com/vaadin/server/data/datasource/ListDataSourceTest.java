@@ -2,27 +2,51 @@ package com.vaadin.server.data.datasource;
 
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.vaadin.server.VaadinService;
 
 import com.vaadin.server.data.DataSource;
 import com.vaadin.server.data.ListDataSource;
 import com.vaadin.server.data.Query;
+import com.vaadin.util.CurrentInstance;
 
 public class ListDataSourceTest {
 
     private ListDataSource<StrBean> dataSource;
     private List<StrBean> data;
+    private ForkJoinPool servicePool;
 
     @Before
     public void setUp() {
         data = StrBean.generateRandomBeans(100);
         dataSource = DataSource.create(data);
+
+        servicePool = new ForkJoinPool(2);
+        VaadinService service = Mockito.mock(VaadinService.class);
+        Mockito.when(service.getParallelPool()).thenReturn(servicePool);
+        VaadinService.setCurrent(service);
+    }
+
+    @After
+    public void tearDown() {
+        CurrentInstance.clearAll();
+        servicePool.shutdown();
     }
 
     @Test
@@ -102,4 +126,125 @@ public class ListDataSourceTest {
             Assert.assertTrue(prev.getValue().compareTo(cur.getValue()) <= 0);
         }
     }
+
+    @Test
+    public void testSortingByKeepsSize() {
+        Assert.assertEquals(data.size(), dataSource
+                .sortingBy(StrBean::getValue).size(new Query()));
+    }
+
+    @Test
+    public void testParallelSortMatchesSequentialSort() {
+        Comparator<StrBean> comp = Comparator.comparing(StrBean::getValue)
+                .thenComparing(StrBean::getRandomNumber);
+        List<StrBean> sequential = dataSource.sortingBy(comp)
+                .apply(new Query()).collect(Collectors.toList());
+        List<StrBean> parallel = dataSource.parallel(0).sortingBy(comp)
+                .apply(new Query()).collect(Collectors.toList());
+
+        Assert.assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void testParallelSortUsesGivenPool() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        AtomicBoolean inPool = new AtomicBoolean(true);
+        try {
+            dataSource.sortingBy((a, b) -> {
+                if (ForkJoinTask.getPool() != pool) {
+                    inPool.set(false);
+                }
+                return Integer.compare(a.getId(), b.getId());
+            }).parallel(0, pool).apply(new Query()).count();
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertTrue("Sorting was not run in the given pool",
+                inPool.get());
+    }
+
+    @Test
+    public void testParallelSortUsesServicePoolByDefault() {
+        AtomicBoolean inPool = new AtomicBoolean(true);
+        dataSource.sortingBy((a, b) -> {
+            if (ForkJoinTask.getPool() != servicePool) {
+                inPool.set(false);
+            }
+            return Integer.compare(a.getId(), b.getId());
+        }).parallel(0).apply(new Query()).count();
+        Assert.assertTrue("Sorting was not run in the service pool",
+                inPool.get());
+    }
+
+    @Test
+    public void testParallelWithoutServiceIsSequential() {
+        CurrentInstance.clearAll();
+        ListDataSource<StrBean> parallel = dataSource.parallel(0);
+        Assert.assertFalse(parallel.isParallel(data.size()));
+        Assert.assertEquals(data.size(), parallel
+                .sortingBy(StrBean::getValue).apply(new Query()).count());
+    }
+
+    @Test
+    public void testParallelBelowThresholdIsSequential() {
+        Assert.assertFalse(dataSource.parallel(data.size() + 1)
+                .isParallel(data.size()));
+        Assert.assertTrue(
+                dataSource.parallel(data.size()).isParallel(data.size()));
+        Assert.assertFalse(dataSource.isParallel(data.size()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelNegativeThreshold() {
+        dataSource.parallel(-1);
+    }
+
+    @Test
+    public void testFilter() {
+        Predicate<StrBean> filter = bean -> bean.getValue().equals("Foo");
+        Set<Object> filters = Collections.singleton(filter);
+        List<StrBean> list = dataSource.apply(new Query(filters))
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(
+                data.stream().filter(filter).collect(Collectors.toList()),
+                list);
+        Assert.assertEquals(list.size(), dataSource.size(new Query(filters)));
+    }
+
+    @Test
+    public void testMultipleFiltersAreCombined() {
+        Set<Object> filters = new HashSet<>();
+        filters.add((Predicate<StrBean>) bean -> bean.getValue()
+                .equals("Foo"));
+        filters.add((Predicate<StrBean>) bean -> bean.getRandomNumber() < 5);
+
+        dataSource.apply(new Query(filters)).forEach(bean -> {
+            Assert.assertEquals("Foo", bean.getValue());
+            Assert.assertTrue(bean.getRandomNumber() < 5);
+        });
+        Assert.assertTrue(dataSource.size(new Query(filters)) > 0);
+    }
+
+    @Test
+    public void testFilterAndSortInParallel() {
+        Predicate<StrBean> filter = bean -> bean.getRandomNumber() < 5;
+        Set<Object> filters = Collections.singleton(filter);
+        Comparator<StrBean> comp = Comparator.comparing(StrBean::getValue);
+
+        List<StrBean> sequential = dataSource.sortingBy(comp)
+                .apply(new Query(filters)).collect(Collectors.toList());
+        ListDataSource<StrBean> parallel = dataSource.sortingBy(comp)
+                .parallel(0);
+
+        Assert.assertEquals(sequential, parallel.apply(new Query(filters))
+                .collect(Collectors.toList()));
+        Assert.assertEquals(sequential.size(),
+                parallel.size(new Query(filters)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPredicateFilter() {
+        dataSource.apply(new Query(Collections.singleton("Foo"))).count();
+    }
 }
@@ -23,6 +23,10 @@ class StrBean implements Serializable {
         return value;
     }
 
+    public void setValue(String value) {
+        this.value = value;
+    }
+
     public int getId() {
         return id;
     }
@@ -0,0 +1,133 @@
+package com.vaadin.server.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.server.MockServletConfig;
+import com.vaadin.server.ServiceException;
+import com.vaadin.server.VaadinServlet;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.metrics.RequestMetrics.Measurement;
+import com.vaadin.server.metrics.RequestMetrics.Phase;
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+
+public class HistogramRequestMetricsTest {
+
+    @Test
+    public void recordsPhaseAndDetail() {
+        HistogramRequestMetrics metrics = new HistogramRequestMetrics(false);
+        metrics.record(Phase.RPC_INVOCATION, "Button", 2000, -1);
+        metrics.record(Phase.RPC_INVOCATION, "Grid", 6000, -1);
+
+        PhaseHistogram phase = metrics.getHistogram(Phase.RPC_INVOCATION);
+        Assert.assertEquals(2, phase.getCount());
+        Assert.assertEquals(4, phase.getMeanMicros(), 0.001);
+        Assert.assertEquals(6, phase.getMaxMicros(), 0.001);
+        Assert.assertEquals(1, metrics
+                .getHistogram(Phase.RPC_INVOCATION, "Grid").getCount());
+        Assert.assertNull(metrics.getHistogram(Phase.PUSH_SEND));
+        Assert.assertEquals(3, metrics.getHistograms().size());
+
+        metrics.reset();
+        Assert.assertEquals(0, phase.getCount());
+    }
+
+    @Test
+    public void percentilesAreBoundedByBuckets() {
+        PhaseHistogram histogram = new PhaseHistogram(Phase.REQUEST, "");
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000, -1);
+        }
+        histogram.record(1000000, -1);
+
+        // 1000 ns is in the bucket [512, 1024)
+        Assert.assertEquals(1.023, histogram.getMedianMicros(), 0.001);
+        Assert.assertEquals(1.023, histogram.get99thPercentileMicros(),
+                0.001);
+        Assert.assertEquals(1000, histogram.getPercentileMicros(100), 0.001);
+    }
+
+    @Test
+    public void allocationsAreSummed() {
+        HistogramRequestMetrics metrics = new HistogramRequestMetrics(true);
+        Measurement measurement = RequestMetrics.start(metrics);
+        byte[][] garbage = new byte[100][];
+        for (int i = 0; i < garbage.length; i++) {
+            garbage[i] = new byte[1000];
+        }
+        measurement.end(Phase.STATE_ENCODING, null);
+
+        PhaseHistogram histogram = metrics.getHistogram(Phase.STATE_ENCODING);
+        Assert.assertEquals(1, histogram.getCount());
+        Assert.assertTrue(histogram.getAllocatedBytes() >= 0);
+    }
+
+    @Test
+    public void disabledMetricsMeasureNothing() {
+        Assert.assertNull(RequestMetrics.start((RequestMetrics) null));
+        Measurement.end(null, Phase.REQUEST, null);
+    }
+
+    @Test
+    public void histogramsAreExportedToJmx() throws Exception {
+        HistogramRequestMetrics metrics = new HistogramRequestMetrics(false);
+        metrics.record(Phase.REQUEST, null, 1000, -1);
+        metrics.registerMBeans("jmx-test");
+        metrics.record(Phase.RPC_INVOCATION, "com.example.Foo", 1000, -1);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName request = new ObjectName(
+                "com.vaadin:type=RequestMetrics,service=\"jmx-test\",phase=REQUEST");
+        ObjectName invocation = new ObjectName(
+                "com.vaadin:type=RequestMetrics,service=\"jmx-test\",phase=RPC_INVOCATION,detail=\"com.example.Foo\"");
+        try {
+            Assert.assertEquals(1L, server.getAttribute(request, "Count"));
+            Assert.assertTrue(server.isRegistered(invocation));
+        } finally {
+            metrics.unregisterMBeans();
+        }
+        Assert.assertFalse(server.isRegistered(request));
+        Assert.assertFalse(server.isRegistered(invocation));
+    }
+
+    @Test
+    public void serviceCreatesMetricsWhenEnabled()
+            throws ServiceException, ServletException {
+        VaadinServlet servlet = new VaadinServlet();
+        servlet.init(new MockServletConfig());
+        MockDeploymentConfiguration configuration = new MockDeploymentConfiguration();
+        configuration.setRequestMetricsEnabled(true);
+        VaadinServletService service = new VaadinServletService(servlet,
+                configuration);
+        service.init();
+        try {
+            HistogramRequestMetrics metrics = (HistogramRequestMetrics) service
+                    .getRequestMetrics();
+            Assert.assertNotNull(metrics);
+
+            Measurement measurement = RequestMetrics.start(service);
+            measurement.end(Phase.LOCK_WAIT, null);
+            Assert.assertEquals(1,
+                    metrics.getHistogram(Phase.LOCK_WAIT).getCount());
+        } finally {
+            service.destroy();
+        }
+    }
+
+    @Test
+    public void serviceHasNoMetricsByDefault()
+            throws ServiceException, ServletException {
+        VaadinServlet servlet = new VaadinServlet();
+        servlet.init(new MockServletConfig());
+        VaadinServletService service = new VaadinServletService(servlet,
+                new MockDeploymentConfiguration());
+        service.init();
+        Assert.assertNull(service.getRequestMetrics());
+    }
+}
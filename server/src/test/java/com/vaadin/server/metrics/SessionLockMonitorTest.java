@@ -0,0 +1,170 @@
+package com.vaadin.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.server.metrics.RequestMetrics.Phase;
+
+public class SessionLockMonitorTest {
+
+    private HistogramRequestMetrics metrics;
+    private SessionLockMonitor monitor;
+    private String previousOperation;
+
+    @Before
+    public void setUp() {
+        metrics = new HistogramRequestMetrics(false);
+        monitor = new SessionLockMonitor(metrics, 10);
+        previousOperation = SessionLockMonitor
+                .setCurrentOperation("UidlRequestHandler");
+    }
+
+    @After
+    public void tearDown() {
+        SessionLockMonitor.setCurrentOperation(previousOperation);
+        monitor.unregisterMBean();
+    }
+
+    @Test
+    public void waitAndHoldAreRecordedOncePerOperation() {
+        InstrumentedSessionLock lock = monitor.createLock();
+        lock.lock();
+        lock.lock();
+        Assert.assertEquals("UidlRequestHandler", lock.getOwnerOperation());
+        lock.unlock();
+        Assert.assertNull(metrics.getHistogram(Phase.LOCK_HOLD));
+        lock.unlock();
+
+        Assert.assertEquals(1, metrics
+                .getHistogram(Phase.LOCK_WAIT, "UidlRequestHandler")
+                .getCount());
+        Assert.assertEquals(1, metrics
+                .getHistogram(Phase.LOCK_HOLD, "UidlRequestHandler")
+                .getCount());
+        Assert.assertNull(lock.getOwnerOperation());
+        Assert.assertEquals(0, monitor.getContendedLockCount());
+    }
+
+    @Test
+    public void operationWithoutRequestIsBackground() {
+        SessionLockMonitor.setCurrentOperation(null);
+        Assert.assertEquals(SessionLockMonitor.BACKGROUND_OPERATION,
+                SessionLockMonitor.getCurrentOperation());
+    }
+
+    @Test
+    public void contendedLockIsReported() throws Exception {
+        final InstrumentedSessionLock lock = monitor.createLock();
+        CapturingHandler handler = new CapturingHandler();
+        Logger logger = Logger.getLogger(SessionLockMonitor.class.getName());
+        logger.addHandler(handler);
+
+        lock.lock();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            SessionLockMonitor.setCurrentOperation("HeartbeatHandler");
+            lock.lock();
+            lock.unlock();
+            acquired.countDown();
+        }, "waiter");
+        try {
+            waiter.start();
+            while (!lock.hasQueuedThreads()) {
+                Thread.sleep(1);
+            }
+
+            List<SessionLockInfo> contended = monitor.getContendedSessions();
+            Assert.assertEquals(1, contended.size());
+            SessionLockInfo info = contended.get(0);
+            Assert.assertEquals(lock.getId(), info.getLockId());
+            Assert.assertEquals(Thread.currentThread().getName(),
+                    info.getOwnerThread());
+            Assert.assertEquals("UidlRequestHandler",
+                    info.getOwnerOperation());
+            Assert.assertTrue(info.getQueuedThreads().contains("waiter"));
+            Assert.assertFalse(info.getOwnerStackTrace().isEmpty());
+
+            // Wait until the waiter has reported exceeding the threshold
+            while (handler.message == null) {
+                Thread.sleep(1);
+            }
+        } finally {
+            lock.unlock();
+            logger.removeHandler(handler);
+        }
+        acquired.await();
+        waiter.join();
+
+        Assert.assertEquals(1, monitor.getContendedLockCount());
+        Assert.assertEquals(1, monitor.getSlowLockCount());
+        Assert.assertTrue(monitor.getContendedSessions().isEmpty());
+        Assert.assertEquals(1, metrics
+                .getHistogram(Phase.LOCK_WAIT, "HeartbeatHandler")
+                .getCount());
+        Assert.assertTrue(handler.message,
+                handler.message.contains("session lock " + lock.getId()));
+        Assert.assertTrue(handler.message,
+                handler.message.contains("contendedLockIsReported"));
+    }
+
+    @Test
+    public void deserializedLockCanBeMonitoredAgain() {
+        InstrumentedSessionLock lock = new InstrumentedSessionLock(null);
+        lock.lock();
+        lock.unlock();
+        Assert.assertNull(metrics.getHistogram(Phase.LOCK_WAIT));
+
+        monitor.monitor(lock);
+        lock.lock();
+        lock.unlock();
+        Assert.assertSame(monitor, lock.getMonitor());
+        Assert.assertEquals(1, monitor.getMonitoredSessionCount());
+        Assert.assertEquals(1,
+                metrics.getHistogram(Phase.LOCK_WAIT).getCount());
+    }
+
+    @Test
+    public void contendedSessionsAreAvailableInJmx() throws Exception {
+        monitor.registerMBean("lock-test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(
+                "com.vaadin:type=SessionLocks,service=\"lock-test\"");
+        Assert.assertTrue(server.isRegistered(name));
+        Assert.assertEquals(0,
+                ((CompositeData[]) server.getAttribute(name,
+                        "ContendedSessions")).length);
+
+        monitor.unregisterMBean();
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    private static class CapturingHandler extends Handler {
+        private volatile String message;
+
+        @Override
+        public void publish(LogRecord record) {
+            message = record.getMessage();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
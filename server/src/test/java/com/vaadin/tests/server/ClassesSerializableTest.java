@@ -48,6 +48,10 @@ public class ClassesSerializableTest {
             "com\\.vaadin\\.server\\.VaadinServiceClassLoaderUtil", //
             "com\\.vaadin\\.server\\.VaadinServiceClassLoaderUtil\\$GetClassLoaderPrivilegedAction", //
             "com\\.vaadin\\.server\\.communication\\.FileUploadHandler\\$SimpleMultiPartInputStream", //
+            "com\\.vaadin\\.server\\.communication\\.UidlResponseWriter", //
+            "com\\.vaadin\\.server\\.communication\\.JsonStreamReader", //
+            "com\\.vaadin\\.server\\.metrics\\.PhaseHistogramMXBean", //
+            "com\\.vaadin\\.server\\.metrics\\.SessionLockMonitorMXBean", //
             "com\\.vaadin\\.server\\.communication\\.PushRequestHandler.*",
             "com\\.vaadin\\.server\\.communication\\.PushHandler.*", // PushHandler
             "com\\.vaadin\\.server\\.communication\\.DateSerializer", //
@@ -21,6 +21,13 @@ public class MockDeploymentConfiguration
     private Map<String, String> applicationOrSystemProperty = new HashMap<String, String>();
     private boolean syncIdCheckEnabled = true;
     private boolean sendUrlsAsParameters = true;
+    private boolean uidlCompressionEnabled = false;
+    private boolean compactUidlEnabled = false;
+    private boolean requestMetricsEnabled = false;
+    private int pushCoalescingInterval = 0;
+    private int staticResourceCacheSize = 0;
+    private boolean staticResourceCompressionEnabled = false;
+    private int compressionThreshold = 0;
 
     @Override
     public boolean isProductionMode() {
@@ -113,4 +120,68 @@ public class MockDeploymentConfiguration
         return sendUrlsAsParameters;
     }
 
+    @Override
+    public boolean isUidlCompressionEnabled() {
+        return uidlCompressionEnabled;
+    }
+
+    public void setUidlCompressionEnabled(boolean uidlCompressionEnabled) {
+        this.uidlCompressionEnabled = uidlCompressionEnabled;
+    }
+
+    @Override
+    public boolean isCompactUidlEnabled() {
+        return compactUidlEnabled;
+    }
+
+    public void setCompactUidlEnabled(boolean compactUidlEnabled) {
+        this.compactUidlEnabled = compactUidlEnabled;
+    }
+
+    @Override
+    public boolean isRequestMetricsEnabled() {
+        return requestMetricsEnabled;
+    }
+
+    public void setRequestMetricsEnabled(boolean requestMetricsEnabled) {
+        this.requestMetricsEnabled = requestMetricsEnabled;
+    }
+
+    @Override
+    public int getPushCoalescingInterval() {
+        return pushCoalescingInterval;
+    }
+
+    public void setPushCoalescingInterval(int pushCoalescingInterval) {
+        this.pushCoalescingInterval = pushCoalescingInterval;
+    }
+
+    @Override
+    public int getStaticResourceCacheSize() {
+        return staticResourceCacheSize;
+    }
+
+    public void setStaticResourceCacheSize(int staticResourceCacheSize) {
+        this.staticResourceCacheSize = staticResourceCacheSize;
+    }
+
+    @Override
+    public boolean isStaticResourceCompressionEnabled() {
+        return staticResourceCompressionEnabled;
+    }
+
+    public void setStaticResourceCompressionEnabled(
+            boolean staticResourceCompressionEnabled) {
+        this.staticResourceCompressionEnabled = staticResourceCompressionEnabled;
+    }
+
+    @Override
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
 }
@@ -0,0 +1,114 @@
+package com.vaadin.ui;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.server.ClientConnector;
+import com.vaadin.tests.util.MockUI;
+
+public class ConnectorTrackerCleanupTest {
+
+    private UI ui;
+    private ConnectorTracker tracker;
+    private CssLayout layout;
+    private Label first;
+    private Label second;
+    private Label outside;
+
+    @Before
+    public void setUp() {
+        ui = new MockUI();
+        tracker = ui.getConnectorTracker();
+        layout = new CssLayout();
+        first = new Label("first");
+        second = new Label("second");
+        outside = new Label("outside");
+        layout.addComponents(first, second);
+        ui.setContent(new VerticalLayout(layout, outside));
+        sendResponse();
+    }
+
+    @Test
+    public void hidingLayoutUninitializesDescendants() {
+        layout.setVisible(false);
+        sendResponse();
+
+        Assert.assertFalse(tracker.isClientSideInitialized(layout));
+        Assert.assertFalse(tracker.isClientSideInitialized(first));
+        Assert.assertFalse(tracker.isClientSideInitialized(second));
+        Assert.assertTrue(tracker.isClientSideInitialized(outside));
+        Assert.assertSame(first,
+                tracker.getConnector(first.getConnectorId()));
+    }
+
+    @Test
+    public void hidingChildUninitializesOnlyChild() {
+        first.setVisible(false);
+        sendResponse();
+
+        Assert.assertFalse(tracker.isClientSideInitialized(first));
+        Assert.assertTrue(tracker.isClientSideInitialized(second));
+        Assert.assertTrue(tracker.isClientSideInitialized(layout));
+    }
+
+    @Test
+    public void changingSelectiveRendererUninitializesHiddenChild() {
+        TabSheet tabSheet = new TabSheet(new Label("tab 1"),
+                new Label("tab 2"));
+        layout.addComponent(tabSheet);
+        sendResponse();
+        Component firstTab = tabSheet.getTab(0).getComponent();
+        Assert.assertTrue(tracker.isClientSideInitialized(firstTab));
+
+        tabSheet.setSelectedTab(1);
+        sendResponse();
+
+        Assert.assertFalse(tracker.isClientSideInitialized(firstTab));
+        Assert.assertTrue(tracker
+                .isClientSideInitialized(tabSheet.getTab(1).getComponent()));
+    }
+
+    @Test
+    public void removedConnectorIsUnregistered() {
+        String id = first.getConnectorId();
+        layout.removeComponent(first);
+        sendResponse();
+
+        Assert.assertNull(tracker.getConnector(id));
+    }
+
+    @Test
+    public void connectorHiddenWithoutMarkAsDirtyIsCleanedUp() {
+        boolean[] visible = { true };
+        Label hidden = new Label("hidden") {
+            @Override
+            public boolean isVisible() {
+                return visible[0];
+            }
+        };
+        layout.addComponent(hidden);
+        sendResponse();
+        Assert.assertTrue(tracker.isClientSideInitialized(hidden));
+
+        visible[0] = false;
+        sendResponse();
+
+        Assert.assertFalse(tracker.isClientSideInitialized(hidden));
+    }
+
+    /**
+     * Simulates writing a response in which all visible dirty connectors are
+     * initialized on the client side.
+     */
+    private void sendResponse() {
+        tracker.setWritingResponse(true);
+        for (ClientConnector connector : tracker
+                .getDirtyVisibleConnectors()) {
+            tracker.markClientSideInitialized(connector);
+        }
+        tracker.markAllConnectorsClean();
+        tracker.setWritingResponse(false);
+        tracker.cleanConnectorMap();
+    }
+}
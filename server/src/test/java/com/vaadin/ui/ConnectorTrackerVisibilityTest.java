@@ -0,0 +1,98 @@
+package com.vaadin.ui;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.server.LegacyCommunicationManager;
+import com.vaadin.tests.util.MockUI;
+
+public class ConnectorTrackerVisibilityTest {
+
+    private static class CountingLayout extends CssLayout {
+        private int visibilityChecks = 0;
+
+        @Override
+        public boolean isVisible() {
+            visibilityChecks++;
+            return super.isVisible();
+        }
+    }
+
+    private UI ui;
+    private ConnectorTracker tracker;
+    private CountingLayout layout;
+    private Label first;
+    private Label second;
+
+    @Before
+    public void setUp() {
+        ui = new MockUI();
+        tracker = ui.getConnectorTracker();
+        layout = new CountingLayout();
+        first = new Label("first");
+        second = new Label("second");
+        layout.addComponents(first, second);
+        ui.setContent(layout);
+    }
+
+    @Test
+    public void visibilityMatchesLegacyCheck() {
+        Label hidden = new Label("hidden");
+        hidden.setVisible(false);
+        layout.addComponent(hidden);
+
+        for (Component c : new Component[] { ui, layout, first, hidden }) {
+            Assert.assertEquals(
+                    LegacyCommunicationManager.isConnectorVisibleToClient(c),
+                    tracker.isConnectorVisibleToClient(c));
+        }
+        Assert.assertFalse(tracker.isConnectorVisibleToClient(hidden));
+    }
+
+    @Test
+    public void visibilityIsComputedOnceWhileWritingResponse() {
+        tracker.setWritingResponse(true);
+        layout.visibilityChecks = 0;
+
+        Assert.assertTrue(tracker.isConnectorVisibleToClient(first));
+        Assert.assertTrue(tracker.isConnectorVisibleToClient(second));
+        Assert.assertTrue(tracker.isConnectorVisibleToClient(layout));
+        Assert.assertEquals(1, layout.visibilityChecks);
+
+        tracker.setWritingResponse(false);
+        tracker.cleanConnectorMap();
+    }
+
+    @Test
+    public void visibilityIsNotMemoizedOutsideResponse() {
+        layout.visibilityChecks = 0;
+        tracker.isConnectorVisibleToClient(first);
+        tracker.isConnectorVisibleToClient(second);
+        Assert.assertEquals(2, layout.visibilityChecks);
+    }
+
+    @Test
+    public void snapshotIsDiscardedAfterCleanup() {
+        tracker.setWritingResponse(true);
+        Assert.assertTrue(tracker.isConnectorVisibleToClient(first));
+        tracker.setWritingResponse(false);
+        tracker.cleanConnectorMap();
+
+        layout.setVisible(false);
+        Assert.assertFalse(tracker.isConnectorVisibleToClient(first));
+    }
+
+    @Test
+    public void snapshotIsInvalidatedByUnregistration() {
+        tracker.setWritingResponse(true);
+        Assert.assertTrue(tracker.isConnectorVisibleToClient(first));
+        layout.visibilityChecks = 0;
+
+        tracker.unregisterConnector(second);
+        Assert.assertTrue(tracker.isConnectorVisibleToClient(first));
+        Assert.assertEquals(1, layout.visibilityChecks);
+
+        tracker.setWritingResponse(false);
+    }
+}
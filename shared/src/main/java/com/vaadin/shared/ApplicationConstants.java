@@ -158,4 +158,65 @@ public class ApplicationConstants implements Serializable {
      */
     public static final String WIDGETSET_VERSION_ID = "wsver";
 
+    /**
+     * A string that, if found in a non-JSON response to a UIDL request, will
+     * cause the browser to refresh the page.
+     *
+     * @since
+     */
+    public static final String UIDL_REFRESH_TOKEN = "Vaadin-Refresh";
+
+    /**
+     * The name of the parameter used by the client to request compact UIDL
+     * messages.
+     *
+     * @since
+     */
+    public static final String COMPACT_UIDL_ID = "compact";
+
+    /**
+     * The name of the UIDL message entry containing shared state property
+     * names added to the dictionary used by compact messages. The first item
+     * is the index of the first added name. Shared states in messages with
+     * this entry use dictionary indices instead of property names.
+     *
+     * @since
+     */
+    public static final String STATE_KEYS = "stateKeys";
+
+    /**
+     * The name of the UIDL message entry containing changes to the children
+     * of connectors relative to the children previously sent to the client.
+     * Each change contains the ids of the removed children and the ids and
+     * new indices of the inserted children. Moved children are both removed
+     * and inserted.
+     *
+     * @since
+     */
+    public static final String HIERARCHY_DELTA = "hierarchyDelta";
+
+    /**
+     * Key for the ids of removed children in a {@link #HIERARCHY_DELTA}
+     * entry.
+     *
+     * @since
+     */
+    public static final String HIERARCHY_DELTA_REMOVED = "r";
+
+    /**
+     * Key for the ids of inserted children in a {@link #HIERARCHY_DELTA}
+     * entry.
+     *
+     * @since
+     */
+    public static final String HIERARCHY_DELTA_INSERTED = "i";
+
+    /**
+     * Key for the indices of inserted children in a {@link #HIERARCHY_DELTA}
+     * entry, in ascending order.
+     *
+     * @since
+     */
+    public static final String HIERARCHY_DELTA_INDICES = "p";
+
 }
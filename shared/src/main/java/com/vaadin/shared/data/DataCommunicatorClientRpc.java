@@ -34,6 +34,15 @@ public interface DataCommunicatorClientRpc extends ClientRpc {
      */
     void reset(int size);
 
+    /**
+     * Informs the client-side DataSource that the size of the data has
+     * changed at its end. Data before the new size is kept.
+     *
+     * @param size
+     *            new size of the data source
+     */
+    void updateSize(int size);
+
     /**
      * Sets the data of the client-side DataSource to match the given data
      * starting from given index.
@@ -56,5 +65,17 @@ public interface DataCommunicatorClientRpc extends ClientRpc {
      */
     void updateData(JsonArray data);
 
+    /**
+     * Updates an array of objects based on their identifying key by merging
+     * the given patches into the existing data. A patch contains only the
+     * changed fields of a data object. Nested objects in a patch are merged
+     * recursively into existing nested objects, and the field names listed
+     * in {@link DataCommunicatorConstants#REMOVED} are removed.
+     *
+     * @param patches
+     *            array of data patches
+     */
+    void patchData(JsonArray patches);
+
     // TODO: Notify add / remove
 }
\ No newline at end of file
@@ -28,4 +28,9 @@ public final class DataCommunicatorConstants implements Serializable {
     public static final String SELECTED = "s";
     public static final String NAME = "n";
     public static final String DATA = "d";
+    /**
+     * Key of the array of removed field names in a row patch. Reserved on all
+     * levels of row data sent with incremental updates.
+     */
+    public static final String REMOVED = "r";
 }
\ No newline at end of file